@@ -0,0 +1,32 @@
+package com.bytezone.dm3270.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks with the JMH command line, adding the GC profiler when no profiler is
+ * given.
+ * <p>
+ * This way every run reports the allocation rate ({@code gc.alloc.rate.norm}, in bytes per
+ * operation) along with the time, so allocation regressions show up in the results even when they
+ * are still too small to change the times.
+ */
+public final class BenchmarksMain {
+
+  private BenchmarksMain() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<String> arguments = Arrays.asList(args);
+    if (arguments.contains("-prof")) {
+      Main.main(args);
+    } else {
+      String[] profiledArgs = Arrays.copyOf(args, args.length + 2);
+      profiledArgs[args.length] = "-prof";
+      profiledArgs[args.length + 1] = "gc";
+      Main.main(profiledArgs);
+    }
+  }
+
+}
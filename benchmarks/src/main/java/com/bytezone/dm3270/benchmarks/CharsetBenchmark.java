@@ -0,0 +1,59 @@
+package com.bytezone.dm3270.benchmarks;
+
+import com.bytezone.dm3270.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures decoding a full screen of EBCDIC bytes with {@link Charset#getChar(byte)}, for every
+ * supported charset.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CharsetBenchmark {
+
+  // all the values when none is given
+  @Param
+  public Charset charset;
+
+  @Param({SyntheticScreen.MODEL_2, SyntheticScreen.MODEL_5})
+  public String screenSize;
+
+  private byte[] screenBytes;
+  private char[] screenChars;
+
+  @Setup
+  public void setup() {
+    SyntheticScreen syntheticScreen = new SyntheticScreen(screenSize, charset);
+    byte[] writeCommand = syntheticScreen.getWriteCommand();
+    screenBytes = new byte[syntheticScreen.getDimensions().size];
+    // the screen stream repeated, so all kinds of bytes are decoded
+    for (int i = 0; i < screenBytes.length; i++) {
+      screenBytes[i] = writeCommand[i % writeCommand.length];
+    }
+    screenChars = new char[screenBytes.length];
+  }
+
+  @Benchmark
+  public char[] getChar() {
+    for (int i = 0; i < screenBytes.length; i++) {
+      screenChars[i] = charset.getChar(screenBytes[i]);
+    }
+    return screenChars;
+  }
+
+}
@@ -0,0 +1,41 @@
+package com.bytezone.dm3270.benchmarks;
+
+import com.bytezone.dm3270.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the first {@link Charset#load()} of each charset, which every new client pays for its
+ * charset.
+ * <p>
+ * Charsets are only loaded once per JVM, so each measure is taken in a new fork, and includes the
+ * lookup of the JDK charset (and loading its provider when it is the first one used).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Thread)
+public class CharsetLoadBenchmark {
+
+  // all the values when none is given
+  @Param
+  public Charset charset;
+
+  @Benchmark
+  public Charset load() {
+    charset.load();
+    return charset;
+  }
+
+}
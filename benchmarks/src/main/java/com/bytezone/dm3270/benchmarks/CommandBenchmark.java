@@ -0,0 +1,78 @@
+package com.bytezone.dm3270.benchmarks;
+
+import com.bytezone.dm3270.Charset;
+import com.bytezone.dm3270.commands.Command;
+import com.bytezone.dm3270.display.Screen;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing full screen Erase/Write commands with {@link Command#getCommand}, which builds
+ * the {@link com.bytezone.dm3270.commands.WriteCommand} and its orders, and processing them in a
+ * screen, which also rebuilds its fields.
+ * <p>
+ * {@code processUpdate} measures processing a Write which only changes the text of one field of
+ * the screen, so only that field is updated.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandBenchmark {
+
+  @Param({SyntheticScreen.MODEL_2, SyntheticScreen.MODEL_5})
+  public String screenSize;
+
+  private SyntheticScreen syntheticScreen;
+  private byte[] writeCommand;
+  private Command command;
+  private Command updateCommand;
+  private Screen screen;
+
+  @Setup
+  public void setup() {
+    syntheticScreen = new SyntheticScreen(screenSize, Charset.CP1047);
+    writeCommand = syntheticScreen.getWriteCommand();
+    command = Command.getCommand(writeCommand, 0, writeCommand.length, Charset.CP1047);
+    byte[] update = syntheticScreen.getUpdateCommand();
+    updateCommand = Command.getCommand(update, 0, update.length, Charset.CP1047);
+    screen = syntheticScreen.newScreen();
+    syntheticScreen.writeTo(screen);
+  }
+
+  @Benchmark
+  public Command getCommand() {
+    return Command.getCommand(writeCommand, 0, writeCommand.length, Charset.CP1047);
+  }
+
+  @Benchmark
+  public Screen process() {
+    command.process(screen);
+    return screen;
+  }
+
+  @Benchmark
+  public Screen processUpdate() {
+    updateCommand.process(screen);
+    return screen;
+  }
+
+  @Benchmark
+  public Screen getCommandAndProcess() {
+    Command.getCommand(writeCommand, 0, writeCommand.length, Charset.CP1047).process(screen);
+    return screen;
+  }
+
+}
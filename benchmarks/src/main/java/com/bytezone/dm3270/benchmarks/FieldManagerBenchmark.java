@@ -0,0 +1,83 @@
+package com.bytezone.dm3270.benchmarks;
+
+import com.bytezone.dm3270.Charset;
+import com.bytezone.dm3270.display.Field;
+import com.bytezone.dm3270.display.FieldManager;
+import com.bytezone.dm3270.display.Screen;
+import com.bytezone.dm3270.display.ScreenPosition;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures building all the fields of a full screen from its positions, and looking up the field at
+ * a position, which is done for each field set by position and each key typed.
+ * <p>
+ * {@code getFieldAt} looks up {@value #LOOKUPS} positions spread over the whole screen per
+ * invocation, and reports the time of a single lookup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldManagerBenchmark {
+
+  private static final int LOOKUPS = 64;
+
+  @Param({SyntheticScreen.MODEL_2, SyntheticScreen.MODEL_5})
+  public String screenSize;
+
+  private Screen screen;
+  private FieldManager fieldManager;
+  private ScreenPosition[] screenPositions;
+  private int[] positions;
+
+  @Setup
+  public void setup() {
+    SyntheticScreen syntheticScreen = new SyntheticScreen(screenSize, Charset.CP1047);
+    screen = syntheticScreen.newScreen();
+    syntheticScreen.writeTo(screen);
+    fieldManager = screen.getFieldManager();
+    int size = syntheticScreen.getDimensions().size;
+    screenPositions = new ScreenPosition[size];
+    for (int i = 0; i < size; i++) {
+      screenPositions[i] = screen.getScreenPosition(i);
+    }
+    positions = new int[LOOKUPS];
+    for (int i = 0; i < LOOKUPS; i++) {
+      // a prime stride, so positions fall in different columns of each row
+      positions[i] = (int) ((long) i * 997 % size);
+    }
+  }
+
+  @Benchmark
+  public FieldManager buildFields() {
+    // the screen only updates the fields the pen changed, which would be none here
+    fieldManager.buildFields(screenPositions);
+    return fieldManager;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LOOKUPS)
+  public void getFieldAt(Blackhole blackhole) {
+    for (int position : positions) {
+      Optional<Field> field = fieldManager.getFieldAt(position);
+      blackhole.consume(field);
+    }
+  }
+
+}
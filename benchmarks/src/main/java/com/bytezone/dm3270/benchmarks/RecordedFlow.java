@@ -0,0 +1,101 @@
+package com.bytezone.dm3270.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Host traffic recorded in the wiresham flows used by the library tests.
+ */
+public final class RecordedFlow {
+
+  private static final Pattern PACKET_PATTERN =
+      Pattern.compile("!(server|client)\\s*\\{\\s*data:\\s*([0-9A-Fa-f\\s]+?)\\s*[,}]");
+
+  private final List<byte[]> serverPackets;
+  private final List<byte[]> clientPackets;
+
+  private RecordedFlow(List<byte[]> serverPackets, List<byte[]> clientPackets) {
+    this.serverPackets = serverPackets;
+    this.clientPackets = clientPackets;
+  }
+
+  /**
+   * Loads a flow packaged with the benchmarks.
+   *
+   * @param name name of the flow file, like login.yml.
+   * @return the loaded flow.
+   */
+  public static RecordedFlow load(String name) {
+    String text = readResource("/flows/" + name);
+    List<byte[]> serverPackets = new ArrayList<>();
+    List<byte[]> clientPackets = new ArrayList<>();
+    Matcher matcher = PACKET_PATTERN.matcher(text);
+    while (matcher.find()) {
+      byte[] packet = parseHex(matcher.group(2));
+      if ("server".equals(matcher.group(1))) {
+        serverPackets.add(packet);
+      } else {
+        clientPackets.add(packet);
+      }
+    }
+    return new RecordedFlow(Collections.unmodifiableList(serverPackets),
+        Collections.unmodifiableList(clientPackets));
+  }
+
+  private static String readResource(String path) {
+    try (InputStream in = RecordedFlow.class.getResourceAsStream(path)) {
+      if (in == null) {
+        throw new IllegalArgumentException("No flow found in " + path);
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read = in.read(buffer);
+      while (read >= 0) {
+        out.write(buffer, 0, read);
+        read = in.read(buffer);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static byte[] parseHex(String hex) {
+    String digits = hex.replaceAll("\\s", "");
+    byte[] bytes = new byte[digits.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(digits.substring(i * 2, i * 2 + 2), 16);
+    }
+    return bytes;
+  }
+
+  public List<byte[]> getServerPackets() {
+    return serverPackets;
+  }
+
+  public List<byte[]> getClientPackets() {
+    return clientPackets;
+  }
+
+  /**
+   * Gets all the data sent by the server as a single stream.
+   *
+   * @return the concatenation of the server packets.
+   */
+  public byte[] getServerStream() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] packet : serverPackets) {
+      out.write(packet, 0, packet.length);
+    }
+    return out.toByteArray();
+  }
+
+}
@@ -0,0 +1,55 @@
+package com.bytezone.dm3270.benchmarks;
+
+import com.bytezone.dm3270.Charset;
+import com.bytezone.dm3270.commands.Command;
+import com.bytezone.dm3270.display.Screen;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures packing a full screen, with all its input fields modified, in the inbound
+ * {@link com.bytezone.dm3270.display.ScreenPacker} commands: Read Modified, sent with each AID,
+ * and Read Buffer, requested by some hosts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ScreenPackerBenchmark {
+
+  @Param({SyntheticScreen.MODEL_2, SyntheticScreen.MODEL_5})
+  public String screenSize;
+
+  private Screen screen;
+
+  @Setup
+  public void setup() {
+    SyntheticScreen syntheticScreen = new SyntheticScreen(screenSize, Charset.CP1047);
+    screen = syntheticScreen.newScreen();
+    syntheticScreen.writeTo(screen);
+    SyntheticScreen.fillInputFields(screen);
+  }
+
+  @Benchmark
+  public Command readModifiedFields() {
+    return screen.readModifiedFields();
+  }
+
+  @Benchmark
+  public Command readBuffer() {
+    return screen.readBuffer();
+  }
+
+}
@@ -0,0 +1,47 @@
+package com.bytezone.dm3270.benchmarks;
+
+import com.bytezone.dm3270.Charset;
+import com.bytezone.dm3270.TerminalClient;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link TerminalClient#getScreenText()} on a full screen, which clients usually call
+ * after every screen change to check where they are.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ScreenTextBenchmark {
+
+  @Param({SyntheticScreen.MODEL_2, SyntheticScreen.MODEL_5})
+  public String screenSize;
+
+  private TerminalClient client;
+
+  @Setup
+  public void setup() {
+    SyntheticScreen syntheticScreen = new SyntheticScreen(screenSize, Charset.CP1047);
+    client = new TerminalClient(2, syntheticScreen.getDimensions());
+    syntheticScreen.writeTo(client.getScreen());
+  }
+
+  @Benchmark
+  public String getScreenText() {
+    return client.getScreenText();
+  }
+
+}
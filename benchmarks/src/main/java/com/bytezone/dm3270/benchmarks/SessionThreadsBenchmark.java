@@ -0,0 +1,197 @@
+package com.bytezone.dm3270.benchmarks;
+
+import com.bytezone.dm3270.ConnectionListener;
+import com.bytezone.dm3270.TerminalClient;
+import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.streams.ThreadFactories;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares platform and virtual threads when connecting many blocking sessions at once.
+ * <p>
+ * Each invocation connects {@code sessions} clients to a local server which just accepts the
+ * connections, and reports the connect time along with the live platform threads and used heap
+ * once all of them are connected. JMH sums these footprint counters over the iterations, so
+ * check the value reported by each iteration. Virtual threads require running the benchmark on
+ * Java 21+.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionThreadsBenchmark {
+
+  private static final ScreenDimensions SCREEN_DIMENSIONS = new ScreenDimensions(24, 80);
+  private static final long CONNECT_TIMEOUT_SECONDS = 60;
+
+  @Param({"platform", "virtual"})
+  public String threads;
+
+  @Param({"1000"})
+  public int sessions;
+
+  private AcceptingServer server;
+  private List<TerminalClient> clients;
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Footprint {
+
+    public long liveThreads;
+    public long usedHeapBytes;
+
+    private void record() {
+      ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+      MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+      liveThreads = threadBean.getThreadCount();
+      usedHeapBytes = memoryBean.getHeapMemoryUsage().getUsed();
+    }
+
+  }
+
+  @Setup(Level.Trial)
+  public void setupServer() throws IOException {
+    if ("virtual".equals(threads) && !ThreadFactories.isVirtualSupported()) {
+      throw new IllegalStateException("Virtual threads require running on Java 21 or later");
+    }
+    server = new AcceptingServer();
+    server.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void teardownServer() throws IOException {
+    server.stop();
+  }
+
+  @Setup(Level.Invocation)
+  public void setupClients() {
+    clients = new ArrayList<>(sessions);
+    for (int i = 0; i < sessions; i++) {
+      TerminalClient client = new TerminalClient(2, SCREEN_DIMENSIONS);
+      client.setThreadFactory("virtual".equals(threads) ? ThreadFactories.virtual()
+          : ThreadFactories.platform());
+      clients.add(client);
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void teardownClients() throws InterruptedException {
+    for (TerminalClient client : clients) {
+      client.disconnect();
+    }
+    server.closeAccepted();
+  }
+
+  @Benchmark
+  public void connect(Footprint footprint) throws InterruptedException {
+    CountDownLatch connected = new CountDownLatch(sessions);
+    ConnectionListener listener = new ConnectionListener() {
+      @Override
+      public void onConnection() {
+        connected.countDown();
+      }
+
+      @Override
+      public void onException(Exception ex) {
+      }
+
+      @Override
+      public void onConnectionClosed() {
+      }
+    };
+    for (TerminalClient client : clients) {
+      client.addConnectionListener(listener);
+      client.connect(server.getHost(), server.getPort());
+    }
+    if (!connected.await(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+      throw new IllegalStateException("Only " + (sessions - connected.getCount()) + " of "
+          + sessions + " sessions connected");
+    }
+    footprint.record();
+  }
+
+  private static class AcceptingServer implements Runnable {
+
+    private final ServerSocket serverSocket;
+    private final List<Socket> accepted = new ArrayList<>();
+    private final Thread thread = new Thread(this, "benchmark-server");
+
+    private AcceptingServer() throws IOException {
+      serverSocket = new ServerSocket(0, 4096, InetAddress.getLoopbackAddress());
+    }
+
+    private void start() {
+      thread.start();
+    }
+
+    private String getHost() {
+      return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    private int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void run() {
+      while (!serverSocket.isClosed()) {
+        try {
+          Socket socket = serverSocket.accept();
+          synchronized (accepted) {
+            accepted.add(socket);
+          }
+        } catch (IOException e) {
+          if (!serverSocket.isClosed()) {
+            e.printStackTrace();
+          }
+        }
+      }
+    }
+
+    private void closeAccepted() {
+      synchronized (accepted) {
+        for (Socket socket : accepted) {
+          try {
+            socket.close();
+          } catch (IOException e) {
+            e.printStackTrace();
+          }
+        }
+        accepted.clear();
+      }
+    }
+
+    private void stop() throws IOException {
+      serverSocket.close();
+      closeAccepted();
+    }
+
+  }
+
+}
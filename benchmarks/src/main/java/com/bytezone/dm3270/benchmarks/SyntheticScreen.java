@@ -0,0 +1,164 @@
+package com.bytezone.dm3270.benchmarks;
+
+import com.bytezone.dm3270.Charset;
+import com.bytezone.dm3270.commands.AIDCommand;
+import com.bytezone.dm3270.commands.Command;
+import com.bytezone.dm3270.display.Field;
+import com.bytezone.dm3270.display.Screen;
+import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.orders.BufferAddress;
+import com.bytezone.dm3270.orders.Order;
+import com.bytezone.dm3270.streams.TelnetState;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Full screens of labels and input fields, to benchmark the screen handling with the usual
+ * terminal sizes, which recorded flows don't cover.
+ * <p>
+ * Each row is split in segments of 20 positions, alternating colored protected labels (started
+ * with Start Field Extended) and input fields (started with Start Field), each one addressed with
+ * Set Buffer Address, like host applications usually build their screens. Screens other than
+ * 24x80 are written with Erase/Write Alternate.
+ */
+public final class SyntheticScreen {
+
+  /**
+   * Sizes used by the benchmarks parameterized by screen size.
+   */
+  public static final String MODEL_2 = "24x80";
+  public static final String MODEL_5 = "27x132";
+
+  private static final ScreenDimensions DEFAULT_DIMENSIONS = new ScreenDimensions(24, 80);
+  private static final int SEGMENT_WIDTH = 20;
+  // reset partition, restore keyboard and reset modified flags
+  private static final byte WCC = (byte) 0xC3;
+  private static final int PROTECTED = 0x20;
+  private static final byte EXTENDED_FIELD_ATTRIBUTE = (byte) 0xC0;
+  private static final byte EXTENDED_FOREGROUND = 0x42;
+  private static final byte TURQUOISE = (byte) 0xF5;
+
+  private final ScreenDimensions dimensions;
+  private final Charset charset;
+  private final byte[] writeCommand;
+  private final byte[] updateCommand;
+
+  public SyntheticScreen(String size, Charset charset) {
+    String[] parts = size.split("x");
+    this.dimensions = new ScreenDimensions(Integer.parseInt(parts[0]),
+        Integer.parseInt(parts[1]));
+    this.charset = charset;
+    charset.load();
+    this.writeCommand = buildWriteCommand();
+    this.updateCommand = buildUpdateCommand();
+  }
+
+  private byte[] buildWriteCommand() {
+    java.nio.charset.Charset textCharset = java.nio.charset.Charset.forName(charset.name());
+    ByteArrayOutputStream stream = new ByteArrayOutputStream(dimensions.size * 2);
+    stream.write(isAlternate() ? Command.ERASE_WRITE_ALTERNATE_7E : Command.ERASE_WRITE_F5);
+    stream.write(WCC);
+    int segments = dimensions.columns / SEGMENT_WIDTH;
+    for (int row = 0; row < dimensions.rows; row++) {
+      for (int segment = 0; segment < segments; segment++) {
+        writeAddress(stream, row * dimensions.columns + segment * SEGMENT_WIDTH);
+        String text;
+        if (segment % 2 == 0) {
+          stream.write(Order.START_FIELD_EXTENDED);
+          stream.write(2);
+          stream.write(EXTENDED_FIELD_ATTRIBUTE);
+          stream.write(BufferAddress.ADDRESS[PROTECTED]);
+          stream.write(EXTENDED_FOREGROUND);
+          stream.write(TURQUOISE);
+          text = String.format("LABEL %02d-%d ......", row + 1, segment + 1);
+        } else {
+          stream.write(Order.START_FIELD);
+          stream.write(BufferAddress.ADDRESS[0]);
+          text = String.format("VALUE %02d%d", row + 1, segment + 1);
+        }
+        byte[] bytes = text.getBytes(textCharset);
+        stream.write(bytes, 0, Math.min(bytes.length, SEGMENT_WIDTH - 1));
+      }
+    }
+    writeAddress(stream, SEGMENT_WIDTH + 1);
+    stream.write(Order.INSERT_CURSOR);
+    return stream.toByteArray();
+  }
+
+  // replaces the text of the first label, like hosts updating a clock or a message line
+  private byte[] buildUpdateCommand() {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.write(Command.WRITE_F1);
+    stream.write(WCC);
+    writeAddress(stream, 1);
+    byte[] bytes = "CLOCK 12:00:00".getBytes(java.nio.charset.Charset.forName(charset.name()));
+    stream.write(bytes, 0, bytes.length);
+    return stream.toByteArray();
+  }
+
+  private static void writeAddress(ByteArrayOutputStream stream, int position) {
+    byte[] address = new byte[2];
+    new BufferAddress(position).packAddress(address, 0);
+    stream.write(Order.SET_BUFFER_ADDRESS);
+    stream.write(address, 0, address.length);
+  }
+
+  private boolean isAlternate() {
+    return dimensions.rows != DEFAULT_DIMENSIONS.rows
+        || dimensions.columns != DEFAULT_DIMENSIONS.columns;
+  }
+
+  public ScreenDimensions getDimensions() {
+    return dimensions;
+  }
+
+  /**
+   * Gets the 3270 data stream writing the screen, without any telnet framing.
+   *
+   * @return the Erase/Write (or Erase/Write Alternate) command.
+   */
+  public byte[] getWriteCommand() {
+    return writeCommand;
+  }
+
+  /**
+   * Gets the 3270 data stream of a Write changing the text of a single field of the screen,
+   * without any telnet framing.
+   *
+   * @return the Write command.
+   */
+  public byte[] getUpdateCommand() {
+    return updateCommand;
+  }
+
+  /**
+   * Creates a screen supporting the dimensions of this one as alternate screen.
+   *
+   * @return a new empty screen.
+   */
+  public Screen newScreen() {
+    return new Screen(DEFAULT_DIMENSIONS, dimensions, new TelnetState(), charset);
+  }
+
+  /**
+   * Writes this screen in the given one.
+   *
+   * @param screen screen where to write, which must support the dimensions of this one.
+   */
+  public void writeTo(Screen screen) {
+    Command.getCommand(writeCommand, 0, writeCommand.length, charset).process(screen);
+  }
+
+  /**
+   * Types in all the input fields of the screen and sets the ENTER AID, as a user would do
+   * before sending the screen back to the host.
+   *
+   * @param screen screen with this screen written in it.
+   */
+  public static void fillInputFields(Screen screen) {
+    for (Field field : screen.getFieldManager().getUnprotectedFields()) {
+      field.setText("TYPED");
+    }
+    screen.setAID(AIDCommand.AID_ENTER);
+  }
+
+}
@@ -0,0 +1,112 @@
+package com.bytezone.dm3270.benchmarks;
+
+import com.bytezone.dm3270.telnet.TelnetCommandProcessor;
+import com.bytezone.dm3270.telnet.TelnetProcessor;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of {@link TelnetProcessor} splitting recorded host traffic in records
+ * and telnet commands.
+ * <p>
+ * The traffic is fed in reads of {@code chunkSize} bytes ({@code 0} feeds each recorded packet in
+ * a single read). Feeding one byte per read runs every byte through the telnet state machine,
+ * which is how all the traffic was processed before the bulk IAC scanning, so it works as the
+ * baseline. The {@code bytes} counter reports the processed bytes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TelnetProcessorBenchmark {
+
+  @Param({"login.yml", "login-3278-M2-E.yml", "login-apl-charset-screen.yml"})
+  public String flow;
+
+  @Param({"0", "1", "61"})
+  public int chunkSize;
+
+  private byte[][] reads;
+  private TelnetProcessor telnetProcessor;
+  private Blackhole blackhole;
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Counters {
+
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      bytes = 0;
+    }
+
+  }
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    this.blackhole = blackhole;
+    RecordedFlow recordedFlow = RecordedFlow.load(flow);
+    if (chunkSize == 0) {
+      reads = recordedFlow.getServerPackets().toArray(new byte[0][]);
+    } else {
+      byte[] stream = recordedFlow.getServerStream();
+      reads = new byte[(stream.length + chunkSize - 1) / chunkSize][];
+      for (int i = 0; i < reads.length; i++) {
+        int from = i * chunkSize;
+        reads[i] = Arrays.copyOfRange(stream, from,
+            Math.min(stream.length, from + chunkSize));
+      }
+    }
+    telnetProcessor = new TelnetProcessor(new ConsumingCommandProcessor());
+  }
+
+  @Benchmark
+  public void listen(Counters counters) {
+    for (byte[] read : reads) {
+      telnetProcessor.listen(read, 0, read.length);
+      counters.bytes += read.length;
+    }
+  }
+
+  private class ConsumingCommandProcessor implements TelnetCommandProcessor {
+
+    @Override
+    public void processData(byte[] buffer, int length) {
+      blackhole.consume(buffer[length - 1]);
+    }
+
+    @Override
+    public void processRecord(byte[] buffer, int offset, int length) {
+      blackhole.consume(buffer[offset + length - 1]);
+    }
+
+    @Override
+    public void processTelnetCommand(byte[] buffer, int length) {
+      blackhole.consume(buffer[length - 1]);
+    }
+
+    @Override
+    public void processTelnetSubcommand(byte[] buffer, int length) {
+      blackhole.consume(buffer[length - 1]);
+    }
+
+  }
+
+}
@@ -22,4 +22,38 @@ public interface ConnectionListener {
    */
   void onConnectionClosed();
 
+  /**
+   * Method invoked when the connection has been lost and a reconnection has been scheduled
+   * according to the {@link ReconnectPolicy} of the client.
+   *
+   * @param attempt number of the reconnection attempt, starting from 1.
+   * @param delayMillis time in milliseconds until the attempt starts.
+   */
+  default void onReconnecting(int attempt, long delayMillis) {
+  }
+
+  /**
+   * Method invoked when the first screen is received after reconnecting.
+   *
+   * @param attempt number of the attempt which succeeded.
+   */
+  default void onReconnected(int attempt) {
+  }
+
+  /**
+   * Method invoked when the recorded navigation has been replayed after reconnecting, so the
+   * session is back to the last screen before the connection was lost.
+   */
+  default void onNavigationRestored() {
+  }
+
+  /**
+   * Method invoked when no more reconnections are attempted, since the max attempts of the
+   * {@link ReconnectPolicy} have been reached.
+   *
+   * @param cause the problem which caused the last attempt to fail.
+   */
+  default void onReconnectFailed(Exception cause) {
+  }
+
 }
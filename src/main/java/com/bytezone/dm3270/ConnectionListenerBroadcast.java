@@ -30,6 +30,26 @@ public class ConnectionListenerBroadcast implements ConnectionListener {
   public void onConnectionClosed() {
     notify(ConnectionListener::onConnectionClosed);
   }
+
+  @Override
+  public void onReconnecting(int attempt, long delayMillis) {
+    notify(connectionListener -> connectionListener.onReconnecting(attempt, delayMillis));
+  }
+
+  @Override
+  public void onReconnected(int attempt) {
+    notify(connectionListener -> connectionListener.onReconnected(attempt));
+  }
+
+  @Override
+  public void onNavigationRestored() {
+    notify(ConnectionListener::onNavigationRestored);
+  }
+
+  @Override
+  public void onReconnectFailed(Exception cause) {
+    notify(connectionListener -> connectionListener.onReconnectFailed(cause));
+  }
   
   private void notify(Consumer<? super ConnectionListener> event) {
     connectionListeners.forEach(event);
@@ -0,0 +1,155 @@
+package com.bytezone.dm3270;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Defines how a {@link TerminalClient} reconnects when the connection to the terminal server is
+ * lost.
+ * <p>
+ * Attempts are delayed with exponential backoff, from the initial delay up to the max delay, and
+ * each delay is randomly reduced by up to the jitter fraction. This way, when a host drops all its
+ * sessions at once (like on an IPL), clients don't reconnect all at the same time.
+ * <p>
+ * When navigation replay is enabled, the field fills, cursor moves and AIDs sent since connecting
+ * are recorded, and replayed after reconnecting to get the session back to the last screen. Since
+ * AIDs are sent again, it should only be enabled for sessions which don't update host data, or
+ * where doing so again is harmless. Recorded texts include any password typed in the session,
+ * and are kept until the client disconnects, {@link TerminalClient#resetNavigation()} is called,
+ * or the navigation gets longer than the max navigation steps, when it is discarded and no longer
+ * replayed.
+ */
+public class ReconnectPolicy {
+
+  public static final int DEFAULT_INITIAL_DELAY_MILLIS = 1000;
+  public static final int DEFAULT_MAX_DELAY_MILLIS = 60000;
+  public static final double DEFAULT_MULTIPLIER = 2;
+  public static final double DEFAULT_JITTER = 0.5;
+  public static final int DEFAULT_MAX_NAVIGATION_STEPS = 256;
+
+  private int initialDelayMillis = DEFAULT_INITIAL_DELAY_MILLIS;
+  private int maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+  private double multiplier = DEFAULT_MULTIPLIER;
+  private double jitter = DEFAULT_JITTER;
+  private int maxAttempts;
+  private boolean replayNavigation;
+  private int maxNavigationSteps = DEFAULT_MAX_NAVIGATION_STEPS;
+
+  public int getInitialDelayMillis() {
+    return initialDelayMillis;
+  }
+
+  public void setInitialDelayMillis(int initialDelayMillis) {
+    if (initialDelayMillis < 0) {
+      throw new IllegalArgumentException("Initial delay must not be negative: "
+          + initialDelayMillis);
+    }
+    this.initialDelayMillis = initialDelayMillis;
+  }
+
+  public int getMaxDelayMillis() {
+    return maxDelayMillis;
+  }
+
+  public void setMaxDelayMillis(int maxDelayMillis) {
+    if (maxDelayMillis < 0) {
+      throw new IllegalArgumentException("Max delay must not be negative: " + maxDelayMillis);
+    }
+    this.maxDelayMillis = maxDelayMillis;
+  }
+
+  public double getMultiplier() {
+    return multiplier;
+  }
+
+  public void setMultiplier(double multiplier) {
+    if (multiplier < 1) {
+      throw new IllegalArgumentException("Multiplier must be at least 1: " + multiplier);
+    }
+    this.multiplier = multiplier;
+  }
+
+  public double getJitter() {
+    return jitter;
+  }
+
+  /**
+   * Sets the fraction of each delay which is randomized.
+   *
+   * @param jitter value between 0 (no randomization) and 1 (delays between zero and the
+   * computed backoff). By default {@link #DEFAULT_JITTER}.
+   */
+  public void setJitter(double jitter) {
+    if (jitter < 0 || jitter > 1) {
+      throw new IllegalArgumentException("Jitter must be between 0 and 1: " + jitter);
+    }
+    this.jitter = jitter;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Sets the number of consecutive failed attempts after which the client gives up.
+   *
+   * @param maxAttempts max number of attempts, or zero (the default) to retry forever.
+   */
+  public void setMaxAttempts(int maxAttempts) {
+    if (maxAttempts < 0) {
+      throw new IllegalArgumentException("Max attempts must not be negative: " + maxAttempts);
+    }
+    this.maxAttempts = maxAttempts;
+  }
+
+  public boolean isReplayNavigation() {
+    return replayNavigation;
+  }
+
+  public void setReplayNavigation(boolean replayNavigation) {
+    this.replayNavigation = replayNavigation;
+  }
+
+  public int getMaxNavigationSteps() {
+    return maxNavigationSteps;
+  }
+
+  /**
+   * Sets the max number of field fills, cursor moves and AIDs recorded to be replayed.
+   *
+   * @param maxNavigationSteps number of steps from which the navigation is discarded, by default
+   * {@link #DEFAULT_MAX_NAVIGATION_STEPS}.
+   */
+  public void setMaxNavigationSteps(int maxNavigationSteps) {
+    if (maxNavigationSteps <= 0) {
+      throw new IllegalArgumentException("Max navigation steps must be positive: "
+          + maxNavigationSteps);
+    }
+    this.maxNavigationSteps = maxNavigationSteps;
+  }
+
+  /**
+   * Gets the time to wait before a reconnection attempt.
+   *
+   * @param attempt number of the attempt, starting from 1.
+   * @return the delay in milliseconds.
+   */
+  public long getDelayMillis(int attempt) {
+    double backoff = initialDelayMillis * Math.pow(multiplier, Math.max(0, attempt - 1));
+    double delay = Math.min(maxDelayMillis, backoff);
+    return (long) (delay * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+  }
+
+  boolean isExhausted(int attempt) {
+    return maxAttempts > 0 && attempt > maxAttempts;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ReconnectPolicy [initialDelayMillis=%d, maxDelayMillis=%d, "
+            + "multiplier=%s, jitter=%s, maxAttempts=%d, replayNavigation=%s, "
+            + "maxNavigationSteps=%d]",
+        initialDelayMillis, maxDelayMillis, multiplier, jitter, maxAttempts, replayNavigation,
+        maxNavigationSteps);
+  }
+
+}
@@ -0,0 +1,233 @@
+package com.bytezone.dm3270;
+
+import com.bytezone.dm3270.application.KeyboardStatusChangedEvent;
+import com.bytezone.dm3270.application.KeyboardStatusListener;
+import com.bytezone.dm3270.display.ScreenChangeListener;
+import com.bytezone.dm3270.display.ScreenWatcher;
+import com.bytezone.dm3270.streams.TimerWheel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Reconnects a TerminalClient according to its ReconnectPolicy when the connection is lost,
+// and replays the recorded navigation to get back to the last screen. It is registered as a
+// connection listener of the client, so it sees the same events as the users, and notifies the
+// reconnection stages through the client broadcast.
+class SessionReconnector implements ConnectionListener, ScreenChangeListener,
+    KeyboardStatusListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SessionReconnector.class);
+
+  private final TerminalClient client;
+  private final ReconnectPolicy policy;
+  private final ConnectionListener events;
+  private final ThreadFactory threadFactory;
+  private final List<NavigationStep> navigation = new ArrayList<>();
+
+  private volatile boolean active = true;
+  private boolean navigationTooLong;
+  private boolean reconnectScheduled;
+  private boolean awaitingScreen;
+  private int attempt;
+  private List<NavigationStep> replaySteps;
+  private int replayIndex;
+
+  private interface NavigationStep {
+
+    void replay(TerminalClient client);
+
+  }
+
+  SessionReconnector(TerminalClient client, ReconnectPolicy policy, ConnectionListener events,
+      ThreadFactory threadFactory) {
+    this.client = client;
+    this.policy = policy;
+    this.events = events;
+    this.threadFactory = threadFactory;
+  }
+
+  synchronized void recordFill(int position, String text) {
+    record(c -> c.replayFill(position, text));
+  }
+
+  synchronized void recordCursor(int position) {
+    record(c -> c.setCursorPosition(position));
+  }
+
+  synchronized void recordAid(byte aid, String name) {
+    record(c -> c.sendAID(aid, name));
+  }
+
+  private void record(NavigationStep step) {
+    // nothing is recorded while replaying, since the steps are already there
+    if (!policy.isReplayNavigation() || replaySteps != null || navigationTooLong) {
+      return;
+    }
+    if (navigation.size() >= policy.getMaxNavigationSteps()) {
+      // part of the navigation can't get the session back to the last screen
+      LOG.warn("Navigation exceeds {} steps, it won't be replayed on reconnection",
+          policy.getMaxNavigationSteps());
+      navigation.clear();
+      navigationTooLong = true;
+      return;
+    }
+    navigation.add(step);
+  }
+
+  synchronized void resetNavigation() {
+    navigation.clear();
+    navigationTooLong = false;
+  }
+
+  synchronized int getNavigationStepCount() {
+    return navigation.size();
+  }
+
+  void stop() {
+    synchronized (this) {
+      navigation.clear();
+    }
+    active = false;
+    client.removeScreenChangeListener(this);
+    client.removeKeyboardStatusListener(this);
+  }
+
+  @Override
+  public void onConnection() {
+  }
+
+  @Override
+  public void onException(Exception ex) {
+    if (ex instanceof IOException) {
+      connectionLost(ex);
+    }
+  }
+
+  @Override
+  public void onConnectionClosed() {
+    connectionLost(new IOException("Connection closed by terminal server"));
+  }
+
+  private synchronized void connectionLost(Exception cause) {
+    // a failure may be notified both as an exception and as a closed connection
+    if (!active || reconnectScheduled) {
+      return;
+    }
+    abortReplay();
+    attempt++;
+    if (policy.isExhausted(attempt)) {
+      LOG.warn("Giving up reconnecting after {} attempts", attempt - 1, cause);
+      stop();
+      events.onReconnectFailed(cause);
+      return;
+    }
+    long delayMillis = policy.getDelayMillis(attempt);
+    LOG.debug("Connection lost, reconnecting in {} millis (attempt {})", delayMillis, attempt,
+        cause);
+    reconnectScheduled = true;
+    events.onReconnecting(attempt, delayMillis);
+    // the reconnection runs in its own thread, since it waits for the previous connection threads
+    TimerWheel.getDefault().schedule(() -> threadFactory.newThread(this::reconnect).start(),
+        delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void reconnect() {
+    synchronized (this) {
+      reconnectScheduled = false;
+      if (!active) {
+        return;
+      }
+      awaitingScreen = true;
+    }
+    client.addScreenChangeListener(this);
+    try {
+      client.reconnect();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      connectionLost(e);
+    }
+  }
+
+  @Override
+  public void screenChanged(ScreenWatcher screenWatcher) {
+    int reconnectedAttempt;
+    boolean replay;
+    synchronized (this) {
+      if (!awaitingScreen || !active) {
+        return;
+      }
+      awaitingScreen = false;
+      reconnectedAttempt = attempt;
+      replay = !navigation.isEmpty();
+      if (replay) {
+        replaySteps = new ArrayList<>(navigation);
+        replayIndex = 0;
+      } else {
+        attempt = 0;
+      }
+    }
+    client.removeScreenChangeListener(this);
+    LOG.debug("Reconnected after {} attempts", reconnectedAttempt);
+    events.onReconnected(reconnectedAttempt);
+    if (replay) {
+      client.addKeyboardStatusListener(this);
+      if (!client.isKeyboardLocked()) {
+        replayUntilAid();
+      }
+    }
+  }
+
+  @Override
+  public void keyboardStatusChanged(KeyboardStatusChangedEvent evt) {
+    if (!evt.keyboardLocked) {
+      replayUntilAid();
+    }
+  }
+
+  // replays the steps up to the next AID, and the rest once the host unlocks the keyboard
+  private void replayUntilAid() {
+    RuntimeException failure = null;
+    synchronized (this) {
+      if (replaySteps == null) {
+        return;
+      }
+      while (replayIndex < replaySteps.size()) {
+        NavigationStep step = replaySteps.get(replayIndex++);
+        try {
+          step.replay(client);
+        } catch (RuntimeException e) {
+          LOG.warn("Could not replay navigation step {} of {}, keeping session in current screen",
+              replayIndex, replaySteps.size(), e);
+          // the session is now where the replayed steps lead to
+          navigation.subList(replayIndex - 1, navigation.size()).clear();
+          failure = e;
+          break;
+        }
+        if (client.isKeyboardLocked()) {
+          return;
+        }
+      }
+      replaySteps = null;
+      attempt = 0;
+    }
+    client.removeKeyboardStatusListener(this);
+    if (failure != null) {
+      events.onException(failure);
+    } else {
+      events.onNavigationRestored();
+    }
+  }
+
+  private void abortReplay() {
+    if (replaySteps != null) {
+      replaySteps = null;
+      client.removeKeyboardStatusListener(this);
+    }
+  }
+
+}
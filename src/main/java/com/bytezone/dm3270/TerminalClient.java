@@ -10,13 +10,28 @@ import com.bytezone.dm3270.display.Screen;
 import com.bytezone.dm3270.display.ScreenChangeListener;
 import com.bytezone.dm3270.display.ScreenDimensions;
 import com.bytezone.dm3270.display.ScreenPosition;
+import com.bytezone.dm3270.metrics.AidLatencyRecorder;
+import com.bytezone.dm3270.metrics.MetricsRegistry;
+import com.bytezone.dm3270.metrics.ProtocolCounters;
+import com.bytezone.dm3270.session.SessionJournal;
+import com.bytezone.dm3270.streams.ApplyStage;
+import com.bytezone.dm3270.streams.EventLoopGroup;
+import com.bytezone.dm3270.streams.SocketOptions;
 import com.bytezone.dm3270.streams.TelnetState;
+import com.bytezone.dm3270.streams.ThreadFactories;
+import com.bytezone.dm3270.telnet.NegotiationCache;
+import com.bytezone.dm3270.telnet.RecordSizeHistogram;
 import java.awt.Point;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
 import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
 
 /**
  * Client to connect to TN3270 terminal servers.
@@ -30,7 +45,21 @@ public class TerminalClient {
   private ConsolePane consolePane;
   private SocketFactory socketFactory = SocketFactory.getDefault();
   private int connectionTimeoutMillis;
+  private int keepAliveIntervalMillis = TelnetState.DEFAULT_KEEP_ALIVE_INTERVAL_MILLIS;
+  private int readTimeoutMillis;
+  private EventLoopGroup eventLoopGroup;
+  private ThreadFactory threadFactory = ThreadFactories.platform();
+  private SSLContext sslContext;
+  private SocketOptions socketOptions = new SocketOptions();
+  private ApplyStage applyStage;
+  private MetricsRegistry metricsRegistry;
+  private ReconnectPolicy reconnectPolicy;
+  private volatile SessionReconnector reconnector;
+  private String host;
+  private int port;
   private final ConnectionListenerBroadcast connectionListenerBroadcast;
+  private volatile long firstScreenNanos;
+  private volatile boolean firstScreenBuilt;
 
   /**
    * Creates a new terminal client with given model and screen dimensions.
@@ -49,6 +78,14 @@ public class TerminalClient {
     screen = new Screen(new ScreenDimensions(24, 80), alternateScreenDimensions, telnetState,
         charset);
     connectionListenerBroadcast = new ConnectionListenerBroadcast();
+    screen.getFieldManager().addScreenChangeListener(screenWatcher -> recordFirstScreen());
+  }
+
+  private void recordFirstScreen() {
+    if (!firstScreenBuilt) {
+      firstScreenNanos = System.nanoTime();
+      firstScreenBuilt = true;
+    }
   }
 
   /**
@@ -72,6 +109,63 @@ public class TerminalClient {
     this.socketFactory = socketFactory;
   }
 
+  /**
+   * Sets the {@link SSLContext} used to secure the connection with TLS.
+   * <p>
+   * Unlike {@link #setSocketFactory(SocketFactory)}, this works both with blocking sockets and
+   * with an {@link EventLoopGroup}, where TLS is handled by an {@link javax.net.ssl.SSLEngine}.
+   * The context keeps a cache of TLS sessions, so sharing the same context among clients, or
+   * reusing it when reconnecting, allows resuming previous sessions instead of doing full
+   * handshakes with the server.
+   *
+   * @param sslContext the context to use. When set, it takes precedence over the socket factory.
+   */
+  public void setSslContext(SSLContext sslContext) {
+    this.sslContext = sslContext;
+  }
+
+  /**
+   * Sets socket level settings of the connection, like TCP_NODELAY or buffer sizes.
+   *
+   * @param socketOptions the options to use. If none are specified TCP_NODELAY is enabled,
+   * socket buffer sizes are left to the operating system and the read buffer adapts to the size
+   * of received data.
+   */
+  public void setSocketOptions(SocketOptions socketOptions) {
+    this.socketOptions = socketOptions;
+  }
+
+  /**
+   * Sets the {@link ApplyStage} which applies the received data to the screen, instead of the
+   * thread reading from the server.
+   * <p>
+   * This way slow screen, keyboard or cursor listeners don't stall reads from the server, and
+   * when the stage queue is full the connection stops reading, so the server is slowed down by
+   * TCP flow control. Listeners are then invoked from the stage thread. A stage may be shared by
+   * many clients, and is not shut down when the client disconnects.
+   *
+   * @param applyStage the stage to use. If none is specified the data is applied by the thread
+   * reading from the server.
+   */
+  public void setApplyStage(ApplyStage applyStage) {
+    this.applyStage = applyStage;
+  }
+
+  /**
+   * Sets the {@link ReconnectPolicy} used when the connection to the server is lost.
+   * <p>
+   * Reconnection stages are notified to the {@link ConnectionListener}s, and once reconnected,
+   * if the policy enables it, the navigation done since the connection was established is
+   * replayed to get back to the last screen. Only navigation done through this class is
+   * recorded.
+   *
+   * @param reconnectPolicy the policy to use from the next connection. If none is specified, the
+   * client does not reconnect.
+   */
+  public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+    this.reconnectPolicy = reconnectPolicy;
+  }
+
   /**
    * Sets the timeout for the socket connection.
    *
@@ -82,6 +176,150 @@ public class TerminalClient {
     this.connectionTimeoutMillis = connectionTimeoutMillis;
   }
 
+  /**
+   * Sets the period of inactivity after which a NOOP command is sent to keep the connection
+   * alive.
+   *
+   * @param keepAliveIntervalMillis Number of millis without any data sent to or received from the
+   * server before sending a NOOP. If not specified 120 seconds are used, and 0 disables it.
+   */
+  public void setKeepAliveIntervalMillis(int keepAliveIntervalMillis) {
+    this.keepAliveIntervalMillis = keepAliveIntervalMillis;
+  }
+
+  /**
+   * Sets the timeout for receiving data from the server, which allows detecting hung hosts.
+   *
+   * @param readTimeoutMillis Number of millis without receiving any data from the server after
+   * which the connection is closed and a {@link java.net.SocketTimeoutException} is notified to
+   * connection listeners. If not specified no timeout (same as 0 value) will be applied.
+   */
+  public void setReadTimeoutMillis(int readTimeoutMillis) {
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  /**
+   * Sets the maximum size of the records which may be received from the server.
+   * <p>
+   * Records are assembled in buffers which grow as needed up to this size. When a bigger record
+   * is received the connection is closed and an exception is notified to connection listeners.
+   *
+   * @param maxRecordSize Number of bytes of the biggest record to accept. If not specified 1 MB
+   * is used.
+   */
+  public void setMaxRecordSize(int maxRecordSize) {
+    screen.getTelnetState().setMaxRecordSize(maxRecordSize);
+  }
+
+  /**
+   * Gets the distribution of the sizes of the records received from the server.
+   *
+   * @return the histogram of record sizes, which is updated as records are received.
+   */
+  public RecordSizeHistogram getRecordSizeHistogram() {
+    return screen.getTelnetState().getRecordSizes();
+  }
+
+  /**
+   * Sets a journal where all the records sent to and received from the server are appended.
+   * <p>
+   * The journal is kept across disconnections and reconnections, and it is not closed by the
+   * client. Closing it is responsibility of the caller once the client is disconnected.
+   *
+   * @param journal the journal to use, or null (the default) to not journal the session.
+   */
+  public void setSessionJournal(SessionJournal journal) {
+    screen.getTelnetState().setJournal(journal);
+  }
+
+  /**
+   * Sets a cache of the negotiations with terminal servers, to pipeline the negotiation when
+   * connecting again to the same server.
+   * <p>
+   * Once a negotiation completes, the options agreed with the server are kept in the cache. Next
+   * connections to the server send their WILL and DO commands for these options without waiting
+   * for the requests of the server, which saves round trips before the first screen (see
+   * {@link #getNegotiationTime()} and {@link #getTimeToFirstScreen()}). If the server disagrees,
+   * the negotiation continues as usual. The same cache can be shared by several clients.
+   *
+   * @param negotiationCache the cache to use, or null (the default) to always wait for the
+   * requests of the server.
+   */
+  public void setNegotiationCache(NegotiationCache negotiationCache) {
+    screen.getTelnetState().setNegotiationCache(negotiationCache);
+  }
+
+  /**
+   * Sets the registry keeping protocol counters of the connections of the client: bytes and
+   * records transferred, commands received by type, replies, keep alives, parse errors and CPU
+   * time of the reader thread.
+   * <p>
+   * Each connection gets its own counters, which are exposed through JMX when the registry is
+   * (see {@link MetricsRegistry#getDefault()}) until the client disconnects, and are added to the
+   * aggregate counters of the registry.
+   *
+   * @param metricsRegistry the registry to use, or null (the default) to not count anything.
+   */
+  public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+    this.metricsRegistry = metricsRegistry;
+  }
+
+  /**
+   * Gets the protocol counters of the current connection.
+   *
+   * @return the counters, or empty if no {@link MetricsRegistry} was set when connecting.
+   */
+  public Optional<ProtocolCounters> getMetrics() {
+    return consolePane == null ? Optional.empty() : consolePane.getMetrics();
+  }
+
+  /**
+   * Sets the recorder measuring the time from each AID being sent until the host unlocks the
+   * keyboard, split in time to first byte, transfer and client processing.
+   * <p>
+   * The recorder keeps histograms of the latencies of the session and of each AID key, and
+   * notifies each sample to its listeners. It is kept across reconnections, and it must not be
+   * shared with other clients.
+   *
+   * @param aidLatencyRecorder the recorder to use, or null (the default) to not measure AIDs.
+   */
+  public void setAidLatencyRecorder(AidLatencyRecorder aidLatencyRecorder) {
+    screen.getTelnetState().setAidLatencyRecorder(aidLatencyRecorder);
+  }
+
+  /**
+   * Allows running the connection on a shared {@link EventLoopGroup} instead of a dedicated
+   * thread.
+   * <p>
+   * This is useful when many clients are connected at the same time, since all of them can be
+   * served by the few threads of the group. The group is not shut down when the client
+   * disconnects.
+   *
+   * @param eventLoopGroup the group to use. If none is specified each connection uses its own
+   * thread with blocking sockets. SSL socket factories are not supported when using a group, use
+   * {@link #setSslContext(SSLContext)} instead.
+   */
+  public void setEventLoopGroup(EventLoopGroup eventLoopGroup) {
+    this.eventLoopGroup = eventLoopGroup;
+  }
+
+  /**
+   * Sets the {@link ThreadFactory} used to create the threads of the connection.
+   * <p>
+   * Each connection uses a thread to read from the socket, unless an {@link EventLoopGroup} is
+   * set. Data is sent by another thread, so senders never block on the socket, which is created
+   * when there is something to send and ends after a second without sending anything. So busy
+   * sessions use two threads, and each burst of data sent by an idle session creates one. Using
+   * {@link ThreadFactories#virtual()} allows keeping a great number of connections without the
+   * footprint (and creation cost) of platform threads.
+   *
+   * @param threadFactory the {@link ThreadFactory} to use. If none is specified {@link
+   * ThreadFactories#platform()} will be used.
+   */
+  public void setThreadFactory(ThreadFactory threadFactory) {
+    this.threadFactory = threadFactory;
+  }
+
   /**
    * Adds a class to handle general exception handler.
    *
@@ -109,13 +347,175 @@ public class TerminalClient {
    * @param port port where the terminal server is listening for connections.
    */
   public void connect(String host, int port) {
+    this.host = host;
+    this.port = port;
+    stopReconnector();
+    if (reconnectPolicy != null) {
+      SessionReconnector sessionReconnector = new SessionReconnector(this, reconnectPolicy,
+          connectionListenerBroadcast, threadFactory);
+      connectionListenerBroadcast.add(sessionReconnector);
+      reconnector = sessionReconnector;
+    }
+    doConnect();
+  }
+
+  /**
+   * Discards the navigation recorded to be replayed on reconnection, so it is recorded again from
+   * this point on. This is meant for sessions getting back to the screen they had when connected
+   * (for instance, by logging off), which would otherwise keep recording steps (and typed texts,
+   * including passwords) until reaching {@link ReconnectPolicy#getMaxNavigationSteps()}.
+   */
+  public void resetNavigation() {
+    SessionReconnector sessionReconnector = reconnector;
+    if (sessionReconnector != null) {
+      sessionReconnector.resetNavigation();
+    }
+  }
+
+  int getNavigationStepCount() {
+    SessionReconnector sessionReconnector = reconnector;
+    return sessionReconnector != null ? sessionReconnector.getNavigationStepCount() : 0;
+  }
+
+  private void stopReconnector() {
+    SessionReconnector sessionReconnector = reconnector;
+    if (sessionReconnector != null) {
+      sessionReconnector.stop();
+      connectionListenerBroadcast.remove(sessionReconnector);
+      reconnector = null;
+    }
+  }
+
+  // a new connection to the same server, keeping the listeners and the reconnection state
+  void reconnect() throws InterruptedException {
+    consolePane.disconnect();
+    doConnect();
+  }
+
+  private void doConnect() {
+    firstScreenBuilt = false;
     screen.lockKeyboard("connect");
-    consolePane = new ConsolePane(screen, new Site(host, port, usesExtended3270), socketFactory);
+    Site site = new Site(host, port, usesExtended3270);
+    site.setKeepAliveIntervalMillis(keepAliveIntervalMillis);
+    site.setReadTimeoutMillis(readTimeoutMillis);
+    site.setSocketOptions(socketOptions);
+    consolePane = new ConsolePane(screen, site, socketFactory);
     consolePane.setConnectionTimeoutMillis(connectionTimeoutMillis);
     consolePane.setConnectionListener(connectionListenerBroadcast);
+    consolePane.setEventLoopGroup(eventLoopGroup);
+    consolePane.setThreadFactory(threadFactory);
+    consolePane.setSslContext(sslContext);
+    consolePane.setApplyStage(applyStage);
+    consolePane.setMetricsRegistry(metricsRegistry);
     consolePane.connect();
   }
 
+  /**
+   * Connect to a terminal server, and get notified when the session is usable.
+   * <p>
+   * The returned future completes once telnet negotiation finishes and the first screen sent by
+   * the server is built. It completes exceptionally if there is any problem connecting, or if the
+   * server closes the connection before sending the first screen. It is completed from the thread
+   * reading from the server, so any heavy work depending on it should use the async methods of
+   * {@link CompletableFuture}.
+   * <p>
+   * This makes it easy to start many connections concurrently, limiting how many are being
+   * established at a time, and wait for all of them without polling each client.
+   *
+   * @param host host name of the terminal server.
+   * @param port port where the terminal server is listening for connections.
+   * @return a future which completes with this client when the first screen is built.
+   */
+  public CompletableFuture<TerminalClient> connectAsync(String host, int port) {
+    CompletableFuture<TerminalClient> future = new CompletableFuture<>();
+    // screen listeners are not notified in order, so the time is recorded before completing
+    ScreenChangeListener screenListener = screenWatcher -> {
+      recordFirstScreen();
+      future.complete(this);
+    };
+    ConnectionListener connectionListener = new ConnectionListener() {
+      @Override
+      public void onConnection() {
+      }
+
+      @Override
+      public void onException(Exception ex) {
+        future.completeExceptionally(ex);
+      }
+
+      @Override
+      public void onConnectionClosed() {
+        future.completeExceptionally(
+            new IOException("Connection closed by server before receiving first screen"));
+      }
+    };
+    addScreenChangeListener(screenListener);
+    addConnectionListener(connectionListener);
+    future.whenComplete((client, ex) -> {
+      removeScreenChangeListener(screenListener);
+      removeConnectionListener(connectionListener);
+    });
+
+    try {
+      connect(host, port);
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Gets the time it took to get the first screen since the connection was started.
+   *
+   * @return the time between the last connect and the first screen built, or empty if no screen
+   * has been built yet.
+   */
+  public Optional<Duration> getTimeToFirstScreen() {
+    long start = screen.getTelnetState().getConnectStartNanos();
+    return firstScreenBuilt ? Optional.of(Duration.ofNanos(firstScreenNanos - start))
+        : Optional.empty();
+  }
+
+  /**
+   * Gets the time it took to negotiate telnet options with the server.
+   *
+   * @return the time between the last connect and the reception of the first 3270 record, or
+   * empty if no record has been received yet.
+   */
+  public Optional<Duration> getNegotiationTime() {
+    return screen.getTelnetState().getNegotiationTime();
+  }
+
+  /**
+   * Tells if the negotiation of the last connection was pipelined with the options cached from a
+   * previous negotiation with the same server.
+   *
+   * @return true if the options were sent without waiting for the requests of the server.
+   */
+  public boolean isNegotiationPipelined() {
+    return screen.getTelnetState().isNegotiationPipelined();
+  }
+
+  /**
+   * Tells if the pipelined negotiation of the last connection fell back to replying each request
+   * of the server, since the server refused an option or requested one not cached.
+   *
+   * @return true if the server didn't negotiate as cached.
+   */
+  public boolean isNegotiationFallback() {
+    return screen.getTelnetState().isNegotiationFallback();
+  }
+
+  /**
+   * Gets the time it took to establish TLS with the server.
+   *
+   * @return the TLS handshake time of the current connection, or empty if the connection is not
+   * secured or the handshake has not completed yet.
+   */
+  public Optional<Duration> getTlsHandshakeTime() {
+    return consolePane == null ? Optional.empty() : consolePane.getTlsHandshakeTime();
+  }
+
   /**
    * Set the text of a field in the screen.
    *
@@ -137,8 +537,13 @@ public class TerminalClient {
   }
 
   private void setPositionText(String text, int fieldPosition) {
+    SessionReconnector sessionReconnector = reconnector;
+    if (sessionReconnector != null) {
+      sessionReconnector.recordFill(fieldPosition, text);
+    }
     screen.setPositionText(fieldPosition, text);
-    setCursorPosition(fieldPosition + findFieldNextPosition(text));
+    // the fill is already recorded, and replaying it moves the cursor again
+    screen.getScreenCursor().moveTo(fieldPosition + findFieldNextPosition(text));
   }
 
   private int findFieldNextPosition(String text) {
@@ -153,13 +558,28 @@ public class TerminalClient {
   }
 
   public void setFieldText(Field field, String text) {
+    SessionReconnector sessionReconnector = reconnector;
+    if (sessionReconnector != null) {
+      sessionReconnector.recordFill(field.getFirstLocation(), text);
+    }
     field.setText(text);
     int nextPosition = findFieldNextPosition(text);
     int cursorPosition =
         field.getDisplayLength() > nextPosition ? field.getFirstLocation() + nextPosition
             : field.getNextUnprotectedField().getFirstLocation();
 
-    setCursorPosition(cursorPosition);
+    screen.getScreenCursor().moveTo(cursorPosition);
+  }
+
+  void replayFill(int position, String text) {
+    if (screen.getFieldManager().getFields().isEmpty()) {
+      setPositionText(text, position);
+    } else {
+      Field field = screen.getFieldManager()
+          .getFieldAt(position)
+          .orElseThrow(() -> new IllegalStateException("No field at position " + position));
+      setFieldText(field, text);
+    }
   }
 
   public void setFieldTextByLabel(String lbl, String text) {
@@ -280,6 +700,10 @@ public class TerminalClient {
    * @param name Name of the action sent.
    */
   public void sendAID(byte aid, String name) {
+    SessionReconnector sessionReconnector = reconnector;
+    if (sessionReconnector != null) {
+      sessionReconnector.recordAid(aid, name);
+    }
     consolePane.sendAID(aid, name);
   }
 
@@ -409,6 +833,10 @@ public class TerminalClient {
   }
 
   public void setCursorPosition(int linearPosition) {
+    SessionReconnector sessionReconnector = reconnector;
+    if (sessionReconnector != null) {
+      sessionReconnector.recordCursor(linearPosition);
+    }
     screen.getScreenCursor().moveTo(linearPosition);
   }
 
@@ -436,6 +864,7 @@ public class TerminalClient {
    * @throws InterruptedException thrown when the disconnect is interrupted.
    */
   public void disconnect() throws InterruptedException {
+    stopReconnector();
     consolePane.disconnect();
   }
 
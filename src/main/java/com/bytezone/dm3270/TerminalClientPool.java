@@ -0,0 +1,473 @@
+package com.bytezone.dm3270;
+
+import com.bytezone.dm3270.streams.TimerWheel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of connected and logged in {@link TerminalClient} sessions to a terminal server.
+ * <p>
+ * Connecting, negotiating and logging in to a host usually takes seconds, so applications
+ * running many short transactions can keep some sessions ready and borrow them when needed.
+ * Sessions are validated when borrowed, reset with a provided routine when released, and the
+ * broken ones are evicted and replaced in background.
+ * <p>
+ * Typical usage:
+ * <pre>{@code
+ * TerminalClientPool pool = new TerminalClientPool(
+ *     () -> new TerminalClient(2, new ScreenDimensions(24, 80)), host, port, 4);
+ * pool.setLogin(client -> login(client));
+ * pool.setReset(client -> goToMainMenu(client));
+ * pool.start();
+ * TerminalClient client = pool.borrow(10, TimeUnit.SECONDS);
+ * try {
+ *   runTransaction(client);
+ * } finally {
+ *   pool.release(client);
+ * }
+ * }</pre>
+ */
+public class TerminalClientPool implements AutoCloseable {
+
+  public static final int DEFAULT_VALIDATION_INTERVAL_MILLIS = 30000;
+  public static final int DEFAULT_RECONNECT_DELAY_MILLIS = 5000;
+
+  private static final Logger LOG = LoggerFactory.getLogger(TerminalClientPool.class);
+  private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+  private final Supplier<TerminalClient> clientFactory;
+  private final String host;
+  private final int port;
+  private final int size;
+  private final BlockingDeque<PooledSession> idle = new LinkedBlockingDeque<>();
+  private final Map<TerminalClient, PooledSession> sessions = new ConcurrentHashMap<>();
+  private final ExecutorService executor;
+  private SessionAction login = client -> {
+  };
+  private SessionAction reset = client -> {
+  };
+  private Predicate<TerminalClient> sessionValidator = client -> true;
+  private int validationIntervalMillis = DEFAULT_VALIDATION_INTERVAL_MILLIS;
+  private int reconnectDelayMillis = DEFAULT_RECONNECT_DELAY_MILLIS;
+  private volatile boolean started;
+  private volatile boolean closed;
+  private volatile TimerWheel.Timeout validationTimeout;
+
+  // stats
+  private final LongAdder borrowCount = new LongAdder();
+  private final LongAdder borrowNanos = new LongAdder();
+  private final LongAccumulator maxBorrowNanos = new LongAccumulator(Math::max, 0);
+  private final LongAdder evictionCount = new LongAdder();
+
+  /**
+   * Routine run on a pooled session, like logging in or going back to the home screen.
+   */
+  @FunctionalInterface
+  public interface SessionAction {
+
+    void run(TerminalClient client) throws Exception;
+
+  }
+
+  private final class PooledSession implements ConnectionListener {
+
+    private final TerminalClient client;
+    private volatile boolean broken;
+
+    private PooledSession(TerminalClient client) {
+      this.client = client;
+    }
+
+    @Override
+    public void onConnection() {
+    }
+
+    @Override
+    public void onException(Exception ex) {
+      LOG.warn("Problem with pooled session to {}:{}", host, port, ex);
+      markBroken();
+    }
+
+    @Override
+    public void onConnectionClosed() {
+      markBroken();
+    }
+
+    private void markBroken() {
+      broken = true;
+      // borrowed sessions are evicted when released
+      if (idle.remove(this)) {
+        evict(this);
+      }
+    }
+
+  }
+
+  /**
+   * Creates a pool of sessions.
+   *
+   * @param clientFactory creates the clients, configured as required (socket factory,
+   * timeouts, etc), of the pooled sessions.
+   * @param host host name of the terminal server.
+   * @param port port where the terminal server is listening for connections.
+   * @param size number of sessions kept by the pool.
+   */
+  public TerminalClientPool(Supplier<TerminalClient> clientFactory, String host, int port,
+      int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Pool size must be positive: " + size);
+    }
+    this.clientFactory = clientFactory;
+    this.host = host;
+    this.port = port;
+    this.size = size;
+    int poolId = POOL_COUNT.incrementAndGet();
+    AtomicInteger threadCount = new AtomicInteger();
+    executor = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r,
+          String.format("dm3270-pool-%d-%d", poolId, threadCount.incrementAndGet()));
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Sets the routine run after connecting each session, like logging in to the host.
+   * <p>
+   * It is invoked once the first screen has been received, and any exception thrown by it
+   * discards the session, which is retried after the reconnect delay.
+   *
+   * @param login routine to run on each new session. By default nothing is done.
+   */
+  public void setLogin(SessionAction login) {
+    this.login = login;
+  }
+
+  /**
+   * Sets the routine run on each session when it is released, like going back to the home
+   * screen.
+   * <p>
+   * It is run by the thread releasing the session, and any exception thrown by it evicts the
+   * session.
+   *
+   * @param reset routine to run when releasing a session. By default nothing is done.
+   */
+  public void setReset(SessionAction reset) {
+    this.reset = reset;
+  }
+
+  /**
+   * Sets the check done on idle sessions when borrowed and periodically, like verifying the
+   * screen is the expected home screen.
+   * <p>
+   * Sessions are always required to be connected and have the keyboard unlocked to be valid.
+   *
+   * @param sessionValidator returns true when the session is usable. By default all connected
+   * sessions with unlocked keyboard are valid.
+   */
+  public void setSessionValidator(Predicate<TerminalClient> sessionValidator) {
+    this.sessionValidator = sessionValidator;
+  }
+
+  /**
+   * Sets the period to check idle sessions in background.
+   *
+   * @param validationIntervalMillis period in milliseconds. When zero or negative idle sessions
+   * are only validated when borrowed. By default {@link #DEFAULT_VALIDATION_INTERVAL_MILLIS}.
+   */
+  public void setValidationIntervalMillis(int validationIntervalMillis) {
+    this.validationIntervalMillis = validationIntervalMillis;
+  }
+
+  /**
+   * Sets the time to wait before retrying to establish a session which could not be
+   * established.
+   *
+   * @param reconnectDelayMillis delay in milliseconds. By default
+   * {@link #DEFAULT_RECONNECT_DELAY_MILLIS}.
+   */
+  public void setReconnectDelayMillis(int reconnectDelayMillis) {
+    this.reconnectDelayMillis = reconnectDelayMillis;
+  }
+
+  /**
+   * Starts establishing the sessions of the pool in background.
+   */
+  public synchronized void start() {
+    if (started) {
+      throw new IllegalStateException("Pool has already been started");
+    }
+    started = true;
+    for (int i = 0; i < size; i++) {
+      submit(this::createSession);
+    }
+    scheduleValidation();
+  }
+
+  /**
+   * Gets a valid session from the pool, waiting for one to be available if required.
+   * <p>
+   * Invalid sessions found while waiting are evicted and replaced in background.
+   *
+   * @param timeout maximum time to wait for a session.
+   * @param unit unit of the timeout.
+   * @return a connected and logged in client, which must be given back with
+   * {@link #release(TerminalClient)}.
+   * @throws InterruptedException if the calling thread is interrupted while waiting.
+   * @throws TimeoutException if no valid session becomes available in the given time.
+   */
+  public TerminalClient borrow(long timeout, TimeUnit unit)
+      throws InterruptedException, TimeoutException {
+    if (!started || closed) {
+      throw new IllegalStateException("Pool is not running");
+    }
+    long startNanos = System.nanoTime();
+    long deadline = startNanos + unit.toNanos(timeout);
+    while (true) {
+      PooledSession session = idle.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      if (session == null) {
+        throw new TimeoutException(String.format("No valid session to %s:%d available in %d ms",
+            host, port, unit.toMillis(timeout)));
+      }
+      if (isValid(session)) {
+        long elapsed = System.nanoTime() - startNanos;
+        borrowCount.increment();
+        borrowNanos.add(elapsed);
+        maxBorrowNanos.accumulate(elapsed);
+        return session.client;
+      }
+      evict(session);
+    }
+  }
+
+  /**
+   * Gives back a session obtained with {@link #borrow(long, TimeUnit)}, after running the
+   * reset routine on it.
+   *
+   * @param client the borrowed client, which must not be used anymore by the caller.
+   */
+  public void release(TerminalClient client) {
+    PooledSession session = sessions.get(client);
+    if (session == null) {
+      throw new IllegalArgumentException("Client does not belong to the pool");
+    }
+    if (closed || session.broken) {
+      evict(session);
+      return;
+    }
+    try {
+      reset.run(client);
+    } catch (Exception e) {
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      LOG.warn("Problem resetting pooled session to {}:{}, evicting it", host, port, e);
+      evict(session);
+      return;
+    }
+    if (session.broken) {
+      evict(session);
+    } else {
+      idle.add(session);
+    }
+  }
+
+  private boolean isValid(PooledSession session) {
+    if (session.broken || session.client.isKeyboardLocked()) {
+      return false;
+    }
+    try {
+      return sessionValidator.test(session.client);
+    } catch (RuntimeException e) {
+      LOG.warn("Problem validating pooled session to {}:{}", host, port, e);
+      return false;
+    }
+  }
+
+  private void createSession() {
+    if (closed) {
+      return;
+    }
+    TerminalClient client = clientFactory.get();
+    PooledSession session = new PooledSession(client);
+    client.addConnectionListener(session);
+    client.connectAsync(host, port)
+        .thenAcceptAsync(c -> {
+          try {
+            login.run(c);
+          } catch (Exception e) {
+            throw new CompletionException(e);
+          }
+        }, executor)
+        .whenComplete((r, ex) -> {
+          if (ex != null || session.broken || closed) {
+            if (ex != null) {
+              LOG.warn("Could not establish pooled session to {}:{}", host, port, ex);
+            }
+            client.removeConnectionListener(session);
+            discard(client);
+            scheduleCreation(reconnectDelayMillis);
+          } else {
+            sessions.put(client, session);
+            idle.add(session);
+            LOG.debug("Established pooled session to {}:{}", host, port);
+          }
+        });
+  }
+
+  private void evict(PooledSession session) {
+    if (sessions.remove(session.client) == null) {
+      return;
+    }
+    idle.remove(session);
+    evictionCount.increment();
+    LOG.debug("Evicting pooled session to {}:{}", host, port);
+    session.client.removeConnectionListener(session);
+    discard(session.client);
+    scheduleCreation(0);
+  }
+
+  private void discard(TerminalClient client) {
+    if (closed) {
+      disconnect(client);
+    } else {
+      // disconnect waits for the reader thread, which may be the one discarding the session
+      submit(() -> disconnect(client));
+    }
+  }
+
+  private void scheduleCreation(int delayMillis) {
+    if (closed) {
+      return;
+    }
+    if (delayMillis <= 0) {
+      submit(this::createSession);
+    } else {
+      TimerWheel.getDefault()
+          .schedule(() -> submit(this::createSession), delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void scheduleValidation() {
+    if (validationIntervalMillis > 0 && !closed) {
+      validationTimeout = TimerWheel.getDefault()
+          .schedule(() -> submit(this::validateIdleSessions), validationIntervalMillis,
+              TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void validateIdleSessions() {
+    for (PooledSession session : new ArrayList<>(idle)) {
+      // sessions borrowed meanwhile are validated by the borrower
+      if (idle.remove(session)) {
+        if (isValid(session)) {
+          idle.add(session);
+        } else {
+          evict(session);
+        }
+      }
+    }
+    scheduleValidation();
+  }
+
+  private void submit(Runnable task) {
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      // pool closed
+    }
+  }
+
+  private static void disconnect(TerminalClient client) {
+    try {
+      client.disconnect();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      LOG.warn("Problem disconnecting pooled session", e);
+    }
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public int getIdleCount() {
+    return idle.size();
+  }
+
+  public int getBorrowedCount() {
+    return Math.max(0, sessions.size() - idle.size());
+  }
+
+  public long getBorrowCount() {
+    return borrowCount.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  /**
+   * Gets the average time borrowers had to wait to get a valid session.
+   *
+   * @return the average time, or zero if no session has been borrowed yet.
+   */
+  public Duration getAverageBorrowTime() {
+    long count = borrowCount.sum();
+    return count == 0 ? Duration.ZERO : Duration.ofNanos(borrowNanos.sum() / count);
+  }
+
+  public Duration getMaxBorrowTime() {
+    return Duration.ofNanos(maxBorrowNanos.get());
+  }
+
+  /**
+   * Disconnects all the idle sessions and stops maintaining the pool.
+   * <p>
+   * Borrowed sessions are disconnected when released.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    TimerWheel.Timeout timeout = validationTimeout;
+    if (timeout != null) {
+      timeout.cancel();
+    }
+    executor.shutdown();
+    List<PooledSession> idleSessions = new ArrayList<>();
+    idle.drainTo(idleSessions);
+    for (PooledSession session : idleSessions) {
+      sessions.remove(session.client);
+      session.client.removeConnectionListener(session);
+      disconnect(session.client);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("TerminalClientPool{host=%s, port=%d, size=%d, idle=%d, borrowed=%d, "
+            + "borrows=%d, evictions=%d, averageBorrowTime=%s}", host, port, size,
+        getIdleCount(), getBorrowedCount(), getBorrowCount(), getEvictionCount(),
+        getAverageBorrowTime());
+  }
+
+}
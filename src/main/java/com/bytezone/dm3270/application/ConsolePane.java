@@ -9,10 +9,24 @@ import com.bytezone.dm3270.display.FieldChangeListener;
 import com.bytezone.dm3270.display.Screen;
 import com.bytezone.dm3270.extended.CommandHeader;
 import com.bytezone.dm3270.extended.TN3270ExtendedCommand;
+import com.bytezone.dm3270.metrics.AidLatencyRecorder;
+import com.bytezone.dm3270.metrics.MetricsRegistry;
+import com.bytezone.dm3270.metrics.ProtocolCounters;
+import com.bytezone.dm3270.metrics.ProtocolMetrics;
+import com.bytezone.dm3270.streams.ApplyStage;
+import com.bytezone.dm3270.streams.EventLoopGroup;
+import com.bytezone.dm3270.streams.NioTerminalServer;
 import com.bytezone.dm3270.streams.TelnetListener;
 import com.bytezone.dm3270.streams.TelnetState;
+import com.bytezone.dm3270.streams.TerminalConnection;
 import com.bytezone.dm3270.streams.TerminalServer;
+import com.bytezone.dm3270.streams.ThreadFactories;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
 import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
 
 public class ConsolePane implements FieldChangeListener, CursorMoveListener,
     KeyboardStatusListener {
@@ -23,10 +37,16 @@ public class ConsolePane implements FieldChangeListener, CursorMoveListener,
   private final Site server;
   private final SocketFactory socketFactory;
 
-  private TerminalServer terminalServer;
+  private TerminalConnection terminalServer;
   private Thread terminalServerThread;
   private int connectionTimeoutMillis;
+  private EventLoopGroup eventLoopGroup;
+  private ThreadFactory threadFactory = ThreadFactories.platform();
+  private SSLContext sslContext;
+  private ApplyStage applyStage;
   private ConnectionListener connectionListener;
+  private MetricsRegistry metricsRegistry;
+  private ProtocolCounters metrics;
 
   public ConsolePane(Screen screen, Site server, SocketFactory socketFactory) {
     this.screen = screen;
@@ -48,6 +68,34 @@ public class ConsolePane implements FieldChangeListener, CursorMoveListener,
     this.connectionListener = connectionListener;
   }
 
+  public void setEventLoopGroup(EventLoopGroup eventLoopGroup) {
+    this.eventLoopGroup = eventLoopGroup;
+  }
+
+  public void setThreadFactory(ThreadFactory threadFactory) {
+    this.threadFactory = threadFactory;
+  }
+
+  public void setSslContext(SSLContext sslContext) {
+    this.sslContext = sslContext;
+  }
+
+  public void setApplyStage(ApplyStage applyStage) {
+    this.applyStage = applyStage;
+  }
+
+  public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+    this.metricsRegistry = metricsRegistry;
+  }
+
+  public Optional<ProtocolCounters> getMetrics() {
+    return Optional.ofNullable(metrics);
+  }
+
+  public Optional<Duration> getTlsHandshakeTime() {
+    return terminalServer == null ? Optional.empty() : terminalServer.getTlsHandshakeTime();
+  }
+
   public void sendAID(byte aid, String name) {
     if (screen.isInsertMode()) {
       screen.toggleInsertMode();
@@ -55,8 +103,13 @@ public class ConsolePane implements FieldChangeListener, CursorMoveListener,
 
     screen.lockKeyboard(name);
     screen.setAID(aid);
+    telnetState.getMetrics().aidSent();
 
     Command command = screen.readModifiedFields();
+    AidLatencyRecorder aidLatencies = telnetState.getAidLatencyRecorder();
+    if (aidLatencies != null) {
+      aidLatencies.aidSent(aid, name, System.nanoTime());
+    }
     sendAID(command);
   }
 
@@ -83,21 +136,74 @@ public class ConsolePane implements FieldChangeListener, CursorMoveListener,
       throw new IllegalArgumentException("Server must not be null");
     }
 
+    telnetState.setConnectStart();
+
     // set preferences for this session
     telnetState.setDo3270Extended(server.getExtended());
     telnetState.setDoTerminalType(true);
 
+    telnetState.setKeepAliveIntervalMillis(server.getKeepAliveIntervalMillis());
+    // each connection has its own counters, kept until it is disconnected
+    if (metricsRegistry != null) {
+      metrics = metricsRegistry.openSession(server.getURL(), server.getPort());
+      telnetState.setMetrics(metrics);
+    } else {
+      telnetState.setMetrics(ProtocolMetrics.NOOP);
+    }
     TelnetListener telnetListener = new TelnetListener(screen, telnetState);
-    terminalServer =
-        new TerminalServer(server.getURL(), server.getPort(), socketFactory, telnetListener);
-    terminalServer.setConnectionTimeoutMillis(connectionTimeoutMillis);
-    terminalServer.setConnectionListener(connectionListener);
+    if (eventLoopGroup != null) {
+      connectNio(telnetListener);
+      return;
+    }
+
+    TerminalServer blockingServer = new TerminalServer(server.getURL(), server.getPort(),
+        sslContext != null ? sslContext.getSocketFactory() : socketFactory, telnetListener);
+    blockingServer.setConnectionTimeoutMillis(connectionTimeoutMillis);
+    blockingServer.setReadTimeoutMillis(server.getReadTimeoutMillis());
+    blockingServer.setThreadFactory(threadFactory);
+    blockingServer.setSocketOptions(server.getSocketOptions());
+    blockingServer.setConnectionListener(connectionListener);
+    blockingServer.setMetrics(telnetState.getMetrics());
+    terminalServer = blockingServer;
     telnetState.setTerminalServer(terminalServer);
+    telnetState.startNegotiation(server.getURL(), server.getPort());
+    configureApplyStage(telnetListener);
 
-    terminalServerThread = new Thread(terminalServer);
+    terminalServerThread = threadFactory.newThread(blockingServer);
     terminalServerThread.start();
   }
 
+  private void connectNio(TelnetListener telnetListener) {
+    if (sslContext == null && socketFactory instanceof SSLSocketFactory) {
+      throw new IllegalStateException(
+          "SSL socket factories can't be used with an event loop, set an SSL context instead");
+    }
+
+    NioTerminalServer nioServer =
+        new NioTerminalServer(server.getURL(), server.getPort(), eventLoopGroup, telnetListener);
+    nioServer.setConnectionTimeoutMillis(connectionTimeoutMillis);
+    nioServer.setReadTimeoutMillis(server.getReadTimeoutMillis());
+    nioServer.setSslContext(sslContext);
+    nioServer.setSocketOptions(server.getSocketOptions());
+    nioServer.setConnectionListener(connectionListener);
+    terminalServer = nioServer;
+    telnetState.setTerminalServer(terminalServer);
+    telnetState.startNegotiation(server.getURL(), server.getPort());
+    configureApplyStage(telnetListener);
+
+    nioServer.connect();
+  }
+
+  private void configureApplyStage(TelnetListener telnetListener) {
+    if (applyStage != null) {
+      TerminalConnection connection = terminalServer;
+      telnetListener.setApplyStage(applyStage, connection, ex -> {
+        connection.close();
+        connectionListener.onException(ex);
+      });
+    }
+  }
+
   public void disconnect() throws InterruptedException {
     telnetState.close();
 
@@ -109,6 +215,10 @@ public class ConsolePane implements FieldChangeListener, CursorMoveListener,
       terminalServerThread.interrupt();
       terminalServerThread.join();
     }
+
+    if (metrics != null) {
+      metricsRegistry.closeSession(metrics);
+    }
   }
 
   @Override
@@ -1,5 +1,7 @@
 package com.bytezone.dm3270.application;
 
+import com.bytezone.dm3270.streams.SocketOptions;
+import com.bytezone.dm3270.streams.TelnetState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,6 +12,9 @@ public class Site {
   public final boolean extended;
   private final String url;
   private int port;
+  private int keepAliveIntervalMillis = TelnetState.DEFAULT_KEEP_ALIVE_INTERVAL_MILLIS;
+  private int readTimeoutMillis;
+  private SocketOptions socketOptions = new SocketOptions();
 
   public Site(String url, int port, boolean extended) {
     this.url = url;
@@ -33,6 +38,30 @@ public class Site {
     return extended;
   }
 
+  public int getKeepAliveIntervalMillis() {
+    return keepAliveIntervalMillis;
+  }
+
+  public void setKeepAliveIntervalMillis(int keepAliveIntervalMillis) {
+    this.keepAliveIntervalMillis = keepAliveIntervalMillis;
+  }
+
+  public int getReadTimeoutMillis() {
+    return readTimeoutMillis;
+  }
+
+  public void setReadTimeoutMillis(int readTimeoutMillis) {
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  public SocketOptions getSocketOptions() {
+    return socketOptions;
+  }
+
+  public void setSocketOptions(SocketOptions socketOptions) {
+    this.socketOptions = socketOptions;
+  }
+
   @Override
   public String toString() {
     return String.format("Site [url=%s, port=%d]", getURL(), getPort());
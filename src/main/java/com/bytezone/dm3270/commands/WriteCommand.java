@@ -5,8 +5,8 @@ import com.bytezone.dm3270.display.Cursor;
 import com.bytezone.dm3270.display.Screen;
 import com.bytezone.dm3270.display.Screen.ScreenOption;
 import com.bytezone.dm3270.orders.Order;
+import com.bytezone.dm3270.orders.OrderInterpreter;
 import com.bytezone.dm3270.orders.TextOrder;
-import java.util.ArrayList;
 import java.util.List;
 
 public class WriteCommand extends Command {
@@ -14,7 +14,9 @@ public class WriteCommand extends Command {
   private final boolean eraseWrite;
   private final boolean alternate;
   private final WriteControlCharacter writeControlCharacter;
-  private final List<Order> orders = new ArrayList<>();
+  private final Charset charset;
+  // only created when the orders need to be described
+  private volatile List<Order> orders;
 
   public WriteCommand(byte[] buffer, int offset, int length, Charset charset) {
     super(buffer, offset, length);
@@ -30,23 +32,27 @@ public class WriteCommand extends Command {
         || buffer[offset] == Command.ERASE_WRITE_ALTERNATE_7E;
     writeControlCharacter =
         length > 1 ? new WriteControlCharacter(buffer[offset + 1]) : null;
+    this.charset = charset;
+  }
 
-    int ptr = offset + 2;
-    Order previousOrder = null;
-
-    int max = offset + length;
-    while (ptr < max) {
-      Order order = Order.getOrder(buffer, ptr, max, charset);
-
-      if (order.matchesPreviousOrder(previousOrder)) {
-        previousOrder.incrementDuplicates();           // and discard this Order
-      } else {
-        orders.add(order);
-        previousOrder = order;
-      }
+  private boolean hasOrders() {
+    return data.length > 2;
+  }
 
-      ptr += order.size();
+  /**
+   * Gets the orders of the command, which are created the first time they are requested, since
+   * processing the command applies them straight from its buffer.
+   *
+   * @return the orders (and text) written by the command.
+   */
+  public List<Order> getOrders() {
+    List<Order> commandOrders = orders;
+    if (commandOrders == null) {
+      // orders are parsed from the copy owned by the command, since they keep views over it
+      commandOrders = OrderInterpreter.getOrders(data, 2, data.length, charset);
+      orders = commandOrders;
     }
+    return commandOrders;
   }
 
   @Override
@@ -66,10 +72,8 @@ public class WriteCommand extends Command {
       screen.lockKeyboard("Write");
     }
 
-    if (orders.size() > 0) {
-      for (Order order : orders) {
-        order.process(screen);         // modifies pen
-      }
+    if (hasOrders()) {
+      OrderInterpreter.process(data, 2, data.length, screen);         // modifies pen
 
       cursor.moveTo(cursorLocation);
       screen.buildFields();
@@ -85,7 +89,7 @@ public class WriteCommand extends Command {
 
     // should check for suppressDisplay
     if (!screen.isKeyboardLocked() && screen.getFieldManager().size() > 0) {
-      if (orders.size() > 0 || !writeControlCharacter.isResetModified()) {
+      if (hasOrders() || !writeControlCharacter.isResetModified()) {
         setReply(null);
       }
     }
@@ -108,11 +112,12 @@ public class WriteCommand extends Command {
     text.append("\nWCC : ").append(writeControlCharacter);
 
     // if the list begins with a TextOrder then tab out the missing columns
-    if (orders.size() > 0 && orders.get(0) instanceof TextOrder) {
+    List<Order> commandOrders = getOrders();
+    if (commandOrders.size() > 0 && commandOrders.get(0) instanceof TextOrder) {
       text.append(String.format("%40s", ""));
     }
 
-    for (Order order : orders) {
+    for (Order order : commandOrders) {
       String fmt = (order.isText()) ? "%s" : "%n%-40s";
       text.append(String.format(fmt, order));
     }
@@ -4,6 +4,7 @@ import com.bytezone.dm3270.attributes.StartFieldAttribute;
 import java.awt.Color;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
@@ -123,6 +124,27 @@ public class Field implements Iterable<ScreenPosition> {
     return position >= startPosition || position <= endPosition;
   }
 
+  // tells whether any of the positions of the field is in the set
+  boolean containsAny(BitSet positions) {
+    int next = positions.nextSetBit(startPosition);
+    if (startPosition <= endPosition) {
+      return next >= 0 && next <= endPosition;
+    }
+    if (next >= 0) {
+      return true;
+    }
+    next = positions.nextSetBit(0);
+    return next >= 0 && next <= endPosition;
+  }
+
+  StartFieldAttribute getStartFieldAttribute() {
+    return startFieldAttribute;
+  }
+
+  List<ScreenPosition> getScreenPositions() {
+    return screenPositions;
+  }
+
   public void erase() {
     for (int i = 1; i < screenPositions.size(); i++) {
       screenPositions.get(i).setChar((byte) 0);
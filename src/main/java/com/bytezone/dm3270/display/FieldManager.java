@@ -2,7 +2,9 @@ package com.bytezone.dm3270.display;
 
 import com.bytezone.dm3270.attributes.Attribute;
 import com.bytezone.dm3270.attributes.StartFieldAttribute;
+import com.bytezone.dm3270.metrics.AidLatencyRecorder;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -17,6 +19,8 @@ public class FieldManager {
 
   private final List<Field> fields = new CopyOnWriteArrayList<>();
   private final List<Field> unprotectedFields = new ArrayList<>();
+  // positions the fields were built from, which are replaced when the screen size changes
+  private ScreenPosition[] fieldPositions;
 
   private final Set<ScreenChangeListener> screenChangeListeners = ConcurrentHashMap.newKeySet();
 
@@ -38,7 +42,65 @@ public class FieldManager {
 
   // this is called after the pen and screen positions have been modified
   public void buildFields(ScreenPosition[] screenPositions) {
+    createFields(screenPositions);
+    setFieldsBuilt();
+    BitSet changedRows = new BitSet();
+    changedRows.set(0, screenPositions.length / screen.getScreenDimensions().columns);
+    screenWatcher.check();
+    fireScreenChanged(screenWatcher, new ScreenChange(changedRows, new ArrayList<>(fields), true));
+  }
+
+  /**
+   * Brings the fields up to date with the changes made by the pen since they were last built,
+   * and resets the changes of the pen.
+   * <p>
+   * When the pen didn't add or remove any start field, the boundaries of the fields are still
+   * valid, so only the fields containing changed positions are updated, otherwise all the
+   * fields are built again. Listeners are notified of the rows and fields changed.
+   *
+   * @param screenPositions positions of the screen, which the pen writes.
+   * @param pen pen which modified the positions.
+   */
+  public void updateFields(ScreenPosition[] screenPositions, Pen pen) {
+    BitSet changedRows = getChangedRows(pen.getChangedPositions());
+    boolean fieldLayoutChanged = pen.isFieldLayoutChanged() || screenPositions != fieldPositions;
+    List<Field> changedFields;
+    if (fieldLayoutChanged || fields.isEmpty()) {
+      createFields(screenPositions);
+      changedFields = new ArrayList<>(fields);
+    } else {
+      changedFields = updateChangedFields(pen.getChangedPositions());
+    }
+    pen.resetChanges();
+    setFieldsBuilt();
+    screenWatcher.check();
+    fireScreenChanged(screenWatcher,
+        new ScreenChange(changedRows, changedFields, fieldLayoutChanged));
+  }
+
+  // stamped before notifying the listeners, since their time is not spent building the fields
+  private void setFieldsBuilt() {
+    AidLatencyRecorder aidLatencies = screen.getTelnetState().getAidLatencyRecorder();
+    if (aidLatencies != null) {
+      aidLatencies.fieldsBuilt(System.nanoTime());
+    }
+  }
+
+  private BitSet getChangedRows(BitSet changedPositions) {
+    int columns = screen.getScreenDimensions().columns;
+    BitSet changedRows = new BitSet();
+    int position = changedPositions.nextSetBit(0);
+    while (position >= 0) {
+      int row = position / columns;
+      changedRows.set(row);
+      position = changedPositions.nextSetBit((row + 1) * columns);     // skip the rest of the row
+    }
+    return changedRows;
+  }
+
+  private void createFields(ScreenPosition[] screenPositions) {
     reset();
+    fieldPositions = screenPositions;
 
     //to avoid inefficiency when coping and adding in a 
     // CopyOnWriteArrayList we use this list to add all at once;
@@ -49,6 +111,38 @@ public class FieldManager {
     }
 
     fields.addAll(auxFields);
+    linkFields();
+  }
+
+  private List<Field> updateChangedFields(BitSet changedPositions) {
+    List<Field> changedFields = new ArrayList<>();
+    boolean attributeReplaced = false;
+    for (int i = 0; i < fields.size(); i++) {
+      Field field = fields.get(i);
+      if (!field.containsAny(changedPositions)) {
+        continue;
+      }
+      List<ScreenPosition> positions = field.getScreenPositions();
+      // the host may write a new attribute over the start field, without moving it
+      if (positions.get(0).getStartFieldAttribute() != field.getStartFieldAttribute()) {
+        field = new Field(screen, positions);
+        fields.set(i, field);
+        attributeReplaced = true;
+      }
+      setContexts(positions);
+      changedFields.add(field);
+    }
+
+    // protection may have changed, so the links between fields are made again
+    if (attributeReplaced) {
+      unprotectedFields.clear();
+      fields.forEach(f -> f.setCircular(false));
+      linkFields();
+    }
+    return changedFields;
+  }
+
+  private void linkFields() {
     // link uprotected fields
     Field previousUnprotectedField = null;
 
@@ -80,8 +174,6 @@ public class FieldManager {
       }
     }
     configureCircularField();
-    screenWatcher.check();
-    fireScreenChanged(screenWatcher);
   }
 
   private void configureCircularField() {
@@ -190,8 +282,8 @@ public class FieldManager {
   // ScreenChangeListeners
   // ---------------------------------------------------------------------------------//
 
-  private void fireScreenChanged(ScreenWatcher screenWatcher) {
-    screenChangeListeners.forEach(listener -> listener.screenChanged(screenWatcher));
+  private void fireScreenChanged(ScreenWatcher screenWatcher, ScreenChange screenChange) {
+    screenChangeListeners.forEach(listener -> listener.screenChanged(screenWatcher, screenChange));
   }
 
   public void addScreenChangeListener(ScreenChangeListener listener) {
@@ -3,6 +3,7 @@ package com.bytezone.dm3270.display;
 import com.bytezone.dm3270.Charset;
 import com.bytezone.dm3270.attributes.Attribute;
 import com.bytezone.dm3270.attributes.StartFieldAttribute;
+import java.util.BitSet;
 
 public interface Pen extends Iterable<ScreenPosition> {
 
@@ -23,6 +24,25 @@ public interface Pen extends Iterable<ScreenPosition> {
 
   void write(byte b);
 
+  /**
+   * Writes a run of text, with the same effect as writing each of its bytes in sequence.
+   *
+   * @param buffer buffer containing the text.
+   * @param offset position of the first byte of text in the buffer.
+   * @param length number of bytes to write, which wrap around the end of the screen.
+   */
+  void writeRun(byte[] buffer, int offset, int length);
+
+  /**
+   * Writes a byte in every position from the current one up to, but not including, an address,
+   * wrapping around the end of the screen, and leaves the pen at that address.
+   *
+   * @param b byte to write.
+   * @param toAddress address where to stop, where the whole screen is written if it's the
+   * current position.
+   */
+  void fill(byte b, int toAddress);
+
   void moveRight();
 
   void moveToNextLine();
@@ -39,4 +59,23 @@ public interface Pen extends Iterable<ScreenPosition> {
 
   Iterable<ScreenPosition> fromCurrentPosition();
 
+  /**
+   * Gets the positions whose contents changed, or which were given attributes, since changes
+   * were last reset. Writing the same character a position already had doesn't change it.
+   *
+   * @return the changed positions, which must not be modified.
+   */
+  BitSet getChangedPositions();
+
+  /**
+   * Tells whether start fields were added or removed since changes were last reset, so the
+   * boundaries of the fields must be found again. Replacing a start field attribute doesn't
+   * move any boundary.
+   *
+   * @return true if the fields must be divided again, which is also the case for a new pen.
+   */
+  boolean isFieldLayoutChanged();
+
+  void resetChanges();
+
 }
@@ -4,6 +4,7 @@ import com.bytezone.dm3270.Charset;
 import com.bytezone.dm3270.attributes.Attribute;
 import com.bytezone.dm3270.attributes.StartFieldAttribute;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import org.slf4j.Logger;
@@ -21,6 +22,10 @@ class PenType1 implements Pen {
 
   private final List<Attribute> pendingAttributes = new ArrayList<>();
 
+  // what was modified since the fields were last built
+  private final BitSet changedPositions = new BitSet();
+  private boolean fieldLayoutChanged = true;
+
   // created by Screen and HistoryScreen
   PenType1(ScreenPosition[] screenPositions, ScreenDimensions screenDimensions,
       Charset charset) {
@@ -38,6 +43,8 @@ class PenType1 implements Pen {
     for (ScreenPosition screenPosition : screenPositions) {
       screenPosition.reset();
     }
+    changedPositions.set(0, screenPositions.length);
+    fieldLayoutChanged = true;
 
     formattedScreen = false;
   }
@@ -47,6 +54,10 @@ class PenType1 implements Pen {
     formattedScreen = true;
 
     ScreenPosition screenPosition = screenPositions[currentPosition];
+    if (!screenPosition.isStartField()) {
+      fieldLayoutChanged = true;
+    }
+    changedPositions.set(currentPosition);
 
     screenPosition.reset();
     screenPosition.setStartField(startFieldAttribute);
@@ -70,6 +81,7 @@ class PenType1 implements Pen {
   @Override
   public void writeGraphics(byte b) {
     ScreenPosition screenPosition = screenPositions[currentPosition];
+    markChanged(screenPosition);
     screenPosition.reset();
     screenPosition.setAplGraphicChar(b);
     screenPosition.addAttribute(new com.bytezone.dm3270.attributes.Charset((byte) 0xf1));
@@ -78,13 +90,68 @@ class PenType1 implements Pen {
 
   @Override
   public void write(byte b) {
-    ScreenPosition screenPosition = screenPositions[currentPosition];
-    screenPosition.reset();
-    screenPosition.setChar(b);
+    writeChar(screenPositions[currentPosition], b);
     moveRight();
   }
 
+  @Override
+  public void writeRun(byte[] buffer, int offset, int length) {
+    if (length <= 0) {
+      return;
+    }
+    // pending attributes only apply to the first position
+    int ptr = offset;
+    if (pendingAttributes.size() > 0) {
+      write(buffer[ptr++]);
+    }
+    int position = currentPosition;
+    for (int max = offset + length; ptr < max; ptr++) {
+      writeChar(screenPositions[position], buffer[ptr]);
+      if (++position == screenPositions.length) {
+        position = 0;
+      }
+    }
+    currentPosition = position;
+  }
+
+  @Override
+  public void fill(byte b, int toAddress) {
+    int stop = validate(toAddress);
+    if (pendingAttributes.size() > 0) {
+      write(b);
+      if (currentPosition == stop) {
+        return;
+      }
+    }
+    int position = currentPosition;
+    do {
+      writeChar(screenPositions[position], b);
+      if (++position == screenPositions.length) {
+        position = 0;
+      }
+    } while (position != stop);
+    currentPosition = position;
+  }
+
+  private void markChanged(ScreenPosition screenPosition) {
+    if (screenPosition.isStartField()) {
+      fieldLayoutChanged = true;          // a field is removed
+    }
+    changedPositions.set(screenPosition.getPosition());
+  }
+
+  // hosts often write the same text again, which doesn't need to be tracked
+  private void writeChar(ScreenPosition screenPosition, byte b) {
+    if (screenPosition.isStartField()) {
+      fieldLayoutChanged = true;          // a field is removed
+    }
+    if (screenPosition.write(b)) {
+      changedPositions.set(screenPosition.getPosition());
+    }
+  }
+
   private void applyAttributes(ScreenPosition screenPosition) {
+    changedPositions.set(screenPosition.getPosition());
     for (Attribute attribute : pendingAttributes) {
       screenPosition.addAttribute(attribute);
     }
@@ -121,6 +188,7 @@ class PenType1 implements Pen {
       if (screenPosition.isStartField()) {
         break;
       }
+      changedPositions.set(currentPosition);
       screenPosition.setChar((byte) 0);
       moveRight();
     }
@@ -225,6 +293,22 @@ class PenType1 implements Pen {
         };
   }
 
+  @Override
+  public BitSet getChangedPositions() {
+    return changedPositions;
+  }
+
+  @Override
+  public boolean isFieldLayoutChanged() {
+    return fieldLayoutChanged;
+  }
+
+  @Override
+  public void resetChanges() {
+    changedPositions.clear();
+    fieldLayoutChanged = false;
+  }
+
   // ---------------------------------------------------------------------------------//
   // Debugging
   // ---------------------------------------------------------------------------------//
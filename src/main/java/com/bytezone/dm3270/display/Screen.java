@@ -7,6 +7,7 @@ import com.bytezone.dm3270.application.KeyboardStatusListener;
 import com.bytezone.dm3270.attributes.Attribute;
 import com.bytezone.dm3270.commands.AIDCommand;
 import com.bytezone.dm3270.commands.Command;
+import com.bytezone.dm3270.metrics.AidLatencyRecorder;
 import com.bytezone.dm3270.orders.BufferAddress;
 import com.bytezone.dm3270.streams.TelnetState;
 import com.bytezone.dm3270.structuredfields.SetReplyModeSF;
@@ -159,7 +160,7 @@ public class Screen implements DisplayScreen {
   }
 
   public void buildFields() {
-    fieldManager.buildFields(screenPositions);        // what about resetModified?
+    fieldManager.updateFields(screenPositions, pen);  // what about resetModified?
   }
 
   public void checkRecording() {
@@ -305,6 +306,11 @@ public class Screen implements DisplayScreen {
     setAID(AIDCommand.NO_AID_SPECIFIED);
     cursor.setVisible(true);
     keyboardLocked = false;
+    // the latency is complete before keyboard listeners are notified
+    AidLatencyRecorder aidLatencies = telnetState.getAidLatencyRecorder();
+    if (aidLatencies != null) {
+      aidLatencies.keyboardUnlocked(System.nanoTime());
+    }
     fireKeyboardStatusChange("");
   }
 
@@ -0,0 +1,69 @@
+package com.bytezone.dm3270.display;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes what changed in a screen update, so listeners can process only the changes instead
+ * of comparing the whole screen with a copy of the previous one.
+ * <p>
+ * Changes are tracked from the positions written by the host, so rewriting the text a position
+ * already had is not reported. When the field layout changed, all the fields of the screen are
+ * new objects, and are all reported as changed.
+ */
+public class ScreenChange {
+
+  private final BitSet changedRows;
+  private final List<Field> changedFields;
+  private final boolean fieldLayoutChanged;
+
+  ScreenChange(BitSet changedRows, List<Field> changedFields, boolean fieldLayoutChanged) {
+    this.changedRows = changedRows;
+    this.changedFields = Collections.unmodifiableList(changedFields);
+    this.fieldLayoutChanged = fieldLayoutChanged;
+  }
+
+  /**
+   * Gets the rows containing changed positions.
+   *
+   * @return a copy of the set of changed rows, starting from 0.
+   */
+  public BitSet getChangedRows() {
+    return (BitSet) changedRows.clone();
+  }
+
+  public boolean isRowChanged(int row) {
+    return changedRows.get(row);
+  }
+
+  /**
+   * Gets the fields whose text or attributes changed, in the order of the screen.
+   *
+   * @return the changed fields, which are all the fields when the field layout changed.
+   */
+  public List<Field> getChangedFields() {
+    return changedFields;
+  }
+
+  /**
+   * Tells whether fields were added, removed or moved, so references to the previous fields
+   * must not be used anymore.
+   *
+   * @return true if the fields of the screen were built again.
+   */
+  public boolean isFieldLayoutChanged() {
+    return fieldLayoutChanged;
+  }
+
+  public boolean isEmpty() {
+    return changedRows.isEmpty() && changedFields.isEmpty() && !fieldLayoutChanged;
+  }
+
+  @Override
+  public String toString() {
+    return "ScreenChange [rows=" + changedRows + ", fields=" + changedFields.size()
+        + ", layoutChanged=" + fieldLayoutChanged + "]";
+  }
+
+}
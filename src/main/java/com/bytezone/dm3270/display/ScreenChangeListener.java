@@ -4,4 +4,15 @@ public interface ScreenChangeListener {
 
   void screenChanged(ScreenWatcher screenWatcher);
 
+  /**
+   * Called on each screen update with a description of what changed. Listeners processing only
+   * the changes override this method, which by default calls {@link #screenChanged(ScreenWatcher)}.
+   *
+   * @param screenWatcher watcher of the updated screen.
+   * @param screenChange rows and fields changed by the update.
+   */
+  default void screenChanged(ScreenWatcher screenWatcher, ScreenChange screenChange) {
+    screenChanged(screenWatcher);
+  }
+
 }
@@ -37,6 +37,10 @@ public class ScreenContext {
   }
 
   public ScreenContext withGraphic(boolean isGraphic) {
+    // contexts are immutable, and most positions are rewritten with the same flag
+    if (isGraphic == this.isGraphic) {
+      return this;
+    }
     return new ScreenContext(foregroundColor, backgroundColor, highlight, highIntensity,
         isGraphic);
   }
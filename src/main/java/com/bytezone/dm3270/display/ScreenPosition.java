@@ -26,10 +26,23 @@ public final class ScreenPosition {
   }
 
   public void reset() {
-    value = 0;
-    screenContext = screenContext.withGraphic(false);
+    write((byte) 0);
+  }
+
+  // same as reset followed by setChar, for the pen to overwrite whole spans of positions, and
+  // tells whether the position changed
+  boolean write(byte value) {
+    boolean changed = value != this.value || startFieldAttribute != null
+        || !attributes.isEmpty() || screenContext.isGraphic();
+    this.value = value;
+    if (screenContext.isGraphic()) {
+      screenContext = screenContext.withGraphic(false);
+    }
     startFieldAttribute = null;
-    attributes.clear();
+    if (!attributes.isEmpty()) {
+      attributes.clear();
+    }
+    return changed;
   }
 
   public void setChar(byte value) {
@@ -0,0 +1,389 @@
+package com.bytezone.dm3270.load;
+
+import com.bytezone.dm3270.ConnectionListener;
+import com.bytezone.dm3270.TerminalClient;
+import com.bytezone.dm3270.application.KeyboardStatusChangedEvent;
+import com.bytezone.dm3270.application.KeyboardStatusListener;
+import com.bytezone.dm3270.metrics.LatencyHistogram;
+import com.bytezone.dm3270.streams.ThreadFactories;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives many concurrent {@link TerminalClient}s (virtual users) through a scripted
+ * {@link Transaction} against a terminal server, and reports the latency distribution of each
+ * step.
+ * <p>
+ * Virtual users are started evenly along the ramp up period. Each one connects, waits for the
+ * keyboard to be unlocked in the first screen, runs the transaction the configured number of
+ * iterations, and disconnects. A virtual user stops at the first failed step, since the screen
+ * it is left in is unknown.
+ * <p>
+ * Latencies are measured from the moment each AID is sent until the keyboard is unlocked, which is
+ * notified by the thread reading from the server, so no polling delay is added to them, and the
+ * think time of the users is never part of the measures. This makes the numbers of different runs
+ * comparable, unlike waits for a stable screen.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * LoadGenerator generator = new LoadGenerator(
+ *     () -> new TerminalClient(2, new ScreenDimensions(24, 80)), host, port, transaction);
+ * generator.setUserCount(100);
+ * generator.setRampUpMillis(10000);
+ * generator.setThinkTimeMillis(500, 1500);
+ * LoadReport report = generator.run();
+ * report.writeCsv(System.out);
+ * }</pre>
+ */
+public class LoadGenerator {
+
+  public static final String CONNECT_STEP = "connect";
+  public static final int DEFAULT_STEP_TIMEOUT_MILLIS = 30000;
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+  private final Supplier<TerminalClient> clientFactory;
+  private final String host;
+  private final int port;
+  private final Transaction transaction;
+  private int userCount = 1;
+  private int iterations = 1;
+  private long rampUpMillis;
+  private int minThinkTimeMillis;
+  private int maxThinkTimeMillis;
+  private int stepTimeoutMillis = DEFAULT_STEP_TIMEOUT_MILLIS;
+  private ThreadFactory threadFactory = ThreadFactories.platform();
+
+  private Map<String, StepStats> stepStats;
+  private final LongAdder completedCount = new LongAdder();
+  private final LongAdder failedCount = new LongAdder();
+
+  private static final class StepStats {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder errorCount = new LongAdder();
+
+  }
+
+  private static final class StepFailedException extends Exception {
+
+    private StepFailedException(String message) {
+      super(message);
+    }
+
+  }
+
+  // tracks the keyboard unlocks and connection problems notified by the client
+  private static final class SessionMonitor implements KeyboardStatusListener,
+      ConnectionListener {
+
+    private long unlockCount;
+    private Exception failure;
+
+    @Override
+    public synchronized void keyboardStatusChanged(KeyboardStatusChangedEvent event) {
+      if (!event.keyboardLocked) {
+        unlockCount++;
+        notifyAll();
+      }
+    }
+
+    @Override
+    public void onConnection() {
+    }
+
+    @Override
+    public synchronized void onException(Exception ex) {
+      failure = ex;
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void onConnectionClosed() {
+      failure = new IOException("Connection closed by server");
+      notifyAll();
+    }
+
+    private synchronized long getUnlockCount() {
+      return unlockCount;
+    }
+
+    private synchronized void awaitUnlock(long previousUnlockCount, long deadlineNanos)
+        throws InterruptedException, StepFailedException {
+      while (unlockCount == previousUnlockCount) {
+        if (failure != null) {
+          throw new StepFailedException(failure.toString());
+        }
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        if (remainingMillis <= 0) {
+          throw new StepFailedException("Keyboard not unlocked in time");
+        }
+        wait(remainingMillis);
+      }
+    }
+
+  }
+
+  /**
+   * Creates a load generator.
+   *
+   * @param clientFactory creates the client of each virtual user, already configured but not
+   * connected.
+   * @param host host name of the terminal server.
+   * @param port port where the terminal server is listening for connections.
+   * @param transaction transaction run by each virtual user.
+   */
+  public LoadGenerator(Supplier<TerminalClient> clientFactory, String host, int port,
+      Transaction transaction) {
+    this.clientFactory = clientFactory;
+    this.host = host;
+    this.port = port;
+    this.transaction = transaction;
+  }
+
+  public void setUserCount(int userCount) {
+    if (userCount <= 0) {
+      throw new IllegalArgumentException("User count must be positive: " + userCount);
+    }
+    this.userCount = userCount;
+  }
+
+  /**
+   * Sets the number of times each virtual user runs the transaction.
+   *
+   * @param iterations number of transactions per virtual user. By default 1.
+   */
+  public void setIterations(int iterations) {
+    if (iterations <= 0) {
+      throw new IllegalArgumentException("Iterations must be positive: " + iterations);
+    }
+    this.iterations = iterations;
+  }
+
+  /**
+   * Sets the period over which virtual users are started.
+   *
+   * @param rampUpMillis time between the start of the first and the last virtual users. By
+   * default all of them start at once.
+   */
+  public void setRampUpMillis(long rampUpMillis) {
+    if (rampUpMillis < 0) {
+      throw new IllegalArgumentException("Ramp up must not be negative: " + rampUpMillis);
+    }
+    this.rampUpMillis = rampUpMillis;
+  }
+
+  /**
+   * Sets the time each virtual user waits before each step, simulating a user reading the screen
+   * and typing.
+   *
+   * @param minThinkTimeMillis minimum wait before each step.
+   * @param maxThinkTimeMillis maximum wait. Each wait is a random time between both values. By
+   * default there is no wait.
+   */
+  public void setThinkTimeMillis(int minThinkTimeMillis, int maxThinkTimeMillis) {
+    if (minThinkTimeMillis < 0 || maxThinkTimeMillis < minThinkTimeMillis) {
+      throw new IllegalArgumentException("Invalid think time range: " + minThinkTimeMillis
+          + " - " + maxThinkTimeMillis);
+    }
+    this.minThinkTimeMillis = minThinkTimeMillis;
+    this.maxThinkTimeMillis = maxThinkTimeMillis;
+  }
+
+  /**
+   * Sets the maximum time to wait for the keyboard to be unlocked after connecting or sending an
+   * AID, before counting the step as failed.
+   *
+   * @param stepTimeoutMillis timeout in milliseconds. By default
+   * {@link #DEFAULT_STEP_TIMEOUT_MILLIS}.
+   */
+  public void setStepTimeoutMillis(int stepTimeoutMillis) {
+    if (stepTimeoutMillis <= 0) {
+      throw new IllegalArgumentException("Step timeout must be positive: " + stepTimeoutMillis);
+    }
+    this.stepTimeoutMillis = stepTimeoutMillis;
+  }
+
+  /**
+   * Sets the factory used to create the thread of each virtual user.
+   *
+   * @param threadFactory the factory of virtual user threads. By default
+   * {@link ThreadFactories#platform()}. {@link ThreadFactories#virtual()} allows simulating many
+   * users with few resources when running on Java 21 or later.
+   */
+  public void setThreadFactory(ThreadFactory threadFactory) {
+    this.threadFactory = threadFactory;
+  }
+
+  /**
+   * Runs all the virtual users and waits for them to finish.
+   *
+   * @return the report of the run.
+   * @throws InterruptedException if the thread is interrupted while waiting for the virtual users,
+   * in which case they are interrupted too.
+   */
+  public synchronized LoadReport run() throws InterruptedException {
+    stepStats = new LinkedHashMap<>();
+    stepStats.put(CONNECT_STEP, new StepStats());
+    for (TransactionStep step : transaction.getSteps()) {
+      stepStats.putIfAbsent(step.getName(), new StepStats());
+    }
+    completedCount.reset();
+    failedCount.reset();
+
+    Instant startTime = Instant.now();
+    long startNanos = System.nanoTime();
+    List<Thread> users = new ArrayList<>(userCount);
+    try {
+      for (int i = 0; i < userCount; i++) {
+        int userNumber = i + 1;
+        long userStartNanos = startNanos
+            + (userCount == 1 ? 0 : TimeUnit.MILLISECONDS.toNanos(rampUpMillis) * i
+            / (userCount - 1));
+        Thread user = threadFactory.newThread(() -> runUser(userNumber, userStartNanos));
+        users.add(user);
+        user.start();
+      }
+      for (Thread user : users) {
+        user.join();
+      }
+    } catch (InterruptedException e) {
+      users.forEach(Thread::interrupt);
+      throw e;
+    }
+    Duration duration = Duration.ofNanos(System.nanoTime() - startNanos);
+
+    List<StepReport> steps = new ArrayList<>(stepStats.size());
+    stepStats.forEach((name, stats) -> steps.add(new StepReport(name, stats.histogram,
+        stats.errorCount.sum())));
+    LoadReport report = new LoadReport(transaction.getName(), startTime, duration, userCount,
+        completedCount.sum(), failedCount.sum(), steps);
+    LOG.debug("Load run finished: {}", report);
+    return report;
+  }
+
+  private void runUser(int userNumber, long startNanos) {
+    int completed = 0;
+    TerminalClient client = null;
+    try {
+      sleepNanos(startNanos - System.nanoTime());
+      client = clientFactory.get();
+      SessionMonitor monitor = new SessionMonitor();
+      client.addKeyboardStatusListener(monitor);
+      client.addConnectionListener(monitor);
+      connect(client, monitor);
+      for (; completed < iterations; completed++) {
+        for (TransactionStep step : transaction.getSteps()) {
+          runStep(step, client, monitor, userNumber);
+        }
+      }
+    } catch (StepFailedException e) {
+      LOG.debug("Virtual user {} stopped: {}", userNumber, e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      LOG.warn("Unexpected problem in virtual user {}", userNumber, e);
+    } finally {
+      completedCount.add(completed);
+      failedCount.add(iterations - completed);
+      if (client != null) {
+        disconnect(client, userNumber);
+      }
+    }
+  }
+
+  private void connect(TerminalClient client, SessionMonitor monitor)
+      throws InterruptedException, StepFailedException {
+    StepStats stats = stepStats.get(CONNECT_STEP);
+    long startNanos = System.nanoTime();
+    long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(stepTimeoutMillis);
+    long unlockCount = monitor.getUnlockCount();
+    try {
+      client.connectAsync(host, port).get(stepTimeoutMillis, TimeUnit.MILLISECONDS);
+      if (client.isKeyboardLocked()) {
+        monitor.awaitUnlock(unlockCount, deadlineNanos);
+      }
+    } catch (ExecutionException | TimeoutException e) {
+      stats.errorCount.increment();
+      throw new StepFailedException("Connection failed: " + e);
+    } catch (StepFailedException e) {
+      stats.errorCount.increment();
+      throw e;
+    }
+    stats.histogram.record(System.nanoTime() - startNanos);
+  }
+
+  private void runStep(TransactionStep step, TerminalClient client, SessionMonitor monitor,
+      int userNumber) throws InterruptedException, StepFailedException {
+    StepStats stats = stepStats.get(step.getName());
+    sleepNanos(nextThinkTimeNanos());
+    try {
+      step.fillFields(client, userNumber);
+      long unlockCount = monitor.getUnlockCount();
+      long startNanos = System.nanoTime();
+      step.sendAid(client);
+      monitor.awaitUnlock(unlockCount,
+          startNanos + TimeUnit.MILLISECONDS.toNanos(stepTimeoutMillis));
+      long latencyNanos = System.nanoTime() - startNanos;
+      if (!step.isExpectedScreen(client)) {
+        throw new StepFailedException("Unexpected screen after step " + step.getName());
+      }
+      stats.histogram.record(latencyNanos);
+    } catch (StepFailedException e) {
+      stats.errorCount.increment();
+      throw e;
+    } catch (RuntimeException e) {
+      // fields which can't be found in the screen
+      stats.errorCount.increment();
+      throw new StepFailedException("Step " + step.getName() + " failed: " + e);
+    }
+  }
+
+  private long nextThinkTimeNanos() {
+    if (maxThinkTimeMillis == 0) {
+      return 0;
+    }
+    long millis = minThinkTimeMillis == maxThinkTimeMillis ? minThinkTimeMillis
+        : ThreadLocalRandom.current().nextLong(minThinkTimeMillis, maxThinkTimeMillis + 1L);
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  private static void sleepNanos(long nanos) throws InterruptedException {
+    if (nanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+    }
+  }
+
+  private void disconnect(TerminalClient client, int userNumber) {
+    try {
+      client.disconnect();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      LOG.debug("Problem disconnecting virtual user {}", userNumber, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LoadGenerator [host=%s, port=%d, transaction=%s, users=%d, "
+            + "iterations=%d, rampUp=%dms, thinkTime=%d-%dms, stepTimeout=%dms]", host, port,
+        transaction.getName(), userCount, iterations, rampUpMillis, minThinkTimeMillis,
+        maxThinkTimeMillis, stepTimeoutMillis);
+  }
+
+}
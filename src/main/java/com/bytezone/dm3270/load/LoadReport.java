@@ -0,0 +1,181 @@
+package com.bytezone.dm3270.load;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Results of a {@link LoadGenerator} run: latency percentiles and errors of each step, and the
+ * number of transactions completed.
+ * <p>
+ * Latencies are reported in milliseconds, in CSV (one row per step) or JSON, so results of
+ * different runs can be compared or loaded in other tools.
+ */
+public class LoadReport {
+
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+  private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+  private final String transactionName;
+  private final Instant startTime;
+  private final Duration duration;
+  private final int userCount;
+  private final long completedTransactionCount;
+  private final long failedTransactionCount;
+  private final List<StepReport> steps;
+
+  LoadReport(String transactionName, Instant startTime, Duration duration, int userCount,
+      long completedTransactionCount, long failedTransactionCount, List<StepReport> steps) {
+    this.transactionName = transactionName;
+    this.startTime = startTime;
+    this.duration = duration;
+    this.userCount = userCount;
+    this.completedTransactionCount = completedTransactionCount;
+    this.failedTransactionCount = failedTransactionCount;
+    this.steps = Collections.unmodifiableList(steps);
+  }
+
+  public String getTransactionName() {
+    return transactionName;
+  }
+
+  public Instant getStartTime() {
+    return startTime;
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  public int getUserCount() {
+    return userCount;
+  }
+
+  public long getCompletedTransactionCount() {
+    return completedTransactionCount;
+  }
+
+  /**
+   * Gets the number of transactions which were not completed.
+   * <p>
+   * A virtual user stops as soon as any of its steps fails, so the iterations it didn't run are
+   * also counted as failed.
+   *
+   * @return the number of failed transactions.
+   */
+  public long getFailedTransactionCount() {
+    return failedTransactionCount;
+  }
+
+  public double getTransactionsPerSecond() {
+    long nanos = duration.toNanos();
+    return nanos == 0 ? 0 : completedTransactionCount * 1e9 / nanos;
+  }
+
+  /**
+   * Gets the reports of the steps, in the order they first appear in the transaction.
+   * <p>
+   * The first report is always the one of the connection, named
+   * {@link LoadGenerator#CONNECT_STEP}, which measures the time until the keyboard is unlocked in
+   * the first screen.
+   *
+   * @return the reports of all the steps.
+   */
+  public List<StepReport> getSteps() {
+    return steps;
+  }
+
+  public StepReport getStep(String name) {
+    for (StepReport step : steps) {
+      if (step.getName().equals(name)) {
+        return step;
+      }
+    }
+    throw new IllegalArgumentException("No step named " + name);
+  }
+
+  public void writeCsv(Appendable out) throws IOException {
+    out.append("step,count,errors,min_ms,mean_ms");
+    for (String percentileName : PERCENTILE_NAMES) {
+      out.append(',').append(percentileName).append("_ms");
+    }
+    out.append(",max_ms\n");
+    for (StepReport step : steps) {
+      out.append(escapeCsv(step.getName()))
+          .append(',').append(String.valueOf(step.getCount()))
+          .append(',').append(String.valueOf(step.getErrorCount()))
+          .append(',').append(formatDecimal(step.getMinMillis()))
+          .append(',').append(formatDecimal(step.getMeanMillis()));
+      for (double percentile : PERCENTILES) {
+        out.append(',').append(formatDecimal(step.getPercentileMillis(percentile)));
+      }
+      out.append(',').append(formatDecimal(step.getMaxMillis())).append('\n');
+    }
+  }
+
+  public void writeJson(Appendable out) throws IOException {
+    out.append("{\"transaction\":").append(escapeJson(transactionName))
+        .append(",\"startTime\":").append(escapeJson(startTime.toString()))
+        .append(",\"durationMs\":").append(String.valueOf(duration.toMillis()))
+        .append(",\"users\":").append(String.valueOf(userCount))
+        .append(",\"completedTransactions\":").append(String.valueOf(completedTransactionCount))
+        .append(",\"failedTransactions\":").append(String.valueOf(failedTransactionCount))
+        .append(",\"transactionsPerSecond\":").append(formatDecimal(getTransactionsPerSecond()))
+        .append(",\"steps\":[");
+    for (int i = 0; i < steps.size(); i++) {
+      StepReport step = steps.get(i);
+      if (i > 0) {
+        out.append(',');
+      }
+      out.append("{\"name\":").append(escapeJson(step.getName()))
+          .append(",\"count\":").append(String.valueOf(step.getCount()))
+          .append(",\"errors\":").append(String.valueOf(step.getErrorCount()))
+          .append(",\"minMs\":").append(formatDecimal(step.getMinMillis()))
+          .append(",\"meanMs\":").append(formatDecimal(step.getMeanMillis()));
+      for (int j = 0; j < PERCENTILES.length; j++) {
+        out.append(",\"").append(PERCENTILE_NAMES[j]).append("Ms\":")
+            .append(formatDecimal(step.getPercentileMillis(PERCENTILES[j])));
+      }
+      out.append(",\"maxMs\":").append(formatDecimal(step.getMaxMillis())).append('}');
+    }
+    out.append("]}\n");
+  }
+
+  private static String formatDecimal(double value) {
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  private static String escapeCsv(String text) {
+    if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) {
+      return text;
+    }
+    return '"' + text.replace("\"", "\"\"") + '"';
+  }
+
+  private static String escapeJson(String text) {
+    StringBuilder escaped = new StringBuilder(text.length() + 2).append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c < 0x20) {
+        escaped.append(String.format("\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.append('"').toString();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "LoadReport [transaction=%s, users=%d, duration=%dms, "
+            + "completed=%d, failed=%d, tps=%.1f, steps=%s]", transactionName, userCount,
+        duration.toMillis(), completedTransactionCount, failedTransactionCount,
+        getTransactionsPerSecond(), steps);
+  }
+
+}
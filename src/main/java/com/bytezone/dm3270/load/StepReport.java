@@ -0,0 +1,75 @@
+package com.bytezone.dm3270.load;
+
+import com.bytezone.dm3270.metrics.LatencyHistogram;
+
+/**
+ * Latencies and errors of a step of a {@link Transaction}, aggregated over all the virtual users
+ * of a {@link LoadGenerator} run.
+ */
+public class StepReport {
+
+  private final String name;
+  private final LatencyHistogram histogram;
+  private final long errorCount;
+
+  StepReport(String name, LatencyHistogram histogram, long errorCount) {
+    this.name = name;
+    this.histogram = histogram;
+    this.errorCount = errorCount;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public LatencyHistogram getHistogram() {
+    return histogram;
+  }
+
+  /**
+   * Gets the number of times the step completed successfully.
+   *
+   * @return the number of latencies recorded.
+   */
+  public long getCount() {
+    return histogram.getCount();
+  }
+
+  /**
+   * Gets the number of times the step failed, either because the host didn't unlock the keyboard
+   * in time, the connection was lost, or the expected text was not in the screen.
+   *
+   * @return the number of failures.
+   */
+  public long getErrorCount() {
+    return errorCount;
+  }
+
+  public double getPercentileMillis(double percentile) {
+    return toMillis(histogram.getValueAtPercentile(percentile));
+  }
+
+  public double getMeanMillis() {
+    return histogram.getMeanNanos() / 1_000_000;
+  }
+
+  public double getMinMillis() {
+    return toMillis(histogram.getMinNanos());
+  }
+
+  public double getMaxMillis() {
+    return toMillis(histogram.getMaxNanos());
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("StepReport [name=%s, count=%d, errors=%d, p50=%.3fms, p99=%.3fms, "
+            + "p999=%.3fms, max=%.3fms]", name, getCount(), errorCount, getPercentileMillis(50),
+        getPercentileMillis(99), getPercentileMillis(99.9), getMaxMillis());
+  }
+
+}
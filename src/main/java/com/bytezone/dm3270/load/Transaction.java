@@ -0,0 +1,47 @@
+package com.bytezone.dm3270.load;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Scripted sequence of {@link TransactionStep}s run by each virtual user of a
+ * {@link LoadGenerator}.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * Transaction transaction = new Transaction("logon")
+ *     .addStep(new TransactionStep("user", AIDCommand.AID_ENTER, "ENTER")
+ *         .setField(1, 7, userNumber -> "USER" + userNumber))
+ *     .addStep(new TransactionStep("menu", AIDCommand.AID_PF3, "PF3")
+ *         .setExpectedText("READY"));
+ * }</pre>
+ */
+public class Transaction {
+
+  private final String name;
+  private final List<TransactionStep> steps = new ArrayList<>();
+
+  public Transaction(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Transaction addStep(TransactionStep step) {
+    steps.add(step);
+    return this;
+  }
+
+  public List<TransactionStep> getSteps() {
+    return Collections.unmodifiableList(steps);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Transaction [name=%s, steps=%s]", name, steps);
+  }
+
+}
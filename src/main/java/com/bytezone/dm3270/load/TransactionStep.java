@@ -0,0 +1,136 @@
+package com.bytezone.dm3270.load;
+
+import com.bytezone.dm3270.TerminalClient;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Step of a {@link Transaction}: fills some fields of the current screen, sends an AID and waits
+ * for the host to unlock the keyboard.
+ * <p>
+ * The latency of a step is measured from the moment the AID is sent until the keyboard is
+ * unlocked, so the time spent filling the fields and the think time of the user are excluded.
+ */
+public class TransactionStep {
+
+  private final String name;
+  private final byte aid;
+  private final String aidName;
+  private final List<FieldInput> inputs = new ArrayList<>();
+  private String expectedText;
+
+  private static final class FieldInput {
+
+    private final int row;
+    private final int column;
+    private final String label;
+    private final IntFunction<String> value;
+
+    private FieldInput(int row, int column, String label, IntFunction<String> value) {
+      this.row = row;
+      this.column = column;
+      this.label = label;
+      this.value = value;
+    }
+
+    private void apply(TerminalClient client, int userNumber) {
+      String text = value.apply(userNumber);
+      if (label != null) {
+        client.setFieldTextByLabel(label, text);
+      } else {
+        client.setFieldTextByCoord(row, column, text);
+      }
+    }
+
+  }
+
+  /**
+   * Creates a step.
+   *
+   * @param name name of the step, used to report its latencies. Steps with the same name in a
+   * transaction are reported together.
+   * @param aid Action ID sent by the step. For example
+   * {@link com.bytezone.dm3270.commands.AIDCommand#AID_ENTER}.
+   * @param aidName name of the action sent.
+   */
+  public TransactionStep(String name, byte aid, String aidName) {
+    this.name = name;
+    this.aid = aid;
+    this.aidName = aidName;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public TransactionStep setField(int row, int column, String text) {
+    return setField(row, column, userNumber -> text);
+  }
+
+  /**
+   * Sets the text of a field with a value which depends on the virtual user, like its user name.
+   *
+   * @param row row number of the field. First row is 1.
+   * @param column column number of the field. First column is 1.
+   * @param value provides the text of the field for a given virtual user number, starting from 1.
+   * @return this step.
+   */
+  public TransactionStep setField(int row, int column, IntFunction<String> value) {
+    inputs.add(new FieldInput(row, column, null, value));
+    return this;
+  }
+
+  public TransactionStep setFieldByLabel(String label, String text) {
+    return setFieldByLabel(label, userNumber -> text);
+  }
+
+  public TransactionStep setFieldByLabel(String label, IntFunction<String> value) {
+    inputs.add(new FieldInput(0, 0, label, value));
+    return this;
+  }
+
+  /**
+   * Sets a text which the screen must contain once the keyboard is unlocked.
+   * <p>
+   * Steps whose resulting screen doesn't contain the text are counted as errors, which allows
+   * detecting error screens sent by the host.
+   *
+   * @param expectedText text to look for in the screen.
+   * @return this step.
+   */
+  public TransactionStep setExpectedText(String expectedText) {
+    this.expectedText = expectedText;
+    return this;
+  }
+
+  void fillFields(TerminalClient client, int userNumber) {
+    for (FieldInput input : inputs) {
+      input.apply(client, userNumber);
+    }
+  }
+
+  void sendAid(TerminalClient client) {
+    client.sendAID(aid, aidName);
+  }
+
+  boolean isExpectedScreen(TerminalClient client) {
+    return expectedText == null || client.getScreenText().contains(expectedText);
+  }
+
+  private List<String> getFieldDescriptions() {
+    List<String> descriptions = new ArrayList<>();
+    for (FieldInput input : inputs) {
+      descriptions.add(input.label != null ? input.label : input.row + "," + input.column);
+    }
+    return Collections.unmodifiableList(descriptions);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("TransactionStep [name=%s, aid=%s, fields=%s, expectedText=%s]", name,
+        aidName, getFieldDescriptions(), expectedText);
+  }
+
+}
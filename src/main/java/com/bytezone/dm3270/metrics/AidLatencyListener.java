@@ -0,0 +1,19 @@
+package com.bytezone.dm3270.metrics;
+
+/**
+ * Gets notified of the latencies of each AID sent to the host.
+ *
+ * @see AidLatencyRecorder#addListener(AidLatencyListener)
+ */
+@FunctionalInterface
+public interface AidLatencyListener {
+
+  /**
+   * Called when the host unlocks the keyboard after an AID, from the thread applying the
+   * records of the session, so it must not block.
+   *
+   * @param sample timestamps of the AID.
+   */
+  void aidLatencyMeasured(AidLatencySample sample);
+
+}
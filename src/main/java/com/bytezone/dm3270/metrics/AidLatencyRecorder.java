@@ -0,0 +1,173 @@
+package com.bytezone.dm3270.metrics;
+
+import static com.bytezone.dm3270.metrics.AidLatencySample.NOT_SET;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the latencies of the AIDs sent in a session, from the AID being sent until the host
+ * unlocks the keyboard, keeping histograms of the whole session and of each AID key.
+ * <p>
+ * The console, telnet listener and screen stamp the pending AID as its response arrives and is
+ * applied (see {@link AidLatencySample}), and each completed sample is recorded and notified to
+ * the listeners. Only one AID can be pending at a time, since the keyboard is locked until the
+ * host answers, so a recorder must not be shared by several sessions.
+ * <p>
+ * Each histogram takes about 60KB, so recording is only done for the sessions a recorder is set
+ * to.
+ */
+public class AidLatencyRecorder {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AidLatencyRecorder.class);
+
+  private final AtomicReference<PendingAid> pending = new AtomicReference<>();
+  private final LatencyHistogram responseTimes = new LatencyHistogram();
+  private final LatencyHistogram timesToFirstByte = new LatencyHistogram();
+  private final LatencyHistogram transferTimes = new LatencyHistogram();
+  private final LatencyHistogram processingTimes = new LatencyHistogram();
+  private final ConcurrentMap<String, LatencyHistogram> responseTimesByAid =
+      new ConcurrentHashMap<>();
+  private final List<AidLatencyListener> listeners = new CopyOnWriteArrayList<>();
+
+  // stamps are set from the thread sending the AID, the reader and the one applying records
+  private static final class PendingAid {
+
+    private final byte aid;
+    private final String aidKey;
+    private final long sendNanos;
+    private volatile long firstByteNanos = NOT_SET;
+    private volatile long recordCompleteNanos = NOT_SET;
+    private volatile long fieldsBuiltNanos = NOT_SET;
+
+    private PendingAid(byte aid, String aidKey, long sendNanos) {
+      this.aid = aid;
+      this.aidKey = aidKey;
+      this.sendNanos = sendNanos;
+    }
+
+  }
+
+  public void addListener(AidLatencyListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(AidLatencyListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Stamps an AID about to be sent, replacing any AID still pending, which the host may never
+   * answer (for instance, after a reconnection).
+   *
+   * @param aid the AID code.
+   * @param aidKey name of the key sending the AID, used to group its latencies.
+   * @param nanos time the AID is sent.
+   */
+  public void aidSent(byte aid, String aidKey, long nanos) {
+    pending.set(new PendingAid(aid, aidKey, nanos));
+  }
+
+  // data read before the AID was sent may be handed to the listener after it
+  public void bytesReceived(long nanos) {
+    PendingAid aid = pending.get();
+    if (aid != null && aid.firstByteNanos == NOT_SET && nanos - aid.sendNanos >= 0) {
+      aid.firstByteNanos = nanos;
+    }
+  }
+
+  public void recordReceived(long nanos) {
+    PendingAid aid = pending.get();
+    if (aid != null && aid.firstByteNanos != NOT_SET) {
+      aid.recordCompleteNanos = nanos;
+    }
+  }
+
+  public void fieldsBuilt(long nanos) {
+    PendingAid aid = pending.get();
+    if (aid != null && aid.recordCompleteNanos != NOT_SET) {
+      aid.fieldsBuiltNanos = nanos;
+    }
+  }
+
+  /**
+   * Completes the pending AID, if any, recording its latencies and notifying them.
+   *
+   * @param nanos time the keyboard is unlocked.
+   */
+  public void keyboardUnlocked(long nanos) {
+    PendingAid aid = pending.getAndSet(null);
+    if (aid == null) {
+      return;                 // unlocked by the first screen or an unsolicited write
+    }
+    AidLatencySample sample = new AidLatencySample(aid.aid, aid.aidKey, aid.sendNanos,
+        aid.firstByteNanos, aid.recordCompleteNanos, aid.fieldsBuiltNanos, nanos);
+    responseTimes.record(sample.getResponseTime().toNanos());
+    timesToFirstByte.record(sample.getTimeToFirstByte().toNanos());
+    transferTimes.record(sample.getTransferTime().toNanos());
+    processingTimes.record(sample.getProcessingTime().toNanos());
+    responseTimesByAid.computeIfAbsent(aid.aidKey, key -> new LatencyHistogram())
+        .record(sample.getResponseTime().toNanos());
+    for (AidLatencyListener listener : listeners) {
+      try {
+        listener.aidLatencyMeasured(sample);
+      } catch (RuntimeException e) {
+        LOG.warn("Problem notifying {} to {}", sample, listener, e);
+      }
+    }
+  }
+
+  /**
+   * Gets the distribution of the times from sending an AID until the keyboard is unlocked.
+   *
+   * @return the response times of all the AIDs of the session.
+   */
+  public LatencyHistogram getResponseTimes() {
+    return responseTimes;
+  }
+
+  public LatencyHistogram getTimesToFirstByte() {
+    return timesToFirstByte;
+  }
+
+  public LatencyHistogram getTransferTimes() {
+    return transferTimes;
+  }
+
+  public LatencyHistogram getProcessingTimes() {
+    return processingTimes;
+  }
+
+  /**
+   * Gets the response times of each AID key.
+   *
+   * @return the histograms of response times by key name, like ENTER or PF3.
+   */
+  public Map<String, LatencyHistogram> getResponseTimesByAid() {
+    return Collections.unmodifiableMap(new TreeMap<>(responseTimesByAid));
+  }
+
+  public void reset() {
+    pending.set(null);
+    responseTimes.reset();
+    timesToFirstByte.reset();
+    transferTimes.reset();
+    processingTimes.reset();
+    responseTimesByAid.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "AidLatencyRecorder [responseTimes=" + responseTimes + ", byAid="
+        + responseTimesByAid + "]";
+  }
+
+}
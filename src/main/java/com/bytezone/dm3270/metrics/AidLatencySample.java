@@ -0,0 +1,113 @@
+package com.bytezone.dm3270.metrics;
+
+import java.time.Duration;
+
+/**
+ * Timestamps of an AID sent to the host, from the moment it is sent until the host unlocks the
+ * keyboard, which is the response time perceived by users.
+ * <p>
+ * Timestamps come from {@link System#nanoTime()}, and split the response time in:
+ * <ul>
+ * <li>time to first byte: from the AID being sent until the first data received after it, which
+ * includes network transit both ways and the host think time (they can't be told apart from the
+ * client side, since the host doesn't report when it got the AID).</li>
+ * <li>transfer time: from the first byte until the last record of the response is complete.</li>
+ * <li>processing time: client side time from the last record being complete until the keyboard
+ * is unlocked, which includes parsing and applying it to the screen (see
+ * {@link #getApplyTime()}).</li>
+ * </ul>
+ */
+public class AidLatencySample {
+
+  static final long NOT_SET = Long.MIN_VALUE;
+
+  private final byte aid;
+  private final String aidKey;
+  private final long sendNanos;
+  private final long firstByteNanos;
+  private final long recordCompleteNanos;
+  private final long fieldsBuiltNanos;
+  private final long unlockNanos;
+
+  AidLatencySample(byte aid, String aidKey, long sendNanos, long firstByteNanos,
+      long recordCompleteNanos, long fieldsBuiltNanos, long unlockNanos) {
+    this.aid = aid;
+    this.aidKey = aidKey;
+    this.sendNanos = sendNanos;
+    // the host may unlock the keyboard without sending fields, or even without a record
+    this.firstByteNanos = firstByteNanos == NOT_SET ? unlockNanos : firstByteNanos;
+    this.recordCompleteNanos = recordCompleteNanos == NOT_SET ? this.firstByteNanos
+        : recordCompleteNanos;
+    // fields may have been built for a record before the last one
+    this.fieldsBuiltNanos = fieldsBuiltNanos == NOT_SET ? this.recordCompleteNanos
+        : Math.max(fieldsBuiltNanos, this.recordCompleteNanos);
+    this.unlockNanos = unlockNanos;
+  }
+
+  public byte getAid() {
+    return aid;
+  }
+
+  /**
+   * Gets the name of the key which sent the AID, as given when sending it.
+   *
+   * @return the name of the key, like ENTER or PF3.
+   */
+  public String getAidKey() {
+    return aidKey;
+  }
+
+  public long getSendNanos() {
+    return sendNanos;
+  }
+
+  public long getFirstByteNanos() {
+    return firstByteNanos;
+  }
+
+  public long getRecordCompleteNanos() {
+    return recordCompleteNanos;
+  }
+
+  public long getFieldsBuiltNanos() {
+    return fieldsBuiltNanos;
+  }
+
+  public long getUnlockNanos() {
+    return unlockNanos;
+  }
+
+  public Duration getResponseTime() {
+    return Duration.ofNanos(unlockNanos - sendNanos);
+  }
+
+  public Duration getTimeToFirstByte() {
+    return Duration.ofNanos(firstByteNanos - sendNanos);
+  }
+
+  public Duration getTransferTime() {
+    return Duration.ofNanos(recordCompleteNanos - firstByteNanos);
+  }
+
+  public Duration getProcessingTime() {
+    return Duration.ofNanos(unlockNanos - recordCompleteNanos);
+  }
+
+  /**
+   * Gets the part of the processing time spent until the fields of the screen are built, which
+   * includes the time the record waits in the apply stage, if any.
+   *
+   * @return the time from the last record being complete until its fields are built.
+   */
+  public Duration getApplyTime() {
+    return Duration.ofNanos(fieldsBuiltNanos - recordCompleteNanos);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("AidLatencySample [aid=%s, response=%s, firstByte=%s, transfer=%s, "
+            + "processing=%s]", aidKey, getResponseTime(), getTimeToFirstByte(),
+        getTransferTime(), getProcessingTime());
+  }
+
+}
@@ -0,0 +1,145 @@
+package com.bytezone.dm3270.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of latencies, with a bounded relative error and constant memory, in the way of
+ * HDR histograms.
+ * <p>
+ * Values up to {@code 255} nanoseconds are counted exactly, and bigger ones in log-linear buckets:
+ * each power of two range is split in 128 buckets of the same width, so any percentile is
+ * reported with an error below 1%, whatever the magnitude of the latencies. Recording is lock free
+ * and doesn't allocate, so it can be done from many threads while measuring.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT << 1;
+  // values up to Long.MAX_VALUE have their highest bit in position 62
+  static final int BUCKET_COUNT =
+      LINEAR_LIMIT + (62 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder totalCount = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      throw new IllegalArgumentException("Latency must not be negative: " + nanos);
+    }
+    counts.incrementAndGet(getBucket(nanos));
+    totalCount.increment();
+    totalNanos.add(nanos);
+    min.accumulate(nanos);
+    max.accumulate(nanos);
+  }
+
+  public void record(long duration, TimeUnit unit) {
+    record(unit.toNanos(duration));
+  }
+
+  static int getBucket(long nanos) {
+    if (nanos < LINEAR_LIMIT) {
+      return (int) nanos;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+    int subBucket = (int) (nanos >>> shift) - SUB_BUCKET_COUNT;
+    return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  static long getBucketUpperBound(int bucket) {
+    if (bucket < LINEAR_LIMIT) {
+      return bucket;
+    }
+    int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 1;
+    long subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * Adds all the values recorded in another histogram to this one.
+   *
+   * @param other histogram whose values are added.
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long count = other.counts.get(i);
+      if (count > 0) {
+        counts.addAndGet(i, count);
+      }
+    }
+    totalCount.add(other.totalCount.sum());
+    totalNanos.add(other.totalNanos.sum());
+    if (other.getCount() > 0) {
+      min.accumulate(other.min.get());
+      max.accumulate(other.max.get());
+    }
+  }
+
+  public long getCount() {
+    return totalCount.sum();
+  }
+
+  public long getMinNanos() {
+    return getCount() == 0 ? 0 : min.get();
+  }
+
+  public long getMaxNanos() {
+    return max.get();
+  }
+
+  public double getMeanNanos() {
+    long count = getCount();
+    return count == 0 ? 0 : (double) totalNanos.sum() / count;
+  }
+
+  /**
+   * Gets the latency below which the given percentage of the recorded values fall.
+   *
+   * @param percentile percentage of values, between 0 and 100 (e.g. 99.9).
+   * @return the highest latency equivalent to the one at the given percentile, which is never
+   * greater than the maximum recorded latency, or 0 if nothing has been recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+    }
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long accumulated = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      accumulated += counts.get(i);
+      if (accumulated >= rank) {
+        return Math.min(getBucketUpperBound(i), getMaxNanos());
+      }
+    }
+    return getMaxNanos();
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    totalCount.reset();
+    totalNanos.reset();
+    min.reset();
+    max.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LatencyHistogram [count=%d, p50=%dns, p99=%dns, p999=%dns, max=%dns]",
+        getCount(), getValueAtPercentile(50), getValueAtPercentile(99),
+        getValueAtPercentile(99.9), getMaxNanos());
+  }
+
+}
@@ -0,0 +1,22 @@
+package com.bytezone.dm3270.metrics;
+
+/**
+ * Publishes protocol counters to a monitoring system other than JMX, like a log or a time series
+ * database.
+ *
+ * @see MetricsRegistry#setExporter(MetricsExporter)
+ */
+@FunctionalInterface
+public interface MetricsExporter {
+
+  /**
+   * Publishes the current values of some counters.
+   * <p>
+   * It is called from the thread exporting the registry, or closing a session, so it should not
+   * take long.
+   *
+   * @param counters counters of a session, or of all the sessions of the registry.
+   */
+  void export(ProtocolCountersMXBean counters);
+
+}
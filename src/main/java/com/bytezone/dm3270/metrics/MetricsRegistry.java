@@ -0,0 +1,167 @@
+package com.bytezone.dm3270.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Protocol counters of the sessions of the clients using it, and of all of them together.
+ * <p>
+ * Each connection gets its own {@link ProtocolCounters}, registered as an MXBean named
+ * {@code com.bytezone.dm3270:type=ProtocolMetrics,scope=session,name="<host>:<port>#<n>"} until
+ * the client disconnects, and the aggregate ones are registered as
+ * {@code com.bytezone.dm3270:type=ProtocolMetrics,scope=aggregate}. Registries created without an
+ * {@link MBeanServer} keep the same counters without exposing them through JMX.
+ * <p>
+ * Counters can also be published with a {@link MetricsExporter}: the final values of each
+ * session are exported when it is closed, and all the current ones each time {@link #export()}
+ * is called (for instance, periodically from a scheduled executor).
+ */
+public class MetricsRegistry {
+
+  public static final String DOMAIN = "com.bytezone.dm3270";
+
+  private static final Logger LOG = LoggerFactory.getLogger(MetricsRegistry.class);
+
+  private final MBeanServer mbeanServer;
+  private final ProtocolCounters aggregate = new ProtocolCounters("aggregate", null);
+  private final Map<ProtocolCounters, Optional<ObjectName>> sessions = new ConcurrentHashMap<>();
+  private final AtomicLong sessionCount = new AtomicLong();
+  private volatile MetricsExporter exporter;
+
+  private static final class DefaultHolder {
+
+    private static final MetricsRegistry DEFAULT =
+        new MetricsRegistry(ManagementFactory.getPlatformMBeanServer());
+
+  }
+
+  /**
+   * Creates a registry which is not exposed through JMX.
+   */
+  public MetricsRegistry() {
+    this(null);
+  }
+
+  /**
+   * Creates a registry exposing its counters in the given {@link MBeanServer}.
+   *
+   * @param mbeanServer server where to register the counters, or null to not expose them.
+   */
+  public MetricsRegistry(MBeanServer mbeanServer) {
+    this.mbeanServer = mbeanServer;
+    register(aggregate, "scope=aggregate");
+  }
+
+  /**
+   * Gets the registry exposing the counters in the platform {@link MBeanServer}, which is
+   * usually the one to use, unless several groups of clients need separate aggregates.
+   *
+   * @return the process wide registry.
+   */
+  public static MetricsRegistry getDefault() {
+    return DefaultHolder.DEFAULT;
+  }
+
+  public void setExporter(MetricsExporter exporter) {
+    this.exporter = exporter;
+  }
+
+  /**
+   * Creates the counters of a new session, which are kept until {@link #closeSession} is called.
+   *
+   * @param host host name of the terminal server of the session.
+   * @param port port of the terminal server of the session.
+   * @return the counters of the session.
+   */
+  public ProtocolCounters openSession(String host, int port) {
+    String name = host + ":" + port + "#" + sessionCount.incrementAndGet();
+    ProtocolCounters counters = new ProtocolCounters(name, aggregate);
+    sessions.put(counters, register(counters, "scope=session,name=" + ObjectName.quote(name)));
+    return counters;
+  }
+
+  /**
+   * Exports the final values of the counters of a session and stops keeping them.
+   *
+   * @param counters counters of the session, as returned by {@link #openSession}.
+   */
+  public void closeSession(ProtocolCounters counters) {
+    Optional<ObjectName> objectName = sessions.remove(counters);
+    if (objectName == null) {
+      return;
+    }
+    exportCounters(counters);
+    if (objectName.isPresent()) {
+      try {
+        mbeanServer.unregisterMBean(objectName.get());
+      } catch (JMException e) {
+        LOG.warn("Problem unregistering metrics {}", objectName.get(), e);
+      }
+    }
+  }
+
+  private Optional<ObjectName> register(ProtocolCounters counters, String properties) {
+    if (mbeanServer == null) {
+      return Optional.empty();
+    }
+    try {
+      ObjectName objectName = new ObjectName(DOMAIN + ":type=ProtocolMetrics," + properties);
+      // a previous registry on the same server may have left its aggregate registered
+      if (mbeanServer.isRegistered(objectName)) {
+        mbeanServer.unregisterMBean(objectName);
+      }
+      mbeanServer.registerMBean(counters, objectName);
+      return Optional.of(objectName);
+    } catch (JMException e) {
+      // metrics must never prevent the session from working
+      LOG.warn("Problem registering metrics of {}", counters.getName(), e);
+      return Optional.empty();
+    }
+  }
+
+  public ProtocolCounters getAggregate() {
+    return aggregate;
+  }
+
+  public Collection<ProtocolCounters> getSessions() {
+    return new ArrayList<>(sessions.keySet());
+  }
+
+  /**
+   * Exports the current values of the aggregate counters and the ones of each open session.
+   */
+  public void export() {
+    exportCounters(aggregate);
+    for (ProtocolCounters counters : sessions.keySet()) {
+      exportCounters(counters);
+    }
+  }
+
+  private void exportCounters(ProtocolCounters counters) {
+    MetricsExporter metricsExporter = exporter;
+    if (metricsExporter == null) {
+      return;
+    }
+    try {
+      metricsExporter.export(counters);
+    } catch (RuntimeException e) {
+      LOG.warn("Problem exporting metrics of {}", counters.getName(), e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MetricsRegistry [sessions=" + sessions.size() + ", aggregate=" + aggregate + "]";
+  }
+
+}
@@ -0,0 +1,214 @@
+package com.bytezone.dm3270.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ProtocolMetrics} counting the events of a session with lock free counters.
+ * <p>
+ * Counters of sessions have a parent, the counters of all the sessions of a
+ * {@link MetricsRegistry}, which is updated with every event, so process wide values are
+ * available without summing the sessions, and are kept once sessions are closed.
+ */
+public class ProtocolCounters implements ProtocolMetrics, ProtocolCountersMXBean {
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private final String name;
+  private final ProtocolCounters parent;
+  private final long startNanos = System.nanoTime();
+  private final LongAdder bytesReceived = new LongAdder();
+  private final LongAdder bytesSent = new LongAdder();
+  private final LongAdder recordsReceived = new LongAdder();
+  private final ConcurrentMap<Class<?>, LongAdder> commands = new ConcurrentHashMap<>();
+  private final LongAdder repliesSent = new LongAdder();
+  private final LongAdder aidsSent = new LongAdder();
+  private final LongAdder keepAlivesSent = new LongAdder();
+  private final LongAdder parseErrors = new LongAdder();
+  // CPU time of the threads which stopped serving the session, and ids of the running ones
+  private final LongAdder stoppedThreadsCpuNanos = new LongAdder();
+  private final Set<Long> threadIds = ConcurrentHashMap.newKeySet();
+
+  ProtocolCounters(String name, ProtocolCounters parent) {
+    this.name = name;
+    this.parent = parent;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public void bytesReceived(int count) {
+    bytesReceived.add(count);
+    if (parent != null) {
+      parent.bytesReceived(count);
+    }
+  }
+
+  @Override
+  public void bytesSent(int count) {
+    bytesSent.add(count);
+    if (parent != null) {
+      parent.bytesSent(count);
+    }
+  }
+
+  @Override
+  public void recordReceived() {
+    recordsReceived.increment();
+    if (parent != null) {
+      parent.recordReceived();
+    }
+  }
+
+  @Override
+  public void commandReceived(Class<?> commandType) {
+    LongAdder count = commands.get(commandType);
+    if (count == null) {
+      count = commands.computeIfAbsent(commandType, type -> new LongAdder());
+    }
+    count.increment();
+    if (parent != null) {
+      parent.commandReceived(commandType);
+    }
+  }
+
+  @Override
+  public void replySent() {
+    repliesSent.increment();
+    if (parent != null) {
+      parent.replySent();
+    }
+  }
+
+  @Override
+  public void aidSent() {
+    aidsSent.increment();
+    if (parent != null) {
+      parent.aidSent();
+    }
+  }
+
+  @Override
+  public void keepAliveSent() {
+    keepAlivesSent.increment();
+    if (parent != null) {
+      parent.keepAliveSent();
+    }
+  }
+
+  @Override
+  public void parseError() {
+    parseErrors.increment();
+    if (parent != null) {
+      parent.parseError();
+    }
+  }
+
+  @Override
+  public void threadStarted() {
+    threadIds.add(Thread.currentThread().getId());
+    if (parent != null) {
+      parent.threadStarted();
+    }
+  }
+
+  @Override
+  public void threadStopped() {
+    long threadId = Thread.currentThread().getId();
+    if (threadIds.remove(threadId)) {
+      stoppedThreadsCpuNanos.add(getThreadCpuNanos(threadId));
+    }
+    if (parent != null) {
+      parent.threadStopped();
+    }
+  }
+
+  private static long getThreadCpuNanos(long threadId) {
+    if (!THREADS.isThreadCpuTimeSupported()) {
+      return 0;
+    }
+    // -1 when disabled, or for threads which have already died
+    return Math.max(THREADS.getThreadCpuTime(threadId), 0);
+  }
+
+  @Override
+  public long getBytesReceived() {
+    return bytesReceived.sum();
+  }
+
+  @Override
+  public long getBytesSent() {
+    return bytesSent.sum();
+  }
+
+  @Override
+  public long getRecordsReceived() {
+    return recordsReceived.sum();
+  }
+
+  @Override
+  public double getRecordsPerSecond() {
+    long elapsedNanos = System.nanoTime() - startNanos;
+    return elapsedNanos <= 0 ? 0 : recordsReceived.sum() * 1e9 / elapsedNanos;
+  }
+
+  @Override
+  public Map<String, Long> getCommandCounts() {
+    Map<String, Long> counts = new TreeMap<>();
+    commands.forEach((type, count) -> counts.put(type.getSimpleName(), count.sum()));
+    return counts;
+  }
+
+  public long getCommandCount(Class<?> commandType) {
+    LongAdder count = commands.get(commandType);
+    return count == null ? 0 : count.sum();
+  }
+
+  @Override
+  public long getRepliesSent() {
+    return repliesSent.sum();
+  }
+
+  @Override
+  public long getAidsSent() {
+    return aidsSent.sum();
+  }
+
+  @Override
+  public long getKeepAlivesSent() {
+    return keepAlivesSent.sum();
+  }
+
+  @Override
+  public long getParseErrors() {
+    return parseErrors.sum();
+  }
+
+  @Override
+  public long getCpuTimeNanos() {
+    long cpuNanos = stoppedThreadsCpuNanos.sum();
+    for (long threadId : threadIds) {
+      cpuNanos += getThreadCpuNanos(threadId);
+    }
+    return cpuNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ProtocolCounters [name=%s, bytesReceived=%d, bytesSent=%d, "
+            + "records=%d, commands=%s, replies=%d, aids=%d, keepAlives=%d, parseErrors=%d, "
+            + "cpuTime=%dns]", name, getBytesReceived(), getBytesSent(), getRecordsReceived(),
+        getCommandCounts(), getRepliesSent(), getAidsSent(), getKeepAlivesSent(),
+        getParseErrors(), getCpuTimeNanos());
+  }
+
+}
@@ -0,0 +1,50 @@
+package com.bytezone.dm3270.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ProtocolCounters}, exposing the counters of a session, or the
+ * ones of all the sessions, as JMX attributes.
+ */
+public interface ProtocolCountersMXBean {
+
+  String getName();
+
+  long getBytesReceived();
+
+  long getBytesSent();
+
+  long getRecordsReceived();
+
+  /**
+   * Gets the rate of records received since the counters were created.
+   *
+   * @return the average number of records received per second.
+   */
+  double getRecordsPerSecond();
+
+  /**
+   * Gets the number of 3270 commands received of each type.
+   *
+   * @return the counts by simple class name of the commands, like {@code WriteCommand}.
+   */
+  Map<String, Long> getCommandCounts();
+
+  long getRepliesSent();
+
+  long getAidsSent();
+
+  long getKeepAlivesSent();
+
+  long getParseErrors();
+
+  /**
+   * Gets the CPU time used by the threads dedicated to the session (the reader threads of
+   * blocking connections). Time of event loops is not included, since they are shared by many
+   * sessions.
+   *
+   * @return the CPU time in nanoseconds, or 0 if the JVM doesn't support measuring it.
+   */
+  long getCpuTimeNanos();
+
+}
@@ -0,0 +1,68 @@
+package com.bytezone.dm3270.metrics;
+
+/**
+ * Events of the protocol of a session which are worth counting, notified by the connection,
+ * telnet and console classes as they happen.
+ * <p>
+ * Methods are called from the threads reading from and writing to the server, so
+ * implementations must be thread safe and must not block. All of them do nothing by default,
+ * and {@link #NOOP} is used when metrics are disabled, so disabled metrics cost just a call to an
+ * empty method, which the JIT removes.
+ *
+ * @see ProtocolCounters
+ */
+public interface ProtocolMetrics {
+
+  /**
+   * Metrics ignoring all the events.
+   */
+  ProtocolMetrics NOOP = new ProtocolMetrics() {
+  };
+
+  default void bytesReceived(int count) {
+  }
+
+  default void bytesSent(int count) {
+  }
+
+  default void recordReceived() {
+  }
+
+  /**
+   * Notifies a 3270 command received from the server.
+   *
+   * @param commandType class of the command, like {@code WriteCommand} or {@code ReadCommand}.
+   */
+  default void commandReceived(Class<?> commandType) {
+  }
+
+  /**
+   * Notifies a reply sent to the server without user intervention, like the ones to read
+   * commands and telnet negotiation.
+   */
+  default void replySent() {
+  }
+
+  default void aidSent() {
+  }
+
+  default void keepAliveSent() {
+  }
+
+  /**
+   * Notifies a record which could not be parsed or applied to the screen.
+   */
+  default void parseError() {
+  }
+
+  /**
+   * Notifies that the current thread starts serving the session, so its CPU time is attributed
+   * to it until {@link #threadStopped()} is called from the same thread.
+   */
+  default void threadStarted() {
+  }
+
+  default void threadStopped() {
+  }
+
+}
@@ -35,6 +35,15 @@ public abstract class Order {
           FCO_FORM_FEED, FCO_CARRIAGE_RETURN, FCO_NEWLINE, FCO_END_OF_MEDIUM,
           FCO_EIGHT_ONES};
 
+  // indexed by the unsigned value of each byte, to find the end of text without a search
+  private static final boolean[] ORDER_BYTES = new boolean[256];
+
+  static {
+    for (byte orderValue : orderValues) {
+      ORDER_BYTES[orderValue & 0xFF] = true;
+    }
+  }
+
   protected byte[] buffer;
   protected int duplicates;
 
@@ -86,6 +95,26 @@ public abstract class Order {
     }
   }
 
+  public static boolean isOrder(byte value) {
+    return ORDER_BYTES[value & 0xFF];
+  }
+
+  /**
+   * Gets the position after the text starting at a position of a data stream.
+   *
+   * @param buffer buffer containing the data stream.
+   * @param offset position of the first byte of text.
+   * @param max position after the last order in the buffer.
+   * @return the position of the first order after the text, or max if there is none.
+   */
+  public static int getTextEnd(byte[] buffer, int offset, int max) {
+    int ptr = offset;
+    while (ptr < max && !ORDER_BYTES[buffer[ptr] & 0xFF]) {
+      ptr++;
+    }
+    return ptr;
+  }
+
   public void incrementDuplicates() {
     duplicates++;
   }
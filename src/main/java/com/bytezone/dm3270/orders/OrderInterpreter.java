@@ -0,0 +1,196 @@
+package com.bytezone.dm3270.orders;
+
+import com.bytezone.dm3270.Charset;
+import com.bytezone.dm3270.attributes.Attribute;
+import com.bytezone.dm3270.attributes.StartFieldAttribute;
+import com.bytezone.dm3270.display.DisplayScreen;
+import com.bytezone.dm3270.display.Pen;
+import com.bytezone.dm3270.display.Screen;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the orders and text of a 3270 data stream to a screen, decoding them straight from
+ * the buffer of the command.
+ * <p>
+ * Applying a stream this way has the same effect as creating an {@link Order} for each order,
+ * and processing them in sequence, without allocating (and copying the bytes of) an object for
+ * each one of them. Objects are only needed to describe the orders, for tracing or replay
+ * tooling, and {@link #getOrders} creates them on demand.
+ */
+public final class OrderInterpreter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OrderInterpreter.class);
+
+  private static final byte SPACE = 0x40;
+
+  private OrderInterpreter() {
+  }
+
+  /**
+   * Applies the orders of a data stream to a screen.
+   *
+   * @param buffer buffer containing the data stream.
+   * @param offset position of the first order in the buffer.
+   * @param max position after the last order in the buffer.
+   * @param screen screen whose pen is driven by the orders.
+   */
+  public static void process(byte[] buffer, int offset, int max, DisplayScreen screen) {
+    Pen pen = screen.getPen();
+    boolean previousText = false;
+    int ptr = offset;
+    while (ptr < max) {
+      byte value = buffer[ptr];
+      boolean text = false;
+      switch (value) {
+        case Order.START_FIELD:
+          pen.startField(new StartFieldAttribute(buffer[ptr + 1]));
+          pen.moveRight();
+          ptr += 2;
+          break;
+
+        case Order.START_FIELD_EXTENDED:
+          ptr = startFieldExtended(buffer, ptr, pen);
+          break;
+
+        case Order.SET_BUFFER_ADDRESS:
+          pen.moveTo(BufferAddress.getLocation(buffer[ptr + 1], buffer[ptr + 2]));
+          ptr += 3;
+          break;
+
+        case Order.SET_ATTRIBUTE:
+          pen.addAttribute(Attribute.getAttribute(buffer[ptr + 1], buffer[ptr + 2]).get());
+          ptr += 3;
+          break;
+
+        case Order.MODIFY_FIELD:
+          ptr += (buffer[ptr + 1] & 0xFF) * 2 + 2;         // not supported yet
+          break;
+
+        case Order.INSERT_CURSOR:
+          screen.insertCursor(pen.getPosition());
+          ptr++;
+          break;
+
+        case Order.PROGRAM_TAB:
+          // if the previous data was text then erase the remainder of the field
+          if (previousText) {
+            pen.eraseEOF();
+          }
+          pen.tab();
+          ptr++;
+          break;
+
+        case Order.REPEAT_TO_ADDRESS:
+          ptr = repeatToAddress(buffer, ptr, screen);
+          break;
+
+        case Order.ERASE_UNPROTECTED:
+          LOG.warn("EraseUnprotectedToAddress not finished");
+          ptr += 3;
+          break;
+
+        case Order.GRAPHICS_ESCAPE:
+          pen.writeGraphics(buffer[ptr + 1]);
+          ptr += 2;
+          break;
+
+        case Order.FCO_NULL:
+        case Order.FCO_SUBSTITUTE:
+        case Order.FCO_DUPLICATE:
+        case Order.FCO_FIELD_MARK:
+        case Order.FCO_FORM_FEED:
+        case Order.FCO_CARRIAGE_RETURN:
+        case Order.FCO_END_OF_MEDIUM:
+        case Order.FCO_EIGHT_ONES:
+          pen.write(SPACE);
+          ptr++;
+          break;
+
+        case Order.FCO_NEWLINE:
+          pen.moveToNextLine();
+          ptr++;
+          break;
+
+        default:
+          int end = Order.getTextEnd(buffer, ptr + 1, max);
+          pen.writeRun(buffer, ptr, end - ptr);
+          text = true;
+          ptr = end;
+      }
+      previousText = text;
+    }
+  }
+
+  private static int startFieldExtended(byte[] buffer, int offset, Pen pen) {
+    int totalAttributePairs = buffer[offset + 1] & 0xFF;
+    int ptr = offset + 2;
+    int max = ptr + totalAttributePairs * 2;
+    StartFieldAttribute startFieldAttribute = null;
+    // there has to be a StartFieldAttribute, but it could be anywhere in the list, so the
+    // pairs are read twice instead of keeping the other attributes in a list
+    for (int pair = ptr; pair < max; pair += 2) {
+      if (buffer[pair] == Attribute.XA_START_FIELD) {
+        startFieldAttribute = new StartFieldAttribute(buffer[pair + 1]);
+        startFieldAttribute.setExtended();
+      }
+    }
+    pen.startField(startFieldAttribute != null ? startFieldAttribute
+        : new StartFieldAttribute((byte) 0));
+    for (int pair = ptr; pair < max; pair += 2) {
+      if (buffer[pair] != Attribute.XA_START_FIELD) {
+        Optional<Attribute> attribute = Attribute.getAttribute(buffer[pair], buffer[pair + 1]);
+        if (attribute.isPresent()) {
+          pen.addAttribute(attribute.get());
+        }
+      }
+    }
+    pen.moveRight();
+    return max;
+  }
+
+  private static int repeatToAddress(byte[] buffer, int offset, DisplayScreen screen) {
+    int stopLocation = BufferAddress.getLocation(buffer[offset + 1], buffer[offset + 2]);
+    boolean graphic = buffer[offset + 3] == Order.GRAPHICS_ESCAPE;
+    byte repeatChar = graphic ? buffer[offset + 4] : buffer[offset + 3];
+    Pen pen = screen.getPen();
+    if (pen.getPosition() == stopLocation) {
+      screen.clearScreen(((Screen) screen).getCurrentScreenOption());
+    } else {
+      pen.fill(repeatChar, stopLocation);
+    }
+    return offset + (graphic ? 6 : 4);
+  }
+
+  /**
+   * Creates the objects describing the orders of a data stream, merging consecutive duplicates
+   * of the orders which allow it.
+   *
+   * @param buffer buffer containing the data stream, which orders keep views over, so it must
+   * not be modified afterwards.
+   * @param offset position of the first order in the buffer.
+   * @param max position after the last order in the buffer.
+   * @param charset charset used to decode the text of the orders.
+   * @return the orders of the data stream.
+   */
+  public static List<Order> getOrders(byte[] buffer, int offset, int max, Charset charset) {
+    List<Order> orders = new ArrayList<>();
+    Order previousOrder = null;
+    int ptr = offset;
+    while (ptr < max) {
+      Order order = Order.getOrder(buffer, ptr, max, charset);
+      if (order.matchesPreviousOrder(previousOrder)) {
+        previousOrder.incrementDuplicates();           // and discard this Order
+      } else {
+        orders.add(order);
+        previousOrder = order;
+      }
+      ptr += order.size();
+    }
+    return orders;
+  }
+
+}
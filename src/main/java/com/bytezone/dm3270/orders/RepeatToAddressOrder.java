@@ -44,9 +44,7 @@ public class RepeatToAddressOrder extends Order {
     if (pen.getPosition() == stopLocation) {
       screen.clearScreen(((Screen) screen).getCurrentScreenOption());
     } else {
-      while (pen.getPosition() != stopLocation) {
-        pen.write(rptChar);
-      }
+      pen.fill(rptChar, stopLocation);
     }
   }
 
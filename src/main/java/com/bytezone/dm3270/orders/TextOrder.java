@@ -2,51 +2,52 @@ package com.bytezone.dm3270.orders;
 
 import com.bytezone.dm3270.Charset;
 import com.bytezone.dm3270.display.DisplayScreen;
-import com.bytezone.dm3270.display.Pen;
+import java.util.Arrays;
 
 public class TextOrder extends Order {
 
   private final Charset charset;
+  private final int offset;
+  private final int length;
 
+  // The text is not copied, the order keeps a view over the buffer of the command that
+  // contains it, which must not be modified afterwards.
   public TextOrder(byte[] buffer, int ptr, int max, Charset charset) {
     this.charset = charset;
-    int dataLength = getDataLength(buffer, ptr, max);
-    this.buffer = new byte[dataLength];
-    System.arraycopy(buffer, ptr, this.buffer, 0, dataLength);
+    this.buffer = buffer;
+    this.offset = ptr;
+    // the first byte is text even if it is an order value, as the caller already checked it
+    this.length = Order.getTextEnd(buffer, ptr + 1, max) - ptr;
   }
 
-  private int getDataLength(byte[] buffer, int offset, int max) {
-    int ptr = offset + 1;
-    int length = 1;
-    while (ptr < max) {
-      byte value = buffer[ptr++];
-      for (byte orderValue : orderValues) {
-        if (value == orderValue) {
-          return length;
-        }
-      }
-      length++;
-    }
+  @Override
+  public boolean isText() {
+    return true;
+  }
+
+  @Override
+  public byte getType() {
+    return buffer[offset];
+  }
 
+  @Override
+  public int size() {
     return length;
   }
 
   @Override
-  public boolean isText() {
-    return true;
+  public byte[] getBuffer() {
+    return Arrays.copyOfRange(buffer, offset, offset + length);
   }
 
   @Override
   public void process(DisplayScreen screen) {
-    Pen pen = screen.getPen();
-    for (byte b : buffer) {
-      pen.write(b);
-    }
+    screen.getPen().writeRun(buffer, offset, length);
   }
 
   @Override
   public String toString() {
-    return buffer.length == 0 ? "" : "Text: [" + charset.getString(buffer) + "]";
+    return length == 0 ? "" : "Text: [" + charset.getString(buffer, offset, length) + "]";
   }
 
 }
@@ -0,0 +1,56 @@
+package com.bytezone.dm3270.session;
+
+import com.bytezone.dm3270.session.SessionRecord.SessionRecordType;
+import com.bytezone.dm3270.streams.TelnetSocket;
+
+/**
+ * Record read from a {@link SessionJournal}.
+ */
+public class JournalRecord {
+
+  private final TelnetSocket.Source source;
+  private final SessionRecordType type;
+  private final long timestampNanos;
+  private final byte[] data;
+
+  public JournalRecord(TelnetSocket.Source source, SessionRecordType type, long timestampNanos,
+      byte[] data) {
+    this.source = source;
+    this.type = type;
+    this.timestampNanos = timestampNanos;
+    this.data = data;
+  }
+
+  public TelnetSocket.Source getSource() {
+    return source;
+  }
+
+  public SessionRecordType getType() {
+    return type;
+  }
+
+  /**
+   * Gets when the record was received or sent.
+   *
+   * @return nanoseconds since the journal was created.
+   */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  /**
+   * Gets the raw bytes of the record, as received or sent through the connection.
+   *
+   * @return the record bytes, which must not be modified.
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s %s at %d ns: %d bytes", source, type, timestampNanos,
+        data.length);
+  }
+
+}
@@ -0,0 +1,64 @@
+package com.bytezone.dm3270.session;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Unmaps memory mapped buffers right away, instead of waiting for them to be garbage collected,
+// since files can't be truncated while mapped in some platforms, and each mapping keeps its
+// address space until then. Java has no public API for it, so the cleaner of the buffer is
+// invoked through sun.misc.Unsafe (Java 9 onwards) or the buffer itself (Java 8). When neither
+// is available, buffers are just left to the garbage collector.
+final class MappedBuffers {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MappedBuffers.class);
+
+  private static final Unmapper UNMAPPER = buildUnmapper();
+
+  private interface Unmapper {
+
+    void unmap(ByteBuffer buffer) throws ReflectiveOperationException;
+
+  }
+
+  private MappedBuffers() {
+  }
+
+  private static Unmapper buildUnmapper() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+      unsafeField.setAccessible(true);
+      Object unsafe = unsafeField.get(null);
+      return buffer -> invokeCleaner.invoke(unsafe, buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOG.trace("Unsafe cleaner not available, using the one of the buffers", e);
+    }
+    try {
+      Method cleaner = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+      cleaner.setAccessible(true);
+      Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      return buffer -> clean.invoke(cleaner.invoke(buffer));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOG.debug("Mapped buffers can't be unmapped, they are released when garbage collected", e);
+      return null;
+    }
+  }
+
+  // the buffer must not be accessed anymore, since doing so would crash the JVM
+  static void unmap(MappedByteBuffer buffer) {
+    if (UNMAPPER == null) {
+      return;
+    }
+    try {
+      UNMAPPER.unmap(buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOG.debug("Problem unmapping buffer, it is released when garbage collected", e);
+    }
+  }
+
+}
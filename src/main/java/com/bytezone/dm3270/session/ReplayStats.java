@@ -0,0 +1,52 @@
+package com.bytezone.dm3270.session;
+
+import java.time.Duration;
+
+/**
+ * Throughput of the replay of one or more session journals.
+ */
+public class ReplayStats {
+
+  private final long recordCount;
+  private final long byteCount;
+  private final long nanos;
+
+  public ReplayStats(long recordCount, long byteCount, long nanos) {
+    this.recordCount = recordCount;
+    this.byteCount = byteCount;
+    this.nanos = nanos;
+  }
+
+  /**
+   * Gets the number of records received from the server which were processed.
+   *
+   * @return the number of replayed records.
+   */
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  public long getByteCount() {
+    return byteCount;
+  }
+
+  public Duration getDuration() {
+    return Duration.ofNanos(nanos);
+  }
+
+  public double getRecordsPerSecond() {
+    return nanos == 0 ? 0 : recordCount * 1e9 / nanos;
+  }
+
+  public double getBytesPerSecond() {
+    return nanos == 0 ? 0 : byteCount * 1e9 / nanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ReplayStats [records=%d, bytes=%d, duration=%s, recordsPerSecond=%.0f, "
+        + "bytesPerSecond=%.0f]", recordCount, byteCount, getDuration(), getRecordsPerSecond(),
+        getBytesPerSecond());
+  }
+
+}
@@ -0,0 +1,364 @@
+package com.bytezone.dm3270.session;
+
+import com.bytezone.dm3270.session.SessionRecord.SessionRecordType;
+import com.bytezone.dm3270.streams.TelnetSocket;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only binary journal of the records exchanged in a session, to analyze problems without
+ * a packet capture.
+ * <p>
+ * Each record is stored with its source, type, raw bytes and the monotonic time at which it was
+ * received or sent. Records are appended to an in memory block, which is copied (and optionally
+ * deflated) to a memory mapped file once full, so journaling a record is just a copy of its bytes.
+ * Every {@link #INDEX_INTERVAL} blocks an index block with the offset and first timestamp of each
+ * block is written, which allows {@link SessionJournalReader} to seek without decoding the whole
+ * file.
+ * <p>
+ * Records in the current block are only written to the file on {@link #flush()} or
+ * {@link #close()}, which are also the only ones forcing the file to the storage, so journaling
+ * records never waits for the disk. Errors writing the file are logged and disable the journal,
+ * so they never affect the session.
+ */
+public class SessionJournal implements AutoCloseable {
+
+  public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+  public static final int INDEX_INTERVAL = 64;
+
+  static final long MAGIC = 0x444D333237304A31L;          // DM3270J1
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+  static final int BLOCK_MAGIC = 0x424C4B31;              // BLK1
+  static final int INDEX_MAGIC = 0x49445831;              // IDX1
+  static final int TRAILER_MAGIC = 0x454E4431;            // END1
+  static final int BLOCK_HEADER_SIZE = 28;
+  static final int INDEX_HEADER_SIZE = 16;
+  static final int INDEX_ENTRY_SIZE = 16;
+  static final int RECORD_HEADER_SIZE = 14;
+  static final int TRAILER_SIZE = 12;
+  static final int FLAG_COMPRESSED = 1;
+  static final long NO_INDEX = -1;
+
+  private static final Logger LOG = LoggerFactory.getLogger(SessionJournal.class);
+  private static final int MAPPING_SIZE = 8 * 1024 * 1024;
+
+  private final Path file;
+  private final FileChannel channel;
+  private final boolean compressed;
+  private final long startNanos;
+  private final ByteBuffer block;
+  private final Deflater deflater;
+  private byte[] compressBuffer = new byte[0];
+  private MappedByteBuffer mapping;
+  // previous mappings, which are forced on flush instead of each time a new one is needed
+  private final List<MappedByteBuffer> unforcedMappings = new ArrayList<>();
+  private long position;
+
+  private int blockRecords;
+  private long blockFirstNanos;
+  private final long[] indexOffsets = new long[INDEX_INTERVAL];
+  private final long[] indexNanos = new long[INDEX_INTERVAL];
+  private int indexEntries;
+  private long lastIndexOffset = NO_INDEX;
+
+  private long recordCount;
+  private long byteCount;
+  private boolean closed;
+
+  public SessionJournal(Path file) throws IOException {
+    this(file, DEFAULT_BLOCK_SIZE, false);
+  }
+
+  /**
+   * Creates a journal, replacing any existing file.
+   *
+   * @param file path of the journal file.
+   * @param blockSize size of the blocks in which records are grouped. Bigger records are written
+   * in their own block.
+   * @param compressed whether blocks are deflated before writing them to the file.
+   * @throws IOException if the file can't be created.
+   */
+  public SessionJournal(Path file, int blockSize, boolean compressed) throws IOException {
+    if (blockSize < RECORD_HEADER_SIZE) {
+      throw new IllegalArgumentException("Block size must be at least " + RECORD_HEADER_SIZE
+          + ": " + blockSize);
+    }
+    this.file = file;
+    this.compressed = compressed;
+    block = ByteBuffer.allocate(blockSize);
+    deflater = compressed ? new Deflater(Deflater.BEST_SPEED) : null;
+    channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    startNanos = System.nanoTime();
+    try {
+      reserve(HEADER_SIZE);
+      mapping.putLong(MAGIC)
+          .putInt(VERSION)
+          .putInt(compressed ? FLAG_COMPRESSED : 0)
+          .putLong(System.currentTimeMillis())
+          .putInt(blockSize)
+          .putInt(INDEX_INTERVAL);
+      position += HEADER_SIZE;
+    } catch (IOException | RuntimeException e) {
+      release();
+      throw e;
+    }
+  }
+
+  public void record(TelnetSocket.Source source, SessionRecordType type, byte[] buffer) {
+    record(source, type, System.nanoTime(), buffer, 0, buffer.length);
+  }
+
+  /**
+   * Appends a record to the journal.
+   *
+   * @param source whether the record was sent by the client or by the server.
+   * @param type protocol layer of the record.
+   * @param nanoTime {@link System#nanoTime()} at which the record was received or sent.
+   * @param buffer array containing the raw bytes of the record.
+   * @param offset position of the record in the array.
+   * @param length number of bytes of the record.
+   */
+  public synchronized void record(TelnetSocket.Source source, SessionRecordType type,
+      long nanoTime, byte[] buffer, int offset, int length) {
+    if (closed) {
+      return;
+    }
+    long nanos = nanoTime - startNanos;
+    int size = RECORD_HEADER_SIZE + length;
+    try {
+      if (block.remaining() < size) {
+        writeBlock();
+        if (block.capacity() < size) {
+          writeOversizedRecord(source, type, nanos, buffer, offset, length);
+          return;
+        }
+      }
+      if (blockRecords == 0) {
+        blockFirstNanos = nanos;
+      }
+      putRecord(block, source, type, nanos, buffer, offset, length);
+      blockRecords++;
+      recordCount++;
+      byteCount += length;
+    } catch (IOException | RuntimeException e) {
+      fail(e);
+    }
+  }
+
+  private static void putRecord(ByteBuffer target, TelnetSocket.Source source,
+      SessionRecordType type, long nanos, byte[] buffer, int offset, int length) {
+    target.put((byte) source.ordinal())
+        .put((byte) type.ordinal())
+        .putLong(nanos)
+        .putInt(length)
+        .put(buffer, offset, length);
+  }
+
+  private void writeOversizedRecord(TelnetSocket.Source source, SessionRecordType type,
+      long nanos, byte[] buffer, int offset, int length) throws IOException {
+    ByteBuffer single = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+    putRecord(single, source, type, nanos, buffer, offset, length);
+    writeBlock(single, 1, nanos);
+    recordCount++;
+    byteCount += length;
+  }
+
+  private void writeBlock() throws IOException {
+    if (blockRecords == 0) {
+      return;
+    }
+    writeBlock(block, blockRecords, blockFirstNanos);
+    block.clear();
+    blockRecords = 0;
+  }
+
+  private void writeBlock(ByteBuffer records, int count, long firstNanos) throws IOException {
+    byte[] raw = records.array();
+    int rawLength = records.position();
+    byte[] payload = raw;
+    int payloadLength = rawLength;
+    int flags = 0;
+    if (compressed) {
+      int deflatedLength = deflate(raw, rawLength);
+      // incompressible blocks are stored as they are
+      if (deflatedLength > 0) {
+        payload = compressBuffer;
+        payloadLength = deflatedLength;
+        flags = FLAG_COMPRESSED;
+      }
+    }
+
+    long offset = position;
+    reserve(BLOCK_HEADER_SIZE + payloadLength);
+    mapping.putInt(BLOCK_MAGIC)
+        .putInt(flags)
+        .putInt(count)
+        .putInt(rawLength)
+        .putInt(payloadLength)
+        .putLong(firstNanos)
+        .put(payload, 0, payloadLength);
+    position += BLOCK_HEADER_SIZE + payloadLength;
+
+    indexOffsets[indexEntries] = offset;
+    indexNanos[indexEntries] = firstNanos;
+    if (++indexEntries == INDEX_INTERVAL) {
+      writeIndex();
+    }
+  }
+
+  // returns the deflated length, or 0 if the block does not get smaller
+  private int deflate(byte[] raw, int rawLength) {
+    if (compressBuffer.length < rawLength) {
+      compressBuffer = new byte[rawLength];
+    }
+    deflater.reset();
+    deflater.setInput(raw, 0, rawLength);
+    deflater.finish();
+    int length = deflater.deflate(compressBuffer);
+    return deflater.finished() && length < rawLength ? length : 0;
+  }
+
+  private void writeIndex() throws IOException {
+    if (indexEntries == 0) {
+      return;
+    }
+    long offset = position;
+    int size = INDEX_HEADER_SIZE + indexEntries * INDEX_ENTRY_SIZE;
+    reserve(size);
+    mapping.putInt(INDEX_MAGIC)
+        .putInt(indexEntries)
+        .putLong(lastIndexOffset);
+    for (int i = 0; i < indexEntries; i++) {
+      mapping.putLong(indexOffsets[i])
+          .putLong(indexNanos[i]);
+    }
+    position += size;
+    lastIndexOffset = offset;
+    indexEntries = 0;
+  }
+
+  // makes sure the current mapping has room for the given bytes at the current position
+  private void reserve(int size) throws IOException {
+    if (mapping != null && mapping.remaining() >= size) {
+      return;
+    }
+    if (mapping != null) {
+      unforcedMappings.add(mapping);
+    }
+    // mapping beyond the end of the file extends it, it is truncated on close
+    mapping = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(MAPPING_SIZE, size));
+  }
+
+  private void fail(Exception e) {
+    LOG.error("Problem writing session journal {}, disabling it", file, e);
+    closed = true;
+    try {
+      release();
+    } catch (IOException closeException) {
+      LOG.warn("Problem closing session journal {}", file, closeException);
+    }
+  }
+
+  private void forceMappings() {
+    for (MappedByteBuffer unforcedMapping : unforcedMappings) {
+      unforcedMapping.force();
+      MappedBuffers.unmap(unforcedMapping);
+    }
+    unforcedMappings.clear();
+    mapping.force();
+  }
+
+  // mappings are released before truncating or closing the file, and never used again
+  private void releaseMappings() {
+    for (MappedByteBuffer unforcedMapping : unforcedMappings) {
+      MappedBuffers.unmap(unforcedMapping);
+    }
+    unforcedMappings.clear();
+    if (mapping != null) {
+      MappedBuffers.unmap(mapping);
+      mapping = null;
+    }
+  }
+
+  private void release() throws IOException {
+    releaseMappings();
+    if (deflater != null) {
+      deflater.end();
+    }
+    channel.close();
+  }
+
+  /**
+   * Writes the records in the current block to the file, and forces the file to the storage.
+   *
+   * @throws IOException if the records can't be written.
+   */
+  public synchronized void flush() throws IOException {
+    if (closed) {
+      return;
+    }
+    writeBlock();
+    forceMappings();
+  }
+
+  public synchronized long getRecordCount() {
+    return recordCount;
+  }
+
+  public synchronized long getByteCount() {
+    return byteCount;
+  }
+
+  /**
+   * Gets the number of bytes written to the file, which is smaller than the journaled bytes when
+   * blocks are compressed.
+   *
+   * @return the size of the journal file.
+   */
+  public synchronized long getFileSize() {
+    return position;
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      writeBlock();
+      writeIndex();
+      reserve(TRAILER_SIZE);
+      mapping.putInt(TRAILER_MAGIC)
+          .putLong(lastIndexOffset);
+      position += TRAILER_SIZE;
+      forceMappings();
+      releaseMappings();
+      channel.truncate(position);
+    } finally {
+      release();
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("SessionJournal [file=%s, records=%d, bytes=%d, fileSize=%d, "
+        + "compressed=%s]", file, recordCount, byteCount, position, compressed);
+  }
+
+}
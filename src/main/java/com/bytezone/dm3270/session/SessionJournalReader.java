@@ -0,0 +1,266 @@
+package com.bytezone.dm3270.session;
+
+import com.bytezone.dm3270.session.SessionRecord.SessionRecordType;
+import com.bytezone.dm3270.streams.TelnetSocket;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the records of a {@link SessionJournal} file in the order they were journaled.
+ * <p>
+ * Journals which were not closed (like when the process crashed) can be read up to the last block
+ * written to the file.
+ */
+public class SessionJournalReader implements AutoCloseable {
+
+  private static final TelnetSocket.Source[] SOURCES = TelnetSocket.Source.values();
+  private static final SessionRecordType[] TYPES = SessionRecordType.values();
+
+  private final Path file;
+  private final FileChannel channel;
+  private final long size;
+  private final Instant startTime;
+  private final boolean compressed;
+  private final Inflater inflater = new Inflater();
+
+  private long position;
+  private ByteBuffer blockRecords;
+  private long[] blockOffsets;
+  private long[] blockNanos;
+
+  public SessionJournalReader(Path file) throws IOException {
+    this.file = file;
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      size = channel.size();
+      ByteBuffer header = readBytes(0, SessionJournal.HEADER_SIZE);
+      if (header.getLong() != SessionJournal.MAGIC) {
+        throw new IOException("Not a session journal: " + file);
+      }
+      int version = header.getInt();
+      if (version != SessionJournal.VERSION) {
+        throw new IOException("Unsupported session journal version " + version + ": " + file);
+      }
+      compressed = (header.getInt() & SessionJournal.FLAG_COMPRESSED) != 0;
+      startTime = Instant.ofEpochMilli(header.getLong());
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    position = SessionJournal.HEADER_SIZE;
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * Gets the wall clock time at which the journal was created, to which record timestamps are
+   * relative.
+   *
+   * @return the creation time of the journal.
+   */
+  public Instant getStartTime() {
+    return startTime;
+  }
+
+  public boolean isCompressed() {
+    return compressed;
+  }
+
+  /**
+   * Reads the next record of the journal.
+   *
+   * @return the next record, or null when there are no more records.
+   * @throws IOException if the journal can't be read or is corrupted.
+   */
+  public JournalRecord read() throws IOException {
+    while (blockRecords == null || !blockRecords.hasRemaining()) {
+      if (!readBlock()) {
+        return null;
+      }
+    }
+    TelnetSocket.Source source = SOURCES[blockRecords.get()];
+    SessionRecordType type = TYPES[blockRecords.get()];
+    long nanos = blockRecords.getLong();
+    byte[] data = new byte[blockRecords.getInt()];
+    blockRecords.get(data);
+    return new JournalRecord(source, type, nanos, data);
+  }
+
+  public List<JournalRecord> readAll() throws IOException {
+    List<JournalRecord> records = new ArrayList<>();
+    JournalRecord record = read();
+    while (record != null) {
+      records.add(record);
+      record = read();
+    }
+    return records;
+  }
+
+  /**
+   * Positions the reader at the first record received or sent at or after the given time.
+   * <p>
+   * The index blocks of the journal are used to locate the block containing the record, so only
+   * that block is decoded. Blocks written after the last index block, or all of them when the
+   * journal was not closed, are located by their headers.
+   *
+   * @param timestampNanos nanoseconds since the journal was created.
+   * @throws IOException if the journal can't be read or is corrupted.
+   */
+  public void seek(long timestampNanos) throws IOException {
+    if (blockOffsets == null) {
+      loadBlockIndex();
+    }
+    // last block starting at or before the time, since previous ones only contain older records
+    int block = 0;
+    int low = 0;
+    int high = blockOffsets.length - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (blockNanos[middle] <= timestampNanos) {
+        block = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    position = blockOffsets.length == 0 ? size : blockOffsets[block];
+    blockRecords = null;
+    while (readBlock()) {
+      while (blockRecords.hasRemaining()) {
+        int record = blockRecords.position();
+        if (blockRecords.getLong(record + 2) >= timestampNanos) {
+          return;
+        }
+        blockRecords.position(record + SessionJournal.RECORD_HEADER_SIZE
+            + blockRecords.getInt(record + 10));
+      }
+    }
+  }
+
+  private void loadBlockIndex() throws IOException {
+    List<long[]> entries = new ArrayList<>();
+    long scanPosition = SessionJournal.HEADER_SIZE;
+    long indexOffset = readLastIndexOffset();
+    while (indexOffset != SessionJournal.NO_INDEX) {
+      ByteBuffer header = readBytes(indexOffset, SessionJournal.INDEX_HEADER_SIZE);
+      header.getInt();
+      int count = header.getInt();
+      long previousIndexOffset = header.getLong();
+      int entriesSize = count * SessionJournal.INDEX_ENTRY_SIZE;
+      ByteBuffer indexEntries =
+          readBytes(indexOffset + SessionJournal.INDEX_HEADER_SIZE, entriesSize);
+      List<long[]> indexed = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        indexed.add(new long[]{indexEntries.getLong(), indexEntries.getLong()});
+      }
+      entries.addAll(0, indexed);
+      scanPosition = Math.max(scanPosition,
+          indexOffset + SessionJournal.INDEX_HEADER_SIZE + entriesSize);
+      indexOffset = previousIndexOffset;
+    }
+
+    while (scanPosition + 4 <= size) {
+      int magic = readBytes(scanPosition, 4).getInt();
+      if (magic == SessionJournal.BLOCK_MAGIC) {
+        ByteBuffer header = readBytes(scanPosition, SessionJournal.BLOCK_HEADER_SIZE);
+        entries.add(new long[]{scanPosition, header.getLong(20)});
+        scanPosition += SessionJournal.BLOCK_HEADER_SIZE + header.getInt(16);
+      } else if (magic == SessionJournal.INDEX_MAGIC) {
+        scanPosition += SessionJournal.INDEX_HEADER_SIZE
+            + (long) readBytes(scanPosition + 4, 4).getInt() * SessionJournal.INDEX_ENTRY_SIZE;
+      } else {
+        break;
+      }
+    }
+
+    blockOffsets = new long[entries.size()];
+    blockNanos = new long[entries.size()];
+    for (int i = 0; i < entries.size(); i++) {
+      blockOffsets[i] = entries.get(i)[0];
+      blockNanos[i] = entries.get(i)[1];
+    }
+  }
+
+  // the trailer is only present when the journal was closed
+  private long readLastIndexOffset() throws IOException {
+    if (size < SessionJournal.HEADER_SIZE + SessionJournal.TRAILER_SIZE) {
+      return SessionJournal.NO_INDEX;
+    }
+    ByteBuffer trailer = readBytes(size - SessionJournal.TRAILER_SIZE,
+        SessionJournal.TRAILER_SIZE);
+    return trailer.getInt() == SessionJournal.TRAILER_MAGIC ? trailer.getLong()
+        : SessionJournal.NO_INDEX;
+  }
+
+  // loads the records of the next data block, skipping index blocks
+  private boolean readBlock() throws IOException {
+    while (position + 4 <= size) {
+      int magic = readBytes(position, 4).getInt();
+      if (magic == SessionJournal.INDEX_MAGIC) {
+        int entries = readBytes(position + 4, 4).getInt();
+        position += SessionJournal.INDEX_HEADER_SIZE
+            + (long) entries * SessionJournal.INDEX_ENTRY_SIZE;
+      } else if (magic == SessionJournal.BLOCK_MAGIC) {
+        ByteBuffer header = readBytes(position, SessionJournal.BLOCK_HEADER_SIZE);
+        header.getInt();
+        int flags = header.getInt();
+        header.getInt();
+        int rawLength = header.getInt();
+        int payloadLength = header.getInt();
+        ByteBuffer payload =
+            readBytes(position + SessionJournal.BLOCK_HEADER_SIZE, payloadLength);
+        position += SessionJournal.BLOCK_HEADER_SIZE + payloadLength;
+        blockRecords = (flags & SessionJournal.FLAG_COMPRESSED) != 0
+            ? inflate(payload, rawLength) : payload;
+        return true;
+      } else {
+        // trailer, or the unused end of the mapping of a journal which was not closed
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private ByteBuffer inflate(ByteBuffer payload, int rawLength) throws IOException {
+    byte[] raw = new byte[rawLength];
+    inflater.reset();
+    inflater.setInput(payload.array(), 0, payload.limit());
+    try {
+      if (inflater.inflate(raw) != rawLength) {
+        throw new IOException("Corrupted block at " + position + " in " + file);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupted block at " + position + " in " + file, e);
+    }
+    return ByteBuffer.wrap(raw);
+  }
+
+  private ByteBuffer readBytes(long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of session journal " + file);
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  @Override
+  public void close() throws IOException {
+    inflater.end();
+    channel.close();
+  }
+
+}
@@ -0,0 +1,262 @@
+package com.bytezone.dm3270.session;
+
+import com.bytezone.dm3270.Charset;
+import com.bytezone.dm3270.display.Screen;
+import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.session.SessionRecord.SessionRecordType;
+import com.bytezone.dm3270.streams.TelnetListener;
+import com.bytezone.dm3270.streams.TelnetSocket;
+import com.bytezone.dm3270.streams.TelnetState;
+import com.bytezone.dm3270.streams.ThreadFactories;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays the records of a {@link SessionJournal} in a headless {@link Screen}, as fast as
+ * possible.
+ * <p>
+ * Records received from the server are decoded and processed by the same code used by live
+ * sessions, so the replay rebuilds the screens of the recorded session, which can be inspected
+ * record by record with {@link #step()} when analyzing an incident. Records sent by the client are
+ * returned by the steps but not processed, since their effect on the screen comes with the records
+ * received afterwards, and any reply generated while processing is discarded.
+ * <p>
+ * Since each screen depends on all the records received before it, seeking backwards replays the
+ * records again from the start, which is cheap since no connection is involved.
+ */
+public class SessionReplay {
+
+  private static final byte SB = (byte) 0xFA;
+
+  private final List<JournalRecord> records;
+  private final ScreenDimensions alternateScreenDimensions;
+  private final Charset charset;
+  private Screen screen;
+  private TelnetListener telnetListener;
+  private int position;
+
+  /**
+   * Creates a replay of the given records.
+   *
+   * @param records records of the session, as read from its journal.
+   * @param alternateScreenDimensions alternate screen dimensions of the recorded terminal.
+   * @param charset charset used by the recorded terminal.
+   */
+  public SessionReplay(List<JournalRecord> records, ScreenDimensions alternateScreenDimensions,
+      Charset charset) {
+    this.records = records;
+    this.alternateScreenDimensions = alternateScreenDimensions;
+    this.charset = charset;
+    charset.load();
+    reset();
+  }
+
+  public static SessionReplay load(Path journal, ScreenDimensions alternateScreenDimensions,
+      Charset charset) throws IOException {
+    try (SessionJournalReader reader = new SessionJournalReader(journal)) {
+      return new SessionReplay(reader.readAll(), alternateScreenDimensions, charset);
+    }
+  }
+
+  /**
+   * Replays several journals concurrently, each one in its own screen.
+   * <p>
+   * All journals are loaded before replaying them, so the returned stats only measure the
+   * processing of the records.
+   *
+   * @param journals journal files to replay.
+   * @param alternateScreenDimensions alternate screen dimensions of the recorded terminals.
+   * @param charset charset used by the recorded terminals.
+   * @param parallelism number of threads replaying journals.
+   * @return the aggregated number of records and bytes replayed, and the elapsed time.
+   * @throws IOException if any of the journals can't be read.
+   * @throws InterruptedException if the thread is interrupted while waiting for the replays.
+   */
+  public static ReplayStats replayAll(List<Path> journals,
+      ScreenDimensions alternateScreenDimensions, Charset charset, int parallelism)
+      throws IOException, InterruptedException {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+        ThreadFactories.platform());
+    try {
+      List<Callable<SessionReplay>> loads = new ArrayList<>();
+      for (Path journal : journals) {
+        loads.add(() -> load(journal, alternateScreenDimensions, charset));
+      }
+      List<Callable<ReplayStats>> replays = new ArrayList<>();
+      for (SessionReplay replay : getAll(executor.invokeAll(loads))) {
+        replays.add(replay::replay);
+      }
+
+      long start = System.nanoTime();
+      List<ReplayStats> stats = getAll(executor.invokeAll(replays));
+      long nanos = System.nanoTime() - start;
+      return new ReplayStats(stats.stream().mapToLong(ReplayStats::getRecordCount).sum(),
+          stats.stream().mapToLong(ReplayStats::getByteCount).sum(), nanos);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static <T> List<T> getAll(List<Future<T>> futures)
+      throws IOException, InterruptedException {
+    List<T> results = new ArrayList<>(futures.size());
+    for (Future<T> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+    }
+    return results;
+  }
+
+  public Screen getScreen() {
+    return screen;
+  }
+
+  public List<JournalRecord> getRecords() {
+    return Collections.unmodifiableList(records);
+  }
+
+  /**
+   * Gets the index of the next record to replay.
+   *
+   * @return number of records already replayed.
+   */
+  public int getPosition() {
+    return position;
+  }
+
+  public boolean hasNext() {
+    return position < records.size();
+  }
+
+  /**
+   * Replays the next record.
+   *
+   * @return the replayed record, or null if all the records have already been replayed.
+   */
+  public JournalRecord step() {
+    if (!hasNext()) {
+      return null;
+    }
+    JournalRecord record = records.get(position);
+    apply(record);
+    position++;
+    return record;
+  }
+
+  /**
+   * Replays all the remaining records.
+   *
+   * @return the number of records and bytes received from the server which were replayed, and
+   * how long it took.
+   */
+  public ReplayStats replay() {
+    long start = System.nanoTime();
+    long recordCount = 0;
+    long byteCount = 0;
+    while (position < records.size()) {
+      JournalRecord record = records.get(position);
+      if (apply(record)) {
+        recordCount++;
+        byteCount += record.getData().length;
+      }
+      position++;
+    }
+    return new ReplayStats(recordCount, byteCount, System.nanoTime() - start);
+  }
+
+  /**
+   * Leaves the screen as it was after replaying the given number of records.
+   *
+   * @param recordPosition number of records to replay from the start of the journal.
+   */
+  public void seek(int recordPosition) {
+    if (recordPosition < 0 || recordPosition > records.size()) {
+      throw new IllegalArgumentException("Position must be between 0 and " + records.size()
+          + ": " + recordPosition);
+    }
+    if (recordPosition < position) {
+      reset();
+    }
+    while (position < recordPosition) {
+      apply(records.get(position));
+      position++;
+    }
+  }
+
+  /**
+   * Leaves the screen as it was at the given time of the recorded session.
+   *
+   * @param timestampNanos nanoseconds since the journal was created.
+   */
+  public void seekTime(long timestampNanos) {
+    int recordPosition = 0;
+    while (recordPosition < records.size()
+        && records.get(recordPosition).getTimestampNanos() <= timestampNanos) {
+      recordPosition++;
+    }
+    seek(recordPosition);
+  }
+
+  /**
+   * Clears the screen and goes back to the start of the journal.
+   */
+  public void reset() {
+    TelnetState telnetState = new TelnetState();
+    screen = new Screen(new ScreenDimensions(24, 80), alternateScreenDimensions, telnetState,
+        charset);
+    telnetListener = new TelnetListener(screen, telnetState);
+    position = 0;
+  }
+
+  private boolean apply(JournalRecord record) {
+    if (record.getSource() != TelnetSocket.Source.SERVER) {
+      return false;
+    }
+    byte[] data = record.getData();
+    try {
+      switch (record.getType()) {
+        case TELNET:
+          if (data.length > 1 && data[1] == SB) {
+            telnetListener.processTelnetSubcommand(data, data.length);
+          } else {
+            telnetListener.processTelnetCommand(data, data.length);
+          }
+          break;
+        case TN3270:
+        case TN3270E:
+          // the recorded type already tells if the negotiation ended up in extended mode
+          screen.getTelnetState()
+              .setDoes3270Extended(record.getType() == SessionRecordType.TN3270E);
+          telnetListener.processRecord(data, 0, data.length);
+          break;
+        default:
+          throw new IllegalStateException("Unknown record type: " + record.getType());
+      }
+    } catch (RuntimeException e) {
+      throw new IllegalStateException("Problem replaying record " + position + ": " + record, e);
+    }
+    return true;
+  }
+
+}
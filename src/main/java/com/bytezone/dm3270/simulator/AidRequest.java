@@ -0,0 +1,64 @@
+package com.bytezone.dm3270.simulator;
+
+import com.bytezone.dm3270.commands.AIDCommand;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * AID sent by a terminal to a {@link HostSimulator}, with the fields modified by the user.
+ */
+public class AidRequest {
+
+  private final byte aid;
+  private final int cursorPosition;
+  private final Map<Integer, String> fields;
+  private final int columns;
+
+  AidRequest(byte aid, int cursorPosition, Map<Integer, String> fields, int columns) {
+    this.aid = aid;
+    this.cursorPosition = cursorPosition;
+    this.fields = fields;
+    this.columns = columns;
+  }
+
+  /**
+   * Gets the AID key pressed by the user.
+   *
+   * @return one of the AID values of {@link AIDCommand}, like {@link AIDCommand#AID_ENTER}.
+   */
+  public byte getAid() {
+    return aid;
+  }
+
+  public int getCursorPosition() {
+    return cursorPosition;
+  }
+
+  /**
+   * Gets the modified fields sent with the AID.
+   *
+   * @return the text of each field, by the linear position of its first character.
+   */
+  public Map<Integer, String> getFields() {
+    return Collections.unmodifiableMap(fields);
+  }
+
+  /**
+   * Gets the text of a modified field.
+   *
+   * @param row row of the field attribute, like in {@link HostScreen#addInputField(int, int,
+   * int)}.
+   * @param column column of the field attribute.
+   * @return the text typed in the field, or an empty string if it was not modified.
+   */
+  public String getFieldText(int row, int column) {
+    return fields.getOrDefault((row - 1) * columns + column, "");
+  }
+
+  @Override
+  public String toString() {
+    return String.format("AidRequest [aid=%02X, cursor=%d, fields=%s]", aid, cursorPosition,
+        fields);
+  }
+
+}
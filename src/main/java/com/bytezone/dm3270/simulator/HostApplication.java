@@ -0,0 +1,32 @@
+package com.bytezone.dm3270.simulator;
+
+/**
+ * Application served by a {@link HostSimulator}, which decides the screens sent to each session.
+ * <p>
+ * Methods are invoked from the event loop threads of the simulator, so they must be quick and
+ * never block. Many sessions may be served at the same time, so any state of a session should be
+ * kept in its {@link HostSession} attributes.
+ */
+public interface HostApplication {
+
+  /**
+   * Gets the first screen of a session, once the telnet negotiation is complete.
+   *
+   * @param session the session which just connected.
+   * @return the screen to send.
+   */
+  HostScreen getWelcomeScreen(HostSession session);
+
+  /**
+   * Handles an AID sent by a session.
+   *
+   * @param session the session which sent the AID.
+   * @param request the AID, cursor position and modified fields sent by the terminal.
+   * @return the screen to send in response, or null to close the session.
+   */
+  HostScreen handleAid(HostSession session, AidRequest request);
+
+  default void sessionClosed(HostSession session) {
+  }
+
+}
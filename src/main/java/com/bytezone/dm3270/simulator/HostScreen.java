@@ -0,0 +1,203 @@
+package com.bytezone.dm3270.simulator;
+
+import com.bytezone.dm3270.Charset;
+import com.bytezone.dm3270.commands.Command;
+import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.orders.BufferAddress;
+import com.bytezone.dm3270.orders.Order;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Screen sent by a {@link HostSimulator} to its sessions.
+ * <p>
+ * Screens are made of protected labels and input fields, placed by row and column (starting from
+ * 1, like in {@link com.bytezone.dm3270.TerminalClient#setFieldTextByCoord(int, int, String)}).
+ * The attribute of each field takes the position before its text, like in a real terminal.
+ * <p>
+ * The data stream of a screen is built the first time it is sent, and reused afterwards, so the
+ * same instance can be sent to many sessions (from any thread) without encoding it each time.
+ */
+public class HostScreen {
+
+  // reset partition, restore keyboard and reset modified flags
+  private static final byte WCC = (byte) 0xC3;
+
+  private static final int PROTECTED = 0x20;
+  private static final int NUMERIC = 0x10;
+  private static final int INTENSIFIED = 0x08;
+  private static final int HIDDEN = 0x0C;
+  private static final int AUTO_SKIP = PROTECTED | NUMERIC;
+
+  private static final byte IAC = (byte) 0xFF;
+  private static final byte EOR = (byte) 0xEF;
+
+  private final ScreenDimensions dimensions;
+  private final List<ScreenField> fields = new ArrayList<>();
+  private int cursorPosition = -1;
+
+  private Charset encodedCharset;
+  private byte[] encoded;
+
+  private static final class ScreenField {
+
+    private final int position;
+    private final int attribute;
+    private final String text;
+    private final int length;
+
+    private ScreenField(int position, int attribute, String text, int length) {
+      this.position = position;
+      this.attribute = attribute;
+      this.text = text;
+      this.length = length;
+    }
+
+    private boolean isInput() {
+      return (attribute & PROTECTED) == 0;
+    }
+
+  }
+
+  public HostScreen() {
+    this(new ScreenDimensions(24, 80));
+  }
+
+  /**
+   * Creates an empty screen.
+   *
+   * @param dimensions dimensions of the screen. Screens with dimensions other than 24x80 are sent
+   * with Erase/Write Alternate, so clients must use them as alternate screen dimensions.
+   */
+  public HostScreen(ScreenDimensions dimensions) {
+    this.dimensions = dimensions;
+  }
+
+  public ScreenDimensions getDimensions() {
+    return dimensions;
+  }
+
+  public int getPosition(int row, int column) {
+    if (row < 1 || row > dimensions.rows || column < 1 || column > dimensions.columns) {
+      throw new IllegalArgumentException("Invalid position " + row + "," + column
+          + " for screen " + dimensions);
+    }
+    return (row - 1) * dimensions.columns + column - 1;
+  }
+
+  public HostScreen addLabel(int row, int column, String text) {
+    return addField(row, column, PROTECTED, text, text.length());
+  }
+
+  public HostScreen addHighlightedLabel(int row, int column, String text) {
+    return addField(row, column, PROTECTED | INTENSIFIED, text, text.length());
+  }
+
+  public HostScreen addInputField(int row, int column, int length) {
+    return addField(row, column, 0, "", length);
+  }
+
+  /**
+   * Adds an input field whose contents are not displayed, like the ones for passwords.
+   *
+   * @param row row of the field attribute.
+   * @param column column of the field attribute.
+   * @param length number of positions of the field, after the attribute.
+   * @return this screen.
+   */
+  public HostScreen addHiddenInputField(int row, int column, int length) {
+    return addField(row, column, HIDDEN, "", length);
+  }
+
+  private synchronized HostScreen addField(int row, int column, int attribute, String text,
+      int length) {
+    if (length <= 0) {
+      throw new IllegalArgumentException("Field length must be positive: " + length);
+    }
+    fields.add(new ScreenField(getPosition(row, column), attribute, text, length));
+    encoded = null;
+    return this;
+  }
+
+  /**
+   * Sets the position of the cursor.
+   * <p>
+   * If none is set, the cursor is placed in the first input field.
+   *
+   * @param row row of the cursor.
+   * @param column column of the cursor.
+   * @return this screen.
+   */
+  public synchronized HostScreen setCursor(int row, int column) {
+    cursorPosition = getPosition(row, column);
+    encoded = null;
+    return this;
+  }
+
+  // gets the 3270 data stream of the screen, with IACs escaped and ending in IAC EOR
+  synchronized byte[] getData(Charset charset) {
+    if (encoded == null || encodedCharset != charset) {
+      encoded = encode(charset);
+      encodedCharset = charset;
+    }
+    return encoded;
+  }
+
+  private byte[] encode(Charset charset) {
+    java.nio.charset.Charset textCharset = java.nio.charset.Charset.forName(charset.name());
+    ByteArrayOutputStream stream = new ByteArrayOutputStream(dimensions.size);
+    boolean alternate = dimensions.rows != 24 || dimensions.columns != 80;
+    stream.write(alternate ? Command.ERASE_WRITE_ALTERNATE_7E : Command.ERASE_WRITE_F5);
+    stream.write(WCC);
+
+    int cursor = cursorPosition;
+    for (ScreenField field : fields) {
+      writeStartField(stream, field.position, field.attribute);
+      byte[] text = field.text.getBytes(textCharset);
+      stream.write(text, 0, text.length);
+      if (field.isInput()) {
+        if (cursor < 0) {
+          cursor = (field.position + 1) % dimensions.size;
+        }
+        // ends the input field, so typing doesn't go beyond its length
+        writeStartField(stream, (field.position + field.length + 1) % dimensions.size, AUTO_SKIP);
+      }
+    }
+    if (cursor >= 0) {
+      writeAddress(stream, cursor);
+      stream.write(Order.INSERT_CURSOR);
+    }
+
+    byte[] data = stream.toByteArray();
+    ByteArrayOutputStream record = new ByteArrayOutputStream(data.length + 16);
+    for (byte value : data) {
+      record.write(value);
+      if (value == IAC) {
+        record.write(IAC);
+      }
+    }
+    record.write(IAC);
+    record.write(EOR);
+    return record.toByteArray();
+  }
+
+  private void writeStartField(ByteArrayOutputStream stream, int position, int attribute) {
+    writeAddress(stream, position);
+    stream.write(Order.START_FIELD);
+    stream.write(BufferAddress.ADDRESS[attribute]);
+  }
+
+  private void writeAddress(ByteArrayOutputStream stream, int position) {
+    byte[] address = new byte[2];
+    new BufferAddress(position).packAddress(address, 0);
+    stream.write(Order.SET_BUFFER_ADDRESS);
+    stream.write(address, 0, address.length);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("HostScreen [dimensions=%s, fields=%d]", dimensions, fields.size());
+  }
+
+}
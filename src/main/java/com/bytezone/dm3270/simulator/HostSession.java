@@ -0,0 +1,65 @@
+package com.bytezone.dm3270.simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Session of a terminal connected to a {@link HostSimulator}.
+ */
+public class HostSession {
+
+  private final int id;
+  private final String luName;
+  private final Map<String, Object> attributes = new HashMap<>();
+  private volatile String terminalType = "";
+  private volatile boolean extended;
+
+  HostSession(int id, String luName) {
+    this.id = id;
+    this.luName = luName;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Gets the name of the logical unit assigned to the session.
+   *
+   * @return the LU name, which is only sent to terminals negotiating TN3270E.
+   */
+  public String getLuName() {
+    return luName;
+  }
+
+  public String getTerminalType() {
+    return terminalType;
+  }
+
+  void setTerminalType(String terminalType) {
+    this.terminalType = terminalType;
+  }
+
+  public boolean isExtended() {
+    return extended;
+  }
+
+  void setExtended(boolean extended) {
+    this.extended = extended;
+  }
+
+  public synchronized Object getAttribute(String name) {
+    return attributes.get(name);
+  }
+
+  public synchronized void setAttribute(String name, Object value) {
+    attributes.put(name, value);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("HostSession [id=%d, luName=%s, terminalType=%s, extended=%s]", id,
+        luName, terminalType, extended);
+  }
+
+}
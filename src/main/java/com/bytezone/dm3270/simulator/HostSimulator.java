@@ -0,0 +1,295 @@
+package com.bytezone.dm3270.simulator;
+
+import com.bytezone.dm3270.Charset;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In process TN3270 host which serves the screens of a {@link HostApplication} to many concurrent
+ * terminals, to test and benchmark clients without a mainframe.
+ * <p>
+ * Connections are multiplexed over a few selector loops (by default one per available processor),
+ * so thousands of sessions can be simulated in a single process. Each connection negotiates
+ * TN3270E (or plain TN3270 when the terminal refuses it), gets the welcome screen of the
+ * application, and then gets the screen returned by the application for each AID it sends, after
+ * the configured host think time.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * HostScreen menu = new HostScreen().addLabel(1, 1, "MENU");
+ * HostSimulator simulator = new HostSimulator(new HostApplication() {
+ *   public HostScreen getWelcomeScreen(HostSession session) {
+ *     return new HostScreen().addLabel(1, 1, "USER").addInputField(1, 6, 8);
+ *   }
+ *
+ *   public HostScreen handleAid(HostSession session, AidRequest request) {
+ *     return menu;
+ *   }
+ * });
+ * simulator.setThinkTimeMillis(50, 150);
+ * simulator.start();
+ * }</pre>
+ */
+public class HostSimulator implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HostSimulator.class);
+  private static final AtomicInteger SIMULATOR_COUNT = new AtomicInteger();
+
+  private final HostApplication application;
+  private String host = "localhost";
+  private int port;
+  private int loopCount = Runtime.getRuntime().availableProcessors();
+  private boolean extended = true;
+  private Charset charset = Charset.CP1047;
+  private int minThinkTimeMillis;
+  private int maxThinkTimeMillis;
+  private int backlog = 1024;
+
+  private ServerSocketChannel serverChannel;
+  private SimulatorLoop[] loops;
+  private final AtomicInteger nextLoop = new AtomicInteger();
+  private final AtomicInteger sessionCount = new AtomicInteger();
+  private final AtomicInteger connectedCount = new AtomicInteger();
+  private final AtomicInteger activeCount = new AtomicInteger();
+  private final LongAdder aidCount = new LongAdder();
+  private final LongAdder screenCount = new LongAdder();
+
+  public HostSimulator(HostApplication application) {
+    this.application = application;
+  }
+
+  public void setHost(String host) {
+    this.host = host;
+  }
+
+  /**
+   * Sets the port where the simulator listens.
+   *
+   * @param port the port number, or 0 (the default) to use any free port, which can be obtained
+   * with {@link #getPort()} once started.
+   */
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public void setLoopCount(int loopCount) {
+    if (loopCount <= 0) {
+      throw new IllegalArgumentException("Loop count must be positive: " + loopCount);
+    }
+    this.loopCount = loopCount;
+  }
+
+  public void setBacklog(int backlog) {
+    this.backlog = backlog;
+  }
+
+  /**
+   * Sets whether TN3270E is offered to the terminals.
+   *
+   * @param extended true (the default) to offer TN3270E, or false to only use plain TN3270.
+   */
+  public void setExtended(boolean extended) {
+    this.extended = extended;
+  }
+
+  public boolean isExtended() {
+    return extended;
+  }
+
+  public void setCharset(Charset charset) {
+    this.charset = charset;
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Sets the time the host takes to respond to each AID.
+   *
+   * @param minThinkTimeMillis minimum delay before sending the response to an AID.
+   * @param maxThinkTimeMillis maximum delay. Each response is delayed by a random time between
+   * both values. By default responses are not delayed.
+   */
+  public void setThinkTimeMillis(int minThinkTimeMillis, int maxThinkTimeMillis) {
+    if (minThinkTimeMillis < 0 || maxThinkTimeMillis < minThinkTimeMillis) {
+      throw new IllegalArgumentException("Invalid think time range: " + minThinkTimeMillis
+          + " - " + maxThinkTimeMillis);
+    }
+    this.minThinkTimeMillis = minThinkTimeMillis;
+    this.maxThinkTimeMillis = maxThinkTimeMillis;
+  }
+
+  HostApplication getApplication() {
+    return application;
+  }
+
+  /**
+   * Starts listening for connections.
+   *
+   * @throws IOException if the port can't be bound.
+   */
+  public void start() throws IOException {
+    if (serverChannel != null) {
+      throw new IllegalStateException("Simulator has already been started");
+    }
+    charset.load();
+    int simulatorId = SIMULATOR_COUNT.incrementAndGet();
+    loops = new SimulatorLoop[loopCount];
+    try {
+      for (int i = 0; i < loopCount; i++) {
+        loops[i] = new SimulatorLoop(String.format("dm3270-simulator-%d-%d", simulatorId, i));
+      }
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      serverChannel.bind(new InetSocketAddress(host, port), backlog);
+      serverChannel.configureBlocking(false);
+      port = serverChannel.socket().getLocalPort();
+      loops[0].register(serverChannel, SelectionKey.OP_ACCEPT, this);
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw e;
+    }
+    for (SimulatorLoop loop : loops) {
+      loop.start();
+    }
+    LOG.debug("Host simulator listening on {}:{} with {} loops", host, port, loopCount);
+  }
+
+  // invoked from the first loop when connections are pending
+  void accept() {
+    try {
+      SocketChannel channel = serverChannel.accept();
+      while (channel != null) {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        int id = sessionCount.incrementAndGet();
+        HostSession session = new HostSession(id, String.format("SIM%05d", id));
+        SimulatorLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+        SimulatedConnection connection = new SimulatedConnection(this, loop, channel, session);
+        activeCount.incrementAndGet();
+        loop.execute(() -> startConnection(connection));
+        channel = serverChannel.accept();
+      }
+    } catch (IOException e) {
+      LOG.warn("Problem accepting connection", e);
+    }
+  }
+
+  private void startConnection(SimulatedConnection connection) {
+    try {
+      connection.start();
+    } catch (IOException e) {
+      LOG.warn("Problem starting simulated connection", e);
+      connection.close();
+    }
+  }
+
+  long nextThinkTimeNanos() {
+    if (maxThinkTimeMillis == 0) {
+      return 0;
+    }
+    long millis = minThinkTimeMillis == maxThinkTimeMillis ? minThinkTimeMillis
+        : ThreadLocalRandom.current().nextLong(minThinkTimeMillis, maxThinkTimeMillis + 1L);
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  void sessionConnected() {
+    connectedCount.incrementAndGet();
+  }
+
+  void aidReceived() {
+    aidCount.increment();
+  }
+
+  void screenSent() {
+    screenCount.increment();
+  }
+
+  void sessionClosed(HostSession session, boolean connected) {
+    activeCount.decrementAndGet();
+    if (connected) {
+      connectedCount.decrementAndGet();
+      try {
+        application.sessionClosed(session);
+      } catch (RuntimeException e) {
+        LOG.warn("Problem notifying closed {}", session, e);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of open connections, including the ones still negotiating.
+   *
+   * @return the number of open connections.
+   */
+  public int getActiveConnectionCount() {
+    return activeCount.get();
+  }
+
+  /**
+   * Gets the number of sessions which completed the negotiation and are still connected.
+   *
+   * @return the number of connected sessions.
+   */
+  public int getConnectedSessionCount() {
+    return connectedCount.get();
+  }
+
+  public long getAcceptedCount() {
+    return sessionCount.get();
+  }
+
+  public long getAidCount() {
+    return aidCount.sum();
+  }
+
+  public long getScreenCount() {
+    return screenCount.sum();
+  }
+
+  /**
+   * Stops listening and closes all the connections.
+   */
+  @Override
+  public void close() {
+    if (serverChannel != null) {
+      try {
+        serverChannel.close();
+      } catch (IOException e) {
+        LOG.debug("Problem closing server channel", e);
+      }
+    }
+    if (loops != null) {
+      for (SimulatorLoop loop : loops) {
+        if (loop != null) {
+          loop.shutdown();
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("HostSimulator [host=%s, port=%d, loops=%d, extended=%s, "
+            + "thinkTime=%d-%dms, active=%d, connected=%d, accepted=%d, aids=%d, screens=%d]",
+        host, port, loopCount, extended, minThinkTimeMillis, maxThinkTimeMillis,
+        getActiveConnectionCount(), getConnectedSessionCount(), getAcceptedCount(),
+        getAidCount(), getScreenCount());
+  }
+
+}
@@ -0,0 +1,407 @@
+package com.bytezone.dm3270.simulator;
+
+import com.bytezone.dm3270.Charset;
+import com.bytezone.dm3270.orders.BufferAddress;
+import com.bytezone.dm3270.orders.Order;
+import com.bytezone.dm3270.streams.TelnetState;
+import com.bytezone.dm3270.telnet.TN3270ExtendedSubcommand;
+import com.bytezone.dm3270.telnet.TelnetCommand;
+import com.bytezone.dm3270.telnet.TelnetCommandProcessor;
+import com.bytezone.dm3270.telnet.TelnetProcessor;
+import com.bytezone.dm3270.telnet.TelnetSubcommand;
+import com.bytezone.dm3270.telnet.TerminalTypeSubcommand;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Server side of a terminal connection to a HostSimulator. It negotiates TN3270E, falling back
+// to plain TN3270 (terminal type, EOR and binary) when the terminal refuses it, and then hands
+// the AIDs to the HostApplication. The telnet commands sent by the terminal are parsed and
+// applied to a TelnetState with the same classes used by the client, and all the work is done
+// in the thread of the loop owning the connection.
+//
+// Like any telnet server following RFC 1143, options the terminal offers or asks for without
+// being requested (as terminals pipelining their negotiation do) are acknowledged and not
+// requested again.
+class SimulatedConnection implements TelnetCommandProcessor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SimulatedConnection.class);
+
+  private static final byte IAC = TelnetCommand.IAC;
+  private static final byte SB = TelnetCommand.SB;
+  private static final byte SE = TelnetCommand.SE;
+  private static final byte WILL = (byte) 0xFB;
+  private static final byte WONT = (byte) 0xFC;
+  private static final byte DO = (byte) 0xFD;
+  private static final byte DONT = (byte) 0xFE;
+
+  private static final byte TERMINAL_TYPE_SEND = 1;
+  private static final byte EXT_CONNECT = 1;
+  private static final byte EXT_DEVICE_TYPE = 2;
+  private static final byte EXT_FUNCTIONS = 3;
+  private static final byte EXT_IS = 4;
+  private static final byte EXT_REQUEST = 7;
+  private static final byte EXT_SEND = 8;
+  private static final byte TN3270_DATA = 0;
+  private static final int EXTENDED_HEADER_SIZE = 5;
+
+  private final HostSimulator simulator;
+  private final SimulatorLoop loop;
+  private final SocketChannel channel;
+  private final HostSession session;
+  private final Charset charset;
+  private final TelnetState telnetState = new TelnetState();
+  private final TelnetProcessor telnetProcessor = new TelnetProcessor(this);
+  private final Deque<ByteBuffer> outbound = new ArrayDeque<>();
+  private SelectionKey key;
+  // options the terminal agreed to send (WILL) or to receive (DO), and the ones requested to it
+  private final boolean[] terminalWill = new boolean[256];
+  private final boolean[] terminalDo = new boolean[256];
+  private final boolean[] doRequested = new boolean[256];
+  private final boolean[] willRequested = new boolean[256];
+  private Phase phase;
+  private int sequence;
+  private int columns = 80;
+  private boolean closeWhenFlushed;
+  private boolean closed;
+
+  private enum Phase {
+    TN3270E_OFFERED, DEVICE_TYPE, TERMINAL_TYPE, OPTIONS, CONNECTED
+  }
+
+  SimulatedConnection(HostSimulator simulator, SimulatorLoop loop, SocketChannel channel,
+      HostSession session) {
+    this.simulator = simulator;
+    this.loop = loop;
+    this.channel = channel;
+    this.session = session;
+    this.charset = simulator.getCharset();
+  }
+
+  void start() throws IOException {
+    key = loop.register(channel, SelectionKey.OP_READ, this);
+    if (simulator.isExtended()) {
+      phase = Phase.TN3270E_OFFERED;
+      send(IAC, DO, TelnetSubcommand.TN3270E);
+    } else {
+      requestTerminalType();
+    }
+  }
+
+  void read(ByteBuffer buffer) {
+    try {
+      buffer.clear();
+      int bytesRead = channel.read(buffer);
+      if (bytesRead < 0) {
+        close();
+        return;
+      }
+      telnetProcessor.listen(buffer.array(), 0, bytesRead);
+    } catch (IOException e) {
+      LOG.debug("Problem reading from {}", session, e);
+      close();
+    } catch (RuntimeException e) {
+      LOG.warn("Problem processing data received from {}", session, e);
+      close();
+    }
+  }
+
+  @Override
+  public void processData(byte[] buffer, int length) {
+    LOG.debug("Ignoring unexpected data from {}", session);
+  }
+
+  @Override
+  public void processTelnetCommand(byte[] data, int length) {
+    if (length != 3) {
+      return;               // NOOPs sent by terminals to keep the connection alive
+    }
+    // updates the telnet state as agreed by the terminal
+    new TelnetCommand(telnetState, data, length).process(null);
+    byte option = data[2];
+    if (phase == Phase.TN3270E_OFFERED && option == TelnetSubcommand.TN3270E) {
+      if (data[1] == WILL) {
+        phase = Phase.DEVICE_TYPE;
+        send(IAC, SB, TelnetSubcommand.TN3270E, EXT_SEND, EXT_DEVICE_TYPE, IAC, SE);
+      } else {
+        requestTerminalType();
+      }
+    } else if (phase != Phase.CONNECTED && (option == TelnetSubcommand.TERMINAL_TYPE
+        || option == TelnetSubcommand.EOR || option == TelnetSubcommand.BINARY)) {
+      processOption(data[1], option);
+    }
+  }
+
+  private void processOption(byte command, byte option) {
+    int index = option & 0xFF;
+    if (command == WONT || command == DONT) {
+      if (phase == Phase.TERMINAL_TYPE || phase == Phase.OPTIONS) {
+        LOG.debug("{} refused option {}", session, index);
+        close();
+      }
+      return;
+    }
+    if (command == WILL) {
+      if (doRequested[index]) {
+        doRequested[index] = false;
+      } else {
+        send(IAC, DO, option);
+      }
+      terminalWill[index] = true;
+    } else if (command == DO) {
+      if (willRequested[index]) {
+        willRequested[index] = false;
+      } else {
+        send(IAC, WILL, option);
+      }
+      terminalDo[index] = true;
+    }
+    if (phase == Phase.TERMINAL_TYPE && option == TelnetSubcommand.TERMINAL_TYPE) {
+      sendTerminalTypeRequest();
+    } else if (phase == Phase.OPTIONS && areOptionsAgreed()) {
+      connected();
+    }
+  }
+
+  private boolean areOptionsAgreed() {
+    return terminalWill[TelnetSubcommand.EOR] && terminalDo[TelnetSubcommand.EOR]
+        && terminalWill[TelnetSubcommand.BINARY] && terminalDo[TelnetSubcommand.BINARY];
+  }
+
+  @Override
+  public void processTelnetSubcommand(byte[] data, int length) {
+    if (data[2] == TelnetSubcommand.TERMINAL_TYPE && phase == Phase.TERMINAL_TYPE) {
+      TerminalTypeSubcommand subcommand =
+          new TerminalTypeSubcommand(data, 0, length, telnetState);
+      session.setTerminalType(subcommand.getValue());
+      phase = Phase.OPTIONS;
+      if (areOptionsAgreed()) {
+        connected();
+        return;
+      }
+      requestOption(TelnetSubcommand.EOR);
+      requestOption(TelnetSubcommand.BINARY);
+    } else if (data[2] == TelnetSubcommand.TN3270E && phase == Phase.DEVICE_TYPE) {
+      TN3270ExtendedSubcommand subcommand =
+          new TN3270ExtendedSubcommand(data, 0, length, telnetState);
+      if (data[3] == EXT_DEVICE_TYPE && data[4] == EXT_REQUEST) {
+        // the requested type may be followed by CONNECT and a LU name, which are ignored
+        String deviceType = subcommand.getValue();
+        int connect = deviceType.indexOf(EXT_CONNECT);
+        session.setTerminalType(connect < 0 ? deviceType : deviceType.substring(0, connect));
+        sendDeviceType();
+      } else if (data[3] == EXT_FUNCTIONS && data[4] == EXT_REQUEST) {
+        // no function is supported, so records never need responses
+        send(IAC, SB, TelnetSubcommand.TN3270E, EXT_FUNCTIONS, EXT_IS, IAC, SE);
+        telnetState.setDoes3270Extended(true);
+        connected();
+      }
+    }
+  }
+
+  private void requestTerminalType() {
+    telnetState.setDoes3270Extended(false);
+    phase = Phase.TERMINAL_TYPE;
+    if (terminalWill[TelnetSubcommand.TERMINAL_TYPE]) {
+      sendTerminalTypeRequest();
+    } else {
+      doRequested[TelnetSubcommand.TERMINAL_TYPE] = true;
+      send(IAC, DO, TelnetSubcommand.TERMINAL_TYPE);
+    }
+  }
+
+  private void sendTerminalTypeRequest() {
+    send(IAC, SB, TelnetSubcommand.TERMINAL_TYPE, TERMINAL_TYPE_SEND, IAC, SE);
+  }
+
+  private void requestOption(byte option) {
+    int index = option & 0xFF;
+    if (!terminalWill[index] && !doRequested[index]) {
+      doRequested[index] = true;
+      send(IAC, DO, option);
+    }
+    if (!terminalDo[index] && !willRequested[index]) {
+      willRequested[index] = true;
+      send(IAC, WILL, option);
+    }
+  }
+
+  private void sendDeviceType() {
+    byte[] deviceType = session.getTerminalType().getBytes(StandardCharsets.US_ASCII);
+    byte[] luName = session.getLuName().getBytes(StandardCharsets.US_ASCII);
+    ByteBuffer buffer = ByteBuffer.allocate(8 + deviceType.length + luName.length);
+    buffer.put(IAC).put(SB).put(TelnetSubcommand.TN3270E).put(EXT_DEVICE_TYPE).put(EXT_IS)
+        .put(deviceType)
+        .put(EXT_CONNECT)
+        .put(luName)
+        .put(IAC).put(SE);
+    buffer.flip();
+    write(buffer);
+  }
+
+  private void connected() {
+    phase = Phase.CONNECTED;
+    session.setExtended(telnetState.does3270Extended());
+    simulator.sessionConnected();
+    sendScreen(simulator.getApplication().getWelcomeScreen(session));
+  }
+
+  @Override
+  public void processRecord(byte[] data, int offset, int length) {
+    if (phase != Phase.CONNECTED) {
+      return;
+    }
+    int start = offset;
+    int end = offset + length - 2;          // exclude IAC/EOR
+    if (session.isExtended()) {
+      if (length < EXTENDED_HEADER_SIZE + 2 || data[start] != TN3270_DATA) {
+        return;
+      }
+      start += EXTENDED_HEADER_SIZE;
+    }
+    if (start >= end) {
+      return;
+    }
+    // the record is a view of the read buffer, so it is parsed before delaying the response
+    AidRequest request = parseAid(data, start, end);
+    simulator.aidReceived();
+    long thinkTimeNanos = simulator.nextThinkTimeNanos();
+    if (thinkTimeNanos > 0) {
+      loop.schedule(() -> respond(request), thinkTimeNanos);
+    } else {
+      respond(request);
+    }
+  }
+
+  private AidRequest parseAid(byte[] data, int start, int end) {
+    byte aid = data[start];
+    int cursor = end - start >= 3 ? new BufferAddress(data[start + 1], data[start + 2])
+        .getLocation() : -1;
+    Map<Integer, String> fields = new HashMap<>();
+    int ptr = start + 3;
+    while (ptr + 2 < end) {
+      if (data[ptr] != Order.SET_BUFFER_ADDRESS) {
+        ptr++;
+        continue;
+      }
+      int position = new BufferAddress(data[ptr + 1], data[ptr + 2]).getLocation();
+      int textStart = ptr + 3;
+      ptr = textStart;
+      while (ptr < end && data[ptr] != Order.SET_BUFFER_ADDRESS) {
+        ptr++;
+      }
+      fields.put(position, charset.getString(data, textStart, ptr - textStart)
+          .replace("\0", ""));
+    }
+    return new AidRequest(aid, cursor, fields, columns);
+  }
+
+  private void respond(AidRequest request) {
+    if (closed) {
+      return;
+    }
+    HostScreen screen;
+    try {
+      screen = simulator.getApplication().handleAid(session, request);
+    } catch (RuntimeException e) {
+      LOG.warn("Problem handling {} from {}", request, session, e);
+      close();
+      return;
+    }
+    if (screen == null) {
+      closeWhenFlushed = true;
+      flush();
+    } else {
+      sendScreen(screen);
+    }
+  }
+
+  private void sendScreen(HostScreen screen) {
+    columns = screen.getDimensions().columns;
+    ByteBuffer data = ByteBuffer.wrap(screen.getData(charset));
+    if (session.isExtended()) {
+      write(buildHeader(), data);
+    } else {
+      write(data);
+    }
+    simulator.screenSent();
+  }
+
+  // the header is part of the record, so IACs in the sequence number have to be doubled
+  private ByteBuffer buildHeader() {
+    ByteBuffer header = ByteBuffer.allocate(7);
+    header.put(TN3270_DATA).put((byte) 0).put((byte) 0);
+    for (byte value : new byte[]{(byte) (sequence >> 8), (byte) sequence}) {
+      header.put(value);
+      if (value == IAC) {
+        header.put(IAC);
+      }
+    }
+    sequence = (sequence + 1) & 0xFFFF;
+    header.flip();
+    return header;
+  }
+
+  private void send(byte... command) {
+    write(ByteBuffer.wrap(command));
+  }
+
+  private void write(ByteBuffer... buffers) {
+    if (closed) {
+      return;
+    }
+    for (ByteBuffer buffer : buffers) {
+      outbound.add(buffer);
+    }
+    flush();
+  }
+
+  void flush() {
+    try {
+      while (!outbound.isEmpty()) {
+        ByteBuffer buffer = outbound.peek();
+        channel.write(buffer);
+        if (buffer.hasRemaining()) {
+          key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+          return;
+        }
+        outbound.poll();
+      }
+      if (key.isValid()) {
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+      }
+      if (closeWhenFlushed) {
+        close();
+      }
+    } catch (IOException e) {
+      LOG.debug("Problem writing to {}", session, e);
+      close();
+    }
+  }
+
+  void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    outbound.clear();
+    if (key != null) {
+      key.cancel();
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.debug("Problem closing connection of {}", session, e);
+    }
+    simulator.sessionClosed(session, phase == Phase.CONNECTED);
+  }
+
+}
@@ -0,0 +1,190 @@
+package com.bytezone.dm3270.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Single threaded selector loop of a HostSimulator. All the channel operations of the
+// connections registered in a loop are executed by its thread, which also runs the delayed
+// responses (host think time) so they have millisecond precision without any extra thread.
+class SimulatorLoop implements Runnable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SimulatorLoop.class);
+
+  private static final int READ_BUFFER_SIZE = 4096;
+
+  private final Selector selector;
+  private final Thread thread;
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final PriorityQueue<DelayedTask> delayedTasks = new PriorityQueue<>();
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+  private volatile boolean running = true;
+  private long delayedTaskCount;
+
+  private static final class DelayedTask implements Comparable<DelayedTask> {
+
+    private final Runnable task;
+    private final long deadlineNanos;
+    private final long sequence;
+
+    private DelayedTask(Runnable task, long deadlineNanos, long sequence) {
+      this.task = task;
+      this.deadlineNanos = deadlineNanos;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(DelayedTask other) {
+      int comparison = Long.compare(deadlineNanos - other.deadlineNanos, 0);
+      return comparison != 0 ? comparison : Long.compare(sequence, other.sequence);
+    }
+
+  }
+
+  SimulatorLoop(String name) throws IOException {
+    selector = Selector.open();
+    thread = new Thread(this, name);
+    thread.setDaemon(true);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  void execute(Runnable task) {
+    tasks.add(task);
+    if (Thread.currentThread() != thread) {
+      selector.wakeup();
+    }
+  }
+
+  // must only be called from the loop thread
+  void schedule(Runnable task, long delayNanos) {
+    delayedTasks.add(new DelayedTask(task, System.nanoTime() + delayNanos, delayedTaskCount++));
+  }
+
+  SelectionKey register(SelectableChannel channel, int ops, Object attachment)
+      throws ClosedChannelException {
+    return channel.register(selector, ops, attachment);
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        select();
+        runTasks();
+        runDelayedTasks();
+        processSelectedKeys();
+      } catch (IOException e) {
+        LOG.error("Problem while selecting in {}", thread.getName(), e);
+      } catch (RuntimeException e) {
+        LOG.error("Unexpected error in {}", thread.getName(), e);
+      }
+    }
+    closeAll();
+  }
+
+  private void select() throws IOException {
+    // tasks queued by the loop thread itself don't wake up the selector
+    if (!tasks.isEmpty()) {
+      selector.selectNow();
+      return;
+    }
+    DelayedTask next = delayedTasks.peek();
+    if (next == null) {
+      selector.select();
+      return;
+    }
+    long delayMillis = TimeUnit.NANOSECONDS.toMillis(next.deadlineNanos - System.nanoTime());
+    if (delayMillis <= 0) {
+      selector.selectNow();
+    } else {
+      selector.select(delayMillis);
+    }
+  }
+
+  private void runTasks() {
+    Runnable task = tasks.poll();
+    while (task != null) {
+      runSafely(task);
+      task = tasks.poll();
+    }
+  }
+
+  private void runDelayedTasks() {
+    long now = System.nanoTime();
+    DelayedTask next = delayedTasks.peek();
+    while (next != null && next.deadlineNanos - now <= 0) {
+      delayedTasks.poll();
+      runSafely(next.task);
+      next = delayedTasks.peek();
+    }
+  }
+
+  private void runSafely(Runnable task) {
+    try {
+      task.run();
+    } catch (RuntimeException e) {
+      LOG.error("Problem running task in {}", thread.getName(), e);
+    }
+  }
+
+  private void processSelectedKeys() {
+    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+    while (keys.hasNext()) {
+      SelectionKey key = keys.next();
+      keys.remove();
+      if (!key.isValid()) {
+        continue;
+      }
+      if (key.isAcceptable()) {
+        ((HostSimulator) key.attachment()).accept();
+        continue;
+      }
+      SimulatedConnection connection = (SimulatedConnection) key.attachment();
+      if (key.isWritable()) {
+        connection.flush();
+      }
+      if (key.isValid() && key.isReadable()) {
+        connection.read(readBuffer);
+      }
+    }
+  }
+
+  void shutdown() {
+    running = false;
+    selector.wakeup();
+  }
+
+  private void closeAll() {
+    runTasks();
+    for (SelectionKey key : selector.keys()) {
+      if (key.attachment() instanceof SimulatedConnection) {
+        ((SimulatedConnection) key.attachment()).close();
+      }
+    }
+    delayedTasks.clear();
+    try {
+      selector.close();
+    } catch (IOException e) {
+      LOG.debug("Problem closing selector of {}", thread.getName(), e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SimulatorLoop %s", thread.getName());
+  }
+
+}
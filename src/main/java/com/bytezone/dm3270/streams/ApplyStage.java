@@ -0,0 +1,199 @@
+package com.bytezone.dm3270.streams;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread applying the records received by one or more sessions to their screens, decoupled from
+ * the threads reading from the sockets.
+ * <p>
+ * Readers only split the received data in records and queue them, so slow screen listeners
+ * don't stall socket reads. When the queue reaches its capacity, the connections queueing
+ * records stop reading until it drains to half of it, so the TCP window applies backpressure to
+ * the server instead of buffering without limit. Records of each session are applied in order,
+ * since a single thread applies all of them.
+ */
+public class ApplyStage {
+
+  public static final int DEFAULT_CAPACITY = 256;
+
+  private static final Logger LOG = LoggerFactory.getLogger(ApplyStage.class);
+  private static final AtomicInteger STAGE_COUNT = new AtomicInteger();
+
+  private final int capacity;
+  private final BlockingQueue<QueuedRecord> queue = new LinkedBlockingQueue<>();
+  private final Set<TerminalConnection> pausedConnections = ConcurrentHashMap.newKeySet();
+  // pausing and resuming are decided under this lock, with the queue depth read while holding
+  // it, so a connection can't be paused after the record resuming it has been applied
+  private final Object pauseLock = new Object();
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  // metrics
+  private final LongAdder appliedCount = new LongAdder();
+  private final LongAdder waitNanos = new LongAdder();
+  private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+  private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+  private final LongAdder pauseCount = new LongAdder();
+
+  private static final class QueuedRecord {
+
+    private final Runnable task;
+    private final TerminalConnection connection;
+    private final long queuedNanos;
+
+    private QueuedRecord(Runnable task, TerminalConnection connection) {
+      this.task = task;
+      this.connection = connection;
+      this.queuedNanos = System.nanoTime();
+    }
+
+  }
+
+  public ApplyStage() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public ApplyStage(int capacity) {
+    this(capacity, ThreadFactories.platform());
+  }
+
+  /**
+   * Creates and starts an apply stage.
+   *
+   * @param capacity number of queued records from which connections stop reading.
+   * @param threadFactory factory of the thread applying the records.
+   */
+  public ApplyStage(int capacity, ThreadFactory threadFactory) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    thread = threadFactory.newThread(this::run);
+    thread.setName("dm3270-apply-" + STAGE_COUNT.incrementAndGet());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  void submit(Runnable task, TerminalConnection connection) {
+    if (!running) {
+      throw new IllegalStateException("Apply stage has already been shut down");
+    }
+    queue.add(new QueuedRecord(task, connection));
+    maxQueueDepth.accumulate(queue.size());
+    if (connection == null) {
+      return;
+    }
+    synchronized (pauseLock) {
+      // the records still queued are applied after this, and each one checks for resuming
+      if (queue.size() >= capacity && pausedConnections.add(connection)) {
+        pauseCount.increment();
+        connection.pauseReading();
+      }
+    }
+  }
+
+  private void run() {
+    while (running) {
+      QueuedRecord record;
+      try {
+        record = queue.take();
+      } catch (InterruptedException e) {
+        break;
+      }
+      long waited = System.nanoTime() - record.queuedNanos;
+      waitNanos.add(waited);
+      maxWaitNanos.accumulate(waited);
+      try {
+        record.task.run();
+      } catch (RuntimeException e) {
+        LOG.error("Problem applying record received from {}", record.connection, e);
+      }
+      appliedCount.increment();
+      if (!pausedConnections.isEmpty()) {
+        synchronized (pauseLock) {
+          if (queue.size() <= capacity / 2) {
+            resumeConnections();
+          }
+        }
+      }
+    }
+  }
+
+  // must be called holding pauseLock
+  private void resumeConnections() {
+    for (TerminalConnection connection : pausedConnections) {
+      pausedConnections.remove(connection);
+      connection.resumeReading();
+    }
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  public long getMaxQueueDepth() {
+    return maxQueueDepth.get();
+  }
+
+  public long getAppliedCount() {
+    return appliedCount.sum();
+  }
+
+  /**
+   * Gets how many times connections were paused because the queue was full.
+   *
+   * @return number of pauses since the stage was created.
+   */
+  public long getPauseCount() {
+    return pauseCount.sum();
+  }
+
+  /**
+   * Gets the average time records waited in the queue before being applied.
+   *
+   * @return the average wait, or zero if no record has been applied yet.
+   */
+  public Duration getAverageWaitTime() {
+    long count = appliedCount.sum();
+    return count == 0 ? Duration.ZERO : Duration.ofNanos(waitNanos.sum() / count);
+  }
+
+  public Duration getMaxWaitTime() {
+    return Duration.ofNanos(maxWaitNanos.get());
+  }
+
+  /**
+   * Stops the thread of the stage, discarding any queued record.
+   */
+  public void shutdown() {
+    running = false;
+    thread.interrupt();
+    queue.clear();
+    synchronized (pauseLock) {
+      resumeConnections();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ApplyStage [capacity=%d, depth=%d, maxDepth=%d, applied=%d, "
+            + "pauses=%d, averageWait=%s, maxWait=%s]", capacity, getQueueDepth(),
+        getMaxQueueDepth(), getAppliedCount(), getPauseCount(), getAverageWaitTime(),
+        getMaxWaitTime());
+  }
+
+}
@@ -1,12 +1,22 @@
 package com.bytezone.dm3270.streams;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
 
 public interface BufferListener {
 
   void listen(TelnetSocket.Source targetRole, byte[] message, LocalDateTime dateTime,
               boolean genuine);
 
+  // Called by transports with a slice of their read buffer, which is reused once this
+  // method returns, so any data to be kept must be copied. The time comes from
+  // System.nanoTime() and is only meaningful to compare with other such values.
+  default void listen(TelnetSocket.Source targetRole, byte[] buffer, int offset, int length,
+      long nanoTime) {
+    listen(targetRole, Arrays.copyOfRange(buffer, offset, offset + length), LocalDateTime.now(),
+        true);
+  }
+
   void close();
 
 }
@@ -0,0 +1,131 @@
+package com.bytezone.dm3270.streams;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Single threaded selector loop. All the channel operations of the sessions registered in a
+// loop are executed by its thread, other threads hand work to it through execute().
+class EventLoop implements Runnable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EventLoop.class);
+
+  private static final int READ_BUFFER_SIZE = 4096;
+
+  private final EventLoopGroup group;
+  private final Selector selector;
+  private final Thread thread;
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+  private volatile boolean running = true;
+
+  EventLoop(EventLoopGroup group, String name) throws IOException {
+    this.group = group;
+    this.selector = Selector.open();
+    this.thread = new Thread(this, name);
+    this.thread.setDaemon(true);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  boolean inEventLoop() {
+    return Thread.currentThread() == thread;
+  }
+
+  void execute(Runnable task) {
+    tasks.add(task);
+    if (!inEventLoop()) {
+      selector.wakeup();
+    }
+  }
+
+  SelectionKey register(SelectableChannel channel, int ops, NioTerminalServer session)
+      throws ClosedChannelException {
+    return channel.register(selector, ops, session);
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        selector.select();
+        runTasks();
+        processSelectedKeys();
+      } catch (IOException e) {
+        LOG.error("Problem while selecting in {}", thread.getName(), e);
+      } catch (RuntimeException e) {
+        LOG.error("Unexpected error in {}", thread.getName(), e);
+      }
+    }
+    closeAll();
+  }
+
+  private void runTasks() {
+    Runnable task = tasks.poll();
+    while (task != null) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        LOG.error("Problem running task in {}", thread.getName(), e);
+      }
+      task = tasks.poll();
+    }
+  }
+
+  private void processSelectedKeys() {
+    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+    int readBudget = group.getReadBudget();
+    while (keys.hasNext()) {
+      SelectionKey key = keys.next();
+      keys.remove();
+      NioTerminalServer session = (NioTerminalServer) key.attachment();
+      if (!key.isValid()) {
+        continue;
+      }
+      if (key.isConnectable()) {
+        session.finishConnect();
+      }
+      if (key.isValid() && key.isWritable()) {
+        session.flush();
+      }
+      // a session which exhausts its budget is still ready on next select, after other ones
+      if (key.isValid() && key.isReadable()) {
+        session.read(readBuffer, readBudget);
+      }
+    }
+  }
+
+  void shutdown() {
+    running = false;
+    selector.wakeup();
+  }
+
+  private void closeAll() {
+    runTasks();
+    for (SelectionKey key : selector.keys()) {
+      ((NioTerminalServer) key.attachment()).close();
+    }
+    runTasks();
+    try {
+      selector.close();
+    } catch (IOException e) {
+      LOG.debug("Problem closing selector of {}", thread.getName(), e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("EventLoop %s", thread.getName());
+  }
+
+}
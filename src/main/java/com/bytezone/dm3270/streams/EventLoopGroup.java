@@ -0,0 +1,93 @@
+package com.bytezone.dm3270.streams;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of selector driven event loops shared by terminal sessions.
+ * <p>
+ * Sessions connected through an event loop group don't own any thread: their socket reads and
+ * writes are multiplexed over a small number of loops (by default one per available processor),
+ * and received bytes are handed to the session {@link BufferListener} from the loop thread.
+ * <p>
+ * To keep one chatty host from starving the rest, a loop reads at most {@link #getReadBudget()}
+ * bytes from a session before moving on to the next ready one.
+ * <p>
+ * A single group is meant to be shared by many clients and must be shut down with {@link
+ * #shutdown()} once it is no longer used.
+ */
+public class EventLoopGroup {
+
+  public static final int DEFAULT_READ_BUDGET = 16 * 1024;
+
+  private static final AtomicInteger GROUP_COUNT = new AtomicInteger();
+
+  private final EventLoop[] loops;
+  private final AtomicInteger nextLoop = new AtomicInteger();
+  private volatile int readBudget = DEFAULT_READ_BUDGET;
+
+  public EventLoopGroup() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a group with the given number of event loops.
+   *
+   * @param loopCount number of loops (and threads) in the group.
+   */
+  public EventLoopGroup(int loopCount) {
+    if (loopCount <= 0) {
+      throw new IllegalArgumentException("Loop count must be positive: " + loopCount);
+    }
+    int groupId = GROUP_COUNT.incrementAndGet();
+    loops = new EventLoop[loopCount];
+    try {
+      for (int i = 0; i < loopCount; i++) {
+        loops[i] = new EventLoop(this, String.format("dm3270-loop-%d-%d", groupId, i));
+      }
+    } catch (IOException e) {
+      shutdown();
+      throw new UncheckedIOException(e);
+    }
+    for (EventLoop loop : loops) {
+      loop.start();
+    }
+  }
+
+  /**
+   * Sets the maximum number of bytes read from one session each time a loop visits it.
+   *
+   * @param readBudget number of bytes. Defaults to {@link #DEFAULT_READ_BUDGET}.
+   */
+  public void setReadBudget(int readBudget) {
+    if (readBudget <= 0) {
+      throw new IllegalArgumentException("Read budget must be positive: " + readBudget);
+    }
+    this.readBudget = readBudget;
+  }
+
+  public int getReadBudget() {
+    return readBudget;
+  }
+
+  public int getLoopCount() {
+    return loops.length;
+  }
+
+  EventLoop next() {
+    return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+  }
+
+  /**
+   * Stops all the loops of the group closing any connection still open.
+   */
+  public void shutdown() {
+    for (EventLoop loop : loops) {
+      if (loop != null) {
+        loop.shutdown();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,55 @@
+package com.bytezone.dm3270.streams;
+
+import java.util.concurrent.TimeUnit;
+
+// Runs a task each time there is no activity for a given interval. Registering activity just
+// updates a timestamp, and the wheel timeout is lazily rescheduled for the remaining time when
+// it expires before the interval has elapsed since the last activity.
+class IdleTimer {
+
+  private final TimerWheel wheel;
+  private final long intervalNanos;
+  private final Runnable onIdle;
+  private volatile long lastActivity;
+  private boolean stopped;
+  private TimerWheel.Timeout timeout;
+
+  IdleTimer(TimerWheel wheel, long intervalMillis, Runnable onIdle) {
+    this.wheel = wheel;
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    this.onIdle = onIdle;
+  }
+
+  void start() {
+    touch();
+    schedule(intervalNanos);
+  }
+
+  void touch() {
+    lastActivity = System.nanoTime();
+  }
+
+  private void check() {
+    long idleNanos = System.nanoTime() - lastActivity;
+    if (idleNanos >= intervalNanos) {
+      onIdle.run();
+      schedule(intervalNanos);
+    } else {
+      schedule(intervalNanos - idleNanos);
+    }
+  }
+
+  private synchronized void schedule(long delayNanos) {
+    if (!stopped) {
+      timeout = wheel.schedule(this::check, delayNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  synchronized void stop() {
+    stopped = true;
+    if (timeout != null) {
+      timeout.cancel();
+    }
+  }
+
+}
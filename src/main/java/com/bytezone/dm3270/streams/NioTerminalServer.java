@@ -0,0 +1,396 @@
+package com.bytezone.dm3270.streams;
+
+import com.bytezone.dm3270.ConnectionListener;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non blocking counterpart of {@link TerminalServer} which runs on an {@link EventLoopGroup}.
+ * <p>
+ * All channel operations happen in the thread of the event loop assigned to the session, which
+ * is also the thread invoking the {@link BufferListener}. When an {@link SSLContext} is set, the
+ * connection is secured with an {@link SSLEngine} created by it, so all the connections using the
+ * same context share its TLS session cache.
+ */
+public class NioTerminalServer implements TerminalConnection {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NioTerminalServer.class);
+  private static final int MAX_GATHERED_WRITES = 64;
+
+  private final String serverURL;
+  private final int serverPort;
+  private final EventLoop eventLoop;
+  private final BufferListener telnetListener;
+
+  private final Queue<ByteBuffer> pendingWrites = new ConcurrentLinkedQueue<>();
+  private final ByteBuffer[] gatheredWrites = new ByteBuffer[MAX_GATHERED_WRITES];
+
+  private int connectionTimeoutMillis;
+  private int readTimeoutMillis;
+  private SSLContext sslContext;
+  private SocketOptions socketOptions = new SocketOptions();
+  private ConnectionListener connectionListener;
+
+  // only accessed from the event loop
+  private SocketChannel channel;
+  private SelectionKey key;
+  private TimerWheel.Timeout connectTimeout;
+  private IdleTimer readWatchdog;
+  private volatile TlsSession tls;
+
+  private volatile boolean readingPaused;
+  private volatile boolean running;
+  private volatile boolean closed;
+
+  public NioTerminalServer(String serverURL, int serverPort, EventLoopGroup eventLoopGroup,
+      BufferListener listener) {
+    this.serverURL = serverURL;
+    this.serverPort = serverPort;
+    this.eventLoop = eventLoopGroup.next();
+    this.telnetListener = listener;
+  }
+
+  public void setConnectionTimeoutMillis(int connectionTimeoutMillis) {
+    this.connectionTimeoutMillis = connectionTimeoutMillis;
+  }
+
+  public void setReadTimeoutMillis(int readTimeoutMillis) {
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  public void setSslContext(SSLContext sslContext) {
+    this.sslContext = sslContext;
+  }
+
+  public void setSocketOptions(SocketOptions socketOptions) {
+    this.socketOptions = socketOptions;
+  }
+
+  public void setConnectionListener(ConnectionListener connectionListener) {
+    this.connectionListener = connectionListener;
+  }
+
+  public void connect() {
+    InetSocketAddress address = new InetSocketAddress(serverURL, serverPort);
+    eventLoop.execute(() -> startConnect(address));
+  }
+
+  private void startConnect(InetSocketAddress address) {
+    if (closed) {
+      return;
+    }
+    try {
+      channel = SocketChannel.open();
+      channel.configureBlocking(false);
+      socketOptions.applyTo(channel);
+      if (channel.connect(address)) {
+        key = eventLoop.register(channel, SelectionKey.OP_READ, this);
+        connected();
+      } else {
+        key = eventLoop.register(channel, SelectionKey.OP_CONNECT, this);
+        if (connectionTimeoutMillis > 0) {
+          connectTimeout = TimerWheel.getDefault().schedule(
+              () -> eventLoop.execute(this::connectTimedOut), connectionTimeoutMillis,
+              TimeUnit.MILLISECONDS);
+        }
+      }
+    } catch (IOException e) {
+      closeChannel();
+      handleException(e);
+    }
+  }
+
+  void finishConnect() {
+    try {
+      if (channel.finishConnect()) {
+        cancelConnectTimeout();
+        key.interestOps(SelectionKey.OP_READ);
+        connected();
+      }
+    } catch (IOException e) {
+      closeChannel();
+      handleException(e);
+    }
+  }
+
+  private void cancelConnectTimeout() {
+    if (connectTimeout != null) {
+      connectTimeout.cancel();
+      connectTimeout = null;
+    }
+  }
+
+  private void connected() {
+    if (sslContext != null) {
+      try {
+        SSLEngine engine = sslContext.createSSLEngine(serverURL, serverPort);
+        engine.setUseClientMode(true);
+        tls = new TlsSession(engine, channel);
+        tls.beginHandshake();
+      } catch (IOException | RuntimeException e) {
+        closeChannel();
+        handleException(e);
+        return;
+      }
+    }
+    running = true;
+    if (readTimeoutMillis > 0) {
+      readWatchdog = new IdleTimer(TimerWheel.getDefault(), readTimeoutMillis,
+          () -> eventLoop.execute(this::readTimedOut));
+      readWatchdog.start();
+    }
+    if (connectionListener != null) {
+      connectionListener.onConnection();
+    }
+    flush();
+  }
+
+  private void connectTimedOut() {
+    if (!running && !closed) {
+      closeChannel();
+      handleException(new SocketTimeoutException(
+          String.format("Connection to %s:%d timed out", serverURL, serverPort)));
+    }
+  }
+
+  private void readTimedOut() {
+    // nothing is read while paused, but the server may be sending data
+    if (running && !readingPaused) {
+      closeChannel();
+      handleException(new SocketTimeoutException(String.format(
+          "No data received from %s:%d in %d millis", serverURL, serverPort, readTimeoutMillis)));
+    }
+  }
+
+  void read(ByteBuffer readBuffer, int budget) {
+    int remaining = budget;
+    try {
+      while (remaining > 0 && running && !readingPaused) {
+        int bytesRead;
+        if (tls != null) {
+          bytesRead = tls.read(this::listen);
+          // the handshake may have progressed or completed, allowing to send pending data
+          flush();
+        } else {
+          readBuffer.clear();
+          if (readBuffer.capacity() > remaining) {
+            readBuffer.limit(remaining);
+          }
+          bytesRead = channel.read(readBuffer);
+          if (bytesRead > 0) {
+            readBuffer.flip();
+            listen(readBuffer);
+          }
+        }
+        if (bytesRead < 0) {
+          closeChannel();
+          if (connectionListener != null) {
+            connectionListener.onConnectionClosed();
+          }
+          return;
+        }
+        if (bytesRead == 0) {
+          return;
+        }
+        if (readWatchdog != null) {
+          readWatchdog.touch();
+        }
+        remaining -= bytesRead;
+      }
+    } catch (Exception e) {
+      if (running) {
+        closeChannel();
+        handleException(e);
+      }
+    }
+  }
+
+  private void listen(ByteBuffer buffer) {
+    telnetListener.listen(TelnetSocket.Source.SERVER, buffer.array(),
+        buffer.arrayOffset() + buffer.position(), buffer.remaining(), System.nanoTime());
+  }
+
+  @Override
+  public void write(byte[] buffer) {
+    // the no-op may come here if socket is closed from remote end and client has not been closed
+    if (!running && buffer == TelnetState.NO_OP) {
+      return;
+    }
+    if (closed) {
+      handleException(new IOException("Connection to " + serverURL + " is closed"));
+      return;
+    }
+
+    pendingWrites.add(ByteBuffer.wrap(buffer));
+    if (eventLoop.inEventLoop()) {
+      flush();
+    } else {
+      eventLoop.execute(this::flush);
+    }
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    eventLoop.execute(task);
+  }
+
+  void flush() {
+    if (!running || !key.isValid()) {
+      return;
+    }
+    try {
+      // handshake records go first, and application data waits for the handshake to complete
+      if (tls != null) {
+        boolean flushed = tls.flush();
+        if (!flushed || !tls.isHandshakeComplete()) {
+          waitWritable(!flushed);
+          return;
+        }
+      }
+      while (!pendingWrites.isEmpty()) {
+        // all the pending buffers (up to the gather limit) are sent with a single write
+        int count = 0;
+        long pendingBytes = 0;
+        for (ByteBuffer buffer : pendingWrites) {
+          gatheredWrites[count++] = buffer;
+          pendingBytes += buffer.remaining();
+          if (count == gatheredWrites.length) {
+            break;
+          }
+        }
+        boolean sent;
+        if (tls != null) {
+          sent = tls.write(gatheredWrites, 0, count);
+        } else {
+          sent = channel.write(gatheredWrites, 0, count) == pendingBytes;
+        }
+        for (int i = 0; i < count; i++) {
+          gatheredWrites[i] = null;
+        }
+
+        ByteBuffer buffer = pendingWrites.peek();
+        while (buffer != null && !buffer.hasRemaining()) {
+          pendingWrites.poll();
+          buffer = pendingWrites.peek();
+        }
+        if (!sent) {
+          // socket buffer is full, wait until the channel is writable again
+          waitWritable(true);
+          return;
+        }
+      }
+      waitWritable(false);
+    } catch (IOException e) {
+      closeChannel();
+      handleException(e);
+    }
+  }
+
+  private void waitWritable(boolean waitWritable) {
+    if (waitWritable) {
+      key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    } else {
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+  }
+
+  @Override
+  public void pauseReading() {
+    readingPaused = true;
+    eventLoop.execute(this::updateReadInterest);
+  }
+
+  @Override
+  public void resumeReading() {
+    readingPaused = false;
+    if (readWatchdog != null) {
+      readWatchdog.touch();
+    }
+    eventLoop.execute(this::updateReadInterest);
+  }
+
+  private void updateReadInterest() {
+    if (key == null || !key.isValid() || (key.interestOps() & SelectionKey.OP_CONNECT) != 0) {
+      return;
+    }
+    if (readingPaused) {
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+    } else {
+      key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+    }
+  }
+
+  @Override
+  public Optional<Duration> getTlsHandshakeTime() {
+    TlsSession session = tls;
+    return session == null ? Optional.empty() : session.getHandshakeTime();
+  }
+
+  private void handleException(Exception ex) {
+    if (connectionListener != null) {
+      connectionListener.onException(ex);
+    } else {
+      ex.printStackTrace();
+    }
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    if (eventLoop.inEventLoop()) {
+      closeChannel();
+    } else {
+      eventLoop.execute(this::closeChannel);
+    }
+  }
+
+  private void closeChannel() {
+    running = false;
+    if (closed) {
+      return;
+    }
+    closed = true;
+    pendingWrites.clear();
+    cancelConnectTimeout();
+    if (readWatchdog != null) {
+      readWatchdog.stop();
+    }
+
+    if (tls != null && channel.isConnected()) {
+      tls.close();
+    }
+    if (key != null) {
+      key.cancel();
+    }
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOG.debug("Problem closing channel to {}:{}", serverURL, serverPort, e);
+      }
+    }
+
+    if (telnetListener != null) {
+      telnetListener.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("NioTerminalServer listening to %s : %d", serverURL, serverPort);
+  }
+
+}
@@ -0,0 +1,136 @@
+package com.bytezone.dm3270.streams;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Queue of buffers to be sent to a blocking socket by a single writer thread, so threads
+// sending data (user and reader ones) never block on a slow socket, and the timer one hands
+// its tasks to the writer thread instead of running them. All the buffers
+// queued while the writer was busy are sent together with a single flush, which coalesces
+// negotiation replies and TN3270E responses into one socket write.
+// The writer is only started when there is something to send, and it stops once it has been
+// idle for a while, so idle sessions don't keep a thread for writing.
+class OutboundQueue implements Runnable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OutboundQueue.class);
+
+  private static final int WRITE_BUFFER_SIZE = 8192;
+  private static final long WRITER_IDLE_MILLIS = 1000;
+  // queued to wake up the writer when there are tasks to run
+  private static final byte[] NO_DATA = new byte[0];
+
+  private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final List<byte[]> batch = new ArrayList<>();
+  private final Consumer<IOException> errorHandler;
+  private OutputStream out;
+  private ThreadFactory threadFactory;
+  private Thread thread;                // null while there is no writer
+  private volatile boolean running;
+
+  OutboundQueue(Consumer<IOException> errorHandler) {
+    this.errorHandler = errorHandler;
+  }
+
+  void add(byte[] buffer) {
+    queue.add(buffer);
+    startWriter();
+  }
+
+  // tasks run in the writer thread, and the buffers they add are sent in the same batch
+  void execute(Runnable task) {
+    tasks.add(task);
+    queue.add(NO_DATA);
+    startWriter();
+  }
+
+  // buffers added before starting are kept and sent once started
+  synchronized void start(OutputStream socketOut, ThreadFactory threadFactory) {
+    out = new BufferedOutputStream(socketOut, WRITE_BUFFER_SIZE);
+    this.threadFactory = threadFactory;
+    running = true;
+    if (!queue.isEmpty()) {
+      startWriter();
+    }
+  }
+
+  private synchronized void startWriter() {
+    if (running && thread == null) {
+      thread = threadFactory.newThread(this);
+      thread.start();
+    }
+  }
+
+  // buffers are queued before taking the lock to start a writer, so either this one sees them,
+  // or a new one is started to send them
+  private synchronized boolean stopWriterIfIdle() {
+    if (!queue.isEmpty() && running) {
+      return false;
+    }
+    thread = null;
+    return true;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        byte[] first = queue.poll(WRITER_IDLE_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          if (stopWriterIfIdle()) {
+            return;
+          }
+          continue;
+        }
+        batch.add(first);
+        runTasks();
+        queue.drainTo(batch);
+        for (byte[] buffer : batch) {
+          out.write(buffer);
+        }
+        batch.clear();
+        out.flush();
+      }
+    } catch (InterruptedException e) {
+      // stopped
+    } catch (IOException e) {
+      if (running) {
+        running = false;
+        errorHandler.accept(e);
+      }
+    }
+  }
+
+  private void runTasks() {
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        LOG.error("Problem running task in {}", Thread.currentThread().getName(), e);
+      }
+    }
+  }
+
+  synchronized void stop() {
+    running = false;
+    queue.clear();
+    tasks.clear();
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,46 @@
+package com.bytezone.dm3270.streams;
+
+// Buffer used to read from a blocking socket, sized according to the data received. It doubles
+// when a read fills it, since the record being received is probably bigger (like a full screen),
+// and halves after several reads using less than a quarter of it, so sessions mostly receiving
+// small records don't keep big buffers.
+class ReadBuffer {
+
+  private static final int SHRINK_AFTER_READS = 8;
+
+  private final int minSize;
+  private final int maxSize;
+  private final boolean adaptive;
+  private byte[] buffer;
+  private int smallReads;
+
+  ReadBuffer(SocketOptions options) {
+    minSize = options.getReadBufferSize();
+    maxSize = Math.max(minSize, options.getMaxReadBufferSize());
+    adaptive = options.isAdaptiveReadBuffer();
+    buffer = new byte[minSize];
+  }
+
+  byte[] get() {
+    return buffer;
+  }
+
+  // must only be called once the previous contents have been processed
+  void record(int bytesRead) {
+    if (!adaptive) {
+      return;
+    }
+    if (bytesRead == buffer.length && buffer.length < maxSize) {
+      buffer = new byte[Math.min(maxSize, buffer.length * 2)];
+      smallReads = 0;
+    } else if (bytesRead <= buffer.length / 4 && buffer.length > minSize) {
+      if (++smallReads >= SHRINK_AFTER_READS) {
+        buffer = new byte[Math.max(minSize, buffer.length / 2)];
+        smallReads = 0;
+      }
+    } else {
+      smallReads = 0;
+    }
+  }
+
+}
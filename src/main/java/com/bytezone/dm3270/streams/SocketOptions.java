@@ -0,0 +1,147 @@
+package com.bytezone.dm3270.streams;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Socket level settings of the connection to a terminal server.
+ * <p>
+ * By default Nagle's algorithm is disabled (TCP_NODELAY), since 3270 traffic mostly consists of
+ * small interactive messages, like AIDs, which would otherwise be held back waiting for the
+ * acknowledgement of previous ones. Buffer sizes are left to the operating system unless set.
+ * <p>
+ * The buffer used to read from blocking sockets starts with {@link #getReadBufferSize()} bytes and,
+ * when adaptive, grows while reads fill it up to {@link #getMaxReadBufferSize()}, and shrinks back
+ * when only small records are received.
+ */
+public class SocketOptions {
+
+  public static final int DEFAULT_READ_BUFFER_SIZE = 4096;
+  public static final int DEFAULT_MAX_READ_BUFFER_SIZE = 64 * 1024;
+
+  private boolean tcpNoDelay = true;
+  private boolean keepAlive;
+  private int sendBufferSize;
+  private int receiveBufferSize;
+  private int readBufferSize = DEFAULT_READ_BUFFER_SIZE;
+  private int maxReadBufferSize = DEFAULT_MAX_READ_BUFFER_SIZE;
+  private boolean adaptiveReadBuffer = true;
+
+  public boolean isTcpNoDelay() {
+    return tcpNoDelay;
+  }
+
+  public void setTcpNoDelay(boolean tcpNoDelay) {
+    this.tcpNoDelay = tcpNoDelay;
+  }
+
+  public boolean isKeepAlive() {
+    return keepAlive;
+  }
+
+  public void setKeepAlive(boolean keepAlive) {
+    this.keepAlive = keepAlive;
+  }
+
+  public int getSendBufferSize() {
+    return sendBufferSize;
+  }
+
+  /**
+   * Sets the size of the socket send buffer (SO_SNDBUF).
+   *
+   * @param sendBufferSize size in bytes, or zero to use the operating system default.
+   */
+  public void setSendBufferSize(int sendBufferSize) {
+    if (sendBufferSize < 0) {
+      throw new IllegalArgumentException("Send buffer size must not be negative: "
+          + sendBufferSize);
+    }
+    this.sendBufferSize = sendBufferSize;
+  }
+
+  public int getReceiveBufferSize() {
+    return receiveBufferSize;
+  }
+
+  /**
+   * Sets the size of the socket receive buffer (SO_RCVBUF).
+   *
+   * @param receiveBufferSize size in bytes, or zero to use the operating system default.
+   */
+  public void setReceiveBufferSize(int receiveBufferSize) {
+    if (receiveBufferSize < 0) {
+      throw new IllegalArgumentException("Receive buffer size must not be negative: "
+          + receiveBufferSize);
+    }
+    this.receiveBufferSize = receiveBufferSize;
+  }
+
+  public int getReadBufferSize() {
+    return readBufferSize;
+  }
+
+  public void setReadBufferSize(int readBufferSize) {
+    if (readBufferSize <= 0) {
+      throw new IllegalArgumentException("Read buffer size must be positive: " + readBufferSize);
+    }
+    this.readBufferSize = readBufferSize;
+  }
+
+  public int getMaxReadBufferSize() {
+    return maxReadBufferSize;
+  }
+
+  public void setMaxReadBufferSize(int maxReadBufferSize) {
+    if (maxReadBufferSize <= 0) {
+      throw new IllegalArgumentException("Max read buffer size must be positive: "
+          + maxReadBufferSize);
+    }
+    this.maxReadBufferSize = maxReadBufferSize;
+  }
+
+  public boolean isAdaptiveReadBuffer() {
+    return adaptiveReadBuffer;
+  }
+
+  public void setAdaptiveReadBuffer(boolean adaptiveReadBuffer) {
+    this.adaptiveReadBuffer = adaptiveReadBuffer;
+  }
+
+  // buffer sizes are applied before connecting, so they are taken into account for the TCP
+  // window negotiated with the server
+
+  void applyTo(Socket socket) throws SocketException {
+    socket.setTcpNoDelay(tcpNoDelay);
+    socket.setKeepAlive(keepAlive);
+    if (sendBufferSize > 0) {
+      socket.setSendBufferSize(sendBufferSize);
+    }
+    if (receiveBufferSize > 0) {
+      socket.setReceiveBufferSize(receiveBufferSize);
+    }
+  }
+
+  void applyTo(SocketChannel channel) throws IOException {
+    channel.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+    channel.setOption(StandardSocketOptions.SO_KEEPALIVE, keepAlive);
+    if (sendBufferSize > 0) {
+      channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+    }
+    if (receiveBufferSize > 0) {
+      channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SocketOptions [tcpNoDelay=%s, keepAlive=%s, sendBufferSize=%d, "
+            + "receiveBufferSize=%d, readBufferSize=%d, maxReadBufferSize=%d, "
+            + "adaptiveReadBuffer=%s]", tcpNoDelay, keepAlive, sendBufferSize,
+        receiveBufferSize, readBufferSize, maxReadBufferSize, adaptiveReadBuffer);
+  }
+
+}
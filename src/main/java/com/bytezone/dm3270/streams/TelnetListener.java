@@ -11,7 +11,9 @@ import com.bytezone.dm3270.extended.ResponseCommand;
 import com.bytezone.dm3270.extended.SscpLuDataCommand;
 import com.bytezone.dm3270.extended.TN3270ExtendedCommand;
 import com.bytezone.dm3270.extended.UnbindCommand;
-import com.bytezone.dm3270.session.SessionRecord;
+import com.bytezone.dm3270.metrics.AidLatencyRecorder;
+import com.bytezone.dm3270.metrics.ProtocolMetrics;
+import com.bytezone.dm3270.session.SessionJournal;
 import com.bytezone.dm3270.session.SessionRecord.SessionRecordType;
 import com.bytezone.dm3270.telnet.TN3270ExtendedSubcommand;
 import com.bytezone.dm3270.telnet.TelnetCommand;
@@ -20,7 +22,9 @@ import com.bytezone.dm3270.telnet.TelnetProcessor;
 import com.bytezone.dm3270.telnet.TelnetSubcommand;
 import com.bytezone.dm3270.telnet.TerminalTypeSubcommand;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Optional;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,26 +40,63 @@ public class TelnetListener implements BufferListener, TelnetCommandProcessor {
 
   private final TelnetProcessor telnetProcessor = new TelnetProcessor(this);
 
+  private ApplyStage applyStage;
+  private TerminalConnection connection;
+  private Consumer<Exception> applyErrorHandler;
+  private long readNanos;
+
   // Use this when not recording the session and running in TERMINAL mode.
   public TelnetListener(Screen screen, TelnetState telnetState) {
     this.screen = screen;
     this.charset = screen.getCharset();
     this.telnetState = telnetState;
+    telnetProcessor.setMaxRecordSize(telnetState.getMaxRecordSize());
+    telnetProcessor.setRecordSizeHistogram(telnetState.getRecordSizes());
 
     this.source = TelnetSocket.Source.SERVER;                  // listening to a server
   }
 
-  // This method is always called with a copy of the original buffer. It can be
-  // called from a background thread, so any GUI calls must be placed on the EDT.
-  // Converts buffer arrays to Messages.
+  /**
+   * Sets the stage applying the received 3270 records, instead of the reading thread.
+   * <p>
+   * Telnet negotiation is still handled by the reading thread, since it only updates the
+   * {@link TelnetState}.
+   *
+   * @param applyStage stage to which records are handed.
+   * @param connection connection paused by the stage when its queue is full.
+   * @param applyErrorHandler notified of any problem applying a record.
+   */
+  public void setApplyStage(ApplyStage applyStage, TerminalConnection connection,
+      Consumer<Exception> applyErrorHandler) {
+    this.applyStage = applyStage;
+    this.connection = connection;
+    this.applyErrorHandler = applyErrorHandler;
+  }
 
   @Override
-  public synchronized void listen(TelnetSocket.Source source, byte[] buffer, LocalDateTime dateTime,
+  public void listen(TelnetSocket.Source source, byte[] buffer, LocalDateTime dateTime,
       boolean genuine) {
+    listen(source, buffer, 0, buffer.length, System.nanoTime());
+  }
+
+  // This method is called with a slice of the transport read buffer, which is parsed
+  // in place. It can be called from a background thread, so any GUI calls must be
+  // placed on the EDT. Converts buffer arrays to Messages.
+
+  @Override
+  public synchronized void listen(TelnetSocket.Source source, byte[] buffer, int offset,
+      int length, long nanoTime) {
     assert source == this.source : "Incorrect source: " + source + ", expecting: "
         + this.source;
 
-    telnetProcessor.listen(buffer);     // will call one of the processXXX routines
+    readNanos = nanoTime;
+    telnetState.getMetrics().bytesReceived(length);
+    AidLatencyRecorder aidLatencies = telnetState.getAidLatencyRecorder();
+    if (aidLatencies != null) {
+      aidLatencies.bytesReceived(nanoTime);
+    }
+    // will call one of the processXXX routines
+    telnetProcessor.listen(buffer, offset, length);
 
     telnetState.setLastAccess();
   }
@@ -70,19 +111,52 @@ public class TelnetListener implements BufferListener, TelnetCommandProcessor {
   }
 
   @Override
-  public void processRecord(byte[] data, int dataPtr) {
+  public void processRecord(byte[] data, int recordOffset, int dataPtr) {
+    telnetState.setNegotiationComplete();
+    ProtocolMetrics metrics = telnetState.getMetrics();
+    metrics.recordReceived();
+    AidLatencyRecorder aidLatencies = telnetState.getAidLatencyRecorder();
+    if (aidLatencies != null) {
+      aidLatencies.recordReceived(readNanos);
+    }
+    boolean extended = telnetState.does3270Extended();
+    journal(extended ? SessionRecordType.TN3270E : SessionRecordType.TN3270, data, recordOffset,
+        dataPtr);
+    if (applyStage == null) {
+      try {
+        applyRecord(data, recordOffset, dataPtr, extended);
+      } catch (RuntimeException e) {
+        metrics.parseError();
+        throw e;
+      }
+      return;
+    }
+
+    // the record is a view of the read buffer, which is reused by the reader
+    byte[] record = Arrays.copyOfRange(data, recordOffset, recordOffset + dataPtr);
+    applyStage.submit(() -> {
+      try {
+        applyRecord(record, 0, record.length, extended);
+      } catch (RuntimeException e) {
+        metrics.parseError();
+        applyErrorHandler.accept(e);
+      }
+    }, connection);
+  }
+
+  private void applyRecord(byte[] data, int recordOffset, int dataPtr, boolean extended) {
     int offset;
     int length;
     CommandHeader.DataType dataType;
 
     CommandHeader currentCommandHeader;
-    if (telnetState.does3270Extended()) {
-      offset = 5;
+    if (extended) {
+      offset = recordOffset + 5;
       length = dataPtr - 7;         // exclude IAC/EOR and header
-      currentCommandHeader = new CommandHeader(data, 0, 5, charset);
+      currentCommandHeader = new CommandHeader(data, recordOffset, 5, charset);
       dataType = currentCommandHeader.getDataType();
     } else {
-      offset = 0;
+      offset = recordOffset;
       length = dataPtr - 2;         // exclude IAC/EOR
       currentCommandHeader = null;
       dataType = CommandHeader.DataType.TN3270_DATA;
@@ -96,6 +170,7 @@ public class TelnetListener implements BufferListener, TelnetCommandProcessor {
         } else {
           if (source == TelnetSocket.Source.SERVER) {
             command = Command.getCommand(data, offset, length, screen.getCharset());
+            telnetState.getMetrics().commandReceived(command.getClass());
           } else {
             command = Command.getReply(data, offset, length, screen.getCharset());
           }
@@ -105,35 +180,35 @@ public class TelnetListener implements BufferListener, TelnetCommandProcessor {
           }
         }
 
-        addDataRecord(command, SessionRecord.SessionRecordType.TN3270);
+        processMessage(command);
         break;
 
       case BIND_IMAGE:
         BindCommand bindCommand =
             new BindCommand(currentCommandHeader, data, offset, length, screen.getCharset());
-        addDataRecord(bindCommand, SessionRecord.SessionRecordType.TN3270E);
+        processMessage(bindCommand);
         break;
 
       case UNBIND:
         UnbindCommand unbindCommand =
             new UnbindCommand(currentCommandHeader, data, offset, length);
-        addDataRecord(unbindCommand, SessionRecord.SessionRecordType.TN3270E);
+        processMessage(unbindCommand);
         break;
 
       case RESPONSE:
         ResponseCommand responseCommand =
             new ResponseCommand(currentCommandHeader, data, offset, length, charset);
-        addDataRecord(responseCommand, SessionRecord.SessionRecordType.TN3270E);
+        processMessage(responseCommand);
         break;
 
       case SSCP_LU_DATA:
         ReplyBuffer extCommand = new TN3270ExtendedCommand(currentCommandHeader,
             new SscpLuDataCommand(data, offset, length, screen.getCharset()), telnetState, charset);
-        addDataRecord(extCommand, SessionRecord.SessionRecordType.TN3270E);
+        processMessage(extCommand);
         break;
 
       case BID:
-        addDataRecord(currentCommandHeader, SessionRecordType.TN3270E);
+        processMessage(currentCommandHeader);
         break;
 
       default:
@@ -141,15 +216,23 @@ public class TelnetListener implements BufferListener, TelnetCommandProcessor {
     }
   }
 
+  // Telnet commands and subcommands are processed by the reading thread even when an apply
+  // stage is set. They only update the TelnetState and reply to the server, never the screen,
+  // and the reader needs them processed before framing the next record, since whether it has
+  // a TN3270E header is taken from the TelnetState when the record is read. Records queued
+  // in the stage keep the mode they were read with.
+
   @Override
   public void processTelnetCommand(byte[] data, int dataPtr) {
+    journal(SessionRecordType.TELNET, data, 0, dataPtr);
     TelnetCommand telnetCommand = new TelnetCommand(telnetState, data, dataPtr);
-    addDataRecord(telnetCommand, SessionRecord.SessionRecordType.TELNET);
+    processMessage(telnetCommand);
     telnetCommand.process(screen);       // updates TelnetState
   }
 
   @Override
   public void processTelnetSubcommand(byte[] data, int dataPtr) {
+    journal(SessionRecordType.TELNET, data, 0, dataPtr);
     TelnetSubcommand subcommand = null;
 
     if (data[2] == TelnetSubcommand.TERMINAL_TYPE) {
@@ -160,24 +243,23 @@ public class TelnetListener implements BufferListener, TelnetCommandProcessor {
       LOG.warn("Unknown command type : {}", Buffer.toHex(data, 2, 1));
     }
 
-    addDataRecord(subcommand, SessionRecord.SessionRecordType.TELNET);
+    processMessage(subcommand);
   }
 
-  private void addDataRecord(ReplyBuffer message,
-      SessionRecord.SessionRecordType sessionRecordType) {
-    // no gui involved
-    if (sessionRecordType == SessionRecord.SessionRecordType.TELNET) {
-      processMessage(message);
-    } else {
-      //TODO should we run this in a separate thread?
-      processMessage(message);
+  private void journal(SessionRecordType type, byte[] data, int offset, int length) {
+    SessionJournal journal = telnetState.getJournal();
+    if (journal != null) {
+      journal.record(source, type, readNanos, data, offset, length);
     }
   }
 
   private void processMessage(ReplyBuffer message) {
     message.process(screen);
     Optional<Buffer> reply = message.getReply();
-    reply.ifPresent(buffer -> telnetState.write(buffer.getTelnetData()));
+    if (reply.isPresent()) {
+      telnetState.getMetrics().replySent();
+      telnetState.write(reply.get().getTelnetData());
+    }
   }
 
 }
@@ -3,7 +3,6 @@ package com.bytezone.dm3270.streams;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
-import java.time.LocalDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,8 +10,6 @@ public class TelnetSocket implements Runnable {
 
   private static final Logger LOG = LoggerFactory.getLogger(TelnetSocket.class);
 
-  private static final boolean GENUINE = true;
-
   private final String name;
   private final Source source;
 
@@ -68,10 +65,8 @@ public class TelnetSocket implements Runnable {
           return;
         }
 
-        // take a copy of the input buffer and send it to the TelnetListener
-        byte[] message = new byte[bytesRead];
-        System.arraycopy(buffer, 0, message, 0, message.length);
-        telnetListener.listen(source, message, LocalDateTime.now(), GENUINE);
+        // the TelnetListener takes a copy of whatever it needs to keep
+        telnetListener.listen(source, buffer, 0, bytesRead, System.nanoTime());
       } catch (IOException e) {
         if (running) {
           LOG.error("{} closing due to IOException", name, e);
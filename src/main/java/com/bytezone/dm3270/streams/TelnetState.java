@@ -1,24 +1,37 @@
 package com.bytezone.dm3270.streams;
 
 import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.metrics.AidLatencyRecorder;
+import com.bytezone.dm3270.metrics.ProtocolMetrics;
+import com.bytezone.dm3270.session.SessionJournal;
+import com.bytezone.dm3270.session.SessionRecord.SessionRecordType;
+import com.bytezone.dm3270.telnet.NegotiationCache;
+import com.bytezone.dm3270.telnet.PipelinedNegotiation;
+import com.bytezone.dm3270.telnet.RecordSizeHistogram;
 import com.bytezone.dm3270.telnet.TN3270ExtendedSubcommand;
+import com.bytezone.dm3270.telnet.TelnetProcessor;
+import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class TelnetState implements Runnable {
+public class TelnetState {
 
   public static final byte[] NO_OP = {(byte) 0xFF, (byte) 0xF1};
+  public static final int DEFAULT_KEEP_ALIVE_INTERVAL_MILLIS = 120000;
 
   private static final Logger LOG = LoggerFactory.getLogger(TelnetState.class);
 
+  private static final long NOT_SET = Long.MIN_VALUE;
+
   private static final String[] TERMINAL_TYPES =
       {"", "", "IBM-3278-2", "IBM-3278-3", "IBM-3278-4", "IBM-3278-5"};
 
   // preferences
   private boolean do3270Extended;
-  private int commandHeaderCount;
+  private final AtomicInteger commandHeaderCount = new AtomicInteger();
   private boolean doBinary;
   private boolean doEOR;
   private boolean doTerminalType;
@@ -33,12 +46,22 @@ public class TelnetState implements Runnable {
   private List<TN3270ExtendedSubcommand.Function> functions;
 
   private String terminal = "";
-  private TerminalServer terminalServer;
+  private TerminalConnection terminalServer;
 
   // IO
-  private AtomicLong lastAccess;
-  private volatile boolean running = false;
-  private Thread thread;
+  private int keepAliveIntervalMillis = DEFAULT_KEEP_ALIVE_INTERVAL_MILLIS;
+  private volatile IdleTimer keepAlive;
+  private int maxRecordSize = TelnetProcessor.DEFAULT_MAX_RECORD_SIZE;
+  private final RecordSizeHistogram recordSizes = new RecordSizeHistogram();
+  private volatile SessionJournal journal;
+  private volatile ProtocolMetrics metrics = ProtocolMetrics.NOOP;
+  private volatile AidLatencyRecorder aidLatencyRecorder;
+
+  private final PipelinedNegotiation negotiation = new PipelinedNegotiation();
+
+  // timings, from System.nanoTime()
+  private volatile long connectStartNanos = NOT_SET;
+  private volatile long negotiationCompleteNanos = NOT_SET;
 
   private ScreenDimensions secondary = new ScreenDimensions(24, 80);
 
@@ -49,71 +72,225 @@ public class TelnetState implements Runnable {
     setDoEOR(true);
     setDoBinary(true);
     setDoTerminalType(true);
-    lastAccess = new AtomicLong(System.currentTimeMillis());
   }
 
-  public void setTerminalServer(TerminalServer terminalServer) {
+  public void setKeepAliveIntervalMillis(int keepAliveIntervalMillis) {
+    this.keepAliveIntervalMillis = keepAliveIntervalMillis;
+  }
+
+  public int getMaxRecordSize() {
+    return maxRecordSize;
+  }
+
+  public void setMaxRecordSize(int maxRecordSize) {
+    if (maxRecordSize <= 0) {
+      throw new IllegalArgumentException("Max record size must be positive: " + maxRecordSize);
+    }
+    this.maxRecordSize = maxRecordSize;
+  }
+
+  public RecordSizeHistogram getRecordSizes() {
+    return recordSizes;
+  }
+
+  public SessionJournal getJournal() {
+    return journal;
+  }
+
+  /**
+   * Sets the journal to which the records sent and received are appended.
+   *
+   * @param journal journal of the session, or null to stop journaling.
+   */
+  public void setJournal(SessionJournal journal) {
+    this.journal = journal;
+  }
+
+  public ProtocolMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Sets the metrics notified of the events of the session.
+   *
+   * @param metrics metrics of the session, or {@link ProtocolMetrics#NOOP} to not count them.
+   */
+  public void setMetrics(ProtocolMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public AidLatencyRecorder getAidLatencyRecorder() {
+    return aidLatencyRecorder;
+  }
+
+  /**
+   * Sets the recorder stamping the AIDs sent in the session until the keyboard is unlocked.
+   *
+   * @param aidLatencyRecorder recorder of the session, or null to not measure AID latencies.
+   */
+  public void setAidLatencyRecorder(AidLatencyRecorder aidLatencyRecorder) {
+    this.aidLatencyRecorder = aidLatencyRecorder;
+  }
+
+  // A NOOP is issued to keep the connection alive when nothing else has communicated
+  // with the server for a certain period. All the sessions share the default timer
+  // wheel instead of having a thread sleeping in each one of them, and the wheel just
+  // hands the NOOP to the thread of each connection, so a slow one can't delay others.
+
+  public void setTerminalServer(TerminalConnection terminalServer) {
     this.terminalServer = terminalServer;
-    thread = new Thread(this);
-    thread.start();
+    if (keepAliveIntervalMillis > 0) {
+      keepAlive = new IdleTimer(TimerWheel.getDefault(), keepAliveIntervalMillis,
+          () -> terminalServer.execute(this::sendKeepAlive));
+      keepAlive.start();
+    }
+  }
+
+  // runs in the thread of the connection, since journaling the no-op may write to its file
+  private void sendKeepAlive() {
+    metrics.keepAliveSent();
+    write(NO_OP);
   }
 
   public void setLastAccess() {
-    lastAccess.set(System.currentTimeMillis());
+    IdleTimer timer = keepAlive;
+    if (timer != null) {
+      timer.touch();
+    }
   }
 
   public void write(byte[] buffer) {
+    SessionJournal sessionJournal = journal;
+    if (sessionJournal != null) {
+      // telnet negotiation starts with IAC, while 3270 data starts with an AID or a header
+      SessionRecordType type = buffer.length > 0 && buffer[0] == (byte) 0xFF
+          ? SessionRecordType.TELNET
+          : does3270Extended ? SessionRecordType.TN3270E : SessionRecordType.TN3270;
+      sessionJournal.record(TelnetSocket.Source.CLIENT, type, buffer);
+    }
     if (terminalServer != null) {
       terminalServer.write(buffer);
     }
+    metrics.bytesSent(buffer.length);
 
-    lastAccess.set(System.currentTimeMillis());
+    setLastAccess();
   }
 
   public int nextCommandHeaderSeq() {
-    return commandHeaderCount++;
+    return commandHeaderCount.getAndIncrement();
   }
 
-  // This thread exists simply to keep the connection alive. It sleeps for a
-  // certain period, and when it wakes it issues a NOOP if nothing else has
-  // communicated with the server.
+  public void close() {
+    if (keepAlive != null) {
+      keepAlive.stop();
+    }
+    if (!isNegotiationComplete()) {
+      negotiation.abort();
+    }
+  }
 
-  @Override
-  public void run() {
-    long lastTimeIChecked;
-    running = true;
-    long limit = 120;      // seconds to wait
-
-    while (running) {
-      try {
-        lastTimeIChecked = lastAccess.get();
-        long delay = (System.currentTimeMillis() - lastTimeIChecked) / 1000;
-        long sleep = limit - delay;
-
-        if (sleep > 1) {
-          Thread.sleep(sleep * 1000);
-        }
-
-        if (lastTimeIChecked == lastAccess.get()) {
-          write(NO_OP);
-        }
-      } catch (InterruptedException e) {
-        if (running) {
-          LOG.debug("TelnetState was interrupted.");
-        }
-        close();
-        return;
-      }
+  public void setConnectStart() {
+    negotiationCompleteNanos = NOT_SET;
+    connectStartNanos = System.nanoTime();
+  }
+
+  /**
+   * Sets the cache of negotiations used to pipeline the negotiation with known servers.
+   *
+   * @param negotiationCache cache of negotiations, or null to always wait for the requests of the
+   * server.
+   */
+  public void setNegotiationCache(NegotiationCache negotiationCache) {
+    negotiation.setCache(negotiationCache);
+  }
+
+  /**
+   * Starts the negotiation with a server, once the connection to it has been set.
+   * <p>
+   * When the last negotiation with the server is cached, the options agreed in it are sent
+   * right away (and queued until the connection is established), and the replies to the
+   * requests of the server for these options are skipped.
+   *
+   * @param host host name of the server.
+   * @param port port of the server.
+   */
+  public void startNegotiation(String host, int port) {
+    byte[] commands = negotiation.start(host, port, do3270Extended, doDeviceType);
+    if (commands.length > 0) {
+      write(commands);
     }
   }
 
-  public void close() {
-    if (thread != null) {
-      running = false;
-      thread.interrupt();
+  // server requests and refusals, checked against the pipelined negotiation
+
+  public boolean isWillAnswered(byte option, boolean agreed) {
+    return negotiation.isWillAnswered(option, agreed);
+  }
+
+  public boolean isDoAnswered(byte option, boolean agreed) {
+    return negotiation.isDoAnswered(option, agreed);
+  }
+
+  public void setRefused(byte option) {
+    negotiation.setRefused(option);
+  }
+
+  /**
+   * Gets the TN3270E functions to request, which are the ones agreed in the cached negotiation,
+   * so the server accepts them without a counter-proposal.
+   *
+   * @return the functions agreed last time, or null when the negotiation is not pipelined.
+   */
+  public List<TN3270ExtendedSubcommand.Function> getPipelinedFunctions() {
+    return negotiation.getPipelinedFunctions();
+  }
+
+  /**
+   * Tells if the last negotiation was started with the options cached from a previous one.
+   *
+   * @return true if cached options were sent proactively in the last connection.
+   */
+  public boolean isNegotiationPipelined() {
+    return negotiation.isPipelined();
+  }
+
+  /**
+   * Tells if the last pipelined negotiation fell back to replying each request of the server,
+   * since the server refused an option sent proactively or requested one not cached.
+   *
+   * @return true if the negotiation didn't go as cached.
+   */
+  public boolean isNegotiationFallback() {
+    return negotiation.isFallback();
+  }
+
+  public long getConnectStartNanos() {
+    return connectStartNanos;
+  }
+
+  // Negotiation is complete once the first 3270 record arrives, since the host only
+  // sends them after agreeing on the terminal type, EOR and binary options.
+  public void setNegotiationComplete() {
+    if (negotiationCompleteNanos == NOT_SET) {
+      negotiationCompleteNanos = System.nanoTime();
+      LOG.debug("Negotiation completed in {}{}", getNegotiationTime().orElse(null),
+          negotiation.isPipelined() ? " (pipelined)" : "");
+      negotiation.complete(does3270Extended, doesEOR(), doesBinary(),
+          does3270Extended ? functions : null);
     }
   }
 
+  public boolean isNegotiationComplete() {
+    return negotiationCompleteNanos != NOT_SET;
+  }
+
+  public Optional<Duration> getNegotiationTime() {
+    long start = connectStartNanos;
+    long end = negotiationCompleteNanos;
+    return start == NOT_SET || end == NOT_SET ? Optional.empty()
+        : Optional.of(Duration.ofNanos(end - start));
+  }
+
   public ScreenDimensions getSecondary() {
     return secondary;
   }
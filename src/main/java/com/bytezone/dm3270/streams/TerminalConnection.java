@@ -0,0 +1,44 @@
+package com.bytezone.dm3270.streams;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Connection to a terminal server used by {@link TelnetState} to send data to the host.
+ * <p>
+ * Inbound data is always delivered to a {@link BufferListener}, whatever the transport. Writes
+ * are queued and sent by the transport, so they never block the calling thread.
+ */
+public interface TerminalConnection {
+
+  void write(byte[] buffer);
+
+  /**
+   * Runs a task in the thread sending the data of the connection, so threads serving many
+   * connections (like the timer one) hand their work to it instead of doing it themselves.
+   *
+   * @param task task to run, after any data already written.
+   */
+  void execute(Runnable task);
+
+  void close();
+
+  /**
+   * Stops reading from the server until {@link #resumeReading()} is invoked, so data received
+   * meanwhile stays in the socket buffers and the TCP window slows down the server.
+   */
+  void pauseReading();
+
+  void resumeReading();
+
+  /**
+   * Gets the time taken by the TLS handshake of the connection.
+   *
+   * @return the handshake time, or empty if the connection is not secured or the handshake has
+   * not completed yet.
+   */
+  default Optional<Duration> getTlsHandshakeTime() {
+    return Optional.empty();
+  }
+
+}
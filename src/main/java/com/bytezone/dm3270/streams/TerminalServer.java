@@ -1,25 +1,38 @@
 package com.bytezone.dm3270.streams;
 
 import com.bytezone.dm3270.ConnectionListener;
+import com.bytezone.dm3270.metrics.ProtocolMetrics;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.time.LocalDateTime;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
 import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocket;
 
-public class TerminalServer implements Runnable {
+public class TerminalServer implements Runnable, TerminalConnection {
 
   private final String serverURL;
   private final int serverPort;
   private final SocketFactory socketFactory;
   private int connectionTimeoutMillis;
+  private int readTimeoutMillis;
+  private volatile IdleTimer readWatchdog;
+  private ThreadFactory threadFactory = ThreadFactories.platform();
+  private SocketOptions socketOptions = new SocketOptions();
+  private ProtocolMetrics metrics = ProtocolMetrics.NOOP;
   private Socket serverSocket;
-  private OutputStream serverOut;
+  private final OutboundQueue outboundQueue = new OutboundQueue(this::handleException);
 
-  private final byte[] buffer = new byte[4096];
   private volatile boolean running;
+  private volatile boolean closed;
+  private volatile Duration tlsHandshakeTime;
+  private final Object readPauseLock = new Object();
+  private volatile boolean readingPaused;
 
   private final BufferListener telnetListener;
   private ConnectionListener connectionListener;
@@ -36,16 +49,41 @@ public class TerminalServer implements Runnable {
     this.connectionTimeoutMillis = connectionTimeoutMillis;
   }
 
+  public void setReadTimeoutMillis(int readTimeoutMillis) {
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  public void setThreadFactory(ThreadFactory threadFactory) {
+    this.threadFactory = threadFactory;
+  }
+
+  public void setSocketOptions(SocketOptions socketOptions) {
+    this.socketOptions = socketOptions;
+  }
+
   public void setConnectionListener(ConnectionListener connectionListener) {
     this.connectionListener = connectionListener;
   }
 
+  // the CPU time of the reader thread is attributed to the session
+  public void setMetrics(ProtocolMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   @Override
   public void run() {
+    metrics.threadStarted();
     try {
       try {
         serverSocket = socketFactory.createSocket();
+        socketOptions.applyTo(serverSocket);
         serverSocket.connect(new InetSocketAddress(serverURL, serverPort), connectionTimeoutMillis);
+        if (serverSocket instanceof SSLSocket) {
+          // done explicitly instead of on first read to measure it
+          long handshakeStart = System.nanoTime();
+          ((SSLSocket) serverSocket).startHandshake();
+          tlsHandshakeTime = Duration.ofNanos(System.nanoTime() - handshakeStart);
+        }
         connectionListener.onConnection();
       } catch (IOException ex) {
         handleException(ex);
@@ -53,10 +91,15 @@ public class TerminalServer implements Runnable {
       }
 
       InputStream serverIn = serverSocket.getInputStream();
-      serverOut = serverSocket.getOutputStream();
+      OutputStream serverOut = serverSocket.getOutputStream();
 
+      ReadBuffer readBuffer = new ReadBuffer(socketOptions);
       running = true;
+      outboundQueue.start(serverOut, threadFactory);
+      startReadWatchdog();
       while (running) {
+        awaitReadingResumed();
+        byte[] buffer = readBuffer.get();
         int bytesRead = serverIn.read(buffer);
         if (bytesRead < 0) {
           close();
@@ -66,18 +109,72 @@ public class TerminalServer implements Runnable {
           break;
         }
 
-        byte[] message = new byte[bytesRead];
-        System.arraycopy(buffer, 0, message, 0, bytesRead);
-        telnetListener.listen(TelnetSocket.Source.SERVER, message, LocalDateTime.now(), true);
+        if (readWatchdog != null) {
+          readWatchdog.touch();
+        }
+        telnetListener.listen(TelnetSocket.Source.SERVER, buffer, 0, bytesRead, System.nanoTime());
+        readBuffer.record(bytesRead);
       }
     } catch (Exception e) {
       if (running) {
         close();
         handleException(e);
       }
+    } finally {
+      metrics.threadStopped();
+    }
+  }
+
+  private void awaitReadingResumed() throws InterruptedException {
+    synchronized (readPauseLock) {
+      while (readingPaused && running) {
+        readPauseLock.wait();
+      }
+    }
+  }
+
+  @Override
+  public void pauseReading() {
+    readingPaused = true;
+  }
+
+  @Override
+  public void resumeReading() {
+    synchronized (readPauseLock) {
+      readingPaused = false;
+      readPauseLock.notifyAll();
+    }
+    IdleTimer watchdog = readWatchdog;
+    if (watchdog != null) {
+      watchdog.touch();
     }
   }
 
+  private void startReadWatchdog() {
+    if (readTimeoutMillis > 0) {
+      readWatchdog = new IdleTimer(TimerWheel.getDefault(), readTimeoutMillis, this::readTimedOut);
+      readWatchdog.start();
+      // the connection may have been closed while the watchdog was being created
+      if (!running) {
+        stopReadWatchdog();
+      }
+    }
+  }
+
+  private void readTimedOut() {
+    // nothing is read while paused, but the server may be sending data
+    if (running && !readingPaused) {
+      close();
+      handleException(new SocketTimeoutException(String.format(
+          "No data received from %s:%d in %d millis", serverURL, serverPort, readTimeoutMillis)));
+    }
+  }
+
+  @Override
+  public Optional<Duration> getTlsHandshakeTime() {
+    return Optional.ofNullable(tlsHandshakeTime);
+  }
+
   private void handleException(Exception ex) {
     if (connectionListener != null) {
       connectionListener.onException(ex);
@@ -86,23 +183,37 @@ public class TerminalServer implements Runnable {
     }
   }
 
-  public synchronized void write(byte[] buffer) {
+  // The buffer is sent by the writer thread of the outbound queue, so callers never
+  // block on the socket. Any error while sending it is notified to the connection listener.
+  @Override
+  public void write(byte[] buffer) {
     // the no-op may come here if socket is closed from remote end and client has not been closed
     if (!running && buffer == TelnetState.NO_OP) {
       return;
     }
-
-    try {
-      serverOut.write(buffer);
-      serverOut.flush();
-    } catch (IOException e) {
-      handleException(e);
+    if (closed) {
+      handleException(new IOException("Connection to " + serverURL + " is closed"));
+      return;
     }
+
+    outboundQueue.add(buffer);
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    outboundQueue.execute(task);
   }
 
+  @Override
   public void close() {
     try {
       running = false;
+      closed = true;
+      synchronized (readPauseLock) {
+        readPauseLock.notifyAll();
+      }
+      stopReadWatchdog();
+      outboundQueue.stop();
 
       if (serverSocket != null) {
         serverSocket.close();
@@ -117,6 +228,13 @@ public class TerminalServer implements Runnable {
     }
   }
 
+  private void stopReadWatchdog() {
+    IdleTimer watchdog = readWatchdog;
+    if (watchdog != null) {
+      watchdog.stop();
+    }
+  }
+
   @Override
   public String toString() {
     return String.format("TerminalSocket listening to %s : %d", serverURL, serverPort);
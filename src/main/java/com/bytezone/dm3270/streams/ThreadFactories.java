@@ -0,0 +1,59 @@
+package com.bytezone.dm3270.streams;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides the {@link ThreadFactory} instances which may be used to run the threads of terminal
+ * sessions.
+ * <p>
+ * The library is built for Java 8, so virtual threads are looked up at runtime and are only
+ * available when running on a JVM which supports them (Java 21 or later).
+ */
+public final class ThreadFactories {
+
+  private static final ThreadFactory PLATFORM = Thread::new;
+  private static final ThreadFactory VIRTUAL = lookupVirtualThreadFactory();
+
+  private ThreadFactories() {
+  }
+
+  private static ThreadFactory lookupVirtualThreadFactory() {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+      return (ThreadFactory) factory.invoke(builder);
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+
+  /**
+   * Gets the factory creating a platform thread per invocation, which is the default one used by
+   * sessions.
+   *
+   * @return the platform thread factory.
+   */
+  public static ThreadFactory platform() {
+    return PLATFORM;
+  }
+
+  public static boolean isVirtualSupported() {
+    return VIRTUAL != null;
+  }
+
+  /**
+   * Gets the factory creating a virtual thread per invocation.
+   *
+   * @return the virtual thread factory.
+   * @throws UnsupportedOperationException when the running JVM doesn't support virtual threads.
+   */
+  public static ThreadFactory virtual() {
+    if (VIRTUAL == null) {
+      throw new UnsupportedOperationException(
+          "Virtual threads are not supported by JVM " + System.getProperty("java.version"));
+    }
+    return VIRTUAL;
+  }
+
+}
@@ -0,0 +1,212 @@
+package com.bytezone.dm3270.streams;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel which runs the timeouts of many sessions in a single thread.
+ * <p>
+ * Scheduling and cancelling a timeout are constant time operations, and expiration has the
+ * precision of the wheel tick (100 millis for the {@link #getDefault() default wheel}), which is
+ * more than enough for keepalives and idle detection. Expired tasks run in the wheel thread, so
+ * they must be short and never block.
+ */
+public final class TimerWheel {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TimerWheel.class);
+
+  private static final long DEFAULT_TICK_MILLIS = 100;
+  private static final int DEFAULT_WHEEL_SIZE = 512;
+  private static final AtomicInteger WHEEL_COUNT = new AtomicInteger();
+
+  private final long tickNanos;
+  private final Queue<Timeout>[] buckets;
+  private final int mask;
+  private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+  private final Thread thread;
+  private final long startTime;
+  private volatile boolean running = true;
+  private long tick;
+
+  /**
+   * Timeout scheduled in a {@link TimerWheel}.
+   */
+  public static final class Timeout {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final Runnable task;
+    private final long deadline;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private long remainingRounds;
+
+    private Timeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Cancels the timeout so the associated task is not run.
+     *
+     * @return true if the timeout was cancelled, false if it had already expired or been
+     * cancelled.
+     */
+    public boolean cancel() {
+      return state.compareAndSet(PENDING, CANCELLED);
+    }
+
+    public boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state.get() == EXPIRED;
+    }
+
+    private void expire() {
+      if (!state.compareAndSet(PENDING, EXPIRED)) {
+        return;
+      }
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        LOG.error("Problem running timeout task {}", task, e);
+      }
+    }
+
+  }
+
+  private static final class DefaultHolder {
+
+    private static final TimerWheel INSTANCE =
+        new TimerWheel(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+
+  }
+
+  /**
+   * Creates a wheel with the given tick duration and number of buckets.
+   *
+   * @param tickDuration time between two consecutive ticks of the wheel.
+   * @param unit time unit of the tick duration.
+   * @param wheelSize number of buckets of the wheel. It is rounded to the next power of two.
+   */
+  @SuppressWarnings("unchecked")
+  public TimerWheel(long tickDuration, TimeUnit unit, int wheelSize) {
+    if (tickDuration <= 0) {
+      throw new IllegalArgumentException("Tick duration must be positive: " + tickDuration);
+    }
+    if (wheelSize <= 0 || wheelSize > 1 << 30) {
+      throw new IllegalArgumentException("Invalid wheel size: " + wheelSize);
+    }
+    int size = Integer.highestOneBit(wheelSize - 1) << 1;
+    size = Math.max(size, 1);
+    tickNanos = unit.toNanos(tickDuration);
+    buckets = new Queue[size];
+    for (int i = 0; i < size; i++) {
+      buckets[i] = new ArrayDeque<>();
+    }
+    mask = size - 1;
+    thread = new Thread(this::run, "dm3270-timer-" + WHEEL_COUNT.incrementAndGet());
+    thread.setDaemon(true);
+    startTime = System.nanoTime();
+    thread.start();
+  }
+
+  /**
+   * Gets the process wide wheel shared by all the sessions.
+   *
+   * @return the default wheel.
+   */
+  public static TimerWheel getDefault() {
+    return DefaultHolder.INSTANCE;
+  }
+
+  /**
+   * Schedules a task to be run once after the given delay.
+   *
+   * @param task the task to run in the wheel thread.
+   * @param delay time to wait before running the task.
+   * @param unit time unit of the delay.
+   * @return the timeout which allows cancelling the task.
+   */
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    if (!running) {
+      throw new IllegalStateException("Timer wheel has already been stopped");
+    }
+    Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(delay));
+    pendingTimeouts.add(timeout);
+    return timeout;
+  }
+
+  /**
+   * Stops the wheel thread discarding all pending timeouts.
+   * <p>
+   * The {@link #getDefault() default wheel} is never stopped.
+   */
+  public void stop() {
+    if (this == DefaultHolder.INSTANCE) {
+      throw new IllegalStateException("The default timer wheel can't be stopped");
+    }
+    running = false;
+    thread.interrupt();
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        waitForNextTick();
+      } catch (InterruptedException e) {
+        if (running) {
+          LOG.debug("Timer wheel was interrupted.");
+        }
+        return;
+      }
+      transferPendingTimeouts();
+      expireTimeouts(buckets[(int) (tick & mask)]);
+      tick++;
+    }
+  }
+
+  private void waitForNextTick() throws InterruptedException {
+    long deadline = tickNanos * (tick + 1);
+    long sleepNanos = deadline - (System.nanoTime() - startTime);
+    if (sleepNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(sleepNanos);
+    }
+  }
+
+  private void transferPendingTimeouts() {
+    Timeout timeout = pendingTimeouts.poll();
+    while (timeout != null) {
+      if (!timeout.isCancelled()) {
+        long expirationTick = Math.max(timeout.deadline / tickNanos, tick);
+        timeout.remainingRounds = (expirationTick - tick) / buckets.length;
+        buckets[(int) (expirationTick & mask)].add(timeout);
+      }
+      timeout = pendingTimeouts.poll();
+    }
+  }
+
+  private void expireTimeouts(Queue<Timeout> bucket) {
+    for (int count = bucket.size(); count > 0; count--) {
+      Timeout timeout = bucket.poll();
+      if (timeout.isCancelled()) {
+        continue;
+      }
+      if (timeout.remainingRounds > 0) {
+        timeout.remainingRounds--;
+        bucket.add(timeout);
+      } else {
+        timeout.expire();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,211 @@
+package com.bytezone.dm3270.streams;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Consumer;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// TLS over a non blocking channel, used by NioTerminalServer from its event loop thread.
+// Encrypted data read from the channel is accumulated in netIn until a whole TLS record is
+// available, and the decrypted data is handed to a consumer. Outbound application data is
+// only accepted once the handshake completes, before that only handshake records are sent.
+// Engines created by the same SSLContext for the same host and port share its client session
+// cache, so reconnections resume the previous session instead of doing a full handshake.
+class TlsSession {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TlsSession.class);
+  private static final ByteBuffer[] NO_DATA = {ByteBuffer.allocate(0)};
+
+  private final SSLEngine engine;
+  private final SocketChannel channel;
+  private ByteBuffer netIn;                   // in write mode
+  private ByteBuffer netOut;                  // in read mode
+  private ByteBuffer appIn;                   // in write mode
+  private boolean inboundClosed;
+  private long handshakeStartNanos;
+  private volatile long handshakeNanos = -1;
+
+  TlsSession(SSLEngine engine, SocketChannel channel) {
+    this.engine = engine;
+    this.channel = channel;
+    int packetSize = engine.getSession().getPacketBufferSize();
+    netIn = ByteBuffer.allocate(packetSize);
+    netOut = ByteBuffer.allocate(packetSize);
+    netOut.flip();
+    appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+  }
+
+  void beginHandshake() throws IOException {
+    handshakeStartNanos = System.nanoTime();
+    engine.beginHandshake();
+    processHandshake();
+  }
+
+  boolean isHandshakeComplete() {
+    return handshakeNanos >= 0;
+  }
+
+  Optional<Duration> getHandshakeTime() {
+    long nanos = handshakeNanos;
+    return nanos < 0 ? Optional.empty() : Optional.of(Duration.ofNanos(nanos));
+  }
+
+  // returns the number of encrypted bytes read, or -1 when the server closed the connection
+  int read(Consumer<ByteBuffer> appDataConsumer) throws IOException {
+    int bytesRead = channel.read(netIn);
+    if (bytesRead < 0) {
+      return -1;
+    }
+    netIn.flip();
+    try {
+      unwrap(appDataConsumer);
+    } finally {
+      netIn.compact();
+    }
+    processHandshake();
+    return inboundClosed ? -1 : bytesRead;
+  }
+
+  private void unwrap(Consumer<ByteBuffer> appDataConsumer) throws IOException {
+    while (netIn.hasRemaining()) {
+      SSLEngineResult result = engine.unwrap(netIn, appIn);
+      switch (result.getStatus()) {
+        case BUFFER_OVERFLOW:
+          if (appIn.position() > 0) {
+            deliver(appDataConsumer);
+          } else {
+            appIn = ByteBuffer.allocate(
+                Math.max(engine.getSession().getApplicationBufferSize(), appIn.capacity() * 2));
+          }
+          continue;
+        case BUFFER_UNDERFLOW:
+          // wait for the rest of the record, making room for it when it doesn't fit
+          if (netIn.remaining() == netIn.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocate(
+                Math.max(engine.getSession().getPacketBufferSize(), netIn.capacity() * 2));
+            grown.put(netIn);
+            grown.flip();
+            netIn = grown;
+          }
+          deliver(appDataConsumer);
+          return;
+        case CLOSED:
+          inboundClosed = true;
+          deliver(appDataConsumer);
+          return;
+        default:
+          break;
+      }
+      HandshakeStatus status = result.getHandshakeStatus();
+      if (status == HandshakeStatus.NEED_TASK || status == HandshakeStatus.NEED_WRAP) {
+        processHandshake();
+      } else if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+        break;
+      }
+    }
+    deliver(appDataConsumer);
+  }
+
+  private void deliver(Consumer<ByteBuffer> appDataConsumer) {
+    if (appIn.position() > 0) {
+      appIn.flip();
+      appDataConsumer.accept(appIn);
+      appIn.clear();
+    }
+  }
+
+  // runs the handshake steps which don't require data from the server
+  private void processHandshake() throws IOException {
+    while (true) {
+      HandshakeStatus status = engine.getHandshakeStatus();
+      if (status == HandshakeStatus.NEED_TASK) {
+        Runnable task = engine.getDelegatedTask();
+        while (task != null) {
+          task.run();
+          task = engine.getDelegatedTask();
+        }
+      } else if (status == HandshakeStatus.NEED_WRAP) {
+        wrap(NO_DATA, 0, NO_DATA.length);
+      } else {
+        if (status == HandshakeStatus.NOT_HANDSHAKING && !isHandshakeComplete()
+            && !engine.isOutboundDone()) {
+          handshakeNanos = System.nanoTime() - handshakeStartNanos;
+          LOG.debug("TLS handshake with {} completed in {} using {}", channel.getRemoteAddress(),
+              getHandshakeTime().orElse(null), engine.getSession().getProtocol());
+        }
+        return;
+      }
+    }
+  }
+
+  private void wrap(ByteBuffer[] buffers, int offset, int length) throws IOException {
+    netOut.compact();
+    try {
+      while (true) {
+        SSLEngineResult result = engine.wrap(buffers, offset, length, netOut);
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+          ByteBuffer grown = ByteBuffer
+              .allocate(netOut.capacity() + engine.getSession().getPacketBufferSize());
+          netOut.flip();
+          grown.put(netOut);
+          netOut = grown;
+        } else if (result.getStatus() == SSLEngineResult.Status.CLOSED
+            && result.bytesProduced() == 0) {
+          throw new SSLException("TLS session to " + channel.getRemoteAddress() + " is closed");
+        } else {
+          return;
+        }
+      }
+    } finally {
+      netOut.flip();
+    }
+  }
+
+  // returns true when all the encrypted data has been sent
+  boolean flush() throws IOException {
+    if (netOut.hasRemaining()) {
+      channel.write(netOut);
+    }
+    return !netOut.hasRemaining();
+  }
+
+  // returns true when all the given data has been encrypted and sent
+  boolean write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+    while (flush()) {
+      if (!hasRemaining(buffers, offset, length)) {
+        return true;
+      }
+      wrap(buffers, offset, length);
+    }
+    return false;
+  }
+
+  private static boolean hasRemaining(ByteBuffer[] buffers, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      if (buffers[i].hasRemaining()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // best effort to notify the server, the channel is closed right after
+  void close() {
+    engine.closeOutbound();
+    try {
+      processHandshake();
+      flush();
+    } catch (IOException e) {
+      LOG.debug("Problem sending TLS close notification", e);
+    }
+  }
+
+}
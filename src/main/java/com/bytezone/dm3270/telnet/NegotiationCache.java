@@ -0,0 +1,129 @@
+package com.bytezone.dm3270.telnet;
+
+import com.bytezone.dm3270.telnet.TN3270ExtendedSubcommand.Function;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the telnet options and TN3270E functions negotiated with each terminal server, so
+ * following connections to the same server can send their side of the negotiation proactively,
+ * instead of waiting for each request of the server.
+ * <p>
+ * Without it, connection setup is a chain of serialized DO/WILL exchanges, each costing a round
+ * trip before the first screen. With a cached negotiation, the expected WILL and DO commands are
+ * sent as soon as the connection is established, and the replies to the matching requests of the
+ * server are skipped, as telnet (RFC 1143) does for options which are already enabled. If the
+ * server refuses any of them, or requests an option not negotiated last time, the connection
+ * falls back to replying each request of the server, and the new result replaces the cached one.
+ * Servers must take the commands sent proactively as replies to their requests, so a server
+ * expecting each reply after its request would only get the ones outside the cached negotiation.
+ * <p>
+ * Caches are only used by the clients they are set to (see
+ * {@link com.bytezone.dm3270.TerminalClient#setNegotiationCache(NegotiationCache)}), and the same
+ * cache can be shared by any number of clients.
+ */
+public class NegotiationCache {
+
+  private final Map<String, NegotiatedOptions> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Options agreed with a terminal server in a completed negotiation.
+   */
+  public static final class NegotiatedOptions {
+
+    private final boolean extended;
+    private final boolean extendedOffered;
+    private final boolean eor;
+    private final boolean binary;
+    private final List<Function> functions;
+
+    public NegotiatedOptions(boolean extended, boolean extendedOffered, boolean eor,
+        boolean binary, List<Function> functions) {
+      this.extended = extended;
+      this.extendedOffered = extendedOffered;
+      this.eor = eor;
+      this.binary = binary;
+      this.functions = functions == null ? Collections.emptyList()
+          : Collections.unmodifiableList(functions);
+    }
+
+    public boolean isExtended() {
+      return extended;
+    }
+
+    /**
+     * Tells if the server asked to use TN3270E, even when the terminal refused it.
+     *
+     * @return true if the server sent a DO TN3270E.
+     */
+    public boolean isExtendedOffered() {
+      return extendedOffered;
+    }
+
+    public boolean isEor() {
+      return eor;
+    }
+
+    public boolean isBinary() {
+      return binary;
+    }
+
+    /**
+     * Gets the TN3270E functions agreed with the server.
+     *
+     * @return the agreed functions, which are empty when TN3270E was not used.
+     */
+    public List<Function> getFunctions() {
+      return functions;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("NegotiatedOptions [extended=%s, extendedOffered=%s, eor=%s, "
+          + "binary=%s, functions=%s]", extended, extendedOffered, eor, binary, functions);
+    }
+
+  }
+
+  /**
+   * Builds the key identifying a server and the terminal negotiating with it, since the same
+   * server may negotiate differently with terminals of different types or TN3270E preference.
+   *
+   * @param host host name of the terminal server.
+   * @param port port of the terminal server.
+   * @param extended whether the terminal prefers TN3270E.
+   * @param deviceType device type of the terminal, like IBM-3278-2.
+   * @return the key of the server entries.
+   */
+  public static String getSiteKey(String host, int port, boolean extended, String deviceType) {
+    return host + ":" + port + "/" + deviceType + (extended ? "-E" : "");
+  }
+
+  public NegotiatedOptions get(String siteKey) {
+    return entries.get(siteKey);
+  }
+
+  public void put(String siteKey, NegotiatedOptions options) {
+    entries.put(siteKey, options);
+  }
+
+  public void remove(String siteKey) {
+    entries.remove(siteKey);
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public String toString() {
+    return "NegotiationCache " + entries;
+  }
+
+}
@@ -0,0 +1,254 @@
+package com.bytezone.dm3270.telnet;
+
+import com.bytezone.dm3270.telnet.NegotiationCache.NegotiatedOptions;
+import com.bytezone.dm3270.telnet.TN3270ExtendedSubcommand.Function;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the negotiation of a connection with a terminal server whose last negotiation is
+ * cached in a {@link NegotiationCache}.
+ * <p>
+ * The options agreed last time are sent proactively when the negotiation starts, and the
+ * requests of the server for them are then taken as answered. If the server refuses any of them,
+ * or requests an option not cached, the negotiation falls back to replying each request of the
+ * server and the cached entry is discarded, to be replaced by the result of the negotiation.
+ */
+public class PipelinedNegotiation {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PipelinedNegotiation.class);
+
+  private static final byte IAC = (byte) 0xFF;
+  private static final byte WILL = (byte) 0xFB;
+  private static final byte DO = (byte) 0xFD;
+
+  private static final byte[] NO_COMMANDS = new byte[0];
+
+  private NegotiationCache cache;
+  private String siteKey;
+  private final boolean[] pendingWill = new boolean[256];
+  private final boolean[] pendingDo = new boolean[256];
+  // options enabled in a pipelined negotiation, whose requests are not replied again (RFC 1143)
+  private final boolean[] agreedWill = new boolean[256];
+  private final boolean[] agreedDo = new boolean[256];
+  private boolean extendedOffered;
+  private boolean extendedRequestExpected;
+  private volatile boolean pipelined;
+  private volatile boolean fallback;
+  private volatile List<Function> pipelinedFunctions;
+
+  /**
+   * Sets the cache of negotiations used to pipeline the negotiation with known servers.
+   *
+   * @param cache cache of negotiations, or null to always wait for the requests of the server.
+   */
+  public synchronized void setCache(NegotiationCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Starts the negotiation with a server, discarding the state of any previous one.
+   *
+   * @param host host name of the server.
+   * @param port port of the server.
+   * @param extended whether the terminal prefers TN3270E.
+   * @param deviceType device type of the terminal, like IBM-3278-2.
+   * @return the commands to send right away, which are empty when the negotiation with the
+   * server is not cached.
+   */
+  public synchronized byte[] start(String host, int port, boolean extended, String deviceType) {
+    Arrays.fill(pendingWill, false);
+    Arrays.fill(pendingDo, false);
+    Arrays.fill(agreedWill, false);
+    Arrays.fill(agreedDo, false);
+    extendedOffered = false;
+    extendedRequestExpected = false;
+    pipelined = false;
+    fallback = false;
+    pipelinedFunctions = null;
+    if (cache == null) {
+      siteKey = null;
+      return NO_COMMANDS;
+    }
+    siteKey = NegotiationCache.getSiteKey(host, port, extended, deviceType);
+    NegotiatedOptions options = cache.get(siteKey);
+    if (options == null) {
+      return NO_COMMANDS;
+    }
+
+    ByteArrayOutputStream commands = new ByteArrayOutputStream();
+    // a terminal not using TN3270E is still asked for it by servers offering it
+    extendedRequestExpected = options.isExtendedOffered();
+    if (options.isExtended() && extended) {
+      addCommand(commands, WILL, TelnetSubcommand.TN3270E);
+      pipelinedFunctions = options.getFunctions();
+    } else {
+      addCommand(commands, WILL, TelnetSubcommand.TERMINAL_TYPE);
+      if (options.isEor()) {
+        addCommand(commands, WILL, TelnetSubcommand.EOR);
+        addCommand(commands, DO, TelnetSubcommand.EOR);
+      }
+      if (options.isBinary()) {
+        addCommand(commands, WILL, TelnetSubcommand.BINARY);
+        addCommand(commands, DO, TelnetSubcommand.BINARY);
+      }
+    }
+    pipelined = true;
+    LOG.debug("Pipelining negotiation with {} using {}", siteKey, options);
+    return commands.toByteArray();
+  }
+
+  private void addCommand(ByteArrayOutputStream commands, byte command, byte option) {
+    commands.write(IAC);
+    commands.write(command);
+    commands.write(option);
+    (command == WILL ? pendingWill : pendingDo)[option & 0xFF] = true;
+  }
+
+  /**
+   * Checks if a request of the server to enable an option on the terminal side (DO) is already
+   * answered, in which case it must not be replied.
+   * <p>
+   * Requests for options offered proactively are answered by the offer, and requests for options
+   * already enabled are not replied again. A request for an option not included in the cached
+   * negotiation means the server is not negotiating as last time, which makes the negotiation
+   * fall back to replying each request of the server.
+   *
+   * @param option telnet option requested by the server.
+   * @param agreed whether the terminal agrees to enable the option.
+   * @return true if the server request was already answered.
+   */
+  public synchronized boolean isWillAnswered(byte option, boolean agreed) {
+    if (option == TelnetSubcommand.TN3270E) {
+      extendedOffered = true;
+    }
+    boolean expected = option == TelnetSubcommand.TN3270E && extendedRequestExpected;
+    return isAnswered(pendingWill, agreedWill, option, agreed, expected);
+  }
+
+  /**
+   * Checks if a request of the server to enable an option on its side (WILL) is already
+   * answered, in the same way as {@link #isWillAnswered(byte, boolean)}.
+   *
+   * @param option telnet option requested by the server.
+   * @param agreed whether the terminal agrees the server enabling the option.
+   * @return true if the server request was already answered.
+   */
+  public synchronized boolean isDoAnswered(byte option, boolean agreed) {
+    return isAnswered(pendingDo, agreedDo, option, agreed, false);
+  }
+
+  private boolean isAnswered(boolean[] pending, boolean[] enabled, byte option, boolean agreed,
+      boolean expected) {
+    if (!pipelined) {
+      return false;
+    }
+    int index = option & 0xFF;
+    if (enabled[index]) {
+      return true;
+    }
+    if (pending[index]) {
+      pending[index] = false;
+      enabled[index] = true;
+      return true;
+    }
+    if (!expected) {
+      fallBack("requested", option);
+    }
+    enabled[index] = agreed;
+    return false;
+  }
+
+  /**
+   * Registers the server refusing an option, which falls back from a pipelined negotiation when
+   * the option was offered proactively.
+   *
+   * @param option telnet option refused by the server.
+   */
+  public synchronized void setRefused(byte option) {
+    int index = option & 0xFF;
+    agreedWill[index] = false;
+    agreedDo[index] = false;
+    if (pendingWill[index] || pendingDo[index]) {
+      fallBack("refused", option);
+    }
+  }
+
+  // the rest of the negotiation replies each request as if nothing had been sent proactively,
+  // since the server may have discarded it, and options requested again are not replied twice
+  private void fallBack(String reason, byte option) {
+    if (fallback) {
+      return;
+    }
+    LOG.debug("Falling back from pipelined negotiation with {} since the server {} option {}",
+        siteKey, reason, option & 0xFF);
+    fallback = true;
+    Arrays.fill(pendingWill, false);
+    Arrays.fill(pendingDo, false);
+    pipelinedFunctions = null;
+    // the result of the negotiation replaces it once completed
+    if (cache != null && siteKey != null) {
+      cache.remove(siteKey);
+    }
+  }
+
+  /**
+   * Caches the options agreed in the negotiation, so the next one with the server is pipelined.
+   *
+   * @param extended whether TN3270E is used.
+   * @param eor whether the EOR option is enabled.
+   * @param binary whether the binary option is enabled.
+   * @param functions the TN3270E functions agreed, or null when TN3270E is not used.
+   */
+  public synchronized void complete(boolean extended, boolean eor, boolean binary,
+      List<Function> functions) {
+    if (cache != null && siteKey != null) {
+      cache.put(siteKey, new NegotiatedOptions(extended, extendedOffered, eor, binary,
+          functions));
+    }
+  }
+
+  /**
+   * Ends a negotiation which didn't complete, discarding the cached negotiation it was
+   * pipelined with, since the server may not cope with it.
+   */
+  public synchronized void abort() {
+    if (pipelined && cache != null && siteKey != null) {
+      LOG.debug("Discarding cached negotiation of {} since it didn't complete", siteKey);
+      cache.remove(siteKey);
+    }
+  }
+
+  /**
+   * Gets the TN3270E functions to request, which are the ones agreed in the cached negotiation,
+   * so the server accepts them without a counter-proposal.
+   *
+   * @return the functions agreed last time, or null when the negotiation is not pipelined.
+   */
+  public List<Function> getPipelinedFunctions() {
+    return pipelinedFunctions;
+  }
+
+  /**
+   * Tells if the negotiation was started with the options cached from a previous one.
+   *
+   * @return true if cached options were sent proactively.
+   */
+  public boolean isPipelined() {
+    return pipelined;
+  }
+
+  /**
+   * Tells if the pipelined negotiation fell back to replying each request of the server, since
+   * the server refused an option sent proactively or requested one not cached.
+   *
+   * @return true if the negotiation didn't go as cached.
+   */
+  public boolean isFallback() {
+    return fallback;
+  }
+
+}
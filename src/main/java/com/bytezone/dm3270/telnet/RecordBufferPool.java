@@ -0,0 +1,95 @@
+package com.bytezone.dm3270.telnet;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of the buffers used to assemble telnet records, shared by all the sessions.
+ * <p>
+ * Buffers are grouped in power of two size classes, from 256 bytes to 1 MB. Bigger buffers are
+ * allocated on demand and never retained. Each size class retains at most 4 MB of buffers, so
+ * the pool memory is bounded while sessions don't hold any buffer when idle.
+ */
+public final class RecordBufferPool {
+
+  private static final int MIN_SIZE_SHIFT = 8;
+  private static final int MAX_SIZE_SHIFT = 20;
+  private static final int MAX_RETAINED_BYTES_PER_CLASS = 4 * 1024 * 1024;
+  private static final RecordBufferPool DEFAULT = new RecordBufferPool();
+
+  private final SizeClass[] sizeClasses = new SizeClass[MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1];
+
+  private static final class SizeClass {
+
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger retained = new AtomicInteger();
+    private final int bufferSize;
+    private final int maxRetained;
+
+    private SizeClass(int bufferSize) {
+      this.bufferSize = bufferSize;
+      this.maxRetained = MAX_RETAINED_BYTES_PER_CLASS / bufferSize;
+    }
+
+    private byte[] acquire() {
+      byte[] buffer = buffers.poll();
+      if (buffer == null) {
+        return new byte[bufferSize];
+      }
+      retained.decrementAndGet();
+      return buffer;
+    }
+
+    private void release(byte[] buffer) {
+      if (retained.incrementAndGet() <= maxRetained) {
+        buffers.add(buffer);
+      } else {
+        retained.decrementAndGet();
+      }
+    }
+
+  }
+
+  public RecordBufferPool() {
+    for (int i = 0; i < sizeClasses.length; i++) {
+      sizeClasses[i] = new SizeClass(1 << (i + MIN_SIZE_SHIFT));
+    }
+  }
+
+  public static RecordBufferPool getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Gets a buffer of at least the given size.
+   *
+   * @param minSize minimum size of the buffer.
+   * @return a buffer, which contents are undefined.
+   */
+  public byte[] acquire(int minSize) {
+    int sizeShift = 32 - Integer.numberOfLeadingZeros(Math.max(minSize, 1) - 1);
+    int shift = Math.max(MIN_SIZE_SHIFT, sizeShift);
+    if (shift > MAX_SIZE_SHIFT) {
+      return new byte[minSize];
+    }
+    return sizeClasses[shift - MIN_SIZE_SHIFT].acquire();
+  }
+
+  /**
+   * Returns a buffer obtained with {@link #acquire(int)} to the pool.
+   *
+   * @param buffer the buffer which must not be used anymore by the caller.
+   */
+  public void release(byte[] buffer) {
+    int size = buffer.length;
+    if (Integer.bitCount(size) != 1) {
+      return;
+    }
+    int shift = Integer.numberOfTrailingZeros(size);
+    if (shift >= MIN_SIZE_SHIFT && shift <= MAX_SIZE_SHIFT) {
+      sizeClasses[shift - MIN_SIZE_SHIFT].release(buffer);
+    }
+  }
+
+}
@@ -0,0 +1,67 @@
+package com.bytezone.dm3270.telnet;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Distribution of the sizes of the records received from a terminal server.
+ * <p>
+ * Sizes are counted in power of two buckets: bucket {@code i} counts the records with a size
+ * greater than {@code 2^(i-1)} and up to {@link #getBucketUpperBound(int) 2^i} bytes.
+ */
+public class RecordSizeHistogram {
+
+  private static final int BUCKET_COUNT = 32;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public void record(int size) {
+    counts.incrementAndGet(getBucket(size));
+    max.accumulate(size);
+  }
+
+  private static int getBucket(int size) {
+    return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+  }
+
+  public int getBucketCount() {
+    return BUCKET_COUNT;
+  }
+
+  public static long getBucketUpperBound(int bucket) {
+    return 1L << bucket;
+  }
+
+  public long getCount(int bucket) {
+    return counts.get(bucket);
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder("Record sizes [");
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long count = counts.get(i);
+      if (count > 0) {
+        if (text.charAt(text.length() - 1) != '[') {
+          text.append(", ");
+        }
+        text.append(String.format("<=%d: %d", getBucketUpperBound(i), count));
+      }
+    }
+    return text.append(String.format("], max=%d", getMax())).toString();
+  }
+
+}
@@ -130,11 +130,10 @@ public class TN3270ExtendedSubcommand extends TelnetSubcommand {
       setReply(new TN3270ExtendedSubcommand(reply, 0, reply.length, telnetState));
     }
 
-    // after the server assigns our device type, request these three functions
+    // after the server assigns our device type, request these three functions, or the ones
+    // agreed last time when pipelining, so the server doesn't need to make a counter-request
     if (type == SubcommandType.DEVICE_TYPE && subType == SubType.IS) {
-      byte[] reply =
-          {TelnetCommand.IAC, TelnetCommand.SB, TN3270E, EXT_FUNCTIONS, EXT_REQUEST,
-              0x00, 0x02, 0x04, TelnetCommand.IAC, TelnetCommand.SE};
+      byte[] reply = buildFunctionsRequest(telnetState.getPipelinedFunctions());
       setReply(new TN3270ExtendedSubcommand(reply, 0, reply.length, telnetState));
     }
 
@@ -147,6 +146,7 @@ public class TN3270ExtendedSubcommand extends TelnetSubcommand {
           System.arraycopy(data, 0, reply, 0, data.length);
           reply[4] = EXT_IS;        // replace REQUEST with IS
           setReply(new TN3270ExtendedSubcommand(reply, 0, reply.length, telnetState));
+          telnetState.setFunctions(functions);
         }
         break;
 
@@ -168,6 +168,41 @@ public class TN3270ExtendedSubcommand extends TelnetSubcommand {
     }
   }
 
+  private static byte[] buildFunctionsRequest(List<Function> requestedFunctions) {
+    if (requestedFunctions == null) {
+      return new byte[]{TelnetCommand.IAC, TelnetCommand.SB, TN3270E, EXT_FUNCTIONS, EXT_REQUEST,
+          0x00, 0x02, 0x04, TelnetCommand.IAC, TelnetCommand.SE};
+    }
+    byte[] request = new byte[requestedFunctions.size() + 7];
+    request[0] = TelnetCommand.IAC;
+    request[1] = TelnetCommand.SB;
+    request[2] = TN3270E;
+    request[3] = EXT_FUNCTIONS;
+    request[4] = EXT_REQUEST;
+    int ptr = 5;
+    for (Function function : requestedFunctions) {
+      request[ptr++] = getFunctionCode(function);
+    }
+    request[ptr++] = TelnetCommand.IAC;
+    request[ptr] = TelnetCommand.SE;
+    return request;
+  }
+
+  private static byte getFunctionCode(Function function) {
+    switch (function) {
+      case BIND_IMAGE:
+        return 0;
+      case RESPONSES:
+        return 2;
+      case SYSREQ:
+        return 4;
+      case REASON:
+        return 5;
+      default:
+        throw new IllegalArgumentException("Unknown function: " + function);
+    }
+  }
+
   @Override
   public String toString() {
     switch (type) {
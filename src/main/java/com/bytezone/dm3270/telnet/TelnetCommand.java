@@ -89,6 +89,11 @@ public class TelnetCommand extends AbstractTelnetCommand {
   public void process(Screen screen) {
     // mainframe asks us DO xxx
     if (commandName == CommandName.DO) {
+      if (commandType != null && telnetState.isWillAnswered(data[2], isPreferred())) {
+        // already agreed in a pipelined negotiation, so replying again could loop
+        setAgreed();
+        return;
+      }
       byte[] reply = new byte[3];
       reply[0] = IAC;
       reply[1] = WONT;
@@ -117,6 +122,10 @@ public class TelnetCommand extends AbstractTelnetCommand {
       setReply(new TelnetCommand(telnetState, reply));
       // the actual reply (REPLAY)
     } else if (commandName == CommandName.WILL) {
+      if (commandType != null && telnetState.isDoAnswered(data[2], isEnabled())) {
+        setAgreed();
+        return;
+      }
       byte[] reply = new byte[3];
       reply[0] = IAC;
 
@@ -143,6 +152,9 @@ public class TelnetCommand extends AbstractTelnetCommand {
       reply[2] = data[2];
       setReply(new TelnetCommand(telnetState, reply));
     } else if (commandName == CommandName.DONT || commandName == CommandName.WONT) {
+      if (commandType != null) {
+        telnetState.setRefused(data[2]);
+      }
       if (commandType == CommandType.BINARY) {
         telnetState.setDoesBinary(false);
       }
@@ -158,6 +170,49 @@ public class TelnetCommand extends AbstractTelnetCommand {
     }
   }
 
+  private boolean isPreferred() {
+    switch (commandType) {
+      case TN3270_EXTENDED:
+        return telnetState.do3270Extended();
+      case TERMINAL_TYPE:
+        return telnetState.doTerminalType();
+      case EOR:
+        return telnetState.doEOR();
+      case BINARY:
+        return telnetState.doBinary();
+      default:
+        return false;
+    }
+  }
+
+  // the server enabling an option is agreed when the terminal already uses it
+  private boolean isEnabled() {
+    switch (commandType) {
+      case TN3270_EXTENDED:
+        return telnetState.does3270Extended();
+      case TERMINAL_TYPE:
+        return telnetState.doesTerminalType();
+      case EOR:
+        return telnetState.doesEOR();
+      case BINARY:
+        return telnetState.doesBinary();
+      default:
+        return false;
+    }
+  }
+
+  private void setAgreed() {
+    if (commandType == CommandType.TN3270_EXTENDED) {
+      telnetState.setDoes3270Extended(true);
+    } else if (commandType == CommandType.TERMINAL_TYPE) {
+      telnetState.setDoesTerminalType(true);
+    } else if (commandType == CommandType.EOR) {
+      telnetState.setDoesEOR(true);
+    } else if (commandType == CommandType.BINARY) {
+      telnetState.setDoesBinary(true);
+    }
+  }
+
   public String getName() {
     if (commandName == CommandName.NO_OP) {
       return "NoOp";
@@ -4,7 +4,9 @@ public interface TelnetCommandProcessor {
 
   void processData(byte[] buffer, int length);
 
-  void processRecord(byte[] buffer, int length);
+  // The record may be a view over the buffer received from the transport, so
+  // it has to be copied if it needs to be kept after returning.
+  void processRecord(byte[] buffer, int offset, int length);
 
   void processTelnetCommand(byte[] buffer, int length);
 
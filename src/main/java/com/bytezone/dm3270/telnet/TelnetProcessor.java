@@ -5,6 +5,8 @@ public class TelnetProcessor {
   // single-byte commands
   public static final byte EOR = (byte) 0xEF;   // End of record
 
+  public static final int DEFAULT_MAX_RECORD_SIZE = 1024 * 1024;
+
   // command prefix
   private static final byte IAC = (byte) 0xFF;
 
@@ -20,8 +22,10 @@ public class TelnetProcessor {
   private static final byte DO = (byte) 0xFD;
   private static final byte DONT = (byte) 0xFE;
 
+  private static final int INITIAL_BUFFER_SIZE = 256;
+
   // state variables
-  private final byte[] data = new byte[16500];      // see also SessionReader
+  private byte[] data;                  // taken from the pool only while assembling
   private int dataPtr;
   private boolean pending;              // last byte was IAC, must check next byte
   private boolean weirdData;            // when stream starts with two IACs
@@ -29,86 +33,182 @@ public class TelnetProcessor {
 
   // command processor
   private final TelnetCommandProcessor commandProcessor;
+  private final RecordBufferPool bufferPool;
+  private int maxRecordSize = DEFAULT_MAX_RECORD_SIZE;
+  private RecordSizeHistogram recordSizes;
 
   public TelnetProcessor(TelnetCommandProcessor commandProcessor) {
+    this(commandProcessor, RecordBufferPool.getDefault());
+  }
+
+  public TelnetProcessor(TelnetCommandProcessor commandProcessor, RecordBufferPool bufferPool) {
     this.commandProcessor = commandProcessor;
+    this.bufferPool = bufferPool;
+  }
+
+  public void setMaxRecordSize(int maxRecordSize) {
+    if (maxRecordSize <= 0) {
+      throw new IllegalArgumentException("Max record size must be positive: " + maxRecordSize);
+    }
+    this.maxRecordSize = maxRecordSize;
+  }
+
+  public void setRecordSizeHistogram(RecordSizeHistogram recordSizes) {
+    this.recordSizes = recordSizes;
   }
 
   public void listen(byte... buffer) {
-    for (byte thisByte : buffer) {
-      data[dataPtr++] = thisByte;           // store every byte we receive
-
-      if (thisByte == IAC) {
-        // previous byte might have been an IAC
-        if (pending) {
-          pending = false;                  // treat it as a data 0xFF
-          --dataPtr;                        // remove the second one
-          // if there is just that data 0xFF in the
-          if (dataPtr == 1) {
-            weirdData = true;               // buffer, then flag it
+    listen(buffer, 0, buffer.length);
+  }
+
+  public void listen(byte[] buffer, int offset, int length) {
+    int ptr = offset;
+    int max = offset + length;
+    while (ptr < max) {
+      // bytes up to the next IAC don't change the state, so they are handled at once
+      if (!pending && command == 0) {
+        int iacPtr = indexOfIac(buffer, ptr, max);
+        if (iacPtr > ptr) {
+          // a whole record in the buffer is passed on as is, without copying it
+          if (dataPtr == 0 && iacPtr < max - 1 && buffer[iacPtr + 1] == EOR) {
+            processRecord(buffer, ptr, iacPtr + 2 - ptr);
+            ptr = iacPtr + 2;
+          } else {
+            store(buffer, ptr, iacPtr - ptr);
+            ptr = iacPtr;
           }
-        } else {
-          pending = true;                   // this byte might be an IAC
+          continue;
         }
-        continue;
       }
+      process(buffer[ptr++]);
+    }
+  }
 
-      // previous byte really was an IAC
-      if (pending) {
-        pending = false;
+  private static int indexOfIac(byte[] buffer, int ptr, int max) {
+    while (ptr < max && buffer[ptr] != IAC) {
+      ptr++;
+    }
+    return ptr;
+  }
 
-        // first check for a valid 3270 data record
-        if (thisByte == EOR) {
-          commandProcessor.processRecord(data, dataPtr);
-          reset();
-          continue;
-        }
+  private void processRecord(byte[] buffer, int offset, int length) {
+    int recordSize = length - 2;          // exclude IAC/EOR
+    if (recordSize > maxRecordSize) {
+      throw new IllegalStateException(String.format(
+          "Received record of %d bytes exceeds the maximum size of %d", recordSize, maxRecordSize));
+    }
+    if (recordSizes != null) {
+      recordSizes.record(recordSize);
+    }
+    commandProcessor.processRecord(buffer, offset, length);
+  }
 
-        // next remove any non-telnet data
-        // some non-telnet data is in the buffer
-        if (data[0] != IAC || weirdData) {
-          dataPtr -= 2;                     // hide IAC and this byte
-          commandProcessor.processData(data, dataPtr);
-          reset();
+  private void store(byte value) {
+    ensureCapacity(dataPtr + 1);
+    data[dataPtr++] = value;
+  }
 
-          data[dataPtr++] = IAC;            // drop through and process the new byte
-          data[dataPtr++] = thisByte;
-        }
+  private void store(byte[] buffer, int offset, int length) {
+    ensureCapacity(dataPtr + length);
+    System.arraycopy(buffer, offset, data, dataPtr, length);
+    dataPtr += length;
+  }
 
-        // leave IAC SB in buffer
-        if (thisByte == SB) {
-          continue;
-        }
+  private void ensureCapacity(int size) {
+    if (data != null && size <= data.length) {
+      return;
+    }
+    if (size > maxRecordSize + 2) {         // allow for IAC/EOR
+      throw new IllegalStateException(String.format(
+          "Received record exceeds the maximum size of %d", maxRecordSize));
+    }
+    if (data == null) {
+      data = bufferPool.acquire(Math.max(size, INITIAL_BUFFER_SIZE));
+    } else {
+      byte[] grown = bufferPool.acquire(Math.max(size, data.length * 2));
+      System.arraycopy(data, 0, grown, 0, dataPtr);
+      bufferPool.release(data);
+      data = grown;
+    }
+  }
 
-        if (thisByte == SE) {
-          commandProcessor.processTelnetSubcommand(data, dataPtr);
-          reset();
-          continue;
-        }
+  private void process(byte thisByte) {
+    store(thisByte);                      // store every byte we receive
 
-        // known three-byte commands
-        if (thisByte == DO || thisByte == DONT || thisByte == WILL | thisByte == WONT) {
-          command = thisByte;               // save it and wait for the third byte
-          continue;
+    if (thisByte == IAC) {
+      // previous byte might have been an IAC
+      if (pending) {
+        pending = false;                  // treat it as a data 0xFF
+        --dataPtr;                        // remove the second one
+        // if there is just that data 0xFF in the
+        if (dataPtr == 1) {
+          weirdData = true;               // buffer, then flag it
         }
+      } else {
+        pending = true;                   // this byte might be an IAC
+      }
+      return;
+    }
 
-        // known two-byte commands
-        if (thisByte == NOP || thisByte == IP) {
-          commandProcessor.processTelnetCommand(data, dataPtr);
-          reset();
-          continue;
-        }
+    // previous byte really was an IAC
+    if (pending) {
+      pending = false;
+
+      // first check for a valid 3270 data record
+      if (thisByte == EOR) {
+        processRecord(data, 0, dataPtr);
+        reset();
+        return;
+      }
 
-        System.err.printf("Unknown command: %02X%n", thisByte);   // handle error somehow
-        // the third byte has arrived (in thisByte)
-      } else if (command != 0) {
+      // next remove any non-telnet data
+      // some non-telnet data is in the buffer
+      if (data[0] != IAC || weirdData) {
+        dataPtr -= 2;                     // hide IAC and this byte
+        commandProcessor.processData(data, dataPtr);
+        reset();
+
+        store(IAC);                       // drop through and process the new byte
+        store(thisByte);
+      }
+
+      // leave IAC SB in buffer
+      if (thisByte == SB) {
+        return;
+      }
+
+      if (thisByte == SE) {
+        commandProcessor.processTelnetSubcommand(data, dataPtr);
+        reset();
+        return;
+      }
+
+      // known three-byte commands
+      if (thisByte == DO || thisByte == DONT || thisByte == WILL | thisByte == WONT) {
+        command = thisByte;               // save it and wait for the third byte
+        return;
+      }
+
+      // known two-byte commands
+      if (thisByte == NOP || thisByte == IP) {
         commandProcessor.processTelnetCommand(data, dataPtr);
         reset();
+        return;
       }
+
+      System.err.printf("Unknown command: %02X%n", thisByte);   // handle error somehow
+      // the third byte has arrived (in thisByte)
+    } else if (command != 0) {
+      commandProcessor.processTelnetCommand(data, dataPtr);
+      reset();
     }
   }
 
   private void reset() {
+    if (data != null) {
+      bufferPool.release(data);
+      data = null;
+    }
     dataPtr = 0;
     command = 0;
     weirdData = false;
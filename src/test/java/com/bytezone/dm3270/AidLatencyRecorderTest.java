@@ -0,0 +1,162 @@
+package com.bytezone.dm3270;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bytezone.dm3270.commands.AIDCommand;
+import com.bytezone.dm3270.metrics.AidLatencyRecorder;
+import com.bytezone.dm3270.metrics.AidLatencySample;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AidLatencyRecorderTest {
+
+  private static final long SEND_NANOS = 1_000_000;
+  private static final long FIRST_BYTE_NANOS = 3_000_000;
+  private static final long RECORD_NANOS = 3_500_000;
+  private static final long FIELDS_BUILT_NANOS = 3_700_000;
+  private static final long UNLOCK_NANOS = 4_000_000;
+
+  private AidLatencyRecorder recorder;
+  private final List<AidLatencySample> samples = new ArrayList<>();
+
+  @Before
+  public void setup() {
+    recorder = new AidLatencyRecorder();
+    recorder.addListener(samples::add);
+  }
+
+  private void sendEnterAndGetScreen() {
+    recorder.aidSent(AIDCommand.AID_ENTER, "ENTER", SEND_NANOS);
+    recorder.bytesReceived(FIRST_BYTE_NANOS);
+    recorder.recordReceived(RECORD_NANOS);
+    recorder.fieldsBuilt(FIELDS_BUILT_NANOS);
+    recorder.keyboardUnlocked(UNLOCK_NANOS);
+  }
+
+  @Test
+  public void shouldSplitResponseTimeInPhasesWhenKeyboardUnlocked() {
+    sendEnterAndGetScreen();
+    AidLatencySample sample = samples.get(0);
+    assertThat(sample.getAid()).isEqualTo(AIDCommand.AID_ENTER);
+    assertThat(sample.getAidKey()).isEqualTo("ENTER");
+    assertThat(sample.getTimeToFirstByte()).isEqualTo(Duration.ofMillis(2));
+    assertThat(sample.getTransferTime()).isEqualTo(Duration.ofNanos(500_000));
+    assertThat(sample.getProcessingTime()).isEqualTo(Duration.ofNanos(500_000));
+    assertThat(sample.getApplyTime()).isEqualTo(Duration.ofNanos(200_000));
+    assertThat(sample.getResponseTime()).isEqualTo(Duration.ofMillis(3));
+  }
+
+  @Test
+  public void shouldGetResponseTimeAsSumOfPhasesWhenKeyboardUnlocked() {
+    sendEnterAndGetScreen();
+    AidLatencySample sample = samples.get(0);
+    assertThat(sample.getTimeToFirstByte().plus(sample.getTransferTime())
+        .plus(sample.getProcessingTime())).isEqualTo(sample.getResponseTime());
+  }
+
+  @Test
+  public void shouldIgnoreBytesReadBeforeAidWhenBytesReceivedAfterAidSent() {
+    recorder.aidSent(AIDCommand.AID_ENTER, "ENTER", SEND_NANOS);
+    recorder.bytesReceived(SEND_NANOS - 1);
+    recorder.bytesReceived(FIRST_BYTE_NANOS);
+    recorder.recordReceived(RECORD_NANOS);
+    recorder.keyboardUnlocked(UNLOCK_NANOS);
+    assertThat(samples.get(0).getFirstByteNanos()).isEqualTo(FIRST_BYTE_NANOS);
+  }
+
+  @Test
+  public void shouldKeepFirstByteWhenBytesReceivedSeveralTimes() {
+    recorder.aidSent(AIDCommand.AID_ENTER, "ENTER", SEND_NANOS);
+    recorder.bytesReceived(FIRST_BYTE_NANOS);
+    recorder.bytesReceived(RECORD_NANOS);
+    recorder.recordReceived(RECORD_NANOS);
+    recorder.keyboardUnlocked(UNLOCK_NANOS);
+    assertThat(samples.get(0).getFirstByteNanos()).isEqualTo(FIRST_BYTE_NANOS);
+  }
+
+  @Test
+  public void shouldCountWholeResponseAsTimeToFirstByteWhenUnlockedWithoutRecord() {
+    recorder.aidSent(AIDCommand.AID_ENTER, "ENTER", SEND_NANOS);
+    recorder.keyboardUnlocked(UNLOCK_NANOS);
+    AidLatencySample sample = samples.get(0);
+    assertThat(sample.getTimeToFirstByte()).isEqualTo(sample.getResponseTime());
+    assertThat(sample.getTransferTime()).isEqualTo(Duration.ZERO);
+    assertThat(sample.getProcessingTime()).isEqualTo(Duration.ZERO);
+  }
+
+  @Test
+  public void shouldNotCountApplyTimeOfPreviousRecordWhenFieldsBuiltBeforeLastRecord() {
+    recorder.aidSent(AIDCommand.AID_ENTER, "ENTER", SEND_NANOS);
+    recorder.bytesReceived(FIRST_BYTE_NANOS);
+    recorder.recordReceived(FIRST_BYTE_NANOS);
+    recorder.fieldsBuilt(FIRST_BYTE_NANOS + 100);
+    recorder.recordReceived(RECORD_NANOS);
+    recorder.keyboardUnlocked(UNLOCK_NANOS);
+    assertThat(samples.get(0).getApplyTime()).isEqualTo(Duration.ZERO);
+  }
+
+  @Test
+  public void shouldNotRecordWhenKeyboardUnlockedWithoutAidSent() {
+    recorder.bytesReceived(FIRST_BYTE_NANOS);
+    recorder.recordReceived(RECORD_NANOS);
+    recorder.keyboardUnlocked(UNLOCK_NANOS);
+    assertThat(samples).isEmpty();
+    assertThat(recorder.getResponseTimes().getCount()).isZero();
+  }
+
+  @Test
+  public void shouldRecordOnlyLastAidWhenAidSentBeforePreviousOneIsAnswered() {
+    recorder.aidSent(AIDCommand.AID_PF3, "PF3", 0);
+    sendEnterAndGetScreen();
+    assertThat(samples).hasSize(1);
+    assertThat(recorder.getResponseTimesByAid()).containsOnlyKeys("ENTER");
+  }
+
+  @Test
+  public void shouldGroupResponseTimesByAidKeyWhenKeyboardUnlocked() {
+    sendEnterAndGetScreen();
+    sendEnterAndGetScreen();
+    recorder.aidSent(AIDCommand.AID_PF3, "PF3", SEND_NANOS);
+    recorder.keyboardUnlocked(UNLOCK_NANOS);
+    assertThat(recorder.getResponseTimes().getCount()).isEqualTo(3);
+    assertThat(recorder.getResponseTimesByAid().get("ENTER").getCount()).isEqualTo(2);
+    assertThat(recorder.getResponseTimesByAid().get("PF3").getCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldRecordPhasesInHistogramsWhenKeyboardUnlocked() {
+    sendEnterAndGetScreen();
+    assertThat(recorder.getTimesToFirstByte().getMaxNanos())
+        .isEqualTo(FIRST_BYTE_NANOS - SEND_NANOS);
+    assertThat(recorder.getTransferTimes().getMaxNanos())
+        .isEqualTo(RECORD_NANOS - FIRST_BYTE_NANOS);
+    assertThat(recorder.getProcessingTimes().getMaxNanos())
+        .isEqualTo(UNLOCK_NANOS - RECORD_NANOS);
+  }
+
+  @Test
+  public void shouldNotifyOtherListenersWhenListenerThrowsException() {
+    recorder.addListener(sample -> {
+      throw new IllegalStateException("listener failure");
+    });
+    List<AidLatencySample> lastSamples = new ArrayList<>();
+    recorder.addListener(lastSamples::add);
+    sendEnterAndGetScreen();
+    assertThat(lastSamples).hasSize(1);
+  }
+
+  @Test
+  public void shouldDiscardPendingAidAndHistogramsWhenReset() {
+    sendEnterAndGetScreen();
+    recorder.aidSent(AIDCommand.AID_ENTER, "ENTER", SEND_NANOS);
+    recorder.reset();
+    recorder.keyboardUnlocked(UNLOCK_NANOS);
+    assertThat(samples).hasSize(1);
+    assertThat(recorder.getResponseTimes().getCount()).isZero();
+    assertThat(recorder.getResponseTimesByAid()).isEmpty();
+  }
+
+}
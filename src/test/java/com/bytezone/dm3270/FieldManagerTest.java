@@ -0,0 +1,170 @@
+package com.bytezone.dm3270;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bytezone.dm3270.commands.Command;
+import com.bytezone.dm3270.display.Field;
+import com.bytezone.dm3270.display.Screen;
+import com.bytezone.dm3270.display.ScreenChange;
+import com.bytezone.dm3270.display.ScreenChangeListener;
+import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.display.ScreenWatcher;
+import com.bytezone.dm3270.orders.BufferAddress;
+import com.bytezone.dm3270.orders.Order;
+import com.bytezone.dm3270.streams.TelnetState;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FieldManagerTest {
+
+  private static final Charset CHARSET = Charset.CP1047;
+  private static final ScreenDimensions SCREEN_DIMENSIONS = new ScreenDimensions(24, 80);
+  // restore keyboard and reset modified flags
+  private static final byte WCC = (byte) 0xC3;
+  private static final int PROTECTED = 0x20;
+  private static final int UNPROTECTED = 0;
+
+  private Screen screen;
+
+  @Before
+  public void setup() {
+    CHARSET.load();
+    screen = buildScreen(buildStream(Command.ERASE_WRITE_F5,
+        field(0, PROTECTED, "TIME 10:00"),
+        field(20, UNPROTECTED, "INPUT"),
+        field(160, PROTECTED, "STATUS")));
+  }
+
+  private ScreenChange processWithChange(byte[] stream) {
+    List<ScreenChange> changes = new ArrayList<>();
+    screen.getFieldManager().addScreenChangeListener(new ScreenChangeListener() {
+      @Override
+      public void screenChanged(ScreenWatcher screenWatcher) {
+      }
+
+      @Override
+      public void screenChanged(ScreenWatcher screenWatcher, ScreenChange screenChange) {
+        changes.add(screenChange);
+      }
+    });
+    process(stream, screen);
+    assertThat(changes).hasSize(1);
+    return changes.get(0);
+  }
+
+  private static Screen buildScreen(byte[] stream) {
+    Screen screen = new Screen(SCREEN_DIMENSIONS, null, new TelnetState(), CHARSET);
+    process(stream, screen);
+    return screen;
+  }
+
+  private static void process(byte[] stream, Screen screen) {
+    Command.getCommand(stream, 0, stream.length, CHARSET).process(screen);
+  }
+
+  private static byte[] buildStream(byte command, byte[]... orders) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.write(command);
+    stream.write(WCC);
+    for (byte[] order : orders) {
+      stream.write(order, 0, order.length);
+    }
+    return stream.toByteArray();
+  }
+
+  private static byte[] field(int position, int attribute, String text) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    writeAddress(stream, position);
+    stream.write(Order.START_FIELD);
+    stream.write(BufferAddress.ADDRESS[attribute]);
+    writeText(stream, text);
+    return stream.toByteArray();
+  }
+
+  private static byte[] text(int position, String text) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    writeAddress(stream, position);
+    writeText(stream, text);
+    return stream.toByteArray();
+  }
+
+  private static void writeAddress(ByteArrayOutputStream stream, int position) {
+    byte[] address = new byte[2];
+    new BufferAddress(position).packAddress(address, 0);
+    stream.write(Order.SET_BUFFER_ADDRESS);
+    stream.write(address, 0, address.length);
+  }
+
+  private static void writeText(ByteArrayOutputStream stream, String text) {
+    byte[] bytes = text.getBytes(java.nio.charset.Charset.forName(CHARSET.name()));
+    stream.write(bytes, 0, bytes.length);
+  }
+
+  @Test
+  public void shouldKeepUnchangedFieldsWhenWriteWithoutMovingFields() {
+    List<Field> fields = new ArrayList<>(screen.getFieldManager().getFields());
+    process(buildStream(Command.WRITE_F1, text(6, "10:01")), screen);
+    assertThat(screen.getFieldManager().getFields())
+        .usingElementComparator((f1, f2) -> f1 == f2 ? 0 : 1)
+        .containsExactlyElementsOf(fields);
+  }
+
+  @Test
+  public void shouldUpdateChangedFieldWhenWriteWithoutMovingFields() {
+    process(buildStream(Command.WRITE_F1, text(6, "10:01")), screen);
+    Screen expected = buildScreen(buildStream(Command.ERASE_WRITE_F5,
+        field(0, PROTECTED, "TIME 10:01"),
+        field(20, UNPROTECTED, "INPUT"),
+        field(160, PROTECTED, "STATUS")));
+    assertThat(screen.getFieldManager().getFields())
+        .isEqualTo(expected.getFieldManager().getFields());
+  }
+
+  @Test
+  public void shouldUpdateUnprotectedFieldsWhenWriteReplacingStartField() {
+    process(buildStream(Command.WRITE_F1, field(20, PROTECTED, "")), screen);
+    assertThat(screen.getFieldManager().getUnprotectedFields()).isEmpty();
+  }
+
+  @Test
+  public void shouldBuildAllFieldsWhenWriteAddingStartField() {
+    process(buildStream(Command.WRITE_F1, field(60, UNPROTECTED, "NEW")), screen);
+    Screen expected = buildScreen(buildStream(Command.ERASE_WRITE_F5,
+        field(0, PROTECTED, "TIME 10:00"),
+        field(20, UNPROTECTED, "INPUT"),
+        field(160, PROTECTED, "STATUS"),
+        field(60, UNPROTECTED, "NEW")));
+    assertThat(screen.getFieldManager().getFields())
+        .isEqualTo(expected.getFieldManager().getFields());
+  }
+
+  @Test
+  public void shouldNotifyChangedRowAndFieldWhenWriteWithoutMovingFields() {
+    Field statusField = screen.getFieldManager().getFields().get(2);
+    ScreenChange change = processWithChange(buildStream(Command.WRITE_F1, text(161, "ERROR ")));
+    BitSet expectedRows = new BitSet();
+    expectedRows.set(2);
+    assertThat(change.getChangedRows()).isEqualTo(expectedRows);
+    assertThat(change.getChangedFields()).containsExactly(statusField);
+    assertThat(change.isFieldLayoutChanged()).isFalse();
+  }
+
+  @Test
+  public void shouldNotifyNoChangesWhenWriteSameText() {
+    ScreenChange change = processWithChange(buildStream(Command.WRITE_F1, text(6, "10:00")));
+    assertThat(change.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void shouldNotifyAllFieldsWhenWriteAddingStartField() {
+    ScreenChange change = processWithChange(
+        buildStream(Command.WRITE_F1, field(60, UNPROTECTED, "NEW")));
+    assertThat(change.isFieldLayoutChanged()).isTrue();
+    assertThat(change.getChangedFields()).isEqualTo(screen.getFieldManager().getFields());
+  }
+
+}
@@ -0,0 +1,113 @@
+package com.bytezone.dm3270;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bytezone.dm3270.commands.AIDCommand;
+import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.simulator.AidRequest;
+import com.bytezone.dm3270.simulator.HostApplication;
+import com.bytezone.dm3270.simulator.HostScreen;
+import com.bytezone.dm3270.simulator.HostSession;
+import com.bytezone.dm3270.simulator.HostSimulator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Test;
+
+public class HostSimulatorTest {
+
+  private static final int TERMINAL_MODEL_TYPE_TWO = 2;
+  private static final ScreenDimensions SCREEN_DIMENSIONS = new ScreenDimensions(24, 80);
+  private static final long TIMEOUT_MILLIS = 10000;
+  private static final String SERVICE_HOST = "localhost";
+  private static final String USERNAME = "testusr";
+
+  private TerminalClient client;
+  private final ScheduledExecutorService stableTimeoutExecutor = Executors
+      .newSingleThreadScheduledExecutor();
+
+  @After
+  public void teardown() throws Exception {
+    if (client != null) {
+      client.disconnect();
+    }
+    stableTimeoutExecutor.shutdownNow();
+  }
+
+  private void connect(HostSimulator simulator, boolean extended) throws Exception {
+    client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+    client.setUsesExtended3270(extended);
+    client.connect(SERVICE_HOST, simulator.getPort());
+    new UnlockWaiter(client, stableTimeoutExecutor).await(TIMEOUT_MILLIS);
+  }
+
+  private void awaitScreenText(String text) throws InterruptedException, TimeoutException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (client.isKeyboardLocked() || !client.getScreenText().replace('\u0000', ' ')
+        .contains(text)) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new TimeoutException("Screen text not found: " + text);
+      }
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  public void shouldGetSimulatedMenuScreenWhenSendUserToHostSimulator() throws Exception {
+    HostScreen menu = new HostScreen().addLabel(1, 1, "READY");
+    try (HostSimulator simulator = new HostSimulator(new HostApplication() {
+      @Override
+      public HostScreen getWelcomeScreen(HostSession session) {
+        return new HostScreen()
+            .addLabel(1, 1, "USER")
+            .addInputField(1, 6, 8);
+      }
+
+      @Override
+      public HostScreen handleAid(HostSession session, AidRequest request) {
+        return USERNAME.equals(request.getFieldText(1, 6)) ? menu : null;
+      }
+    })) {
+      simulator.setThinkTimeMillis(10, 20);
+      simulator.start();
+      for (boolean extended : new boolean[]{true, false}) {
+        connect(simulator, extended);
+        client.setFieldTextByCoord(1, 7, USERNAME);
+        client.sendAID(AIDCommand.AID_ENTER, "ENTER");
+        new ScreenTextWaiter("READY", client, stableTimeoutExecutor).await(TIMEOUT_MILLIS);
+        client.disconnect();
+      }
+      assertThat(simulator.getAidCount()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void shouldGetAllScreensWhenSendMoreAidsThanSequenceByteToHostSimulator()
+      throws Exception {
+    try (HostSimulator simulator = new HostSimulator(new HostApplication() {
+      @Override
+      public HostScreen getWelcomeScreen(HostSession session) {
+        return new HostScreen().addLabel(1, 1, "COUNT 0");
+      }
+
+      @Override
+      public HostScreen handleAid(HostSession session, AidRequest request) {
+        Integer count = (Integer) session.getAttribute("count");
+        int next = count == null ? 1 : count + 1;
+        session.setAttribute("count", next);
+        return new HostScreen().addLabel(1, 1, "COUNT " + next);
+      }
+    })) {
+      simulator.start();
+      connect(simulator, true);
+      // TN3270E sequence numbers containing 0xFF are sent from the 256th screen on
+      for (int i = 1; i <= 300; i++) {
+        client.sendAID(AIDCommand.AID_ENTER, "ENTER");
+        awaitScreenText("COUNT " + i + " ");
+      }
+      assertThat(simulator.getScreenCount()).isEqualTo(301);
+    }
+  }
+
+}
@@ -0,0 +1,285 @@
+package com.bytezone.dm3270;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bytezone.dm3270.attributes.Attribute;
+import com.bytezone.dm3270.attributes.ColorAttribute;
+import com.bytezone.dm3270.commands.Command;
+import com.bytezone.dm3270.display.Screen;
+import com.bytezone.dm3270.display.Screen.ScreenOption;
+import com.bytezone.dm3270.display.ScreenContext;
+import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.display.ScreenPosition;
+import com.bytezone.dm3270.orders.BufferAddress;
+import com.bytezone.dm3270.orders.Order;
+import com.bytezone.dm3270.orders.OrderInterpreter;
+import com.bytezone.dm3270.streams.TelnetState;
+import com.bytezone.dm3270.telnet.TelnetCommandProcessor;
+import com.bytezone.dm3270.telnet.TelnetProcessor;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import us.abstracta.wiresham.Flow;
+import us.abstracta.wiresham.Packet;
+import us.abstracta.wiresham.PacketStep;
+import us.abstracta.wiresham.ServerPacketStep;
+
+public class OrderInterpreterTest {
+
+  private static final Charset CHARSET = Charset.CP1047;
+  private static final ScreenDimensions SCREEN_DIMENSIONS = new ScreenDimensions(24, 80);
+  private static final ScreenDimensions ALTERNATE_SCREEN_DIMENSIONS = new ScreenDimensions(27,
+      132);
+  // restore keyboard and reset modified flags
+  private static final byte WCC = (byte) 0xC3;
+  private static final int PROTECTED = 0x20;
+  private static final int UNPROTECTED = 0;
+  // data type of the TN3270E header of 3270 data records
+  private static final byte TN3270E_DATA = 0x00;
+  private static final int TN3270E_HEADER_LENGTH = 5;
+
+  private Screen interpretedScreen;
+  private Screen orderScreen;
+
+  @Before
+  public void setup() {
+    CHARSET.load();
+    interpretedScreen = buildScreen();
+    orderScreen = buildScreen();
+  }
+
+  private static Screen buildScreen() {
+    return new Screen(SCREEN_DIMENSIONS, ALTERNATE_SCREEN_DIMENSIONS, new TelnetState(),
+        CHARSET);
+  }
+
+  private void process(byte[] stream) {
+    process(stream, 0, stream.length);
+  }
+
+  // applies the stream to one screen with the interpreter and to the other one with the orders
+  // objects, in the same way as WriteCommand does
+  private void process(byte[] buffer, int offset, int length) {
+    byte command = buffer[offset];
+    if (command != Command.WRITE_01 && command != Command.WRITE_F1) {
+      ScreenOption option = command == Command.ERASE_WRITE_ALTERNATE_0D
+          || command == Command.ERASE_WRITE_ALTERNATE_7E ? ScreenOption.ALTERNATE
+          : ScreenOption.DEFAULT;
+      for (Screen screen : Arrays.asList(interpretedScreen, orderScreen)) {
+        screen.clearScreen(option);
+        screen.setCurrentScreen(option);
+      }
+    }
+    int max = offset + length;
+    OrderInterpreter.process(buffer, offset + 2, max, interpretedScreen);
+    for (Order order : OrderInterpreter.getOrders(buffer, offset + 2, max, CHARSET)) {
+      order.process(orderScreen);
+    }
+    interpretedScreen.buildFields();
+    orderScreen.buildFields();
+  }
+
+  private void assertSameScreens() {
+    assertThat(describe(interpretedScreen)).isEqualTo(describe(orderScreen));
+    assertThat(interpretedScreen.getFieldManager().getFields())
+        .isEqualTo(orderScreen.getFieldManager().getFields());
+  }
+
+  private static List<String> describe(Screen screen) {
+    List<String> positions = new ArrayList<>();
+    for (int i = 0; i < screen.getScreenDimensions().size; i++) {
+      ScreenPosition position = screen.getScreenPosition(i);
+      ScreenContext context = position.getScreenContext();
+      positions.add(String.format("%04d %02X %s %s %s %s %02X %s %s", i, position.getByte(),
+          position.isStartField() ? position.getStartFieldAttribute() : "",
+          position.getAttributes(), context.foregroundColor, context.backgroundColor,
+          context.highlight, context.highIntensity, context.isGraphic));
+    }
+    return positions;
+  }
+
+  private static List<byte[]> getWriteRecords(String flowResource) throws FileNotFoundException {
+    List<byte[]> records = new ArrayList<>();
+    TelnetProcessor telnetProcessor = new TelnetProcessor(new TelnetCommandProcessor() {
+      @Override
+      public void processData(byte[] buffer, int length) {
+      }
+
+      @Override
+      public void processRecord(byte[] buffer, int offset, int length) {
+        // exclude IAC EOR
+        byte[] record = Arrays.copyOfRange(buffer, offset, offset + length - 2);
+        if (record.length > TN3270E_HEADER_LENGTH && record[0] == TN3270E_DATA) {
+          record = Arrays.copyOfRange(record, TN3270E_HEADER_LENGTH, record.length);
+        }
+        if (record.length > 2 && isWrite(record[0])) {
+          records.add(record);
+        }
+      }
+
+      @Override
+      public void processTelnetCommand(byte[] buffer, int length) {
+      }
+
+      @Override
+      public void processTelnetSubcommand(byte[] buffer, int length) {
+      }
+    });
+    File flowFile = new File(OrderInterpreterTest.class.getResource(flowResource).getFile());
+    for (PacketStep step : Flow.fromYml(flowFile).getSteps()) {
+      if (step instanceof ServerPacketStep) {
+        telnetProcessor.listen(Packet.fromHexDump(step.getData()).getBytes());
+      }
+    }
+    return records;
+  }
+
+  private static boolean isWrite(byte command) {
+    return command == Command.WRITE_01 || command == Command.WRITE_F1
+        || command == Command.ERASE_WRITE_05 || command == Command.ERASE_WRITE_F5
+        || command == Command.ERASE_WRITE_ALTERNATE_0D
+        || command == Command.ERASE_WRITE_ALTERNATE_7E;
+  }
+
+  private static byte[] buildStream(byte command, byte[]... orders) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.write(command);
+    stream.write(WCC);
+    for (byte[] order : orders) {
+      stream.write(order, 0, order.length);
+    }
+    return stream.toByteArray();
+  }
+
+  private static byte[] field(int position, int attribute, String text) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    writeAddress(stream, position);
+    stream.write(Order.START_FIELD);
+    stream.write(BufferAddress.ADDRESS[attribute]);
+    writeText(stream, text);
+    return stream.toByteArray();
+  }
+
+  private static byte[] address(int position) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    writeAddress(stream, position);
+    return stream.toByteArray();
+  }
+
+  private static void writeAddress(ByteArrayOutputStream stream, int position) {
+    byte[] address = new byte[2];
+    new BufferAddress(position).packAddress(address, 0);
+    stream.write(Order.SET_BUFFER_ADDRESS);
+    stream.write(address, 0, address.length);
+  }
+
+  private static byte[] text(String text) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    writeText(stream, text);
+    return stream.toByteArray();
+  }
+
+  private static void writeText(ByteArrayOutputStream stream, String text) {
+    byte[] bytes = text.getBytes(java.nio.charset.Charset.forName(CHARSET.name()));
+    stream.write(bytes, 0, bytes.length);
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] ret = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      ret[i] = (byte) values[i];
+    }
+    return ret;
+  }
+
+  private static byte[] repeatToAddress(int stopPosition, int... repeatChar) {
+    byte[] address = new byte[2];
+    new BufferAddress(stopPosition).packAddress(address, 0);
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.write(Order.REPEAT_TO_ADDRESS);
+    stream.write(address, 0, address.length);
+    byte[] repeatBytes = bytes(repeatChar);
+    stream.write(repeatBytes, 0, repeatBytes.length);
+    return stream.toByteArray();
+  }
+
+  @Test
+  public void shouldGetSameScreensWhenProcessRecordedWrites() throws Exception {
+    for (String flow : Arrays.asList("/login.yml", "/login-3278-M2-E.yml",
+        "/login-3270-model-5.yml", "/login-special-characters.yml",
+        "/login-apl-charset-screen.yml", "/login-extended-field-without-field-attribute.yml",
+        "/attribute_not_present.yml", "/field_without_start_attribute.yml",
+        "/sscplu-login.yml")) {
+      setup();
+      List<byte[]> records = getWriteRecords(flow);
+      assertThat(records).as(flow).isNotEmpty();
+      for (byte[] record : records) {
+        process(record);
+        assertSameScreens();
+      }
+    }
+  }
+
+  @Test
+  public void shouldGetSameScreensWhenProcessProgramTabAfterTextAndOrders() {
+    process(buildStream(Command.ERASE_WRITE_F5,
+        field(0, PROTECTED, "NAME"),
+        field(10, UNPROTECTED, "OLD VALUE"),
+        field(30, UNPROTECTED, "OTHER VALUE"),
+        field(50, UNPROTECTED, "LAST VALUE")));
+    process(buildStream(Command.WRITE_F1,
+        address(11), text("NEW"), bytes(Order.PROGRAM_TAB),
+        bytes(Order.PROGRAM_TAB), address(51), bytes(Order.PROGRAM_TAB)));
+    assertSameScreens();
+  }
+
+  @Test
+  public void shouldGetSameScreensWhenProcessStartFieldExtendedWithStartFieldNotFirst() {
+    process(buildStream(Command.ERASE_WRITE_F5,
+        address(0),
+        bytes(Order.START_FIELD_EXTENDED, 3, Attribute.XA_FGCOLOR, ColorAttribute.COLOR_RED,
+            Attribute.XA_START_FIELD, BufferAddress.ADDRESS[PROTECTED],
+            Attribute.XA_HIGHLIGHTING, 0xF2),
+        text("LABEL"),
+        bytes(Order.START_FIELD_EXTENDED, 1, Attribute.XA_FGCOLOR, ColorAttribute.COLOR_GREEN),
+        text("NO ATTRIBUTE")));
+    assertSameScreens();
+  }
+
+  @Test
+  public void shouldGetSameScreensWhenProcessGraphicsEscapeAndRepeatToAddress() {
+    process(buildStream(Command.ERASE_WRITE_F5,
+        field(0, PROTECTED, "BOX"),
+        address(80), bytes(Order.GRAPHICS_ESCAPE, 0xC5, Order.GRAPHICS_ESCAPE, 0xA2,
+            Order.GRAPHICS_ESCAPE, 0xA2, Order.GRAPHICS_ESCAPE, 0xA2),
+        repeatToAddress(120, Order.GRAPHICS_ESCAPE, 0xA2),
+        repeatToAddress(200, 0xC1),
+        repeatToAddress(100, 0x00),
+        bytes(Order.SET_ATTRIBUTE, Attribute.XA_FGCOLOR, ColorAttribute.COLOR_YELLOW),
+        text("AFTER")));
+    assertSameScreens();
+  }
+
+  @Test
+  public void shouldGetSameScreensWhenProcessDuplicatedFormatControlOrders() {
+    process(buildStream(Command.ERASE_WRITE_F5,
+        field(0, PROTECTED, "A"),
+        field(400, UNPROTECTED, ""),
+        address(2),
+        bytes(Order.FCO_NULL, Order.FCO_NULL, Order.FCO_NULL, Order.FCO_SUBSTITUTE,
+            Order.FCO_SUBSTITUTE, Order.FCO_DUPLICATE, Order.FCO_FIELD_MARK),
+        text("B"),
+        bytes(Order.FCO_NEWLINE, Order.FCO_NEWLINE, Order.FCO_NEWLINE),
+        text("C"),
+        bytes(Order.FCO_EIGHT_ONES, Order.FCO_EIGHT_ONES, Order.FCO_CARRIAGE_RETURN,
+            Order.FCO_NEWLINE, Order.FCO_END_OF_MEDIUM, Order.FCO_FORM_FEED),
+        text("D"), bytes(Order.PROGRAM_TAB)));
+    assertSameScreens();
+  }
+
+}
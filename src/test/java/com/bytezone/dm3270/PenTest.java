@@ -0,0 +1,163 @@
+package com.bytezone.dm3270;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bytezone.dm3270.attributes.Attribute;
+import com.bytezone.dm3270.attributes.ColorAttribute;
+import com.bytezone.dm3270.attributes.StartFieldAttribute;
+import com.bytezone.dm3270.commands.Command;
+import com.bytezone.dm3270.display.Pen;
+import com.bytezone.dm3270.display.Screen;
+import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.display.ScreenPosition;
+import com.bytezone.dm3270.orders.BufferAddress;
+import com.bytezone.dm3270.orders.Order;
+import com.bytezone.dm3270.streams.TelnetState;
+import java.util.BitSet;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PenTest {
+
+  private static final Charset CHARSET = Charset.CP1047;
+  private static final ScreenDimensions SCREEN_DIMENSIONS = new ScreenDimensions(24, 80);
+  private static final int SCREEN_SIZE = SCREEN_DIMENSIONS.size;
+  // restore keyboard and reset modified flags
+  private static final byte WCC = (byte) 0xC3;
+  private static final byte FILL_CHAR = (byte) 0xE7;        // X
+  private static final int PROTECTED = 0x20;
+
+  private Screen screen;
+  private Pen pen;
+
+  @Before
+  public void setup() {
+    CHARSET.load();
+    screen = new Screen(SCREEN_DIMENSIONS, null, new TelnetState(), CHARSET);
+    pen = screen.getPen();
+    pen.clearScreen();
+  }
+
+  private static byte[] ebcdic(String text) {
+    return text.getBytes(java.nio.charset.Charset.forName(CHARSET.name()));
+  }
+
+  // null positions are shown as dots
+  private String getText(int position, int length) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      ScreenPosition screenPosition = screen.getScreenPosition((position + i) % SCREEN_SIZE);
+      text.append(screenPosition.isNull() ? '.' : screenPosition.getChar());
+    }
+    return text.toString();
+  }
+
+  private static Attribute buildColorAttribute() {
+    return Attribute.getAttribute(Attribute.XA_FGCOLOR, ColorAttribute.COLOR_RED).get();
+  }
+
+  @Test
+  public void shouldWrapAroundScreenEndWhenWriteRun() {
+    pen.moveTo(SCREEN_SIZE - 3);
+    byte[] text = ebcdic("ABCDEF");
+    pen.writeRun(text, 0, text.length);
+    assertThat(getText(SCREEN_SIZE - 3, 6)).isEqualTo("ABCDEF");
+    assertThat(pen.getPosition()).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldWriteOnlyGivenSliceWhenWriteRun() {
+    pen.moveTo(10);
+    byte[] text = ebcdic("ABCDEF");
+    pen.writeRun(text, 1, 3);
+    assertThat(getText(9, 5)).isEqualTo(".BCD.");
+    assertThat(pen.getPosition()).isEqualTo(13);
+  }
+
+  @Test
+  public void shouldApplyPendingAttributesOnlyToFirstPositionWhenWriteRun() {
+    pen.moveTo(10);
+    pen.addAttribute(buildColorAttribute());
+    byte[] text = ebcdic("ABC");
+    pen.writeRun(text, 0, text.length);
+    assertThat(screen.getScreenPosition(10).getAttributes()).hasSize(1);
+    assertThat(screen.getScreenPosition(11).getAttributes()).isEmpty();
+    assertThat(screen.getScreenPosition(12).getAttributes()).isEmpty();
+  }
+
+  @Test
+  public void shouldApplyPendingAttributesOnlyToFirstPositionWhenFill() {
+    pen.moveTo(10);
+    pen.addAttribute(buildColorAttribute());
+    pen.fill(FILL_CHAR, 13);
+    assertThat(getText(10, 3)).isEqualTo("XXX");
+    assertThat(screen.getScreenPosition(10).getAttributes()).hasSize(1);
+    assertThat(screen.getScreenPosition(11).getAttributes()).isEmpty();
+    assertThat(screen.getScreenPosition(12).getAttributes()).isEmpty();
+  }
+
+  @Test
+  public void shouldWriteSinglePositionWhenFillWithPendingAttributesUpToNextPosition() {
+    pen.moveTo(10);
+    pen.addAttribute(buildColorAttribute());
+    pen.fill(FILL_CHAR, 11);
+    assertThat(getText(10, 2)).isEqualTo("X.");
+    assertThat(pen.getPosition()).isEqualTo(11);
+  }
+
+  @Test
+  public void shouldWrapAroundScreenEndWhenFill() {
+    pen.moveTo(SCREEN_SIZE - 2);
+    pen.fill(FILL_CHAR, 2);
+    assertThat(getText(SCREEN_SIZE - 2, 5)).isEqualTo("XXXX.");
+    assertThat(pen.getPosition()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldWrapStopAddressWhenFillWithOutOfRangeAddress() {
+    pen.moveTo(10);
+    pen.fill(FILL_CHAR, SCREEN_SIZE + 20);
+    assertThat(getText(9, 12)).isEqualTo(".XXXXXXXXXX.");
+    assertThat(pen.getPosition()).isEqualTo(20);
+  }
+
+  @Test
+  public void shouldWrapStopAddressWhenProcessRepeatToAddressWithOutOfRangeAddress() {
+    int stopAddress = 2 * SCREEN_SIZE + 160;
+    byte[] stream = {Command.WRITE_F1, WCC,
+        Order.SET_BUFFER_ADDRESS, BufferAddress.ADDRESS[0], BufferAddress.ADDRESS[10],
+        Order.REPEAT_TO_ADDRESS, BufferAddress.ADDRESS[stopAddress >> 6],
+        BufferAddress.ADDRESS[stopAddress & 0x3F], FILL_CHAR};
+    Command.getCommand(stream, 0, stream.length, CHARSET).process(screen);
+    assertThat(getText(9, 152)).isEqualTo("." + new String(new char[150]).replace('\0', 'X')
+        + ".");
+  }
+
+  @Test
+  public void shouldNotifyFieldLayoutChangedWhenWriteRunOverStartField() {
+    pen.moveTo(15);
+    pen.startField(new StartFieldAttribute(BufferAddress.ADDRESS[PROTECTED]));
+    pen.resetChanges();
+    pen.moveTo(10);
+    byte[] text = ebcdic("ABCDEFGHIJ");
+    pen.writeRun(text, 0, text.length);
+    assertThat(screen.getScreenPosition(15).isStartField()).isFalse();
+    assertThat(pen.isFieldLayoutChanged()).isTrue();
+  }
+
+  @Test
+  public void shouldOnlyNotifyChangedPositionsWhenWriteRunOverSameText() {
+    pen.moveTo(10);
+    byte[] text = ebcdic("ABCD");
+    pen.writeRun(text, 0, text.length);
+    pen.resetChanges();
+    pen.moveTo(10);
+    byte[] newText = ebcdic("ABXD");
+    pen.writeRun(newText, 0, newText.length);
+    BitSet expected = new BitSet();
+    expected.set(12);
+    assertThat(pen.getChangedPositions()).isEqualTo(expected);
+    assertThat(pen.isFieldLayoutChanged()).isFalse();
+  }
+
+}
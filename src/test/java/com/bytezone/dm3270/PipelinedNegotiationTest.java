@@ -0,0 +1,174 @@
+package com.bytezone.dm3270;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bytezone.dm3270.telnet.NegotiationCache;
+import com.bytezone.dm3270.telnet.NegotiationCache.NegotiatedOptions;
+import com.bytezone.dm3270.telnet.PipelinedNegotiation;
+import com.bytezone.dm3270.telnet.TN3270ExtendedSubcommand.Function;
+import com.bytezone.dm3270.telnet.TelnetSubcommand;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelinedNegotiationTest {
+
+  private static final String HOST = "localhost";
+  private static final int PORT = 23;
+  private static final String DEVICE_TYPE = "IBM-3278-2";
+  private static final byte IAC = (byte) 0xFF;
+  private static final byte WILL = (byte) 0xFB;
+  private static final byte DO = (byte) 0xFD;
+  private static final List<Function> FUNCTIONS = Arrays.asList(Function.BIND_IMAGE,
+      Function.RESPONSES);
+
+  private NegotiationCache cache;
+  private PipelinedNegotiation negotiation;
+
+  @Before
+  public void setup() {
+    cache = new NegotiationCache();
+    negotiation = new PipelinedNegotiation();
+    negotiation.setCache(cache);
+  }
+
+  private String cacheOptions(boolean extended, NegotiatedOptions options) {
+    String siteKey = NegotiationCache.getSiteKey(HOST, PORT, extended, DEVICE_TYPE);
+    cache.put(siteKey, options);
+    return siteKey;
+  }
+
+  private String startWithCachedEorAndBinary() {
+    String siteKey = cacheOptions(false, new NegotiatedOptions(false, false, true, true, null));
+    negotiation.start(HOST, PORT, false, DEVICE_TYPE);
+    return siteKey;
+  }
+
+  @Test
+  public void shouldSendCachedOptionsWhenStartWithCachedNegotiation() {
+    cacheOptions(false, new NegotiatedOptions(false, false, true, true, null));
+    assertThat(negotiation.start(HOST, PORT, false, DEVICE_TYPE)).containsExactly(
+        IAC, WILL, TelnetSubcommand.TERMINAL_TYPE,
+        IAC, WILL, TelnetSubcommand.EOR, IAC, DO, TelnetSubcommand.EOR,
+        IAC, WILL, TelnetSubcommand.BINARY, IAC, DO, TelnetSubcommand.BINARY);
+    assertThat(negotiation.isPipelined()).isTrue();
+  }
+
+  @Test
+  public void shouldSendOnlyTn3270eWhenStartWithCachedExtendedNegotiation() {
+    cacheOptions(true, new NegotiatedOptions(true, true, true, true, FUNCTIONS));
+    assertThat(negotiation.start(HOST, PORT, true, DEVICE_TYPE))
+        .containsExactly(IAC, WILL, TelnetSubcommand.TN3270E);
+    assertThat(negotiation.getPipelinedFunctions()).isEqualTo(FUNCTIONS);
+  }
+
+  @Test
+  public void shouldNotAnswerRequestsWhenNegotiationNotCached() {
+    assertThat(negotiation.start(HOST, PORT, false, DEVICE_TYPE)).isEmpty();
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.TERMINAL_TYPE, true)).isFalse();
+    assertThat(negotiation.isPipelined()).isFalse();
+    assertThat(negotiation.isFallback()).isFalse();
+  }
+
+  @Test
+  public void shouldAnswerRequestsOnlyOnceWhenServerRequestsCachedOptions() {
+    String siteKey = startWithCachedEorAndBinary();
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.TERMINAL_TYPE, true)).isTrue();
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.EOR, true)).isTrue();
+    assertThat(negotiation.isDoAnswered(TelnetSubcommand.EOR, true)).isTrue();
+    // requesting an enabled option again is not replied, so the negotiation can't loop
+    assertThat(negotiation.isDoAnswered(TelnetSubcommand.EOR, true)).isTrue();
+    assertThat(negotiation.isFallback()).isFalse();
+    assertThat(cache.get(siteKey)).isNotNull();
+  }
+
+  @Test
+  public void shouldFallBackWhenServerRefusesOptionSentProactively() {
+    String siteKey = startWithCachedEorAndBinary();
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.TERMINAL_TYPE, true)).isTrue();
+    negotiation.setRefused(TelnetSubcommand.BINARY);
+    assertThat(negotiation.isFallback()).isTrue();
+    assertThat(negotiation.isPipelined()).isTrue();
+    assertThat(cache.get(siteKey)).isNull();
+    // the server may have discarded the commands sent proactively, so they are replied
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.EOR, true)).isFalse();
+    assertThat(negotiation.isDoAnswered(TelnetSubcommand.EOR, true)).isFalse();
+    // but the ones agreed before falling back, or already replied, are not replied again
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.TERMINAL_TYPE, true)).isTrue();
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.EOR, true)).isTrue();
+  }
+
+  @Test
+  public void shouldReplyRequestOfRefusedOptionWhenServerRequestsItAgain() {
+    startWithCachedEorAndBinary();
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.BINARY, true)).isTrue();
+    negotiation.setRefused(TelnetSubcommand.BINARY);
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.BINARY, true)).isFalse();
+  }
+
+  @Test
+  public void shouldNotRequestPipelinedFunctionsWhenServerRefusesTn3270e() {
+    String siteKey = cacheOptions(true, new NegotiatedOptions(true, true, true, true,
+        FUNCTIONS));
+    negotiation.start(HOST, PORT, true, DEVICE_TYPE);
+    negotiation.setRefused(TelnetSubcommand.TN3270E);
+    assertThat(negotiation.isFallback()).isTrue();
+    assertThat(negotiation.getPipelinedFunctions()).isNull();
+    assertThat(cache.get(siteKey)).isNull();
+  }
+
+  @Test
+  public void shouldNotFallBackWhenServerRefusesOptionNotSentProactively() {
+    String siteKey = startWithCachedEorAndBinary();
+    negotiation.setRefused(TelnetSubcommand.TN3270E);
+    assertThat(negotiation.isFallback()).isFalse();
+    assertThat(cache.get(siteKey)).isNotNull();
+  }
+
+  @Test
+  public void shouldFallBackWhenServerRequestsOptionNotCached() {
+    String siteKey = startWithCachedEorAndBinary();
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.TN3270E, false)).isFalse();
+    assertThat(negotiation.isFallback()).isTrue();
+    assertThat(cache.get(siteKey)).isNull();
+  }
+
+  @Test
+  public void shouldNotFallBackWhenServerOffersTn3270eAsCached() {
+    cacheOptions(false, new NegotiatedOptions(false, true, true, true, null));
+    negotiation.start(HOST, PORT, false, DEVICE_TYPE);
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.TN3270E, false)).isFalse();
+    assertThat(negotiation.isFallback()).isFalse();
+  }
+
+  @Test
+  public void shouldCacheNegotiationResultWhenCompleteAfterFallback() {
+    String siteKey = startWithCachedEorAndBinary();
+    negotiation.isWillAnswered(TelnetSubcommand.TN3270E, false);
+    negotiation.setRefused(TelnetSubcommand.BINARY);
+    negotiation.complete(false, true, false, null);
+    NegotiatedOptions options = cache.get(siteKey);
+    assertThat(options.isExtendedOffered()).isTrue();
+    assertThat(options.isEor()).isTrue();
+    assertThat(options.isBinary()).isFalse();
+  }
+
+  @Test
+  public void shouldDiscardCachedNegotiationWhenAbortPipelinedNegotiation() {
+    String siteKey = startWithCachedEorAndBinary();
+    negotiation.abort();
+    assertThat(cache.get(siteKey)).isNull();
+  }
+
+  @Test
+  public void shouldResetFallbackWhenStartAgain() {
+    startWithCachedEorAndBinary();
+    negotiation.setRefused(TelnetSubcommand.BINARY);
+    negotiation.complete(false, true, true, null);
+    negotiation.start(HOST, PORT, false, DEVICE_TYPE);
+    assertThat(negotiation.isFallback()).isFalse();
+    assertThat(negotiation.isWillAnswered(TelnetSubcommand.BINARY, true)).isTrue();
+  }
+
+}
@@ -0,0 +1,171 @@
+package com.bytezone.dm3270;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bytezone.dm3270.session.JournalRecord;
+import com.bytezone.dm3270.session.SessionJournal;
+import com.bytezone.dm3270.session.SessionJournalReader;
+import com.bytezone.dm3270.session.SessionRecord.SessionRecordType;
+import com.bytezone.dm3270.streams.TelnetSocket.Source;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SessionJournalTest {
+
+  private static final int RECORD_LENGTH = 40;
+  // 3 records per block, which compress well since each one repeats a single byte
+  private static final int BLOCK_SIZE = 200;
+  private static final int RECORDS_PER_BLOCK = 3;
+  // two full index blocks and some more blocks indexed on close
+  private static final int RECORD_COUNT =
+      RECORDS_PER_BLOCK * (2 * SessionJournal.INDEX_INTERVAL + 5) + 1;
+  private static final long RECORD_INTERVAL_NANOS = 1000;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Path file;
+
+  @Before
+  public void setup() throws IOException {
+    file = tempFolder.newFile().toPath();
+  }
+
+  private SessionJournal writeJournal(boolean compressed) throws IOException {
+    SessionJournal journal = new SessionJournal(file, BLOCK_SIZE, compressed);
+    long start = System.nanoTime();
+    for (int i = 0; i < RECORD_COUNT; i++) {
+      byte[] data = buildData(i);
+      journal.record(i % 2 == 0 ? Source.SERVER : Source.CLIENT,
+          i % 5 == 0 ? SessionRecordType.TELNET : SessionRecordType.TN3270,
+          start + i * RECORD_INTERVAL_NANOS, data, 0, data.length);
+    }
+    return journal;
+  }
+
+  private static byte[] buildData(int record) {
+    byte[] data = new byte[RECORD_LENGTH];
+    Arrays.fill(data, (byte) record);
+    return data;
+  }
+
+  private List<JournalRecord> readAll() throws IOException {
+    try (SessionJournalReader reader = new SessionJournalReader(file)) {
+      return reader.readAll();
+    }
+  }
+
+  private void assertRecords(List<JournalRecord> records) {
+    assertThat(records).hasSize(RECORD_COUNT);
+    for (int i = 0; i < RECORD_COUNT; i++) {
+      JournalRecord record = records.get(i);
+      assertThat(record.getData()).isEqualTo(buildData(i));
+      assertThat(record.getSource()).isEqualTo(i % 2 == 0 ? Source.SERVER : Source.CLIENT);
+      assertThat(record.getType())
+          .isEqualTo(i % 5 == 0 ? SessionRecordType.TELNET : SessionRecordType.TN3270);
+    }
+  }
+
+  // seeks to records in the blocks of each index block, in the blocks indexed on close and to
+  // the last record
+  private void assertSeek(List<JournalRecord> records) throws IOException {
+    int[] positions = {0, 1, RECORDS_PER_BLOCK * 10 + 2,
+        RECORDS_PER_BLOCK * SessionJournal.INDEX_INTERVAL,
+        RECORDS_PER_BLOCK * (SessionJournal.INDEX_INTERVAL + 30) + 1,
+        RECORDS_PER_BLOCK * 2 * SessionJournal.INDEX_INTERVAL + 4, RECORD_COUNT - 1};
+    try (SessionJournalReader reader = new SessionJournalReader(file)) {
+      for (int position : positions) {
+        long nanos = records.get(position).getTimestampNanos();
+        reader.seek(nanos);
+        assertThat(reader.read().getData()).as("record %d", position)
+            .isEqualTo(buildData(position));
+        // a time between two records positions at the later one
+        reader.seek(nanos - RECORD_INTERVAL_NANOS / 2);
+        assertThat(reader.read().getData()).as("before record %d", position)
+            .isEqualTo(buildData(position));
+      }
+      reader.seek(records.get(RECORD_COUNT - 1).getTimestampNanos() + 1);
+      assertThat(reader.read()).isNull();
+      reader.seek(0);
+      assertThat(reader.read().getData()).isEqualTo(buildData(0));
+    }
+  }
+
+  @Test
+  public void shouldReadAllRecordsWhenJournalSpansSeveralIndexBlocks() throws Exception {
+    writeJournal(false).close();
+    assertRecords(readAll());
+  }
+
+  @Test
+  public void shouldReadAllRecordsWhenCompressedJournalSpansSeveralIndexBlocks()
+      throws Exception {
+    writeJournal(true).close();
+    try (SessionJournalReader reader = new SessionJournalReader(file)) {
+      assertThat(reader.isCompressed()).isTrue();
+    }
+    assertRecords(readAll());
+  }
+
+  @Test
+  public void shouldGetSmallerFileWhenCompressedJournal() throws Exception {
+    writeJournal(false).close();
+    long uncompressedSize = Files.size(file);
+    writeJournal(true).close();
+    assertThat(Files.size(file)).isLessThan(uncompressedSize);
+  }
+
+  @Test
+  public void shouldPositionAtRecordWhenSeekInJournalWithIndexBlocksChain() throws Exception {
+    writeJournal(false).close();
+    assertSeek(readAll());
+  }
+
+  @Test
+  public void shouldPositionAtRecordWhenSeekInCompressedJournalWithIndexBlocksChain()
+      throws Exception {
+    writeJournal(true).close();
+    assertSeek(readAll());
+  }
+
+  @Test
+  public void shouldReadAllRecordsWhenJournalNotClosed() throws Exception {
+    SessionJournal journal = writeJournal(true);
+    try {
+      journal.flush();
+      assertRecords(readAll());
+    } finally {
+      journal.close();
+    }
+  }
+
+  @Test
+  public void shouldPositionAtRecordWhenSeekInJournalNotClosed() throws Exception {
+    SessionJournal journal = writeJournal(false);
+    try {
+      journal.flush();
+      assertSeek(readAll());
+    } finally {
+      journal.close();
+    }
+  }
+
+  @Test
+  public void shouldNotReadRecordsOfCurrentBlockWhenJournalNotFlushed() throws Exception {
+    SessionJournal journal = writeJournal(false);
+    try {
+      // the last record is alone in the current block
+      assertThat(readAll()).hasSize(RECORD_COUNT - 1);
+    } finally {
+      journal.close();
+    }
+  }
+
+}
@@ -0,0 +1,217 @@
+package com.bytezone.dm3270;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bytezone.dm3270.commands.AIDCommand;
+import com.bytezone.dm3270.commands.Command;
+import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.display.ScreenPosition;
+import com.bytezone.dm3270.orders.BufferAddress;
+import com.bytezone.dm3270.orders.Order;
+import com.bytezone.dm3270.session.JournalRecord;
+import com.bytezone.dm3270.session.ReplayStats;
+import com.bytezone.dm3270.session.SessionJournal;
+import com.bytezone.dm3270.session.SessionRecord.SessionRecordType;
+import com.bytezone.dm3270.session.SessionReplay;
+import com.bytezone.dm3270.streams.TelnetSocket.Source;
+import com.bytezone.dm3270.telnet.TelnetProcessor;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SessionReplayTest {
+
+  private static final Charset CHARSET = Charset.CP1047;
+  private static final ScreenDimensions ALTERNATE_SCREEN_DIMENSIONS = new ScreenDimensions(27,
+      132);
+  // restore keyboard and reset modified flags
+  private static final byte WCC = (byte) 0xC3;
+  private static final byte IAC = (byte) 0xFF;
+  private static final int PROTECTED = 0x20;
+  private static final int MORE_POSITION = 40;
+  private static final String FIRST_SCREEN = "SCREEN 1";
+  private static final String SECOND_SCREEN = "SCREEN 2";
+  private static final String MORE = "MORE";
+  private static final String EMPTY = "        ";
+  // erase write, client aid, write without erasing, erase write
+  private static final long[] TIMESTAMPS = {100, 200, 300, 400};
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private List<JournalRecord> records;
+  private SessionReplay replay;
+
+  @Before
+  public void setup() {
+    CHARSET.load();
+    records = Arrays.asList(
+        new JournalRecord(Source.SERVER, SessionRecordType.TN3270, TIMESTAMPS[0],
+            buildRecord(Command.ERASE_WRITE_F5, 0, FIRST_SCREEN)),
+        new JournalRecord(Source.CLIENT, SessionRecordType.TN3270, TIMESTAMPS[1],
+            buildAidRecord()),
+        new JournalRecord(Source.SERVER, SessionRecordType.TN3270, TIMESTAMPS[2],
+            buildRecord(Command.WRITE_F1, MORE_POSITION, MORE)),
+        new JournalRecord(Source.SERVER, SessionRecordType.TN3270, TIMESTAMPS[3],
+            buildRecord(Command.ERASE_WRITE_F5, 0, SECOND_SCREEN)));
+    replay = new SessionReplay(records, ALTERNATE_SCREEN_DIMENSIONS, CHARSET);
+  }
+
+  // writes a protected field with the given text at the given position
+  private static byte[] buildRecord(byte command, int position, String text) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.write(command);
+    stream.write(WCC);
+    byte[] address = new byte[2];
+    new BufferAddress(position).packAddress(address, 0);
+    stream.write(Order.SET_BUFFER_ADDRESS);
+    stream.write(address, 0, address.length);
+    stream.write(Order.START_FIELD);
+    stream.write(BufferAddress.ADDRESS[PROTECTED]);
+    byte[] bytes = text.getBytes(java.nio.charset.Charset.forName(CHARSET.name()));
+    stream.write(bytes, 0, bytes.length);
+    stream.write(IAC);
+    stream.write(TelnetProcessor.EOR);
+    return stream.toByteArray();
+  }
+
+  private static byte[] buildAidRecord() {
+    return new byte[]{AIDCommand.AID_ENTER, 0x40, 0x40, IAC, TelnetProcessor.EOR};
+  }
+
+  // text of the field written at the given position, null positions are shown as spaces
+  private String getFieldText(int position, int length) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 1; i <= length; i++) {
+      ScreenPosition screenPosition = replay.getScreen().getScreenPosition(position + i);
+      text.append(screenPosition.isNull() ? ' ' : screenPosition.getChar());
+    }
+    return text.toString();
+  }
+
+  private String getScreenText() {
+    return getFieldText(0, FIRST_SCREEN.length());
+  }
+
+  private String getMoreText() {
+    return getFieldText(MORE_POSITION, MORE.length());
+  }
+
+  @Test
+  public void shouldShowEachScreenWhenStep() {
+    assertThat(replay.step()).isSameAs(records.get(0));
+    assertThat(getScreenText()).isEqualTo(FIRST_SCREEN);
+    assertThat(replay.step()).isSameAs(records.get(1));
+    assertThat(getScreenText()).isEqualTo(FIRST_SCREEN);
+    replay.step();
+    assertThat(getMoreText()).isEqualTo(MORE);
+    replay.step();
+    assertThat(getScreenText()).isEqualTo(SECOND_SCREEN);
+    assertThat(getMoreText()).isEqualTo("    ");
+  }
+
+  @Test
+  public void shouldGetNullWhenStepAfterLastRecord() {
+    replay.seek(records.size());
+    assertThat(replay.hasNext()).isFalse();
+    assertThat(replay.step()).isNull();
+  }
+
+  @Test
+  public void shouldShowScreenAtPositionWhenSeekForward() {
+    replay.seek(3);
+    assertThat(replay.getPosition()).isEqualTo(3);
+    assertThat(getScreenText()).isEqualTo(FIRST_SCREEN);
+    assertThat(getMoreText()).isEqualTo(MORE);
+  }
+
+  @Test
+  public void shouldReplayFromStartWhenSeekBackwards() {
+    replay.seek(records.size());
+    replay.seek(1);
+    assertThat(replay.getPosition()).isEqualTo(1);
+    assertThat(getScreenText()).isEqualTo(FIRST_SCREEN);
+    assertThat(getMoreText()).isEqualTo("    ");
+  }
+
+  @Test
+  public void shouldShowEmptyScreenWhenSeekToStart() {
+    replay.seek(2);
+    replay.seek(0);
+    assertThat(getScreenText()).isEqualTo(EMPTY);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIllegalArgumentExceptionWhenSeekPastLastRecord() {
+    replay.seek(records.size() + 1);
+  }
+
+  @Test
+  public void shouldShowScreenOfRecordsUpToTimeWhenSeekTime() {
+    replay.seekTime(TIMESTAMPS[2] + 50);
+    assertThat(replay.getPosition()).isEqualTo(3);
+    assertThat(getMoreText()).isEqualTo(MORE);
+  }
+
+  @Test
+  public void shouldIncludeRecordAtExactTimeWhenSeekTime() {
+    replay.seekTime(TIMESTAMPS[3]);
+    assertThat(getScreenText()).isEqualTo(SECOND_SCREEN);
+  }
+
+  @Test
+  public void shouldReplayFromStartWhenSeekTimeBackwards() {
+    replay.seekTime(TIMESTAMPS[3]);
+    replay.seekTime(TIMESTAMPS[0] - 1);
+    assertThat(replay.getPosition()).isZero();
+    assertThat(getScreenText()).isEqualTo(EMPTY);
+  }
+
+  @Test
+  public void shouldCountOnlyServerRecordsWhenReplay() {
+    ReplayStats stats = replay.replay();
+    assertThat(stats.getRecordCount()).isEqualTo(3);
+    assertThat(stats.getByteCount()).isEqualTo(getServerByteCount());
+    assertThat(getScreenText()).isEqualTo(SECOND_SCREEN);
+  }
+
+  private long getServerByteCount() {
+    return records.stream()
+        .filter(r -> r.getSource() == Source.SERVER)
+        .mapToLong(r -> r.getData().length)
+        .sum();
+  }
+
+  private Path writeJournal() throws IOException {
+    Path file = tempFolder.newFile().toPath();
+    try (SessionJournal journal = new SessionJournal(file)) {
+      for (JournalRecord record : records) {
+        journal.record(record.getSource(), record.getType(), System.nanoTime(),
+            record.getData(), 0, record.getData().length);
+      }
+    }
+    return file;
+  }
+
+  @Test
+  public void shouldShowLastScreenWhenLoadJournalAndReplay() throws Exception {
+    replay = SessionReplay.load(writeJournal(), ALTERNATE_SCREEN_DIMENSIONS, CHARSET);
+    replay.replay();
+    assertThat(getScreenText()).isEqualTo(SECOND_SCREEN);
+  }
+
+  @Test
+  public void shouldAggregateRecordsOfAllJournalsWhenReplayAll() throws Exception {
+    ReplayStats stats = SessionReplay.replayAll(Arrays.asList(writeJournal(), writeJournal()),
+        ALTERNATE_SCREEN_DIMENSIONS, CHARSET, 2);
+    assertThat(stats.getRecordCount()).isEqualTo(6);
+    assertThat(stats.getByteCount()).isEqualTo(2 * getServerByteCount());
+  }
+
+}
@@ -0,0 +1,142 @@
+package com.bytezone.dm3270;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bytezone.dm3270.attributes.Attribute;
+import com.bytezone.dm3270.attributes.ColorAttribute;
+import com.bytezone.dm3270.commands.Command;
+import com.bytezone.dm3270.display.Screen;
+import com.bytezone.dm3270.display.ScreenContext;
+import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.display.ScreenPosition;
+import com.bytezone.dm3270.orders.BufferAddress;
+import com.bytezone.dm3270.orders.Order;
+import com.bytezone.dm3270.streams.TelnetListener;
+import com.bytezone.dm3270.streams.TelnetSocket;
+import com.bytezone.dm3270.streams.TelnetState;
+import com.bytezone.dm3270.telnet.TelnetProcessor;
+import java.io.ByteArrayOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TelnetListenerTest {
+
+  private static final Charset CHARSET = Charset.CP1047;
+  private static final ScreenDimensions SCREEN_DIMENSIONS = new ScreenDimensions(24, 80);
+  private static final ScreenDimensions ALTERNATE_SCREEN_DIMENSIONS = new ScreenDimensions(27,
+      132);
+  // restore keyboard and reset modified flags
+  private static final byte WCC = (byte) 0xC3;
+  private static final byte IAC = (byte) 0xFF;
+  private static final int PROTECTED = 0x20;
+  // the size of the segments usually received from the network
+  private static final int SEGMENT_SIZE = 1460;
+  // the size of the buffer used before records were assembled in growable buffers
+  private static final int FORMER_BUFFER_SIZE = 16500;
+  // blink, reverse video and underscore
+  private static final byte[] HIGHLIGHTS = {(byte) 0xF1, (byte) 0xF2, (byte) 0xF4};
+  private static final String TEXT = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+  private static final byte[] TEXT_BYTES = TEXT.getBytes(
+      java.nio.charset.Charset.forName(CHARSET.name()));
+
+  private Screen screen;
+  private TelnetListener listener;
+
+  @Before
+  public void setup() {
+    CHARSET.load();
+    TelnetState telnetState = new TelnetState();
+    screen = new Screen(SCREEN_DIMENSIONS, ALTERNATE_SCREEN_DIMENSIONS, telnetState, CHARSET);
+    listener = new TelnetListener(screen, telnetState);
+  }
+
+  // every row starts with a protected field, and every other position sets its own color and
+  // highlight, which makes the stream about 25 KB
+  private static byte[] buildExtendedAttributesStream() {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.write(Command.ERASE_WRITE_ALTERNATE_7E);
+    stream.write(WCC);
+    for (int row = 0; row < ALTERNATE_SCREEN_DIMENSIONS.rows; row++) {
+      stream.write(Order.START_FIELD_EXTENDED);
+      stream.write(2);
+      stream.write(Attribute.XA_START_FIELD);
+      stream.write(BufferAddress.ADDRESS[PROTECTED]);
+      stream.write(Attribute.XA_FGCOLOR);
+      stream.write(ColorAttribute.COLOR_WHITE);
+      for (int column = 1; column < ALTERNATE_SCREEN_DIMENSIONS.columns; column++) {
+        int position = row * ALTERNATE_SCREEN_DIMENSIONS.columns + column;
+        stream.write(Order.SET_ATTRIBUTE);
+        stream.write(Attribute.XA_FGCOLOR);
+        stream.write(getColor(position));
+        stream.write(Order.SET_ATTRIBUTE);
+        stream.write(Attribute.XA_HIGHLIGHTING);
+        stream.write(getHighlight(position));
+        stream.write(TEXT_BYTES[position % TEXT_BYTES.length]);
+      }
+    }
+    return stream.toByteArray();
+  }
+
+  // includes white, to also get 0xFF bytes which have to be escaped
+  private static byte getColor(int position) {
+    return (byte) (ColorAttribute.COLOR_BLUE + position % 15);
+  }
+
+  private static byte getHighlight(int position) {
+    return HIGHLIGHTS[position % HIGHLIGHTS.length];
+  }
+
+  private static char getChar(int position) {
+    return TEXT.charAt(position % TEXT.length());
+  }
+
+  private static byte[] buildRecord(byte[] stream) {
+    ByteArrayOutputStream record = new ByteArrayOutputStream();
+    for (byte b : stream) {
+      record.write(b);
+      if (b == IAC) {
+        record.write(IAC);
+      }
+    }
+    record.write(IAC);
+    record.write(TelnetProcessor.EOR);
+    return record.toByteArray();
+  }
+
+  private void listenInSegments(byte[] record) {
+    for (int offset = 0; offset < record.length; offset += SEGMENT_SIZE) {
+      listener.listen(TelnetSocket.Source.SERVER, record, offset,
+          Math.min(SEGMENT_SIZE, record.length - offset), System.nanoTime());
+    }
+  }
+
+  @Test
+  public void shouldApplyWholeScreenWhenReceiveEraseWriteBiggerThanFormerBufferInSegments() {
+    byte[] stream = buildExtendedAttributesStream();
+    assertThat(stream.length).isGreaterThan(FORMER_BUFFER_SIZE);
+    listenInSegments(buildRecord(stream));
+    assertThat(screen.getScreenDimensions()).isSameAs(ALTERNATE_SCREEN_DIMENSIONS);
+    assertThat(screen.getFieldManager().getFields()).hasSize(ALTERNATE_SCREEN_DIMENSIONS.rows);
+    for (int row = 0; row < ALTERNATE_SCREEN_DIMENSIONS.rows; row++) {
+      assertThat(screen.getScreenPosition(row * ALTERNATE_SCREEN_DIMENSIONS.columns)
+          .isStartField()).isTrue();
+      for (int column = 1; column < ALTERNATE_SCREEN_DIMENSIONS.columns; column++) {
+        int position = row * ALTERNATE_SCREEN_DIMENSIONS.columns + column;
+        ScreenPosition screenPosition = screen.getScreenPosition(position);
+        ScreenContext context = screenPosition.getScreenContext();
+        assertThat(screenPosition.getChar()).isEqualTo(getChar(position));
+        assertThat(context.foregroundColor)
+            .isEqualTo(ColorAttribute.COLORS[getColor(position) & 0x0F]);
+        assertThat(context.highlight).isEqualTo(getHighlight(position));
+      }
+    }
+  }
+
+  @Test
+  public void shouldRecordSizeWhenReceiveEraseWriteBiggerThanFormerBufferInSegments() {
+    byte[] stream = buildExtendedAttributesStream();
+    listenInSegments(buildRecord(stream));
+    assertThat(screen.getTelnetState().getRecordSizes().getMax()).isEqualTo(stream.length);
+  }
+
+}
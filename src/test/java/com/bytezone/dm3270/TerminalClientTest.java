@@ -9,28 +9,67 @@ import static org.mockito.Mockito.when;
 
 import com.bytezone.dm3270.attributes.StartFieldAttribute;
 import com.bytezone.dm3270.commands.AIDCommand;
+import com.bytezone.dm3270.commands.WriteCommand;
 import com.bytezone.dm3270.display.Field;
 import com.bytezone.dm3270.display.Screen;
 import com.bytezone.dm3270.display.ScreenContext;
 import com.bytezone.dm3270.display.ScreenDimensions;
 import com.bytezone.dm3270.display.ScreenPosition;
+import com.bytezone.dm3270.load.LoadGenerator;
+import com.bytezone.dm3270.load.LoadReport;
+import com.bytezone.dm3270.load.StepReport;
+import com.bytezone.dm3270.load.Transaction;
+import com.bytezone.dm3270.load.TransactionStep;
+import com.bytezone.dm3270.metrics.AidLatencyRecorder;
+import com.bytezone.dm3270.metrics.AidLatencySample;
+import com.bytezone.dm3270.metrics.MetricsRegistry;
+import com.bytezone.dm3270.metrics.ProtocolCounters;
+import com.bytezone.dm3270.session.JournalRecord;
+import com.bytezone.dm3270.session.SessionRecord.SessionRecordType;
+import com.bytezone.dm3270.session.SessionJournal;
+import com.bytezone.dm3270.session.SessionJournalReader;
+import com.bytezone.dm3270.session.SessionReplay;
+import com.bytezone.dm3270.simulator.AidRequest;
+import com.bytezone.dm3270.simulator.HostApplication;
+import com.bytezone.dm3270.simulator.HostScreen;
+import com.bytezone.dm3270.simulator.HostSession;
+import com.bytezone.dm3270.simulator.HostSimulator;
+import com.bytezone.dm3270.streams.ApplyStage;
+import com.bytezone.dm3270.streams.EventLoopGroup;
+import com.bytezone.dm3270.streams.SocketOptions;
+import com.bytezone.dm3270.streams.TelnetSocket;
+import com.bytezone.dm3270.telnet.NegotiationCache;
+import com.bytezone.dm3270.telnet.NegotiationCache.NegotiatedOptions;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 import java.awt.Point;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
@@ -38,6 +77,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.rules.TestRule;
 import org.junit.rules.TestWatcher;
 import org.junit.runner.Description;
@@ -63,6 +103,10 @@ public class TerminalClientTest {
   private static final String APP_NAME = "testapp";
   private static final String USERNAME = "testusr";
   private static final String PASSWORD = "testpsw";
+  private static final HostScreen USER_WELCOME = new HostScreen()
+      .addLabel(1, 1, "USER")
+      .addInputField(1, 6, 8);
+  private static final HostScreen READY_SCREEN = new HostScreen().addLabel(1, 1, "READY");
 
   @Rule
   public TestRule watchman = new TestWatcher() {
@@ -76,6 +120,8 @@ public class TerminalClientTest {
       LOG.debug("Finished {}", description.getMethodName());
     }
   };
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
   private final VirtualTcpService service = new VirtualTcpService();
   private TerminalClient client;
   private ExceptionWaiter exceptionWaiter;
@@ -103,12 +149,15 @@ public class TerminalClientTest {
 
     private final CountDownLatch closeLatch = new CountDownLatch(1);
 
+    private volatile Exception exception;
+
     @Override
     public void onConnection() {
     }
 
     @Override
     public void onException(Exception ex) {
+      exception = ex;
       exceptionLatch.countDown();
     }
 
@@ -117,8 +166,9 @@ public class TerminalClientTest {
       closeLatch.countDown();
     }
 
-    private void awaitException() throws InterruptedException {
+    private Exception awaitException() throws InterruptedException {
       assertThat(exceptionLatch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+      return exception;
     }
 
     private void awaitClose() throws InterruptedException {
@@ -226,8 +276,74 @@ public class TerminalClientTest {
     connectClient();
   }
 
+  @Test
+  public void shouldGetWelcomeScreenWhenConnectWithSslContextAndEventLoopGroup()
+      throws Exception {
+    cleanShutdown();
+    service.setSslEnabled(true);
+    System.setProperty("javax.net.ssl.keyStore", getResourceFilePath("/keystore.jks"));
+    System.setProperty("javax.net.ssl.keyStorePassword", "changeit");
+    service.start();
+    EventLoopGroup eventLoopGroup = new EventLoopGroup(1);
+    try {
+      client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+      client.setEventLoopGroup(eventLoopGroup);
+      client.setSslContext(buildSslContext());
+      connectClient();
+      awaitKeyboardUnlock();
+      assertThat(getScreenText())
+          .isEqualTo(getWelcomeScreen());
+      assertThat(client.getTlsHandshakeTime()).isPresent();
+    } finally {
+      client.disconnect();
+      eventLoopGroup.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldResumeTlsSessionWhenReconnectWithSameSslContext() throws Exception {
+    cleanShutdown();
+    service.setSslEnabled(true);
+    System.setProperty("javax.net.ssl.keyStore", getResourceFilePath("/keystore.jks"));
+    System.setProperty("javax.net.ssl.keyStorePassword", "changeit");
+    service.start();
+    EventLoopGroup eventLoopGroup = new EventLoopGroup(1);
+    try {
+      for (boolean eventLoop : new boolean[]{false, true}) {
+        // TLS 1.3 resumes sessions with new ids, while TLS 1.2 keeps the id of the resumed one
+        SSLContext sslContext = buildSslContext("TLSv1.2");
+        byte[] sessionId = null;
+        for (int i = 0; i < 2; i++) {
+          client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+          if (eventLoop) {
+            client.setEventLoopGroup(eventLoopGroup);
+          }
+          client.setSslContext(sslContext);
+          connectClient();
+          awaitKeyboardUnlock();
+          client.disconnect();
+          List<byte[]> sessionIds = Collections.list(sslContext.getClientSessionContext()
+              .getIds());
+          assertThat(sessionIds).as("event loop: %s", eventLoop).hasSize(1);
+          if (sessionId == null) {
+            sessionId = sessionIds.get(0);
+          } else {
+            assertThat(sessionIds.get(0)).as("event loop: %s", eventLoop)
+                .isEqualTo(sessionId);
+          }
+        }
+      }
+    } finally {
+      eventLoopGroup.shutdown();
+    }
+  }
+
   private SSLContext buildSslContext() throws GeneralSecurityException {
-    SSLContext sslContext = SSLContext.getInstance("TLS");
+    return buildSslContext("TLS");
+  }
+
+  private SSLContext buildSslContext(String protocol) throws GeneralSecurityException {
+    SSLContext sslContext = SSLContext.getInstance(protocol);
     TrustManager trustManager = new X509TrustManager() {
 
       public X509Certificate[] getAcceptedIssuers() {
@@ -247,6 +363,637 @@ public class TerminalClientTest {
     return sslContext;
   }
 
+  @Test
+  public void shouldGetLoginSuccessScreenWhenLoginWithEventLoopGroup() throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    EventLoopGroup eventLoopGroup = new EventLoopGroup(1);
+    try {
+      client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+      client.setEventLoopGroup(eventLoopGroup);
+      connectClient();
+      awaitKeyboardUnlock();
+      sendUserFieldByCoord();
+      awaitKeyboardUnlock();
+      sendFieldByLabel("Password", PASSWORD);
+      awaitSuccessScreen();
+    } finally {
+      eventLoopGroup.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldGetLoginSuccessScreenWhenLoginWithApplyStage() throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    ApplyStage applyStage = new ApplyStage(1);
+    try {
+      client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+      client.setApplyStage(applyStage);
+      connectClient();
+      awaitKeyboardUnlock();
+      sendUserFieldByCoord();
+      awaitKeyboardUnlock();
+      sendFieldByLabel("Password", PASSWORD);
+      awaitSuccessScreen();
+      assertThat(applyStage.getAppliedCount()).isPositive();
+    } finally {
+      applyStage.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldPauseAndResumeReadingWhenLoginWithSlowScreenListenerAndApplyStage()
+      throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    ApplyStage applyStage = new ApplyStage(1);
+    try {
+      client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+      client.setApplyStage(applyStage);
+      // the flow sends records right after each other, which queue while the listener sleeps
+      client.addScreenChangeListener(screenWatcher -> {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      connectClient();
+      awaitKeyboardUnlock();
+      sendUserFieldByCoord();
+      awaitKeyboardUnlock();
+      sendFieldByLabel("Password", PASSWORD);
+      awaitSuccessScreen();
+      assertThat(applyStage.getPauseCount()).isPositive();
+    } finally {
+      applyStage.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldJournalSentAndReceivedRecordsWhenLoginWithSessionJournal() throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    Path journalFile = tempFolder.newFile("session.journal").toPath();
+    List<JournalRecord> records;
+    try (SessionJournal journal = new SessionJournal(journalFile, 256, true)) {
+      client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+      client.setSessionJournal(journal);
+      connectClient();
+      awaitKeyboardUnlock();
+      sendUserFieldByCoord();
+      awaitKeyboardUnlock();
+      sendFieldByLabel("Password", PASSWORD);
+      awaitSuccessScreen();
+      client.disconnect();
+      assertThat(journal.getRecordCount()).isPositive();
+    }
+    try (SessionJournalReader reader = new SessionJournalReader(journalFile)) {
+      records = reader.readAll();
+    }
+    assertThat(records)
+        .extracting(JournalRecord::getSource)
+        .contains(TelnetSocket.Source.CLIENT, TelnetSocket.Source.SERVER);
+    assertThat(records.stream()
+        .filter(r -> r.getSource() == TelnetSocket.Source.SERVER)
+        .map(JournalRecord::getTimestampNanos)
+        .collect(Collectors.toList()))
+        .isSorted();
+  }
+
+  @Test
+  public void shouldReadAllRecordsWhenSessionJournalExceedsItsFileMapping() throws Exception {
+    Path journalFile = tempFolder.newFile("session.journal").toPath();
+    byte[] record = new byte[SessionJournal.DEFAULT_BLOCK_SIZE / 2];
+    int recordCount = 400;
+    try (SessionJournal journal = new SessionJournal(journalFile)) {
+      for (int i = 0; i < recordCount; i++) {
+        record[0] = (byte) i;
+        journal.record(TelnetSocket.Source.SERVER, SessionRecordType.TN3270, record);
+        // once the records fill the first mapping of the file
+        if (i == recordCount * 3 / 4) {
+          journal.flush();
+        }
+      }
+    }
+    List<JournalRecord> records;
+    try (SessionJournalReader reader = new SessionJournalReader(journalFile)) {
+      records = reader.readAll();
+    }
+    assertThat(records).hasSize(recordCount);
+    assertThat(records.get(recordCount - 1).getData()[0]).isEqualTo((byte) (recordCount - 1));
+    assertThat(Files.size(journalFile)).isLessThan((long) record.length * (recordCount + 1));
+  }
+
+  @Test
+  public void shouldGetSameFieldsWhenReplaySessionJournal() throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    Path journalFile = tempFolder.newFile("session.journal").toPath();
+    try (SessionJournal journal = new SessionJournal(journalFile)) {
+      client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+      client.setSessionJournal(journal);
+      connectClient();
+      awaitKeyboardUnlock();
+      sendUserFieldByCoord();
+      awaitKeyboardUnlock();
+      sendFieldByLabel("Password", PASSWORD);
+      awaitSuccessScreen();
+      client.disconnect();
+    }
+    SessionReplay replay = SessionReplay.load(journalFile, SCREEN_DIMENSIONS, Charset.CP1047);
+    assertThat(replay.replay().getRecordCount()).isPositive();
+    assertThat(getFieldTexts(replay.getScreen().getFieldManager().getFields()))
+        .isEqualTo(getFieldTexts(client.getFields()));
+  }
+
+  private List<String> getFieldTexts(List<Field> fields) {
+    return fields.stream()
+        .map(Field::getText)
+        .collect(Collectors.toList());
+  }
+
+  private static HostSimulator startSimulator(HostScreen welcome,
+      Function<AidRequest, HostScreen> onAid) throws IOException {
+    return startSimulator(welcome, onAid, 0, 0);
+  }
+
+  private static HostSimulator startSimulator(HostScreen welcome,
+      Function<AidRequest, HostScreen> onAid, int minThinkTimeMillis, int maxThinkTimeMillis)
+      throws IOException {
+    HostSimulator simulator = new HostSimulator(new HostApplication() {
+      @Override
+      public HostScreen getWelcomeScreen(HostSession session) {
+        return welcome;
+      }
+
+      @Override
+      public HostScreen handleAid(HostSession session, AidRequest request) {
+        return onAid.apply(request);
+      }
+    });
+    simulator.setThinkTimeMillis(minThinkTimeMillis, maxThinkTimeMillis);
+    simulator.start();
+    return simulator;
+  }
+
+  // PF3 logs off back to the welcome screen, any other AID logs on
+  private static HostScreen logOnOrOff(AidRequest request) {
+    return request.getAid() == AIDCommand.AID_PF3 ? USER_WELCOME : READY_SCREEN;
+  }
+
+  @Test
+  public void shouldStopWriterThreadWhenIdleAndStartItAgainWhenSend() throws Exception {
+    cleanShutdown();
+    List<Thread> threads = new CopyOnWriteArrayList<>();
+    try (HostSimulator simulator = startSimulator(USER_WELCOME, request -> READY_SCREEN)) {
+      client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+      client.setThreadFactory(r -> {
+        Thread thread = new Thread(r);
+        threads.add(thread);
+        return thread;
+      });
+      client.connect(SERVICE_HOST, simulator.getPort());
+      awaitKeyboardUnlock();
+      // only the reader is left
+      awaitAliveThreads(threads, 1);
+      int createdThreads = threads.size();
+      sendEnter();
+      awaitSuccessScreen();
+      assertThat(threads.size()).isGreaterThan(createdThreads);
+    }
+  }
+
+  private void awaitAliveThreads(List<Thread> threads, int count)
+      throws InterruptedException, TimeoutException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (threads.stream().filter(Thread::isAlive).count() != count) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new TimeoutException("Alive threads are not " + count + ": " + threads);
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void shouldPipelineNegotiationWhenReconnectWithNegotiationCache() throws Exception {
+    cleanShutdown();
+    try (HostSimulator simulator = startSimulator(USER_WELCOME,
+        request -> USERNAME.equals(request.getFieldText(1, 6)) ? READY_SCREEN : null)) {
+      NegotiationCache cache = new NegotiationCache();
+      for (boolean extended : new boolean[]{true, false}) {
+        for (boolean pipelined : new boolean[]{false, true}) {
+          client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+          client.setUsesExtended3270(extended);
+          client.setNegotiationCache(cache);
+          client.connect(SERVICE_HOST, simulator.getPort());
+          awaitKeyboardUnlock();
+          assertThat(client.isNegotiationPipelined()).isEqualTo(pipelined);
+          assertThat(client.getNegotiationTime()).isPresent();
+          sendFieldByCoord(1, 7, USERNAME);
+          awaitSuccessScreen();
+          client.disconnect();
+        }
+      }
+      assertThat(cache.size()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void shouldExposeSessionMetricsThroughJmxWhenConnectWithMetricsRegistry()
+      throws Exception {
+    cleanShutdown();
+    try (HostSimulator simulator = startSimulator(USER_WELCOME, request -> READY_SCREEN)) {
+      MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+      MetricsRegistry registry = new MetricsRegistry(mbeanServer);
+      List<String> exported = new ArrayList<>();
+      registry.setExporter(counters -> exported.add(counters.getName()));
+      client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+      client.setMetricsRegistry(registry);
+      client.connect(SERVICE_HOST, simulator.getPort());
+      awaitKeyboardUnlock();
+      sendFieldByCoord(1, 7, USERNAME);
+      awaitSuccessScreen();
+      ProtocolCounters metrics = client.getMetrics().get();
+      ObjectName sessionName = new ObjectName(MetricsRegistry.DOMAIN
+          + ":type=ProtocolMetrics,scope=session,name=" + ObjectName.quote(metrics.getName()));
+      assertThat((Long) mbeanServer.getAttribute(sessionName, "RecordsReceived")).isEqualTo(2);
+      assertThat((Long) mbeanServer.getAttribute(sessionName, "AidsSent")).isEqualTo(1);
+      assertThat(metrics.getCommandCount(WriteCommand.class)).isEqualTo(2);
+      assertThat(metrics.getBytesReceived()).isPositive();
+      assertThat(metrics.getBytesSent()).isPositive();
+      client.disconnect();
+      assertThat(mbeanServer.isRegistered(sessionName)).isFalse();
+      assertThat(exported).containsExactly(metrics.getName());
+      ObjectName aggregateName = new ObjectName(MetricsRegistry.DOMAIN
+          + ":type=ProtocolMetrics,scope=aggregate");
+      assertThat((Long) mbeanServer.getAttribute(aggregateName, "BytesReceived"))
+          .isEqualTo(metrics.getBytesReceived());
+    }
+  }
+
+  @Test
+  public void shouldSendKeepAlivesWhenIdleWithBlockingAndEventLoopConnections() throws Exception {
+    cleanShutdown();
+    try (HostSimulator simulator = startSimulator(READY_SCREEN, request -> null)) {
+      EventLoopGroup eventLoopGroup = new EventLoopGroup(1);
+      try {
+        for (EventLoopGroup group : new EventLoopGroup[]{null, eventLoopGroup}) {
+          client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+          client.setMetricsRegistry(new MetricsRegistry(MBeanServerFactory.newMBeanServer()));
+          client.setKeepAliveIntervalMillis(100);
+          client.setEventLoopGroup(group);
+          client.connect(SERVICE_HOST, simulator.getPort());
+          awaitKeyboardUnlock();
+          ProtocolCounters metrics = client.getMetrics().get();
+          long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+          while (metrics.getKeepAlivesSent() < 2) {
+            if (System.currentTimeMillis() > deadline) {
+              throw new TimeoutException("No keep alives sent by " + metrics.getName());
+            }
+            Thread.sleep(10);
+          }
+          client.disconnect();
+        }
+      } finally {
+        eventLoopGroup.shutdown();
+      }
+    }
+  }
+
+  @Test
+  public void shouldRecordAidLatenciesByKeyWhenSendAidsWithAidLatencyRecorder() throws Exception {
+    cleanShutdown();
+    try (HostSimulator simulator = startSimulator(USER_WELCOME, TerminalClientTest::logOnOrOff)) {
+      AidLatencyRecorder recorder = new AidLatencyRecorder();
+      BlockingQueue<AidLatencySample> samples = new LinkedBlockingQueue<>();
+      recorder.addListener(samples::add);
+      client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+      client.setAidLatencyRecorder(recorder);
+      client.connect(SERVICE_HOST, simulator.getPort());
+      awaitKeyboardUnlock();
+      sendFieldByCoord(1, 7, USERNAME);
+      AidLatencySample enter = samples.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      awaitSuccessScreen();
+      client.sendAID(AIDCommand.AID_PF3, "PF3");
+      AidLatencySample pf3 = samples.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+      assertThat(enter.getAidKey()).isEqualTo("ENTER");
+      assertThat(pf3.getAidKey()).isEqualTo("PF3");
+      assertThat(enter.getFirstByteNanos()).isGreaterThan(enter.getSendNanos());
+      assertThat(enter.getFieldsBuiltNanos()).isLessThanOrEqualTo(enter.getUnlockNanos());
+      assertThat(recorder.getResponseTimes().getCount()).isEqualTo(2);
+      assertThat(recorder.getResponseTimesByAid()).containsOnlyKeys("ENTER", "PF3");
+    }
+  }
+
+  @Test
+  public void shouldNotIncludeListenersInApplyTimeWhenSendAidWithSlowScreenChangeListener()
+      throws Exception {
+    cleanShutdown();
+    try (HostSimulator simulator = startSimulator(USER_WELCOME, request -> READY_SCREEN)) {
+      AidLatencyRecorder recorder = new AidLatencyRecorder();
+      BlockingQueue<AidLatencySample> samples = new LinkedBlockingQueue<>();
+      recorder.addListener(samples::add);
+      client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+      client.setAidLatencyRecorder(recorder);
+      client.connect(SERVICE_HOST, simulator.getPort());
+      awaitKeyboardUnlock();
+      Duration listenerTime = Duration.ofMillis(200);
+      client.addScreenChangeListener(screenWatcher -> {
+        try {
+          Thread.sleep(listenerTime.toMillis());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      sendFieldByCoord(1, 7, USERNAME);
+      AidLatencySample sample = samples.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      assertThat(sample.getProcessingTime()).isGreaterThanOrEqualTo(listenerTime);
+      assertThat(sample.getApplyTime()).isLessThan(listenerTime);
+    }
+  }
+
+  @Test
+  public void shouldGetSuccessScreenWhenLoginWithNegotiationCacheNotMatchingServer()
+      throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    // cached from a server not offering TN3270E, while this one requests it first
+    NegotiationCache cache = new NegotiationCache();
+    String siteKey = NegotiationCache.getSiteKey(SERVICE_HOST, service.getPort(), false,
+        "IBM-3278-2");
+    cache.put(siteKey, new NegotiatedOptions(false, false, true, true, null));
+    client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+    client.setNegotiationCache(cache);
+    connectClient();
+    awaitKeyboardUnlock();
+    sendUserFieldByCoord();
+    awaitKeyboardUnlock();
+    sendFieldByLabel("Password", PASSWORD);
+    awaitSuccessScreen();
+    assertThat(client.isNegotiationPipelined()).isTrue();
+    assertThat(client.isNegotiationFallback()).isTrue();
+    assertThat(cache.get(siteKey).isExtendedOffered()).isTrue();
+  }
+
+  @Test
+  public void shouldReportStepLatenciesWhenRunLoadAgainstHostSimulator() throws Exception {
+    cleanShutdown();
+    try (HostSimulator simulator = startSimulator(USER_WELCOME, TerminalClientTest::logOnOrOff,
+        1, 5)) {
+      Transaction transaction = new Transaction("logon")
+          .addStep(new TransactionStep("user", AIDCommand.AID_ENTER, "ENTER")
+              .setField(1, 7, userNumber -> "USER" + userNumber)
+              .setExpectedText("READY"))
+          .addStep(new TransactionStep("logoff", AIDCommand.AID_PF3, "PF3")
+              .setExpectedText("USER"));
+      LoadGenerator generator = new LoadGenerator(
+          () -> new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS), SERVICE_HOST,
+          simulator.getPort(), transaction);
+      generator.setUserCount(4);
+      generator.setIterations(3);
+      generator.setRampUpMillis(100);
+      generator.setThinkTimeMillis(0, 5);
+      generator.setStepTimeoutMillis((int) TIMEOUT_MILLIS);
+
+      LoadReport report = generator.run();
+
+      assertThat(report.getCompletedTransactionCount()).isEqualTo(12);
+      assertThat(report.getFailedTransactionCount()).isEqualTo(0);
+      assertThat(report.getSteps()).extracting(StepReport::getName)
+          .containsExactly(LoadGenerator.CONNECT_STEP, "user", "logoff");
+      StepReport userStep = report.getStep("user");
+      assertThat(userStep.getCount()).isEqualTo(12);
+      assertThat(userStep.getErrorCount()).isEqualTo(0);
+      assertThat(userStep.getPercentileMillis(50)).isGreaterThanOrEqualTo(1);
+      assertThat(userStep.getPercentileMillis(99.9)).isBetween(userStep.getPercentileMillis(50),
+          userStep.getMaxMillis());
+      StringBuilder csv = new StringBuilder();
+      report.writeCsv(csv);
+      assertThat(csv.toString().split("\n")).hasSize(4)
+          .startsWith("step,count,errors,min_ms,mean_ms,p50_ms,p90_ms,p99_ms,p999_ms,max_ms");
+      StringBuilder json = new StringBuilder();
+      report.writeJson(json);
+      assertThat(json.toString()).contains("\"completedTransactions\":12");
+      assertThat(simulator.getAidCount()).isEqualTo(24);
+    }
+  }
+
+  @Test
+  public void shouldGetWelcomeScreenWhenConnectAsync() throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+    client.connectAsync(SERVICE_HOST, service.getPort())
+        .get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    assertThat(client.getTimeToFirstScreen()).isPresent();
+    awaitKeyboardUnlock();
+    assertThat(getScreenText())
+        .isEqualTo(getWelcomeScreen());
+  }
+
+  @Test
+  public void shouldGetSameSessionWhenBorrowFromPoolAfterRelease() throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    try (TerminalClientPool pool = new TerminalClientPool(
+        () -> new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS), SERVICE_HOST,
+        service.getPort(), 1)) {
+      pool.setLogin(pooledClient -> new UnlockWaiter(pooledClient, stableTimeoutExecutor)
+          .await(TIMEOUT_MILLIS));
+      pool.start();
+      client = pool.borrow(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      assertThat(getScreenText()).isEqualTo(getWelcomeScreen());
+      pool.release(client);
+      assertThat(pool.borrow(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isSameAs(client);
+      assertThat(pool.getBorrowCount()).isEqualTo(2);
+    }
+  }
+
+  private TerminalClientPool buildPool(HostSimulator simulator,
+      List<TerminalClient> createdClients) {
+    TerminalClientPool pool = new TerminalClientPool(() -> {
+      TerminalClient pooledClient = new TerminalClient(TERMINAL_MODEL_TYPE_TWO,
+          SCREEN_DIMENSIONS);
+      createdClients.add(pooledClient);
+      return pooledClient;
+    }, SERVICE_HOST, simulator.getPort(), 1);
+    pool.setLogin(pooledClient -> new UnlockWaiter(pooledClient, stableTimeoutExecutor)
+        .await(TIMEOUT_MILLIS));
+    pool.setValidationIntervalMillis(0);
+    return pool;
+  }
+
+  @Test
+  public void shouldGetReplacementSessionWhenBorrowSessionRejectedByValidator()
+      throws Exception {
+    cleanShutdown();
+    List<TerminalClient> createdClients = new CopyOnWriteArrayList<>();
+    try (HostSimulator simulator = startSimulator(USER_WELCOME, request -> READY_SCREEN);
+        TerminalClientPool pool = buildPool(simulator, createdClients)) {
+      AtomicBoolean rejected = new AtomicBoolean();
+      pool.setSessionValidator(pooledClient -> !rejected.compareAndSet(false, true));
+      pool.start();
+      client = pool.borrow(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      assertThat(pool.getEvictionCount()).isEqualTo(1);
+      assertThat(createdClients).hasSize(2);
+      assertThat(client).isSameAs(createdClients.get(1));
+    }
+  }
+
+  @Test
+  public void shouldEvictIdleSessionWhenServerClosesIt() throws Exception {
+    cleanShutdown();
+    List<TerminalClient> createdClients = new CopyOnWriteArrayList<>();
+    // the host closes the session when it gets an AID, once the session is back in the pool
+    try (HostSimulator simulator = startSimulator(USER_WELCOME, request -> null, 200, 200);
+        TerminalClientPool pool = buildPool(simulator, createdClients)) {
+      pool.start();
+      TerminalClient closedClient = pool.borrow(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      closedClient.sendAID(AIDCommand.AID_ENTER, "ENTER");
+      pool.release(closedClient);
+      awaitEvictionCount(pool, 1);
+      client = pool.borrow(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      assertThat(client).isNotSameAs(closedClient);
+      assertThat(createdClients).hasSize(2);
+    }
+  }
+
+  private void awaitEvictionCount(TerminalClientPool pool, long count)
+      throws InterruptedException, TimeoutException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (pool.getEvictionCount() < count) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new TimeoutException("Pool evictions did not reach " + count + ": " + pool);
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void shouldEvictSessionWhenResetThrowsExceptionOnRelease() throws Exception {
+    cleanShutdown();
+    List<TerminalClient> createdClients = new CopyOnWriteArrayList<>();
+    try (HostSimulator simulator = startSimulator(USER_WELCOME, request -> READY_SCREEN);
+        TerminalClientPool pool = buildPool(simulator, createdClients)) {
+      pool.setReset(pooledClient -> {
+        throw new IllegalStateException("reset failure");
+      });
+      pool.start();
+      TerminalClient evictedClient = pool.borrow(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      pool.release(evictedClient);
+      assertThat(pool.getEvictionCount()).isEqualTo(1);
+      client = pool.borrow(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      assertThat(client).isNotSameAs(evictedClient);
+      assertThat(createdClients).hasSize(2);
+    }
+  }
+
+  @Test
+  public void shouldGetWelcomeScreenWhenConnectWithSmallReadBuffer() throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+    SocketOptions socketOptions = new SocketOptions();
+    socketOptions.setReadBufferSize(16);
+    socketOptions.setMaxReadBufferSize(64);
+    client.setSocketOptions(socketOptions);
+    connectClient();
+    awaitKeyboardUnlock();
+    assertThat(getScreenText())
+        .isEqualTo(getWelcomeScreen());
+  }
+
+  @Test
+  public void shouldGetUserMenuScreenWhenReconnectWithNavigationReplay() throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+    ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+    reconnectPolicy.setInitialDelayMillis(100);
+    reconnectPolicy.setReplayNavigation(true);
+    client.setReconnectPolicy(reconnectPolicy);
+    CountDownLatch navigationRestored = new CountDownLatch(1);
+    client.addConnectionListener(new ConnectionListener() {
+      @Override
+      public void onConnection() {
+      }
+
+      @Override
+      public void onException(Exception ex) {
+      }
+
+      @Override
+      public void onConnectionClosed() {
+      }
+
+      @Override
+      public void onNavigationRestored() {
+        navigationRestored.countDown();
+      }
+    });
+    connectClient();
+    awaitKeyboardUnlock();
+    sendUserFieldByCoord();
+    awaitKeyboardUnlock();
+
+    int port = service.getPort();
+    service.stop(TIMEOUT_MILLIS);
+    service.setPort(port);
+    service.start();
+
+    assertThat(navigationRestored.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+    awaitKeyboardUnlock();
+    assertThat(getScreenText())
+        .isEqualTo(getUserMenuScreen());
+  }
+
+  @Test
+  public void shouldRecordFillAndAidWhenReplayNavigationAndSendUserFieldByCoord()
+      throws Exception {
+    connectClientWithNavigationReplay(new ReconnectPolicy());
+    sendUserFieldByCoord();
+    awaitKeyboardUnlock();
+    assertThat(client.getNavigationStepCount()).isEqualTo(2);
+  }
+
+  private void connectClientWithNavigationReplay(ReconnectPolicy reconnectPolicy)
+      throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+    reconnectPolicy.setReplayNavigation(true);
+    client.setReconnectPolicy(reconnectPolicy);
+    connectClient();
+    awaitKeyboardUnlock();
+  }
+
+  @Test
+  public void shouldDiscardNavigationWhenReplayNavigationExceedsMaxSteps() throws Exception {
+    ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+    reconnectPolicy.setMaxNavigationSteps(2);
+    connectClientWithNavigationReplay(reconnectPolicy);
+    sendUserFieldByCoord();
+    awaitKeyboardUnlock();
+    client.setCursorPosition(0);
+    assertThat(client.getNavigationStepCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldRecordNavigationAgainWhenResetNavigation() throws Exception {
+    ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+    reconnectPolicy.setMaxNavigationSteps(2);
+    connectClientWithNavigationReplay(reconnectPolicy);
+    sendUserFieldByCoord();
+    awaitKeyboardUnlock();
+    client.setCursorPosition(0);
+    client.resetNavigation();
+    client.setCursorPosition(0);
+    assertThat(client.getNavigationStepCount()).isEqualTo(1);
+  }
+
   @Test
   public void shouldGetWelcomeScreenWhenConnectWithScreenWithExtendFieldWithoutFieldAttribute()
       throws Exception {
@@ -383,6 +1130,39 @@ public class TerminalClientTest {
     exceptionWaiter.awaitException();
   }
 
+  @Test
+  public void shouldSendExceptionToExceptionHandlerWhenNoDataReceivedInReadTimeout()
+      throws Exception {
+    cleanShutdown();
+    startServiceWithFlow("/login.yml");
+    client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+    client.setReadTimeoutMillis(1000);
+    exceptionWaiter = new ExceptionWaiter();
+    client.addConnectionListener(exceptionWaiter);
+    connectClient();
+    exceptionWaiter.awaitException();
+  }
+
+  @Test
+  public void shouldSendExceptionToExceptionHandlerWhenReceiveRecordBiggerThanMaxRecordSize()
+      throws Exception {
+    cleanShutdown();
+    HostScreen welcome = new HostScreen()
+        .addLabel(1, 1, String.join("", Collections.nCopies(80, "X")));
+    try (HostSimulator simulator = startSimulator(welcome, request -> null)) {
+      client = new TerminalClient(TERMINAL_MODEL_TYPE_TWO, SCREEN_DIMENSIONS);
+      client.setMaxRecordSize(64);
+      exceptionWaiter = new ExceptionWaiter();
+      client.addConnectionListener(exceptionWaiter);
+      client.connect(SERVICE_HOST, simulator.getPort());
+      assertThat(exceptionWaiter.awaitException())
+          .isInstanceOf(IllegalStateException.class)
+          .hasMessageContaining("maximum size of 64");
+      assertThat(client.getScreenText()).doesNotContain("X");
+      assertThat(client.isKeyboardLocked()).isTrue();
+    }
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void shouldThrowIllegalArgumentExceptionWhenSendIncorrectFieldPosition()
       throws Exception {
@@ -0,0 +1,148 @@
+package com.bytezone.dm3270.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  private static final int LINEAR_LIMIT = 256;
+  private static final double MAX_RELATIVE_ERROR = 0.01;
+
+  @Test
+  public void shouldCountExactlyWhenValuesAreBelowLinearLimit() {
+    for (int value = 0; value < LINEAR_LIMIT; value++) {
+      assertThat(LatencyHistogram.getBucket(value)).isEqualTo(value);
+      assertThat(LatencyHistogram.getBucketUpperBound(value)).isEqualTo(value);
+    }
+  }
+
+  @Test
+  public void shouldStartLogLinearBucketsWhenValueReachesLinearLimit() {
+    assertThat(LatencyHistogram.getBucket(LINEAR_LIMIT - 1)).isEqualTo(LINEAR_LIMIT - 1);
+    assertThat(LatencyHistogram.getBucket(LINEAR_LIMIT)).isEqualTo(LINEAR_LIMIT);
+    assertThat(LatencyHistogram.getBucket(LINEAR_LIMIT + 1)).isEqualTo(LINEAR_LIMIT);
+    assertThat(LatencyHistogram.getBucketUpperBound(LINEAR_LIMIT)).isEqualTo(LINEAR_LIMIT + 1);
+    assertThat(LatencyHistogram.getBucket(LINEAR_LIMIT + 2)).isEqualTo(LINEAR_LIMIT + 1);
+  }
+
+  @Test
+  public void shouldStartNewBucketWhenValueIsPowerOfTwo() {
+    for (int bit = 8; bit < 63; bit++) {
+      long power = 1L << bit;
+      int bucket = LatencyHistogram.getBucket(power);
+      assertThat(LatencyHistogram.getBucket(power - 1)).as("2^%d", bit).isEqualTo(bucket - 1);
+      assertThat(LatencyHistogram.getBucketUpperBound(bucket - 1)).as("2^%d", bit)
+          .isEqualTo(power - 1);
+    }
+  }
+
+  @Test
+  public void shouldGetContiguousBucketsWhenGetBucketOfUpperBounds() {
+    for (int bucket = 1; bucket < LatencyHistogram.BUCKET_COUNT; bucket++) {
+      long lowerBound = LatencyHistogram.getBucketUpperBound(bucket - 1) + 1;
+      long upperBound = LatencyHistogram.getBucketUpperBound(bucket);
+      assertThat(LatencyHistogram.getBucket(lowerBound)).as("bucket %d", bucket)
+          .isEqualTo(bucket);
+      assertThat(LatencyHistogram.getBucket(upperBound)).as("bucket %d", bucket)
+          .isEqualTo(bucket);
+      // the bucket width keeps the relative error below 1%
+      assertThat((double) (upperBound - lowerBound) / lowerBound).as("bucket %d", bucket)
+          .isLessThan(MAX_RELATIVE_ERROR);
+    }
+  }
+
+  @Test
+  public void shouldUseLastBucketWhenValueIsMaxLong() {
+    int bucket = LatencyHistogram.getBucket(Long.MAX_VALUE);
+    assertThat(bucket).isEqualTo(LatencyHistogram.BUCKET_COUNT - 1);
+    assertThat(LatencyHistogram.getBucketUpperBound(bucket)).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void shouldGetMaxLongWhenRecordMaxLong() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(Long.MAX_VALUE);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(Long.MAX_VALUE);
+    assertThat(histogram.getMaxNanos()).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void shouldGetPercentilesWithErrorBelowOnePercentWhenRecordSpreadValues() {
+    // log-normal latencies, from microseconds to seconds
+    Random random = new Random(42);
+    long[] values = new long[100000];
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (long) Math.exp(random.nextGaussian() * 3 + 14);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+    for (double percentile : new double[]{1, 25, 50, 90, 99, 99.9, 99.99, 100}) {
+      long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+      long reported = histogram.getValueAtPercentile(percentile);
+      assertThat(reported).as("p%s", percentile).isGreaterThanOrEqualTo(exact);
+      assertThat((double) (reported - exact) / exact).as("p%s", percentile)
+          .isLessThan(MAX_RELATIVE_ERROR);
+    }
+  }
+
+  @Test
+  public void shouldGetSameDistributionWhenAddHistograms() {
+    LatencyHistogram all = new LatencyHistogram();
+    LatencyHistogram even = new LatencyHistogram();
+    LatencyHistogram odd = new LatencyHistogram();
+    for (long value = 1; value <= 10000; value++) {
+      long nanos = value * 997;
+      all.record(nanos);
+      (value % 2 == 0 ? even : odd).record(nanos);
+    }
+    even.add(odd);
+    even.add(new LatencyHistogram());
+    assertThat(even.getCount()).isEqualTo(all.getCount());
+    assertThat(even.getMinNanos()).isEqualTo(all.getMinNanos());
+    assertThat(even.getMaxNanos()).isEqualTo(all.getMaxNanos());
+    assertThat(even.getMeanNanos()).isEqualTo(all.getMeanNanos());
+    for (double percentile : new double[]{0, 50, 90, 99, 100}) {
+      assertThat(even.getValueAtPercentile(percentile)).as("p%s", percentile)
+          .isEqualTo(all.getValueAtPercentile(percentile));
+    }
+  }
+
+  @Test
+  public void shouldGetZeroMinWhenAddEmptyHistogramToEmptyOne() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.add(new LatencyHistogram());
+    assertThat(histogram.getCount()).isZero();
+    assertThat(histogram.getMinNanos()).isZero();
+  }
+
+  @Test
+  public void shouldDiscardValuesWhenReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1000);
+    histogram.record(5000);
+    histogram.reset();
+    assertThat(histogram.getCount()).isZero();
+    assertThat(histogram.getMinNanos()).isZero();
+    assertThat(histogram.getMaxNanos()).isZero();
+    assertThat(histogram.getMeanNanos()).isZero();
+    assertThat(histogram.getValueAtPercentile(99)).isZero();
+    histogram.record(3000);
+    assertThat(histogram.getMinNanos()).isEqualTo(3000);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(3000);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIllegalArgumentExceptionWhenRecordNegativeValue() {
+    new LatencyHistogram().record(-1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIllegalArgumentExceptionWhenGetPercentileAboveHundred() {
+    new LatencyHistogram().getValueAtPercentile(100.1);
+  }
+
+}
@@ -0,0 +1,209 @@
+package com.bytezone.dm3270.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bytezone.dm3270.Charset;
+import com.bytezone.dm3270.commands.Command;
+import com.bytezone.dm3270.display.Screen;
+import com.bytezone.dm3270.display.ScreenDimensions;
+import com.bytezone.dm3270.display.ScreenPosition;
+import com.bytezone.dm3270.orders.BufferAddress;
+import com.bytezone.dm3270.orders.Order;
+import com.bytezone.dm3270.telnet.TelnetProcessor;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventLoopTest {
+
+  private static final Charset CHARSET = Charset.CP1047;
+  private static final ScreenDimensions SCREEN_DIMENSIONS = new ScreenDimensions(24, 80);
+  private static final String HOST = "localhost";
+  private static final long TIMEOUT_MILLIS = 10000;
+  // bigger than the loop read buffer, so a visit takes several reads from the channel
+  private static final int READ_BUDGET = 6000;
+  private static final int FLOOD_CHUNK_SIZE = 64 * 1024;
+  private static final long FLOOD_BYTES_BEFORE_SCREEN = 4 * 1024 * 1024;
+  // restore keyboard and reset modified flags
+  private static final byte WCC = (byte) 0xC3;
+  private static final byte IAC = (byte) 0xFF;
+  private static final int PROTECTED = 0x20;
+  private static final String SCREEN_TEXT = "READY";
+
+  private EventLoopGroup eventLoopGroup;
+  private ServerSocket floodServer;
+  private ServerSocket screenServer;
+  private NioTerminalServer floodConnection;
+  private NioTerminalServer screenConnection;
+  private final CountDownLatch floodStarted = new CountDownLatch(1);
+
+  // Counts the bytes read in each visit of the loop to the session. The first read of a visit
+  // hands a task to the loop, which runs it after the visit, before selecting again.
+  private static final class FloodListener implements BufferListener {
+
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile int maxVisitBytes;
+    private int visitBytes;
+    private boolean visitEndPending;
+    private NioTerminalServer connection;
+
+    @Override
+    public void listen(TelnetSocket.Source targetRole, byte[] message, LocalDateTime dateTime,
+        boolean genuine) {
+    }
+
+    @Override
+    public void listen(TelnetSocket.Source targetRole, byte[] buffer, int offset, int length,
+        long nanoTime) {
+      if (!visitEndPending) {
+        visitEndPending = true;
+        connection.execute(() -> {
+          visitBytes = 0;
+          visitEndPending = false;
+        });
+      }
+      visitBytes += length;
+      maxVisitBytes = Math.max(maxVisitBytes, visitBytes);
+      bytes.addAndGet(length);
+    }
+
+    @Override
+    public void close() {
+    }
+
+  }
+
+  @Before
+  public void setup() throws IOException {
+    CHARSET.load();
+    eventLoopGroup = new EventLoopGroup(1);
+    eventLoopGroup.setReadBudget(READ_BUDGET);
+    floodServer = new ServerSocket(0);
+    screenServer = new ServerSocket(0);
+  }
+
+  @After
+  public void teardown() throws IOException {
+    if (floodConnection != null) {
+      floodConnection.close();
+    }
+    if (screenConnection != null) {
+      screenConnection.close();
+    }
+    eventLoopGroup.shutdown();
+    floodServer.close();
+    screenServer.close();
+  }
+
+  private void startFloodHost() {
+    startHost(floodServer, output -> {
+      byte[] chunk = new byte[FLOOD_CHUNK_SIZE];
+      while (true) {
+        output.write(chunk);
+      }
+    });
+  }
+
+  private void startScreenHost() {
+    startHost(screenServer, output -> {
+      floodStarted.await();
+      output.write(buildScreenRecord());
+      output.flush();
+      // keeps the connection open until the test closes the server
+      Thread.sleep(TIMEOUT_MILLIS);
+    });
+  }
+
+  @FunctionalInterface
+  private interface HostBehavior {
+
+    void run(OutputStream output) throws Exception;
+
+  }
+
+  private static void startHost(ServerSocket server, HostBehavior behavior) {
+    Thread thread = new Thread(() -> {
+      try (Socket socket = server.accept()) {
+        behavior.run(socket.getOutputStream());
+      } catch (Exception e) {
+        // connection closed by the test
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private static byte[] buildScreenRecord() {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.write(Command.ERASE_WRITE_F5);
+    stream.write(WCC);
+    stream.write(Order.START_FIELD);
+    stream.write(BufferAddress.ADDRESS[PROTECTED]);
+    byte[] text = SCREEN_TEXT.getBytes(java.nio.charset.Charset.forName(CHARSET.name()));
+    stream.write(text, 0, text.length);
+    stream.write(IAC);
+    stream.write(TelnetProcessor.EOR);
+    return stream.toByteArray();
+  }
+
+  private static String getScreenText(Screen screen) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 1; i <= SCREEN_TEXT.length(); i++) {
+      ScreenPosition position = screen.getScreenPosition(i);
+      text.append(position.isNull() ? ' ' : position.getChar());
+    }
+    return text.toString();
+  }
+
+  private static void awaitFloodBytes(FloodListener listener, long bytes)
+      throws InterruptedException, TimeoutException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (listener.bytes.get() < bytes) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new TimeoutException("Flooding host data not received: " + listener.bytes);
+      }
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  public void shouldGetScreenAndReadWithinBudgetWhenOtherHostOfLoopFloodsData()
+      throws Exception {
+    FloodListener floodListener = new FloodListener();
+    floodConnection = new NioTerminalServer(HOST, floodServer.getLocalPort(), eventLoopGroup,
+        floodListener);
+    floodListener.connection = floodConnection;
+    TelnetState telnetState = new TelnetState();
+    Screen screen = new Screen(SCREEN_DIMENSIONS, null, telnetState, CHARSET);
+    screenConnection = new NioTerminalServer(HOST, screenServer.getLocalPort(), eventLoopGroup,
+        new TelnetListener(screen, telnetState));
+    startFloodHost();
+    startScreenHost();
+    floodConnection.connect();
+    screenConnection.connect();
+
+    awaitFloodBytes(floodListener, FLOOD_BYTES_BEFORE_SCREEN);
+    floodStarted.countDown();
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!SCREEN_TEXT.equals(getScreenText(screen))) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new TimeoutException("Screen not received while other host floods data");
+      }
+      Thread.sleep(1);
+    }
+    // the flood goes on after the screen is received
+    awaitFloodBytes(floodListener, floodListener.bytes.get() + FLOOD_BYTES_BEFORE_SCREEN);
+    assertThat(floodListener.maxVisitBytes).isPositive().isLessThanOrEqualTo(READ_BUDGET);
+  }
+
+}
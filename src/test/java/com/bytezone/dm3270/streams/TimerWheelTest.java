@@ -0,0 +1,176 @@
+package com.bytezone.dm3270.streams;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+  private static final long TICK_MILLIS = 10;
+  // rounded to 8 buckets, so a revolution of the wheel takes 80 millis
+  private static final int WHEEL_SIZE = 5;
+  private static final long REVOLUTION_MILLIS = 8 * TICK_MILLIS;
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  private TimerWheel wheel;
+
+  @Before
+  public void setup() {
+    wheel = new TimerWheel(TICK_MILLIS, TimeUnit.MILLISECONDS, WHEEL_SIZE);
+  }
+
+  @After
+  public void teardown() {
+    wheel.stop();
+  }
+
+  private long awaitExpirationMillis(long delayMillis) throws InterruptedException {
+    BlockingQueue<Long> expirations = new LinkedBlockingQueue<>();
+    long start = System.nanoTime();
+    wheel.schedule(() -> expirations.add(System.nanoTime()), delayMillis,
+        TimeUnit.MILLISECONDS);
+    Long expiration = expirations.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    assertThat(expiration).isNotNull();
+    return TimeUnit.NANOSECONDS.toMillis(expiration - start);
+  }
+
+  @Test
+  public void shouldNotExpireBeforeDelayWhenDelayIsNotMultipleOfTick() throws Exception {
+    assertThat(awaitExpirationMillis(TICK_MILLIS * 3 + TICK_MILLIS / 2))
+        .isGreaterThanOrEqualTo(TICK_MILLIS * 3 + TICK_MILLIS / 2);
+  }
+
+  @Test
+  public void shouldExpireInNextTickWhenScheduleWithoutDelay() throws Exception {
+    assertThat(awaitExpirationMillis(0)).isLessThan(TIMEOUT_MILLIS);
+  }
+
+  @Test
+  public void shouldWaitRemainingRoundsWhenDelayIsLongerThanWheelRevolution()
+      throws Exception {
+    // without the remaining rounds it would expire in the first revolution, after 10 millis
+    long delayMillis = 3 * REVOLUTION_MILLIS + TICK_MILLIS;
+    assertThat(awaitExpirationMillis(delayMillis)).isGreaterThanOrEqualTo(delayMillis);
+  }
+
+  @Test
+  public void shouldExpireAllTimeoutsWhenScheduledInSameBucketForDifferentRounds()
+      throws Exception {
+    CountDownLatch expirations = new CountDownLatch(3);
+    for (int round = 0; round < 3; round++) {
+      wheel.schedule(expirations::countDown, round * REVOLUTION_MILLIS + TICK_MILLIS,
+          TimeUnit.MILLISECONDS);
+    }
+    assertThat(expirations.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+  }
+
+  @Test
+  public void shouldNotRunTaskWhenCancelBeforeExpiration() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    TimerWheel.Timeout timeout = wheel.schedule(runs::incrementAndGet, 5 * TICK_MILLIS,
+        TimeUnit.MILLISECONDS);
+    assertThat(timeout.cancel()).isTrue();
+    // a later timeout expiring proves the wheel went past the cancelled one
+    awaitExpirationMillis(10 * TICK_MILLIS);
+    assertThat(runs.get()).isZero();
+    assertThat(timeout.isCancelled()).isTrue();
+    assertThat(timeout.isExpired()).isFalse();
+  }
+
+  @Test
+  public void shouldNotCancelWhenTimeoutAlreadyExpired() throws Exception {
+    CountDownLatch expiration = new CountDownLatch(1);
+    TimerWheel.Timeout timeout = wheel.schedule(expiration::countDown, TICK_MILLIS,
+        TimeUnit.MILLISECONDS);
+    assertThat(expiration.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(timeout.cancel()).isFalse();
+    assertThat(timeout.isExpired()).isTrue();
+  }
+
+  @Test
+  public void shouldRunOtherTimeoutsWhenTaskThrowsException() throws Exception {
+    wheel.schedule(() -> {
+      throw new IllegalStateException("task failure");
+    }, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    assertThat(awaitExpirationMillis(2 * TICK_MILLIS)).isLessThan(TIMEOUT_MILLIS);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldThrowIllegalStateExceptionWhenScheduleInStoppedWheel() {
+    wheel.stop();
+    wheel.schedule(() -> {
+    }, TICK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldThrowIllegalStateExceptionWhenStopDefaultWheel() {
+    TimerWheel.getDefault().stop();
+  }
+
+  @Test
+  public void shouldRescheduleForRemainingTimeWhenTouchedBeforeInterval() throws Exception {
+    long intervalMillis = 10 * TICK_MILLIS;
+    BlockingQueue<Long> idles = new LinkedBlockingQueue<>();
+    IdleTimer timer = new IdleTimer(wheel, intervalMillis, () -> idles.add(System.nanoTime()));
+    timer.start();
+    try {
+      Thread.sleep(intervalMillis / 2);
+      long touchTime = System.nanoTime();
+      timer.touch();
+      Long idle = idles.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      assertThat(idle).isNotNull();
+      assertThat(TimeUnit.NANOSECONDS.toMillis(idle - touchTime))
+          .isGreaterThanOrEqualTo(intervalMillis);
+    } finally {
+      timer.stop();
+    }
+  }
+
+  @Test
+  public void shouldNotRunIdleTaskWhenTouchedMoreOftenThanInterval() throws Exception {
+    long intervalMillis = 10 * TICK_MILLIS;
+    AtomicInteger idles = new AtomicInteger();
+    IdleTimer timer = new IdleTimer(wheel, intervalMillis, idles::incrementAndGet);
+    timer.start();
+    try {
+      long end = System.currentTimeMillis() + 4 * intervalMillis;
+      while (System.currentTimeMillis() < end) {
+        timer.touch();
+        Thread.sleep(TICK_MILLIS);
+      }
+      assertThat(idles.get()).isZero();
+    } finally {
+      timer.stop();
+    }
+  }
+
+  @Test
+  public void shouldRunIdleTaskEachIntervalWhenNotTouched() throws Exception {
+    CountDownLatch idles = new CountDownLatch(3);
+    IdleTimer timer = new IdleTimer(wheel, 3 * TICK_MILLIS, idles::countDown);
+    timer.start();
+    try {
+      assertThat(idles.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+    } finally {
+      timer.stop();
+    }
+  }
+
+  @Test
+  public void shouldNotRunIdleTaskWhenStopped() throws Exception {
+    AtomicInteger idles = new AtomicInteger();
+    IdleTimer timer = new IdleTimer(wheel, 3 * TICK_MILLIS, idles::incrementAndGet);
+    timer.start();
+    timer.stop();
+    awaitExpirationMillis(10 * TICK_MILLIS);
+    assertThat(idles.get()).isZero();
+  }
+
+}